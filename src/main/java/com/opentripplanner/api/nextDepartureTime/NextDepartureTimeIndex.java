@@ -0,0 +1,168 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package com.opentripplanner.api.nextDepartureTime;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.onebusaway.gtfs.model.Stop;
+import org.opentripplanner.routing.core.ServiceDay;
+import org.opentripplanner.routing.edgetype.TripPattern;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.trippattern.TripTimes;
+import org.opentripplanner.routing.vertextype.TransitStop;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Maps;
+import com.vividsolutions.jts.geom.Coordinate;
+
+/**
+ * Graph-lifetime index backing the nextDepartureTime endpoint. It is built once per Router when
+ * the graph is loaded (and therefore rebuilt on every graph reload), so a request only touches the
+ * stops found near the requested coordinate instead of scanning the whole graph.
+ *
+ * Stop lookup is delegated to the transit stop spatial index already held by the graph's
+ * StreetVertexIndexService. For each stop we precompute one departure table per trip pattern
+ * serving it: scheduled departure times sorted in ascending order, with the service code of each
+ * trip in a parallel array. Finding the next departure is then a binary search followed by a short
+ * forward scan over trips that are not running on the requested service day.
+ *
+ * Only scheduled departures are indexed, which matches what the endpoint reported before (it
+ * always used the scheduled departure of each trip).
+ */
+public class NextDepartureTimeIndex {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NextDepartureTimeIndex.class);
+
+    private final Graph graph;
+
+    private final Map<Stop, List<PatternDepartures>> departuresForStop = Maps.newHashMap();
+
+    public NextDepartureTimeIndex(Graph graph) {
+        LOG.info("Building next departure time index...");
+        this.graph = graph;
+        if (graph.index != null) {
+            for (Stop stop : graph.index.patternsForStop.keySet()) {
+                List<PatternDepartures> tables = new ArrayList<PatternDepartures>();
+                for (TripPattern pattern : graph.index.patternsForStop.get(stop)) {
+                    PatternDepartures table = new PatternDepartures(pattern, stop);
+                    if (table.departures.length > 0) {
+                        tables.add(table);
+                    }
+                }
+                departuresForStop.put(stop, tables);
+            }
+        }
+        LOG.info("Done building next departure time index for {} stops.", departuresForStop.size());
+    }
+
+    /**
+     * @return all the transit stops within radius meters of the given coordinate.
+     */
+    public List<TransitStop> getNearbyTransitStops(Coordinate coordinate, double radius) {
+        return graph.streetIndex.getNearbyTransitStops(coordinate, radius);
+    }
+
+    /**
+     * @return the precomputed departure tables of all the patterns serving the given stop.
+     */
+    public List<PatternDepartures> getDepartures(Stop stop) {
+        List<PatternDepartures> tables = departuresForStop.get(stop);
+        if (tables == null) {
+            return Collections.emptyList();
+        }
+        return tables;
+    }
+
+    /**
+     * Scheduled departures of a single trip pattern at a single stop, sorted by departure time.
+     * A stop visited more than once by the pattern contributes all its visits to the same table.
+     */
+    public static class PatternDepartures {
+
+        public final TripPattern pattern;
+
+        /** Departure times in seconds since midnight, in ascending order. */
+        private final int[] departures;
+
+        /** Service code of the trip departing at the same position in departures. */
+        private final int[] serviceCodes;
+
+        private PatternDepartures(TripPattern pattern, Stop stop) {
+            this.pattern = pattern;
+            List<TripTimes> tripTimes = pattern.scheduledTimetable.tripTimes;
+            long[] packed = new long[tripTimes.size() * countVisits(pattern, stop)];
+            int n = 0;
+            for (int sidx = 0; sidx < pattern.stopPattern.stops.length; sidx++) {
+                if (pattern.stopPattern.stops[sidx] != stop) {
+                    continue;
+                }
+                for (TripTimes tt : tripTimes) {
+                    int departure = tt.getScheduledDepartureTime(sidx);
+                    if (departure == -1) {
+                        continue;
+                    }
+                    // Sort on the departure time while carrying the service code along
+                    packed[n++] = ((long) departure << 32) | (tt.serviceCode & 0xFFFFFFFFL);
+                }
+            }
+            Arrays.sort(packed, 0, n);
+            departures = new int[n];
+            serviceCodes = new int[n];
+            for (int i = 0; i < n; i++) {
+                departures[i] = (int) (packed[i] >> 32);
+                serviceCodes[i] = (int) packed[i];
+            }
+        }
+
+        private static int countVisits(TripPattern pattern, Stop stop) {
+            int visits = 0;
+            for (Stop s : pattern.stopPattern.stops) {
+                if (s == stop) {
+                    visits++;
+                }
+            }
+            return visits;
+        }
+
+        /**
+         * Find the first departure strictly after fromTime and strictly before toTime (both in
+         * seconds since midnight of the given service day) of a trip running on that day.
+         *
+         * @return the departure time in seconds since midnight, or -1 if there is none.
+         */
+        public int nextDeparture(ServiceDay serviceDay, int fromTime, int toTime) {
+            int low = 0;
+            int high = departures.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (departures[mid] <= fromTime) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            for (int i = low; i < departures.length && departures[i] < toTime; i++) {
+                if (serviceDay.serviceRunning(serviceCodes[i])) {
+                    return departures[i];
+                }
+            }
+            return -1;
+        }
+    }
+}
@@ -2,7 +2,6 @@ package com.opentripplanner.api.nextDepartureTime;
 
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
@@ -21,26 +20,16 @@ import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.UriInfo;
 
 import org.onebusaway.gtfs.model.calendar.ServiceDate;
-import org.opentripplanner.common.geometry.HashGridSpatialIndex;
-import org.opentripplanner.common.geometry.SphericalDistanceLibrary;
-import org.opentripplanner.index.model.StopTimesInPattern;
-import org.opentripplanner.index.model.TripTimeShort;
-import org.opentripplanner.routing.edgetype.PatternEdge;
-import org.opentripplanner.routing.graph.Edge;
+import org.opentripplanner.routing.core.ServiceDay;
 import org.opentripplanner.routing.graph.Graph;
-import org.opentripplanner.routing.graph.Vertex;
-import org.opentripplanner.routing.vertextype.PatternDepartVertex;
 import org.opentripplanner.routing.vertextype.TransitStop;
 import org.opentripplanner.standalone.OTPServer;
 import org.opentripplanner.standalone.Router;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.opentripplanner.api.nextDepartureTime.NextDepartureTimeIndex.PatternDepartures;
 import com.vividsolutions.jts.geom.Coordinate;
-import com.vividsolutions.jts.geom.Envelope;
-import com.vividsolutions.jts.geom.LineString;
-import com.vividsolutions.jts.index.SpatialIndex;
-import com.vividsolutions.jts.index.strtree.STRtree;
 
 /**
  * OTP simple built-in geocoder.
@@ -102,9 +91,7 @@ public class NextDepartureTimeResource {
     public String routerId;
 	
 	private Graph graph;
-	private SpatialIndex edgeTree;
-    private SpatialIndex transitStopTree;
-    private SpatialIndex verticesTree;
+	private NextDepartureTimeIndex departureTimeIndex;
 	
     private long calculatedTime;
     
@@ -130,7 +117,8 @@ public class NextDepartureTimeResource {
 
     	this.otpServer = otpServer;
     	Router router = otpServer.getRouter(routerId);
-    	initializeTrees(router.graph,true);
+    	this.graph = router.graph;
+    	this.departureTimeIndex = router.nextDepartureTimeIndex;
     	
     	try {
     		setDefaults();
@@ -138,8 +126,8 @@ public class NextDepartureTimeResource {
     		return createErrorResponse(e.getMessage());
     	}
   
-        List<Vertex> closestVertexList = getLocalPatternDepartVertex();
-        NextDepartureTimeResults response = getResponse(closestVertexList);
+        List<TransitStop> closestStopList = getLocalTransitStops();
+        NextDepartureTimeResults response = getResponse(closestStopList);
 				
 		LOG.info("GetNextDepartureTime elaboration ended..."); 
 		return response;
@@ -281,112 +269,30 @@ public class NextDepartureTimeResource {
     }
     
     /**
-     * Initialize trees.
-     * 
-     * @param graph
-     * @param hashGrid
-     */
-    public void initializeTrees(Graph graph, boolean hashGrid) {
-    	LOG.info("initializeTrees elaboration..."); 
-    	
-        this.graph = graph;
-        if (hashGrid) {
-            edgeTree = new HashGridSpatialIndex<>();
-            transitStopTree = new HashGridSpatialIndex<>();
-            verticesTree = new HashGridSpatialIndex<>();
-        } else {
-            edgeTree = new STRtree();
-            transitStopTree = new STRtree();
-            verticesTree = new STRtree();
-        }
-        postSetup();
-        if (!hashGrid) {
-            ((STRtree) edgeTree).build();
-            ((STRtree) transitStopTree).build();
-        }
-        
-        LOG.info("initializeTrees elaboration ended..."); 
-    }
-    
-    /**
-     * 
-     */
-    @SuppressWarnings("rawtypes")
-    private void postSetup() {
-    	LOG.info("postSetup elaboration..."); 
-    	
-        for (Vertex gv : graph.getVertices()) {
-            Vertex v = gv;
-            /*
-             * We add all edges with geometry, skipping transit, filtering them out after. We do not
-             * index transit edges as we do not need them and some GTFS do not have shape data, so
-             * long straight lines between 2 faraway stations will wreck performance on a hash grid
-             * spatial index.
-             * 
-             * If one need to store transit edges in the index, we could improve the hash grid
-             * rasterizing splitting long segments.
-             */
-            for (Edge e : gv.getOutgoing()) {
-                if (e instanceof PatternEdge)
-                    continue;
-                LineString geometry = e.getGeometry();
-                if (geometry == null) {
-                    continue;
-                }
-                Envelope env = geometry.getEnvelopeInternal();
-                if (edgeTree instanceof HashGridSpatialIndex)
-                    ((HashGridSpatialIndex)edgeTree).insert(geometry, e);
-                else
-                    edgeTree.insert(env, e);
-            }
-            if (v instanceof TransitStop) {
-                Envelope env = new Envelope(v.getCoordinate());
-                transitStopTree.insert(env, v);
-            }
-            Envelope env = new Envelope(v.getCoordinate());
-            verticesTree.insert(env, v);
-        }
-        LOG.info("postSetup elaboration ended..."); 
-    }
-
-    
-    /**
-     * Returns all the park and ride vertices within a certain radius distance to the specified location. 
+     * Returns all the transit stops within the buffer distance to the specified location.
      */
-    public List<Vertex> getLocalPatternDepartVertex() {
+    public List<TransitStop> getLocalTransitStops() {
     	
-    	LOG.info("getLocalPatternDepartVertex elaboration..."); 
+    	LOG.info("getLocalTransitStops elaboration..."); 
 
         if (buffer > MAX_STOP_SEARCH_RADIUS){
         	buffer = MAX_STOP_SEARCH_RADIUS;
         }
         Coordinate coord = new Coordinate(lon, lat);
-        
-        
-        Envelope env = new Envelope(coord);
-	    env.expandBy(SphericalDistanceLibrary.metersToDegrees(buffer));
-	    List<Vertex> nearby = verticesTree.query(env);
-	    List<Vertex> results = new ArrayList<Vertex>();
-	    for (Vertex v : nearby) {
-		    if(v instanceof PatternDepartVertex) {
-		    	if (SphericalDistanceLibrary.distance(v.getCoordinate(), coord) <= buffer) {
-		    		results.add(v);
-	            }
-	      	}
-	    }
+	    List<TransitStop> results = departureTimeIndex.getNearbyTransitStops(coord, buffer);
 	    
-	    LOG.info("getLocalPatternDepartVertex elaboration ended..."); 
+	    LOG.info("getLocalTransitStops elaboration ended..."); 
 	    
 	    return results;
     }
 	 
     /**
-     * Finds lines departure times given a list of vertices.
+     * Finds lines departure times given a list of stops.
      * 
      * @param results
      * @return
      */
-    public NextDepartureTimeResults getResponse(List<Vertex> results) {
+    public NextDepartureTimeResults getResponse(List<TransitStop> results) {
     	
     	LOG.info("getResponse elaboration..."); 
     	 
@@ -402,46 +308,22 @@ public class NextDepartureTimeResource {
 	    
 	    //convert time parameter into a date before searching for stopTimes
 	    calendar.setTime(new Date(calculatedTime*1000));
-		String date = createDate(calendar);
+		ServiceDate serviceDate;
+		try {
+			serviceDate = ServiceDate.parseString(createDate(calendar));
+		} catch (ParseException e) {
+			return createErrorResponse("Error converting time to date");
+		}
 		
+		//service days only depend on the agency, share them between all the stops of this request.
+		Map<String, ServiceDay> serviceDayForAgency = new HashMap<String, ServiceDay>();
 		
-		
-	    for(Vertex v : results) {
-	    	PatternDepartVertex pdv = (PatternDepartVertex) v;
-	    	//System.out.println(pdv.getTripPattern().mode.toString());
-	    	//check if vertex has already been taken into account.
-	    	if(nextDepartureTimeResults.getResults() != null) {
-	    		boolean found = false;
-		    	for(NextDepartureTimeResult insertedRecord: nextDepartureTimeResults.getResults()) {
-		    		if(pdv.getLat() == insertedRecord.getLat() &&
-		    				pdv.getLon() == insertedRecord.getLng() &&
-    						pdv.getName() == insertedRecord.getStopName()) {
-		    			//discard record
-		    			found=true;	
-		    		}
-		    	}
-		    	if(found) {
-		    		continue;
-		    	}
-	    	}
-	    	
-	    	NextDepartureTimeResult nextDepartureTimeResult = new NextDepartureTimeResult(pdv.getLat(),pdv.getLon(),pdv.getName());
-	    		
-			List<StopTimesInPattern> list = null;
-			
-			try {
-				list = this.graph.index.getStopTimesForStop(pdv.getStop(),ServiceDate.parseString(date));
-			} catch (ParseException e) {
-				return createErrorResponse("Error converting time to date");
-			}
+	    for(TransitStop stop : results) {
+	    	NextDepartureTimeResult nextDepartureTimeResult = new NextDepartureTimeResult(stop.getLat(),stop.getLon(),stop.getName());
 
-			for(StopTimesInPattern stopTimes : list) {	
-				String line = stopTimes.pattern.desc;
+			for(PatternDepartures departures : departureTimeIndex.getDepartures(stop.getStop())) {	
+				String line = departures.pattern.name;
 				
-//				//if line number parameter is not null check only the selected line.
-//				if(lineNumber != null && lineNumber != line) {
-//					continue;
-//				}
 				//FIXME currently we are providing a more flexible line matching comparison.
 				//since line identifier can be quite long we just match the line number instead of the whole string
 				//the is also due to the fact that different gtfs may give different name structure for it.
@@ -451,26 +333,27 @@ public class NextDepartureTimeResource {
 					continue;
 				}
 				
-				for(TripTimeShort tts : stopTimes.times) {
-					Long departureTime = tts.serviceDay + tts.scheduledDeparture;
-					if(departureTime > calculatedTime && departureTime < calculatedTime + timeOffset*60) {
-						calendar.setTime(new Date(departureTime*1000));
-						LineAndTime lt = new LineAndTime(line,calendar.getTime().toString());
-						nextDepartureTimeResult.getLineAndTime().add(lt);
-						//lineAndTime.put(line, calendar.getTime().toString());
-						break;
-					}
-				}	
+				String agencyId = departures.pattern.route.getAgency().getId();
+				ServiceDay serviceDay = serviceDayForAgency.get(agencyId);
+				if(serviceDay == null) {
+					serviceDay = new ServiceDay(graph, serviceDate, graph.getCalendarService(), agencyId);
+					serviceDayForAgency.put(agencyId, serviceDay);
+				}
+				
+				int fromTime = serviceDay.secondsSinceMidnight(calculatedTime);
+				int departureTime = departures.nextDeparture(serviceDay, fromTime, fromTime + timeOffset*60);
+				if(departureTime != -1) {
+					calendar.setTime(new Date(serviceDay.time(departureTime)*1000));
+					LineAndTime lt = new LineAndTime(line,calendar.getTime().toString());
+					nextDepartureTimeResult.getLineAndTime().add(lt);
+				}
 			}
-			//nextDepartureTimeResult.setLineAndTime(lineAndTime);
 			
 			if(nextDepartureTimeResult.getLineAndTime().size() != 0) {
 				nextDepartureTimeResults.addResult(nextDepartureTimeResult);
 			}
 	    }
 
-
-        
         LOG.info("getResponse elaboration ended..."); 
         return nextDepartureTimeResults;
     }
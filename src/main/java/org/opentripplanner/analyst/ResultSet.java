@@ -4,10 +4,8 @@ import com.beust.jcommander.internal.Maps;
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import org.geotools.feature.FeatureCollection;
-import org.geotools.geojson.feature.FeatureJSON;
+import org.opentripplanner.analyst.cluster.ResultEnvelopeEncoder;
 import org.opentripplanner.analyst.core.IsochroneData;
-import org.opentripplanner.api.resource.LIsochrone;
 import org.opentripplanner.api.resource.SurfaceResource;
 import org.opentripplanner.common.geometry.ZSampleGrid;
 import org.opentripplanner.profile.IsochroneGenerator;
@@ -17,8 +15,6 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.Serializable;
-import java.io.StringWriter;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
@@ -210,19 +206,12 @@ public class ResultSet implements Serializable{
         }
     }
 
-    /** Write the isochrones as GeoJSON */
+    /** Write the isochrones as the fields of a GeoJSON FeatureCollection, streaming their coordinates. */
     public void writeIsochrones(JsonGenerator jgen) throws IOException {
         if (this.isochrones == null)
             return;
-        
-        FeatureJSON fj = new FeatureJSON();
-        FeatureCollection fc = LIsochrone.makeContourFeatures(Arrays.asList(isochrones));
-        
-        StringWriter sw = new StringWriter();
-        fj.writeFeatureCollection(fc, sw);
-        // TODO cludge
-        String json = sw.toString();
-        jgen.writeRaw(json.substring(1, json.length() - 1));
+
+        ResultEnvelopeEncoder.writeIsochroneFeatures(jgen, isochrones);
     }
     
     /** A set of result sets from profile routing: min, avg, max */;
@@ -1,9 +1,6 @@
 package org.opentripplanner.analyst;
 
 import com.vividsolutions.jts.geom.Coordinate;
-import gnu.trove.iterator.TObjectIntIterator;
-import gnu.trove.map.TObjectIntMap;
-import gnu.trove.map.hash.TObjectIntHashMap;
 import org.apache.commons.math3.util.FastMath;
 import org.opentripplanner.analyst.request.SampleGridRenderer;
 import org.opentripplanner.analyst.request.SampleGridRenderer.WTWD;
@@ -36,12 +33,12 @@ import static org.apache.commons.math3.util.FastMath.toRadians;
 public class TimeSurface implements Serializable {
 
     private static final Logger LOG = LoggerFactory.getLogger(TimeSurface.class);
-    public static final int UNREACHABLE = -1;
+    public static final int UNREACHABLE = VertexTimes.UNREACHABLE;
     private static int nextId = 0;
 
     public final String routerId;
     public final int id;
-    public final TObjectIntMap<Vertex> times = new TObjectIntHashMap<Vertex>(500000, 0.5f, UNREACHABLE);
+    public final VertexTimes times;
     public final double lat, lon;
     public int cutoffMinutes = 90; // this should really be copied from the data source but the new repeated raptor does not do so
     public long dateTime;
@@ -69,6 +66,7 @@ public class TimeSurface implements Serializable {
         // We don't want to keep that default in sync across two modules.
         this.routerId = routerId;
         long t0 = System.currentTimeMillis();
+        times = VertexTimes.forSize(spt.getOptions().rctx.graph, spt.getVertexCount());
         for (State state : spt.getAllStates()) {
             Vertex vertex = state.getVertex();
             if (vertex instanceof StreetVertex || vertex instanceof TransitStop) {
@@ -100,6 +98,7 @@ public class TimeSurface implements Serializable {
         id = makeUniqueId();
         dateTime = req.fromTime; // FIXME
         routerId = profileRouter.graph.routerId;
+        times = VertexTimes.dense(profileRouter.graph);
         cutoffMinutes = profileRouter.MAX_DURATION / 60;
         walkSpeed = profileRouter.request.walkSpeed;
     }
@@ -114,6 +113,7 @@ public class TimeSurface implements Serializable {
         id = makeUniqueId();
         dateTime = req.fromTime; // FIXME
         routerId = profileRouter.graph.routerId;
+        times = VertexTimes.dense(profileRouter.graph);
         cutoffMinutes = profileRouter.MAX_DURATION / 60;
         walkSpeed = profileRouter.request.walkSpeed;
     }
@@ -126,6 +126,7 @@ public class TimeSurface implements Serializable {
         id = makeUniqueId();
         dateTime = req.fromTime; // FIXME
         routerId = profileRouter.graph.routerId;
+        times = VertexTimes.dense(profileRouter.graph);
     }
 
     public TimeSurface(RepeatedRaptorProfileRouter profileRouter) {
@@ -135,6 +136,7 @@ public class TimeSurface implements Serializable {
         id = makeUniqueId();
         dateTime = req.fromTime; // FIXME
         routerId = profileRouter.graph.routerId;
+        times = VertexTimes.dense(profileRouter.graph);
         cutoffMinutes = 120; // FIXME is there any well-defined cutoff? This is needed for generating isochrone curves.
     }
 
@@ -167,7 +169,12 @@ public class TimeSurface implements Serializable {
     }
 
     public int getTime(Vertex v) {
-        return times.get(v);
+        return times.get(v.getIndex());
+    }
+
+    /** @return the travel time to the vertex with the given index, or UNREACHABLE. */
+    public int getTime(int vertexIndex) {
+        return times.get(vertexIndex);
     }
 
     private synchronized int makeUniqueId() {
@@ -215,10 +222,9 @@ public class TimeSurface implements Serializable {
         AccumulativeGridSampler<WTWD> sampler = new AccumulativeGridSampler<WTWD>(sampleGrid, metric);
         // Iterate over every vertex in this timesurface, adding it to the ZSampleGrid
         // TODO propagation along street geometries could happen at this stage, rather than when the SPT is still available.
-        for (TObjectIntIterator<Vertex> iter = times.iterator(); iter.hasNext(); ) {
-            iter.advance();
-            Vertex vertex = iter.key();
-            int time = iter.value();
+        for (Vertex vertex : times.vertices()) {
+            int time = times.get(vertex);
+            if (time == UNREACHABLE) continue;
             WTWD z = new WTWD();
             z.w = 1.0;
             z.d = 0.0;
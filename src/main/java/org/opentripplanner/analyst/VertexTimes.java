@@ -0,0 +1,204 @@
+package org.opentripplanner.analyst;
+
+import gnu.trove.iterator.TObjectIntIterator;
+import gnu.trove.map.TIntIntMap;
+import gnu.trove.map.hash.TIntIntHashMap;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Travel times to vertices, stored in arrays indexed by vertex index rather than in a hash map keyed on the vertices.
+ * Looking up a time is then an array access, and a time takes four bytes rather than the ten or more of a hash map
+ * entry (and twice that with the low load factors we used). The vertices that have been given a time are also kept
+ * in a list, so that the reached vertices can be iterated over without scanning the whole graph.
+ *
+ * A dense table has a slot for every vertex in the graph and suits searches that reach much of the graph, such as
+ * profile routing. A chunked table only allocates slots for blocks of vertex indices that contain a reached vertex,
+ * and suits small searches such as a short walk.
+ *
+ * Tables are sized from the vertex index limit of the graph rather than from Vertex.getMaxIndex(), which keeps growing
+ * as requests make temporary vertices. The times of vertices with indices beyond the limit, such as the temporary
+ * vertices at the origin of a search, are kept in a small hash map instead.
+ */
+public abstract class VertexTimes implements Serializable {
+
+    public static final int UNREACHABLE = -1;
+
+    /** Searches reaching fewer than this fraction of the vertices in the graph get a chunked table. */
+    private static final int CHUNKED_FRACTION = 8;
+
+    /** The vertex indices below this have a slot in the table. */
+    protected final int indexLimit;
+
+    /** Times of the vertices with indices beyond the table, made lazily as there are usually only a few. */
+    private TIntIntMap extra;
+
+    private final List<Vertex> reached = new ArrayList<Vertex>();
+
+    protected VertexTimes(int indexLimit) {
+        this.indexLimit = indexLimit;
+    }
+
+    /** @return a table with a slot for every vertex in the given graph. */
+    public static VertexTimes dense(Graph graph) {
+        return new Dense(graph.getVertexIndexLimit());
+    }
+
+    /** @return a table allocating slots in blocks of the vertex indices of the given graph, as they are reached. */
+    public static VertexTimes chunked(Graph graph) {
+        return new Chunked(graph.getVertexIndexLimit());
+    }
+
+    /** @return the kind of table best suited to a search of the graph expected to reach the given number of vertices. */
+    public static VertexTimes forSize(Graph graph, int expectedVertices) {
+        return expectedVertices < graph.getVertexIndexLimit() / CHUNKED_FRACTION ? chunked(graph) : dense(graph);
+    }
+
+    /** @return the time for the vertex with the given index, or UNREACHABLE if it has none. */
+    public int get(int index) {
+        if (index < indexLimit) return getInTable(index);
+        return extra == null ? UNREACHABLE : extra.get(index);
+    }
+
+    /** Store the time for the vertex with the given index. @return the previous time, or UNREACHABLE if it had none. */
+    protected int set(int index, int time) {
+        if (index < indexLimit) return setInTable(index, time);
+        if (extra == null) {
+            extra = new TIntIntHashMap(8, 0.5f, -1, UNREACHABLE);
+        }
+        return extra.put(index, time);
+    }
+
+    /** @return the time for the given index, which is below indexLimit. */
+    protected abstract int getInTable(int index);
+
+    /** Store the time for the given index, which is below indexLimit. @return the previous time. */
+    protected abstract int setInTable(int index, int time);
+
+    /** @return the time for the given vertex, or UNREACHABLE if it has none. */
+    public int get(Vertex vertex) {
+        return get(vertex.getIndex());
+    }
+
+    /** Set the time for the given vertex. @return the previous time, or UNREACHABLE if it had none. */
+    public int put(Vertex vertex, int time) {
+        int previous = set(vertex.getIndex(), time);
+        if (previous == UNREACHABLE && time != UNREACHABLE) {
+            reached.add(vertex);
+        }
+        return previous;
+    }
+
+    /** @return the number of vertices that have been given a time. */
+    public int size() {
+        return reached.size();
+    }
+
+    /** @return the vertices that have been given a time, in the order they were first given one. */
+    public List<Vertex> vertices() {
+        return reached;
+    }
+
+    /** @return an iterator over the reached vertices and their times, in the same style as the Trove maps. */
+    public TObjectIntIterator<Vertex> iterator() {
+        return new TObjectIntIterator<Vertex>() {
+            int next = 0;
+            Vertex vertex;
+
+            @Override
+            public boolean hasNext() {
+                return next < reached.size();
+            }
+
+            @Override
+            public void advance() {
+                if (!hasNext()) throw new NoSuchElementException();
+                vertex = reached.get(next++);
+            }
+
+            @Override
+            public Vertex key() {
+                return vertex;
+            }
+
+            @Override
+            public int value() {
+                return get(vertex);
+            }
+
+            @Override
+            public int setValue(int time) {
+                return put(vertex, time);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /** Times in one array with a slot for every vertex index of the graph. */
+    private static class Dense extends VertexTimes {
+
+        private final int[] times;
+
+        Dense(int indexLimit) {
+            super(indexLimit);
+            times = new int[indexLimit];
+            Arrays.fill(times, UNREACHABLE);
+        }
+
+        @Override
+        protected int getInTable(int index) {
+            return times[index];
+        }
+
+        @Override
+        protected int setInTable(int index, int time) {
+            int previous = times[index];
+            times[index] = time;
+            return previous;
+        }
+    }
+
+    /** Times in blocks of consecutive vertex indices, each allocated when a vertex in it is first given a time. */
+    private static class Chunked extends VertexTimes {
+
+        private static final int SHIFT = 10;
+
+        private static final int MASK = (1 << SHIFT) - 1;
+
+        private final int[][] chunks;
+
+        Chunked(int indexLimit) {
+            super(indexLimit);
+            chunks = new int[(indexLimit >> SHIFT) + 1][];
+        }
+
+        @Override
+        protected int getInTable(int index) {
+            int[] chunk = chunks[index >> SHIFT];
+            return chunk == null ? UNREACHABLE : chunk[index & MASK];
+        }
+
+        @Override
+        protected int setInTable(int index, int time) {
+            int c = index >> SHIFT;
+            int[] chunk = chunks[c];
+            if (chunk == null) {
+                chunk = chunks[c] = new int[1 << SHIFT];
+                Arrays.fill(chunk, UNREACHABLE);
+            }
+            int previous = chunk[index & MASK];
+            chunk[index & MASK] = time;
+            return previous;
+        }
+    }
+}
@@ -12,6 +12,7 @@ import org.glassfish.grizzly.http.server.Request;
 import org.glassfish.grizzly.http.server.Response;
 import org.glassfish.grizzly.http.util.HttpStatus;
 import org.opentripplanner.analyst.cluster.AnalystClusterRequest;
+import org.opentripplanner.analyst.cluster.ResultEnvelopeEncoder;
 import org.opentripplanner.api.model.AgencyAndIdSerializer;
 import org.opentripplanner.api.model.JodaLocalDateSerializer;
 import org.slf4j.Logger;
@@ -118,6 +119,8 @@ class BrokerHttpHandler extends HttpHandler {
                         // Enqueue a single priority task
                         AnalystClusterRequest task = mapper.readValue(request.getInputStream(),
                                 AnalystClusterRequest.class);
+                        task.resultFormat = ResultEnvelopeEncoder.Format.fromAcceptHeader(
+                                request.getHeader("Accept"));
                         broker.enqueuePriorityTask(task, response);
                         // Enqueueing the priority task has set its internal taskId.
                         // TODO move all removal listener registration into the broker functions.
@@ -161,7 +164,11 @@ class BrokerHttpHandler extends HttpHandler {
                         response.setStatus(HttpStatus.NOT_FOUND_404);
                         return;
                     }
-                    // Copy the result back to the connection that was the source of the task.
+                    // Copy the result back to the connection that was the source of the task, in the encoding the
+                    // worker used.
+                    if (request.getContentType() != null) {
+                        suspendedProducerResponse.setContentType(request.getContentType());
+                    }
                     try {
                         ByteStreams.copy(request.getInputStream(),
                                 suspendedProducerResponse.getOutputStream());
@@ -50,6 +50,9 @@ public class AnalystClusterRequest implements Serializable {
 
 	/** Should times be included in the results (i.e. ResultSetWithTimes rather than ResultSet) */
 	public boolean includeTimes = false;
+
+	/** How to encode the results of a priority task, set by the broker from the Accept header of the request. */
+	public ResultEnvelopeEncoder.Format resultFormat = ResultEnvelopeEncoder.Format.JSON;
 	
 	private AnalystClusterRequest(String destinationPointsetId, String graphId) {
 		this.destinationPointsetId = destinationPointsetId;
@@ -30,7 +30,7 @@ import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.config.SocketConfig;
 import org.apache.http.conn.HttpHostConnectException;
-import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.EntityTemplate;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.message.BasicHeader;
@@ -435,7 +435,7 @@ public class AnalystWorker implements Runnable {
                 OutputStream gzipOutputStream = new GZIPOutputStream(outPipe);
                 // We could do the writeValue() in a thread instead, in which case both the DELETE and S3 options
                 // could consume it in the same way.
-                objectMapper.writeValue(gzipOutputStream, envelope);
+                ResultEnvelopeEncoder.writeJson(envelope, gzipOutputStream);
                 gzipOutputStream.close();
                 // Tell the broker the task has been handled and should not be re-delivered to another worker.
                 deleteRequest(clusterRequest);
@@ -527,14 +527,18 @@ public class AnalystWorker implements Runnable {
     /**
      * Signal the broker that the given high-priority task is completed, providing a result.
      */
-    public void finishPriorityTask(AnalystClusterRequest clusterRequest, Object result) {
+    public void finishPriorityTask(AnalystClusterRequest clusterRequest, ResultEnvelope result) {
         String url = BROKER_BASE_URL + String.format("/complete/priority/%s", clusterRequest.taskId);
         HttpPost httpPost = new HttpPost(url);
         try {
             // TODO reveal any errors etc. that occurred on the worker.
-            // Really this should probably be done with an InputStreamEntity and a JSON writer thread.
-            byte[] serializedResult = objectMapper.writeValueAsBytes(result);
-            httpPost.setEntity(new ByteArrayEntity(serializedResult));
+            // The result is encoded as the HTTP client sends it, in the format the task producer asked for.
+            ResultEnvelopeEncoder.Format format = clusterRequest.resultFormat == null ?
+                    ResultEnvelopeEncoder.Format.JSON : clusterRequest.resultFormat;
+            EntityTemplate entity = new EntityTemplate(out -> ResultEnvelopeEncoder.write(result, format, out));
+            entity.setContentType(format.getMediaType());
+            entity.setChunked(true);
+            httpPost.setEntity(entity);
             HttpResponse response = httpClient.execute(httpPost);
             // Signal the http client library that we're done with this response object, allowing connection reuse.
             EntityUtils.consumeQuietly(response.getEntity());
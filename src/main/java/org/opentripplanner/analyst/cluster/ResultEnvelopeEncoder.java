@@ -0,0 +1,395 @@
+package org.opentripplanner.analyst.cluster;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryCollection;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.MultiLineString;
+import com.vividsolutions.jts.geom.MultiPoint;
+import com.vividsolutions.jts.geom.MultiPolygon;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.io.ParseException;
+import com.vividsolutions.jts.io.WKBReader;
+import com.vividsolutions.jts.io.WKBWriter;
+import org.opentripplanner.analyst.Histogram;
+import org.opentripplanner.analyst.ResultSet;
+import org.opentripplanner.analyst.core.IsochroneData;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes ResultEnvelopes straight to an output stream, without first building a tree of JSON nodes, a GeoJSON string
+ * or a byte array of the whole result. With travel times to a million destinations, those intermediate copies are
+ * several times the size of the result itself.
+ *
+ * There are two encodings. The JSON encoding is the same document Jackson would make from a ResultEnvelope, with
+ * isochrone geometries in GeoJSON. The binary encoding is smaller and faster to read and write. Integers are protocol
+ * buffer variable length integers, and arrays of them (histograms and travel times) are coded as differences between
+ * successive values, so the times to nearby destinations take one or two bytes each. Geometries are WKB.
+ *
+ * The binary layout is the magic number and version, then the envelope's id, jobId and destinationPointsetId and
+ * profile flag, then its result sets in the order of {@link ResultEnvelope.Which}. A result set is its id, its
+ * histograms (name, counts, sums), its times and its isochrones (cutoff, geometry). Strings, arrays and result sets
+ * that may be null are preceded by a presence flag or have their length incremented by one, zero meaning null.
+ * Unreached destinations, with a time of Integer.MAX_VALUE, are coded as -1.
+ */
+public class ResultEnvelopeEncoder {
+
+    /** The media type of the binary encoding, to be given in the Accept header of a request. */
+    public static final String BINARY_MEDIA_TYPE = "application/x-analyst-results";
+
+    public static final String JSON_MEDIA_TYPE = "application/json";
+
+    private static final int MAGIC = 0x4f545052; // OTPR
+
+    private static final int VERSION = 1;
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    public enum Format {
+        JSON, BINARY;
+
+        public String getMediaType() {
+            return this == BINARY ? BINARY_MEDIA_TYPE : JSON_MEDIA_TYPE;
+        }
+
+        /** @return the binary format if the given Accept header asks for it, and JSON otherwise. */
+        public static Format fromAcceptHeader(String accept) {
+            return accept != null && accept.contains(BINARY_MEDIA_TYPE) ? BINARY : JSON;
+        }
+    }
+
+    public static void write(ResultEnvelope envelope, Format format, OutputStream out) throws IOException {
+        if (format == Format.BINARY) {
+            writeBinary(envelope, out);
+        } else {
+            writeJson(envelope, out);
+        }
+    }
+
+    /* JSON encoding */
+
+    /** Write the envelope as JSON. The stream is flushed but not closed. */
+    public static void writeJson(ResultEnvelope envelope, OutputStream out) throws IOException {
+        JsonGenerator jgen = JSON_FACTORY.createGenerator(out);
+        jgen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        jgen.writeStartObject();
+        writeResultSetField(jgen, "bestCase", envelope.bestCase);
+        writeResultSetField(jgen, "worstCase", envelope.worstCase);
+        writeResultSetField(jgen, "avgCase", envelope.avgCase);
+        writeResultSetField(jgen, "pointEstimate", envelope.pointEstimate);
+        writeResultSetField(jgen, "spread", envelope.spread);
+        jgen.writeBooleanField("profile", envelope.profile);
+        jgen.writeStringField("jobId", envelope.jobId);
+        jgen.writeStringField("id", envelope.id);
+        jgen.writeStringField("destinationPointsetId", envelope.destinationPointsetId);
+        jgen.writeEndObject();
+        jgen.close();
+    }
+
+    private static void writeResultSetField(JsonGenerator jgen, String name, ResultSet resultSet) throws IOException {
+        jgen.writeFieldName(name);
+        if (resultSet == null) {
+            jgen.writeNull();
+        } else {
+            writeResultSet(jgen, resultSet);
+        }
+    }
+
+    /** Write a result set as a JSON object, with its histograms, times and isochrones. */
+    public static void writeResultSet(JsonGenerator jgen, ResultSet resultSet) throws IOException {
+        jgen.writeStartObject();
+        jgen.writeStringField("id", resultSet.id);
+        jgen.writeFieldName("histograms");
+        if (resultSet.histograms == null) {
+            jgen.writeNull();
+        } else {
+            jgen.writeStartObject();
+            for (Map.Entry<String, Histogram> entry : resultSet.histograms.entrySet()) {
+                jgen.writeObjectFieldStart(entry.getKey());
+                entry.getValue().writeJson(jgen);
+                jgen.writeEndObject();
+            }
+            jgen.writeEndObject();
+        }
+        jgen.writeFieldName("times");
+        writeIntArray(jgen, resultSet.times);
+        jgen.writeFieldName("isochrones");
+        if (resultSet.isochrones == null) {
+            jgen.writeNull();
+        } else {
+            jgen.writeStartArray();
+            for (IsochroneData isochrone : resultSet.isochrones) {
+                jgen.writeStartObject();
+                jgen.writeNumberField("cutoffSec", isochrone.cutoffSec);
+                jgen.writeFieldName("geometry");
+                writeGeometry(jgen, isochrone.geometry);
+                jgen.writeEndObject();
+            }
+            jgen.writeEndArray();
+        }
+        jgen.writeEndObject();
+    }
+
+    private static void writeIntArray(JsonGenerator jgen, int[] values) throws IOException {
+        if (values == null) {
+            jgen.writeNull();
+            return;
+        }
+        jgen.writeStartArray();
+        for (int value : values) {
+            jgen.writeNumber(value);
+        }
+        jgen.writeEndArray();
+    }
+
+    /**
+     * Write isochrones as the fields of a GeoJSON FeatureCollection, with the cutoff time in seconds as the "time"
+     * property of each feature.
+     */
+    public static void writeIsochroneFeatures(JsonGenerator jgen, IsochroneData[] isochrones) throws IOException {
+        jgen.writeStringField("type", "FeatureCollection");
+        jgen.writeArrayFieldStart("features");
+        for (IsochroneData isochrone : isochrones) {
+            jgen.writeStartObject();
+            jgen.writeStringField("type", "Feature");
+            jgen.writeFieldName("geometry");
+            writeGeometry(jgen, isochrone.geometry);
+            jgen.writeObjectFieldStart("properties");
+            jgen.writeNumberField("time", isochrone.cutoffSec);
+            jgen.writeEndObject();
+            jgen.writeEndObject();
+        }
+        jgen.writeEndArray();
+    }
+
+    /** Write a geometry as GeoJSON, coordinate by coordinate. */
+    public static void writeGeometry(JsonGenerator jgen, Geometry geometry) throws IOException {
+        if (geometry == null) {
+            jgen.writeNull();
+            return;
+        }
+        jgen.writeStartObject();
+        if (geometry instanceof LineString) {
+            // Including LinearRings, which are not a GeoJSON type.
+            jgen.writeStringField("type", "LineString");
+        } else {
+            jgen.writeStringField("type", geometry.getGeometryType());
+        }
+        if (geometry instanceof GeometryCollection && !(geometry instanceof MultiPoint
+                || geometry instanceof MultiLineString || geometry instanceof MultiPolygon)) {
+            jgen.writeArrayFieldStart("geometries");
+            for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                writeGeometry(jgen, geometry.getGeometryN(i));
+            }
+            jgen.writeEndArray();
+        } else {
+            jgen.writeFieldName("coordinates");
+            writeCoordinates(jgen, geometry);
+        }
+        jgen.writeEndObject();
+    }
+
+    private static void writeCoordinates(JsonGenerator jgen, Geometry geometry) throws IOException {
+        if (geometry instanceof Point) {
+            CoordinateSequence sequence = ((Point) geometry).getCoordinateSequence();
+            if (sequence.size() == 0) {
+                jgen.writeStartArray();
+                jgen.writeEndArray();
+            } else {
+                writePosition(jgen, sequence, 0);
+            }
+        } else if (geometry instanceof LineString) {
+            CoordinateSequence sequence = ((LineString) geometry).getCoordinateSequence();
+            jgen.writeStartArray();
+            for (int i = 0; i < sequence.size(); i++) {
+                writePosition(jgen, sequence, i);
+            }
+            jgen.writeEndArray();
+        } else if (geometry instanceof Polygon) {
+            Polygon polygon = (Polygon) geometry;
+            jgen.writeStartArray();
+            if (!polygon.isEmpty()) {
+                writeCoordinates(jgen, polygon.getExteriorRing());
+                for (int i = 0; i < polygon.getNumInteriorRing(); i++) {
+                    writeCoordinates(jgen, polygon.getInteriorRingN(i));
+                }
+            }
+            jgen.writeEndArray();
+        } else {
+            // MultiPoint, MultiLineString or MultiPolygon
+            jgen.writeStartArray();
+            for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                writeCoordinates(jgen, geometry.getGeometryN(i));
+            }
+            jgen.writeEndArray();
+        }
+    }
+
+    private static void writePosition(JsonGenerator jgen, CoordinateSequence sequence, int i) throws IOException {
+        jgen.writeStartArray();
+        jgen.writeNumber(sequence.getX(i));
+        jgen.writeNumber(sequence.getY(i));
+        jgen.writeEndArray();
+    }
+
+    /* Binary encoding */
+
+    /** Write the envelope in the binary encoding. The stream is flushed but not closed. */
+    public static void writeBinary(ResultEnvelope envelope, OutputStream out) throws IOException {
+        CodedOutputStream cos = CodedOutputStream.newInstance(out);
+        cos.writeFixed32NoTag(MAGIC);
+        cos.writeUInt32NoTag(VERSION);
+        writeString(cos, envelope.id);
+        writeString(cos, envelope.jobId);
+        writeString(cos, envelope.destinationPointsetId);
+        cos.writeBoolNoTag(envelope.profile);
+        for (ResultEnvelope.Which which : ResultEnvelope.Which.values()) {
+            ResultSet resultSet = envelope.get(which);
+            cos.writeBoolNoTag(resultSet != null);
+            if (resultSet != null) {
+                writeResultSet(cos, resultSet);
+            }
+        }
+        cos.flush();
+    }
+
+    private static void writeResultSet(CodedOutputStream cos, ResultSet resultSet) throws IOException {
+        writeString(cos, resultSet.id);
+        if (resultSet.histograms == null) {
+            cos.writeUInt32NoTag(0);
+        } else {
+            cos.writeUInt32NoTag(resultSet.histograms.size() + 1);
+            for (Map.Entry<String, Histogram> entry : resultSet.histograms.entrySet()) {
+                cos.writeStringNoTag(entry.getKey());
+                writeDeltas(cos, entry.getValue().counts, false);
+                writeDeltas(cos, entry.getValue().sums, false);
+            }
+        }
+        writeDeltas(cos, resultSet.times, true);
+        if (resultSet.isochrones == null) {
+            cos.writeUInt32NoTag(0);
+        } else {
+            cos.writeUInt32NoTag(resultSet.isochrones.length + 1);
+            WKBWriter wkbWriter = new WKBWriter();
+            for (IsochroneData isochrone : resultSet.isochrones) {
+                cos.writeInt32NoTag(isochrone.cutoffSec);
+                cos.writeBoolNoTag(isochrone.geometry != null);
+                if (isochrone.geometry != null) {
+                    cos.writeByteArrayNoTag(wkbWriter.write(isochrone.geometry));
+                }
+            }
+        }
+    }
+
+    private static void writeString(CodedOutputStream cos, String s) throws IOException {
+        cos.writeBoolNoTag(s != null);
+        if (s != null) {
+            cos.writeStringNoTag(s);
+        }
+    }
+
+    /** Write the length of the array plus one, then the differences between successive values (zero for null). */
+    private static void writeDeltas(CodedOutputStream cos, int[] values, boolean times) throws IOException {
+        if (values == null) {
+            cos.writeUInt32NoTag(0);
+            return;
+        }
+        cos.writeUInt32NoTag(values.length + 1);
+        int previous = 0;
+        for (int value : values) {
+            if (times && value == Integer.MAX_VALUE) {
+                value = -1;
+            }
+            cos.writeSInt32NoTag(value - previous);
+            previous = value;
+        }
+    }
+
+    /** Read an envelope written by {@link #writeBinary}. */
+    public static ResultEnvelope readBinary(InputStream in) throws IOException {
+        CodedInputStream cis = CodedInputStream.newInstance(in);
+        cis.setSizeLimit(Integer.MAX_VALUE);
+        if (cis.readFixed32() != MAGIC) {
+            throw new IOException("Not an encoded result envelope.");
+        }
+        int version = cis.readUInt32();
+        if (version != VERSION) {
+            throw new IOException("Unsupported result envelope encoding version " + version);
+        }
+        ResultEnvelope envelope = new ResultEnvelope();
+        envelope.id = readString(cis);
+        envelope.jobId = readString(cis);
+        envelope.destinationPointsetId = readString(cis);
+        envelope.profile = cis.readBool();
+        for (ResultEnvelope.Which which : ResultEnvelope.Which.values()) {
+            if (cis.readBool()) {
+                envelope.put(which, readResultSet(cis));
+            }
+        }
+        return envelope;
+    }
+
+    private static ResultSet readResultSet(CodedInputStream cis) throws IOException {
+        ResultSet resultSet = new ResultSet();
+        resultSet.id = readString(cis);
+        int nHistograms = cis.readUInt32() - 1;
+        if (nHistograms < 0) {
+            resultSet.histograms = null;
+        } else {
+            resultSet.histograms = new HashMap<String, Histogram>();
+            for (int i = 0; i < nHistograms; i++) {
+                String key = cis.readString();
+                Histogram histogram = new Histogram();
+                histogram.counts = readDeltas(cis, false);
+                histogram.sums = readDeltas(cis, false);
+                resultSet.histograms.put(key, histogram);
+            }
+        }
+        resultSet.times = readDeltas(cis, true);
+        int nIsochrones = cis.readUInt32() - 1;
+        if (nIsochrones >= 0) {
+            resultSet.isochrones = new IsochroneData[nIsochrones];
+            WKBReader wkbReader = new WKBReader();
+            for (int i = 0; i < nIsochrones; i++) {
+                int cutoffSec = cis.readInt32();
+                Geometry geometry = null;
+                if (cis.readBool()) {
+                    try {
+                        geometry = wkbReader.read(cis.readByteArray());
+                    } catch (ParseException e) {
+                        throw new IOException("Invalid isochrone geometry.", e);
+                    }
+                }
+                resultSet.isochrones[i] = new IsochroneData(cutoffSec, geometry);
+            }
+        }
+        return resultSet;
+    }
+
+    private static String readString(CodedInputStream cis) throws IOException {
+        return cis.readBool() ? cis.readString() : null;
+    }
+
+    private static int[] readDeltas(CodedInputStream cis, boolean times) throws IOException {
+        int length = cis.readUInt32() - 1;
+        if (length < 0) return null;
+        int[] values = new int[length];
+        int previous = 0;
+        for (int i = 0; i < length; i++) {
+            int value = previous + cis.readSInt32();
+            previous = value;
+            values[i] = times && value == -1 ? Integer.MAX_VALUE : value;
+        }
+        return values;
+    }
+}
@@ -76,13 +76,13 @@ public class Sample {
         int m0 = Integer.MAX_VALUE;
         int m1 = Integer.MAX_VALUE;
         if (v0 != null) {
-            int s0 = surf.getTime(v0);
+            int s0 = surf.times.get(v0.getIndex());
             if (s0 != TimeSurface.UNREACHABLE) {
                 m0 = (int) (s0 + d0 / surf.walkSpeed);
             }
         }
         if (v1 != null) {
-            int s1 = surf.getTime(v1);
+            int s1 = surf.times.get(v1.getIndex());
             if (s1 != TimeSurface.UNREACHABLE) {
                 m1 = (int) (s1 + d1 / surf.walkSpeed);
             }
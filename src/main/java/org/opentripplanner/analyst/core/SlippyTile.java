@@ -20,9 +20,15 @@ import org.geotools.referencing.crs.DefaultGeographicCRS;
 public class SlippyTile {
 
     public static String getTileNumber(final double lat, final double lon, final int zoom) {
-        int xtile = (int)Math.floor( (lon + 180) / 360 * (1<<zoom) ) ;
-        int ytile = (int)Math.floor( (1 - Math.log(Math.tan(Math.toRadians(lat)) + 1 / Math.cos(Math.toRadians(lat))) / Math.PI) / 2 * (1<<zoom) ) ;
-        return("" + zoom + "/" + xtile + "/" + ytile);
+        return("" + zoom + "/" + lon2tile(lon, zoom) + "/" + lat2tile(lat, zoom));
+    }
+
+    public static int lon2tile(double lon, int z) {
+        return (int)Math.floor( (lon + 180) / 360 * (1<<z) ) ;
+    }
+
+    public static int lat2tile(double lat, int z) {
+        return (int)Math.floor( (1 - Math.log(Math.tan(Math.toRadians(lat)) + 1 / Math.cos(Math.toRadians(lat))) / Math.PI) / 2 * (1<<z) ) ;
     }
 
 
@@ -28,6 +28,7 @@ import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.xml.bind.annotation.XmlRootElement;
 
+import org.opentripplanner.routing.bike_rental.BikeRentalAvailability;
 import org.opentripplanner.routing.bike_rental.BikeRentalStation;
 import org.opentripplanner.routing.bike_rental.BikeRentalStationService;
 import org.opentripplanner.standalone.OTPServer;
@@ -64,11 +65,16 @@ public class BikeRental {
             envelope = new Envelope(-180,180,-90,90); 
         }
         Collection<BikeRentalStation> stations = bikeRentalService.getBikeRentalStations();
+        // The station objects are only replaced when stations appear or disappear, current counts are in the snapshot
+        BikeRentalAvailability availability = router.graph.bikeRentalAvailabilitySource == null ?
+                BikeRentalAvailability.EMPTY : router.graph.bikeRentalAvailabilitySource.getSnapshot();
         List<BikeRentalStation> out = new ArrayList<>();
         for (BikeRentalStation station : stations) {
             if (envelope.contains(station.x, station.y)) {
                 BikeRentalStation station_localized = station.clone();
                 station_localized.locale = locale;
+                station_localized.bikesAvailable = availability.getBikesAvailable(station.id, station.bikesAvailable);
+                station_localized.spacesAvailable = availability.getSpacesAvailable(station.id, station.spacesAvailable);
                 out.add(station_localized);
             }
         }
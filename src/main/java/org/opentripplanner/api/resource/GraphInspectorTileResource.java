@@ -53,7 +53,7 @@ import org.opentripplanner.standalone.Router;
  * </pre>
  * 
  * Tile rendering goes through TileRendererManager which select the appropriate renderer for the
- * given layer.
+ * given layer, and which caches PNG tiles.
  * 
  * @see TileRendererManager
  * @see TileRenderer
@@ -89,20 +89,34 @@ public class GraphInspectorTileResource extends RoutingResource {
     @Produces("image/*")
     public Response tileGet() throws Exception {
 
-        // Re-use analyst
-        Envelope2D env = SlippyTile.tile2Envelope(x, y, z);
-        TileRequest tileRequest = new TileRequest(env, 256, 256);
-
-        Router router = otpServer.getRouter(routerId);
-        BufferedImage image = router.tileRendererManager.renderTile(tileRequest, layer);
-
-        MIMEImageFormat format = new MIMEImageFormat("image/" + ext);
-        ByteArrayOutputStream baos = new ByteArrayOutputStream(image.getWidth() * image.getHeight() / 4);
-        ImageIO.write(image, format.type, baos);
-        CacheControl cc = new CacheControl();
-        cc.setMaxAge(3600);
-        cc.setNoCache(false);
-        return Response.ok(baos.toByteArray()).type(format.toString()).cacheControl(cc).build();
+        Router router = otpServer.acquireRouter(routerId);
+        try {
+            MIMEImageFormat format = new MIMEImageFormat("image/" + ext);
+            byte[] bytes;
+            if (format.type.equals("png")) {
+                // PNG tiles, as used by the inspector client, are cached.
+                try {
+                    bytes = router.tileRendererManager.getPngTile(layer, z, x, y);
+                } catch (IllegalArgumentException e) {
+                    // An unknown layer or a tile outside the world.
+                    return Response.status(Response.Status.NOT_FOUND).entity(e.getMessage()).build();
+                }
+            } else {
+                // Re-use analyst
+                Envelope2D env = SlippyTile.tile2Envelope(x, y, z);
+                TileRequest tileRequest = new TileRequest(env, 256, 256);
+                BufferedImage image = router.tileRendererManager.renderTile(tileRequest, layer);
+                ByteArrayOutputStream baos = new ByteArrayOutputStream(image.getWidth() * image.getHeight() / 4);
+                ImageIO.write(image, format.type, baos);
+                bytes = baos.toByteArray();
+            }
+            CacheControl cc = new CacheControl();
+            cc.setMaxAge(3600);
+            cc.setNoCache(false);
+            return Response.ok(bytes).type(format.toString()).cacheControl(cc).build();
+        } finally {
+            router.release();
+        }
     }
 
     /**
@@ -115,9 +129,12 @@ public class GraphInspectorTileResource extends RoutingResource {
     @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML + Q, MediaType.TEXT_XML + Q })
     public InspectorLayersList getLayers() {
 
-        Router router = otpServer.getRouter(routerId);
-        InspectorLayersList layersList = new InspectorLayersList(router.tileRendererManager.getRenderers());
-        return layersList;
+        Router router = otpServer.acquireRouter(routerId);
+        try {
+            return new InspectorLayersList(router.tileRendererManager.getRenderers());
+        } finally {
+            router.release();
+        }
     }
 
 }
\ No newline at end of file
@@ -13,7 +13,6 @@
 
 package org.opentripplanner.api.resource;
 
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.List;
@@ -25,7 +24,6 @@ import org.onebusaway.gtfs.model.Agency;
 import org.onebusaway.gtfs.model.Route;
 import org.onebusaway.gtfs.model.Stop;
 import org.onebusaway.gtfs.model.Trip;
-import org.opentripplanner.api.common.PropertyReader;
 import org.opentripplanner.api.model.Itinerary;
 import org.opentripplanner.api.model.Leg;
 import org.opentripplanner.api.model.Place;
@@ -34,12 +32,12 @@ import org.opentripplanner.api.model.TripPlan;
 import org.opentripplanner.api.model.VertexType;
 import org.opentripplanner.api.model.WalkStep;
 import org.opentripplanner.common.geometry.DirectionUtils;
-import org.opentripplanner.common.geometry.GeometryUtils;
 import org.opentripplanner.common.geometry.PackedCoordinateSequence;
 import org.opentripplanner.common.model.P2;
 import org.opentripplanner.profile.BikeRentalStationInfo;
 import org.opentripplanner.routing.alertpatch.Alert;
 import org.opentripplanner.routing.alertpatch.AlertPatch;
+import org.opentripplanner.routing.core.EmissionsModel;
 import org.opentripplanner.routing.core.RoutingContext;
 import org.opentripplanner.routing.core.RoutingRequest;
 import org.opentripplanner.routing.core.ServiceDay;
@@ -55,6 +53,7 @@ import org.opentripplanner.routing.edgetype.PatternInterlineDwell;
 import org.opentripplanner.routing.edgetype.RentABikeOffEdge;
 import org.opentripplanner.routing.edgetype.RentABikeOnEdge;
 import org.opentripplanner.routing.edgetype.StreetEdge;
+import org.opentripplanner.routing.edgetype.TemporaryEdge;
 import org.opentripplanner.routing.edgetype.TripPattern;
 import org.opentripplanner.routing.error.TrivialPathException;
 import org.opentripplanner.routing.graph.Edge;
@@ -70,10 +69,14 @@ import org.opentripplanner.routing.vertextype.ExitVertex;
 import org.opentripplanner.routing.vertextype.OnboardDepartVertex;
 import org.opentripplanner.routing.vertextype.StreetVertex;
 import org.opentripplanner.routing.vertextype.TransitVertex;
-import org.opentripplanner.util.PolylineEncoder;
+import org.opentripplanner.util.EncodedPolylineBuilder;
+import org.opentripplanner.util.EncodedPolylineBuilder.Fragment;
+import org.opentripplanner.util.model.EncodedPolylineBean;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.LineString;
@@ -88,6 +91,15 @@ public abstract class GraphPathToTripPlanConverter {
     private static final Logger LOG = LoggerFactory.getLogger(GraphPathToTripPlanConverter.class);
     private static final double MAX_ZAG_DISTANCE = 30; // TODO add documentation, what is a "zag"?
 
+    /**
+     * The encoded geometries of street edges, which are appended to leg geometries without re-encoding. Edges are
+     * compared by identity and held weakly, so the fragments of a graph that has been evicted do not outlive it.
+     */
+    private static final Cache<StreetEdge, Fragment> STREET_EDGE_FRAGMENTS = CacheBuilder.newBuilder()
+            .weakKeys()
+            .maximumSize(500000)
+            .build();
+
     /**
      * Generates a TripPlan from a set of paths
      */
@@ -224,27 +236,38 @@ public abstract class GraphPathToTripPlanConverter {
     }
 
     /**
-     * Generate a {@link CoordinateArrayListSequence} based on an {@link Edge} array.
+     * Encode the geometry of a leg from the geometries of its edges. The coordinates are read straight from the
+     * compact geometries of the street edges and the coordinate sequences of the others, without building a
+     * LineString for the whole leg. The first point of each edge is skipped, being the last point of the previous one.
      *
      * @param edges The array of input edges
-     * @return The coordinates of the points on the edges
+     * @return The encoded polyline through the points on the edges
      */
-    private static CoordinateArrayListSequence makeCoordinates(Edge[] edges) {
-        CoordinateArrayListSequence coordinates = new CoordinateArrayListSequence();
+    private static EncodedPolylineBean makeLegGeometry(Edge[] edges) {
+        EncodedPolylineBuilder builder = new EncodedPolylineBuilder();
 
         for (Edge edge : edges) {
-            LineString geometry = edge.getGeometry();
-
-            if (geometry != null) {
-                if (coordinates.size() == 0) {
-                    coordinates.extend(geometry.getCoordinates());
+            if (edge instanceof StreetEdge) {
+                StreetEdge streetEdge = (StreetEdge) edge;
+                if (edge instanceof TemporaryEdge) {
+                    builder.addPoints(streetEdge.getGeometryCoordinates(), builder.size() == 0 ? 0 : 1);
                 } else {
-                    coordinates.extend(geometry.getCoordinates(), 1); // Avoid duplications
+                    Fragment fragment = STREET_EDGE_FRAGMENTS.getIfPresent(streetEdge);
+                    if (fragment == null) {
+                        fragment = EncodedPolylineBuilder.makeFragment(streetEdge.getGeometryCoordinates());
+                        STREET_EDGE_FRAGMENTS.put(streetEdge, fragment);
+                    }
+                    builder.addFragment(fragment);
+                }
+            } else {
+                LineString geometry = edge.getGeometry();
+                if (geometry != null) {
+                    builder.addPoints(geometry.getCoordinateSequence(), builder.size() == 0 ? 0 : 1);
                 }
             }
         }
 
-        return coordinates;
+        return builder.build();
     }
 
     /**
@@ -353,10 +376,7 @@ public abstract class GraphPathToTripPlanConverter {
 
         if (leg.isTransitLeg()) addRealTimeData(leg, states);
 
-        CoordinateArrayListSequence coordinates = makeCoordinates(edges);
-        Geometry geometry = GeometryUtils.getGeometryFactory().createLineString(coordinates);
-
-        leg.legGeometry = PolylineEncoder.createEncodings(geometry);
+        leg.legGeometry = makeLegGeometry(edges);
 
         leg.interlineWithPreviousLeg = states[0].getBackEdge() instanceof PatternInterlineDwell;
 
@@ -523,106 +543,34 @@ public abstract class GraphPathToTripPlanConverter {
         }
     }    
     
+    /**
+     * Calculate the CO2 produced by each leg of an {@link Itinerary} and by the whole itinerary, using the emissions
+     * model of the router, or the defaults when the router has none.
+     *
+     * @param itinerary The itinerary to calculate the CO2 production for
+     * @param request The request, which may give the CO2 production of the requester's own car
+     */
     private static void calculateCo2(Itinerary itinerary, RoutingRequest request) {
-    	PropertyReader pr = null;
-    	try {
-    		pr = new PropertyReader("Co2ProductionParameters.properties");
-    	} catch (IOException e) {
-    		LOG.error("Errore nella lettura del file per il consumo dei mezzi pubblici");
-		}
-    	
+        EmissionsModel emissionsModel = null;
+        if (request.rctx != null) {
+            emissionsModel = request.rctx.graph.getService(EmissionsModel.class);
+        }
+        if (emissionsModel == null) {
+            emissionsModel = EmissionsModel.getDefaults();
+        }
+
         for (Leg leg : itinerary.legs) {
             if (leg.mode == null) continue;
-            	
-            if (leg.mode.equals(TraverseMode.CAR.toString())) 
-            {
-            	//Reads the car produced amount of co2
-            	//if no input parameter is given set a default production value
-            	if(request.co2Produced == null || request.co2Produced == 0) {
-            		leg.co2 = (long) (Double.valueOf(pr.getValue("carDefaultCo2Production"))*leg.distance)/1000;
-            	} else {
-            		leg.co2 = (long) (request.co2Produced*leg.distance)/1000;
-            	}
-                itinerary.co2 += leg.co2;
-            }
-            else if (leg.mode.equals(TraverseMode.BUS.toString())) 
-            {
-            	//Reads the produced amount of co2 value for buses from the configuration file
-            	leg.co2 = (long) (Double.valueOf(pr.getValue("busCo2Production"))*leg.distance)/1000;
-                itinerary.co2 += leg.co2;
-            }
-            else if (leg.mode.equals(TraverseMode.FERRY.toString())) 
-            {
-            	//Reads the produced amount of co2 value from the configuration file
-            	leg.co2 = (long) (Double.valueOf(pr.getValue("ferryCo2Production"))*leg.distance)/1000;
-                itinerary.co2 += leg.co2;
-            }
-            else if (leg.mode.equals(TraverseMode.CABLE_CAR.toString())) 
-            {
-            	//Reads the produced amount of co2 value from the configuration file
-            	leg.co2 = (long) (Double.valueOf(pr.getValue("cableCarCo2Production"))*leg.distance)/1000;
-                itinerary.co2 += leg.co2;
-            }
-            else if (leg.mode.equals(TraverseMode.FUNICULAR.toString())) 
-            {
-            	//Reads the produced amount of co2 value from the configuration file
-            	leg.co2 = (long) (Double.valueOf(pr.getValue("funicularCo2Production"))*leg.distance)/1000;
-                itinerary.co2 += leg.co2;
-            }
-            else if (leg.mode.equals(TraverseMode.TRAINISH.toString())) 
-            {
-            	//Reads the produced amount of co2 value from the configuration file
-            	leg.co2 = (long) (Double.valueOf(pr.getValue("trainishCo2Production"))*leg.distance)/1000;
-                itinerary.co2 += leg.co2;
-            }
-            else if (leg.mode.equals(TraverseMode.BUSISH.toString())) 
-            {
-            	//Reads the produced amount of co2 value from the configuration file
-            	leg.co2 = (long) (Double.valueOf(pr.getValue("busishCo2Production"))*leg.distance)/1000;
-                itinerary.co2 += leg.co2;
-            }
-            else if (leg.mode.equals(TraverseMode.GONDOLA.toString())) 
-            {
-            	//Reads the produced amount of co2 value from the configuration file
-            	leg.co2 = (long) (Double.valueOf(pr.getValue("gondolaCo2Production"))*leg.distance)/1000;
-                itinerary.co2 += leg.co2;
-            }
-            else if (leg.mode.equals(TraverseMode.RAIL.toString())) 
-            {
-            	//Reads the produced amount of co2 value from the configuration file
-            	leg.co2 = (long) (Double.valueOf(pr.getValue("railCo2Production"))*leg.distance)/1000;
-                itinerary.co2 += leg.co2;
-            }
-            else if (leg.mode.equals(TraverseMode.SUBWAY.toString())) 
-            {
-            	//Reads the produced amount of co2 value from the configuration file
-            	leg.co2 = (long) (Double.valueOf(pr.getValue("subwayCo2Production"))*leg.distance)/1000;
-                itinerary.co2 += leg.co2;
-            }
-            else if (leg.mode.equals(TraverseMode.TRAM.toString())) 
-            {
-            	//Reads the produced amount of co2 value from the configuration file
-            	leg.co2 = (long) (Double.valueOf(pr.getValue("tramCo2Production"))*leg.distance)/1000;
-                itinerary.co2 += leg.co2;
-            }
-            else if (leg.mode.equals(TraverseMode.TRANSIT.toString())) 
-            {
-            	//Reads the produced amount of co2 value from the configuration file
-            	leg.co2 = (long) (Double.valueOf(pr.getValue("transitCo2Production"))*leg.distance)/1000;
-                itinerary.co2 += leg.co2;
-            }
-//            else if (leg.mode.equals(TraverseMode.LEG_SWITCH.toString())) 
-//            {
-//            	//Reads the produced amount of co2 value from the configuration file
-//            	leg.co2 = (long) (Double.valueOf(pr.getValue("legSwitchCo2Production"))*leg.distance);
-//                itinerary.co2 += leg.co2;
-//            }
-            else if (leg.mode.equals(TraverseMode.WALK.toString()) || leg.mode.equals(TraverseMode.BICYCLE.toString())) 
-            {
-            	leg.co2 = 0;
+            TraverseMode mode;
+            try {
+                mode = TraverseMode.valueOf(leg.mode);
+            } catch (IllegalArgumentException e) {
+                continue;
             }
+            leg.co2 = emissionsModel.getCo2(mode, leg.distance, request.co2Produced);
+            itinerary.co2 += leg.co2;
         }
-    }    
+    }
 
     /**
      * Calculate the elevationGained and elevationLost fields of an {@link Itinerary}.
@@ -982,7 +930,7 @@ public abstract class GraphPathToTripPlanConverter {
                     if (edge instanceof StreetEdge) {
                         // the next edges will be PlainStreetEdges, we hope
                         double angleDiff = getAbsoluteAngleDiff(thisAngle, lastAngle);
-                        for (Edge alternative : backState.getVertex().getOutgoingStreetEdges()) {
+                        for (Edge alternative : backState.getOutgoingStreetEdges(backState.getVertex())) {
                             if (alternative.getName(requestedLocale).equals(streetName)) {
                                 // alternatives that have the same name
                                 // are usually caused by street splits
@@ -1001,9 +949,8 @@ public abstract class GraphPathToTripPlanConverter {
                         // FIXME: this code might be wrong with the removal of the edge-based graph
                         State twoStatesBack = backState.getBackState();
                         Vertex backVertex = twoStatesBack.getVertex();
-                        for (Edge alternative : backVertex.getOutgoingStreetEdges()) {
-                            List<Edge> alternatives = alternative.getToVertex()
-                                    .getOutgoingStreetEdges();
+                        for (Edge alternative : backState.getOutgoingStreetEdges(backVertex)) {
+                            List<Edge> alternatives = backState.getOutgoingStreetEdges(alternative.getToVertex());
                             if (alternatives.size() == 0) {
                                 continue; // this is not an alternative
                             }
@@ -192,8 +192,12 @@ public class LIsochrone extends RoutingResource {
             isoChroneRequest.maxTimeSec = isoChroneRequest.maxCutoffSec;
         }
 
-        Router router = otpServer.getRouter(routerId);
-        return router.isoChroneSPTRenderer.getIsochrones(isoChroneRequest, sptRequest);
+        Router router = otpServer.acquireRouter(routerId);
+        try {
+            return router.isoChroneSPTRenderer.getIsochrones(isoChroneRequest, sptRequest);
+        } finally {
+            router.release();
+        }
     }
 
     static SimpleFeatureType makeContourSchema() {
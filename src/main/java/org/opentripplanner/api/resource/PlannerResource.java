@@ -19,6 +19,8 @@ import java.util.List;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.UriInfo;
@@ -50,9 +52,16 @@ public class    PlannerResource extends RoutingResource {
     // We inject info about the incoming request so we can include the incoming query
     // parameters in the outgoing response. This is a TriMet requirement.
     // Jersey uses @Context to inject internal types and @InjectParam or @Resource for DI objects.
+    // The search is performed on one of the server's routing threads, which resumes the suspended response, so that
+    // the HTTP worker thread is free to accept other requests in the meantime.
     @GET
     @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML + Q, MediaType.TEXT_XML + Q })
-    public Response plan(@Context OTPServer otpServer, @Context UriInfo uriInfo) {
+    public void plan(@Context OTPServer otpServer, @Context UriInfo uriInfo, @Suspended AsyncResponse asyncResponse) {
+        final long deadline = otpServer.routingExecutor.deadline();
+        otpServer.routingExecutor.execute(asyncResponse, deadline, () -> plan(otpServer, uriInfo, deadline));
+    }
+
+    private Response plan(OTPServer otpServer, UriInfo uriInfo, long deadline) {
 
         /*
          * TODO: add Lang / Locale parameter, and thus get localized content (Messages & more...)
@@ -65,13 +74,16 @@ public class    PlannerResource extends RoutingResource {
         // Create response object, containing a copy of all request parameters. Maybe they should be in the debug section of the response.
         Response response = new Response(uriInfo);
         RoutingRequest request = null;
+        Router router = null;
         try {
 
             /* Fill in request fields from query parameters via shared superclass method, catching any errors. */
             request = super.buildRequest();
+            request.deadline = deadline;
 
             /* Find some good GraphPaths through the OTP Graph. */
-            Router router = otpServer.getRouter(request.routerId);
+            router = otpServer.acquireRouter(request.routerId);
+            router.sampleRequest(request);
             GraphPathFinder gpFinder = new GraphPathFinder(router); // we could also get a persistent router-scoped GraphPathFinder but there's no setup cost here
             List<GraphPath> paths = gpFinder.graphPathFinderEntryPoint(request);
 
@@ -95,7 +107,10 @@ public class    PlannerResource extends RoutingResource {
                     response.debugOutput = request.rctx.debugOutput;
                 }
                 request.cleanup(); // TODO verify that this cleanup step is being done on Analyst web services
-            }       
+            }
+            if (router != null) {
+                router.release();
+            }
         }
         return response;
     }
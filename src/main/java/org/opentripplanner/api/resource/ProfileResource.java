@@ -20,6 +20,7 @@ import org.opentripplanner.standalone.Router;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.PreDestroy;
 import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
@@ -40,15 +41,22 @@ import java.util.Map;
 public class ProfileResource {
 
     private static final Logger LOG = LoggerFactory.getLogger(ProfileResource.class);
+    private Router router;
     private Graph graph;
     private SurfaceCache surfaceCache;
 
     public ProfileResource (@Context OTPServer otpServer, @PathParam("routerId") String routerId) {
-        Router router = otpServer.getRouter(routerId);
+        router = otpServer.acquireRouter(routerId);
         graph = router.graph;
         surfaceCache = otpServer.surfaceCache;
     }
 
+    /** Called by Jersey at the end of the request, for which a new instance of this resource is made. */
+    @PreDestroy
+    public void releaseRouter () {
+        router.release();
+    }
+
     @GET
     @Produces({ MediaType.APPLICATION_JSON })
     public Response profileRoute (
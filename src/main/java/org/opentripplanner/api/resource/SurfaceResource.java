@@ -71,13 +71,17 @@ public class SurfaceResource extends RoutingResource {
             RoutingRequest req = buildRequest(); // batch must be true
            
             // routerId is optional -- select default graph if not set
-            Router router = otpServer.getRouter(routerId);
-            req.setRoutingContext(router.graph);
-        	
-            EarliestArrivalSearch sptService = new EarliestArrivalSearch();
-            sptService.maxDuration = (60 * cutoffMinutes);
-            ShortestPathTree spt = sptService.getShortestPathTree(req);
-            req.cleanup();
+            Router router = otpServer.acquireRouter(routerId);
+            ShortestPathTree spt;
+            try {
+                req.setRoutingContext(router.graph);
+                EarliestArrivalSearch sptService = new EarliestArrivalSearch();
+                sptService.maxDuration = (60 * cutoffMinutes);
+                spt = sptService.getShortestPathTree(req);
+                req.cleanup();
+            } finally {
+                router.release();
+            }
             if (spt != null) {
                 TimeSurface surface = new TimeSurface(spt);
                 surface.params = Maps.newHashMap();
@@ -124,10 +128,15 @@ public class SurfaceResource extends RoutingResource {
         final PointSet pset = otpServer.pointSetCache.get(targetPointSetId);
         if (pset == null) return badRequest("Missing or invalid target PointSet ID.");
 
-        Router router = otpServer.getRouter(surf.routerId);
-        // TODO cache this sampleset
-        SampleSet samples = pset.getSampleSet(router.graph);
-        final ResultSet indicator = new ResultSet(samples, surf, detail, detail);
+        Router router = otpServer.acquireRouter(surf.routerId);
+        final ResultSet indicator;
+        try {
+            // TODO cache this sampleset
+            SampleSet samples = pset.getSampleSet(router.graph);
+            indicator = new ResultSet(samples, surf, detail, detail);
+        } finally {
+            router.release();
+        }
         if (indicator == null) return badServer("Could not compute indicator as requested.");
 
         return Response.ok().entity(new StreamingOutput() {
@@ -177,8 +186,12 @@ public class SurfaceResource extends RoutingResource {
         RenderRequest renderRequest =
                 new RenderRequest(imageFormat, Layer.TRAVELTIME, Style.COLOR30, true, false);
         // TODO why can't the renderer be static?
-        Router router = otpServer.getRouter(surfA.routerId);
-        return router.renderer.getResponse(tileRequest, surfA, null, renderRequest);
+        Router router = otpServer.acquireRouter(surfA.routerId);
+        try {
+            return router.renderer.getResponse(tileRequest, surfA, null, renderRequest);
+        } finally {
+            router.release();
+        }
     }
     /**
      * Renders a raster tile for showing the difference between two TimeSurfaces.
@@ -218,8 +231,12 @@ public class SurfaceResource extends RoutingResource {
         MIMEImageFormat imageFormat = new MIMEImageFormat("image/png");
         RenderRequest renderRequest = new RenderRequest(imageFormat, Layer.DIFFERENCE, Style.DIFFERENCE, true, false);
         // TODO why can't the renderer be static?
-        Router router = otpServer.getRouter(surfA.routerId);
-        return router.renderer.getResponse(tileRequest, surfA, surfB, renderRequest);
+        Router router = otpServer.acquireRouter(surfA.routerId);
+        try {
+            return router.renderer.getResponse(tileRequest, surfA, surfB, renderRequest);
+        } finally {
+            router.release();
+        }
     }
 
     private Response badRequest(String message) {
@@ -279,17 +296,21 @@ public class SurfaceResource extends RoutingResource {
             @QueryParam("crs") @DefaultValue("EPSG:4326") CRSParameter crs) throws Exception {
 
         TimeSurface surface = otpServer.surfaceCache.get(surfaceId);
-        Router router = otpServer.getRouter(surface.routerId);
-        // BoundingBox is a subclass of Envelope, an Envelope2D constructor parameter
-        Envelope2D bbox = new Envelope2D(router.graph.getGeomIndex().getBoundingBox(crs.crs));
-        if (resolution != null) {
-            width  = (int) Math.ceil(bbox.width  / resolution);
-            height = (int) Math.ceil(bbox.height / resolution);
-        }
+        Router router = otpServer.acquireRouter(surface.routerId);
+        try {
+            // BoundingBox is a subclass of Envelope, an Envelope2D constructor parameter
+            Envelope2D bbox = new Envelope2D(router.graph.getGeomIndex().getBoundingBox(crs.crs));
+            if (resolution != null) {
+                width  = (int) Math.ceil(bbox.width  / resolution);
+                height = (int) Math.ceil(bbox.height / resolution);
+            }
 
-        TileRequest tileRequest = new TileRequest(bbox, width, height);
-        RenderRequest renderRequest = new RenderRequest(format, Layer.TRAVELTIME, Style.GRAY, false, false);
-        return router.renderer.getResponse(tileRequest, surface, null, renderRequest);
+            TileRequest tileRequest = new TileRequest(bbox, width, height);
+            RenderRequest renderRequest = new RenderRequest(format, Layer.TRAVELTIME, Style.GRAY, false, false);
+            return router.renderer.getResponse(tileRequest, surface, null, renderRequest);
+        } finally {
+            router.release();
+        }
     }
 
 
@@ -0,0 +1,326 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.common;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * An immutable hash map where adding or removing a key returns a new map sharing all but one path of its structure
+ * with the old one (a hash array mapped trie). Updates cost O(log32 n) allocations instead of a copy of the whole map,
+ * so a writer can keep modifying its own version while readers hold on to older versions without any locking.
+ *
+ * Neither keys nor values may be null. Iteration order is unspecified.
+ */
+public final class PersistentHashMap<K, V> implements Iterable<Map.Entry<K, V>> {
+
+    private static final PersistentHashMap<?, ?> EMPTY = new PersistentHashMap<Object, Object>(null, 0);
+
+    private static final int BITS = 5;
+
+    private static final int MASK = (1 << BITS) - 1;
+
+    /** The root node, a BitmapNode or null for the empty map. */
+    private final BitmapNode root;
+
+    private final int size;
+
+    private PersistentHashMap(BitmapNode root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentHashMap<K, V> empty() {
+        return (PersistentHashMap<K, V>) EMPTY;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(K key) {
+        return get(key) != null;
+    }
+
+    /** @return the value associated with the key, or null if there is none. */
+    @SuppressWarnings("unchecked")
+    public V get(K key) {
+        if (root == null) return null;
+        return (V) root.get(0, hash(key), key);
+    }
+
+    /** @return a map with the given key associated with the given value, or this map if it already was. */
+    public PersistentHashMap<K, V> plus(K key, V value) {
+        Preconditions.checkNotNull(key);
+        Preconditions.checkNotNull(value);
+        boolean[] added = new boolean[1];
+        BitmapNode base = root == null ? BitmapNode.EMPTY : root;
+        BitmapNode newRoot = base.put(0, hash(key), key, value, added);
+        if (newRoot == root) return this;
+        return new PersistentHashMap<K, V>(newRoot, added[0] ? size + 1 : size);
+    }
+
+    /** @return a map without the given key, or this map if it did not contain the key. */
+    public PersistentHashMap<K, V> minus(K key) {
+        if (root == null) return this;
+        Object newRoot = root.remove(0, hash(key), key);
+        if (newRoot == root) return this;
+        if (newRoot == null) return empty();
+        return new PersistentHashMap<K, V>((BitmapNode) newRoot, size - 1);
+    }
+
+    @Override
+    public Iterator<Map.Entry<K, V>> iterator() {
+        return new EntryIterator<K, V>(root);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        for (Map.Entry<K, V> e : this) {
+            if (sb.length() > 1) sb.append(", ");
+            sb.append(e.getKey()).append('=').append(e.getValue());
+        }
+        return sb.append('}').toString();
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * An interior node. The array holds a key/value pair for each bit set in the bitmap. When the key is null, the
+     * value is the child node (BitmapNode or CollisionNode) holding all the keys sharing that hash prefix.
+     */
+    private static final class BitmapNode {
+
+        static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+        final int bitmap;
+
+        final Object[] array;
+
+        BitmapNode(int bitmap, Object[] array) {
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        Object get(int shift, int hash, Object key) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0) return null;
+            int i = 2 * Integer.bitCount(bitmap & (bit - 1));
+            Object k = array[i];
+            Object v = array[i + 1];
+            if (k == null) return getFrom(v, shift + BITS, hash, key);
+            return key.equals(k) ? v : null;
+        }
+
+        BitmapNode put(int shift, int hash, Object key, Object value, boolean[] added) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            int i = 2 * Integer.bitCount(bitmap & (bit - 1));
+            if ((bitmap & bit) == 0) {
+                Object[] copy = new Object[array.length + 2];
+                System.arraycopy(array, 0, copy, 0, i);
+                copy[i] = key;
+                copy[i + 1] = value;
+                System.arraycopy(array, i, copy, i + 2, array.length - i);
+                added[0] = true;
+                return new BitmapNode(bitmap | bit, copy);
+            }
+            Object k = array[i];
+            Object v = array[i + 1];
+            if (k == null) {
+                Object child = putInto(v, shift + BITS, hash, key, value, added);
+                return child == v ? this : replace(i, null, child);
+            }
+            if (key.equals(k)) {
+                return v == value ? this : replace(i, k, value);
+            }
+            added[0] = true;
+            return replace(i, null, pair(shift + BITS, k, v, hash, key, value));
+        }
+
+        Object remove(int shift, int hash, Object key) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0) return this;
+            int i = 2 * Integer.bitCount(bitmap & (bit - 1));
+            Object k = array[i];
+            Object v = array[i + 1];
+            if (k == null) {
+                Object child = removeFrom(v, shift + BITS, hash, key);
+                if (child == v) return this;
+                if (child != null) return replace(i, null, child);
+            } else if (!key.equals(k)) {
+                return this;
+            }
+            // Remove the slot entirely.
+            if (bitmap == bit) return null;
+            Object[] copy = new Object[array.length - 2];
+            System.arraycopy(array, 0, copy, 0, i);
+            System.arraycopy(array, i + 2, copy, i, array.length - i - 2);
+            return new BitmapNode(bitmap & ~bit, copy);
+        }
+
+        private BitmapNode replace(int i, Object key, Object value) {
+            Object[] copy = array.clone();
+            copy[i] = key;
+            copy[i + 1] = value;
+            return new BitmapNode(bitmap, copy);
+        }
+
+        /** @return a node holding two distinct keys, splitting on the hash bits from shift on. */
+        private static Object pair(int shift, Object k1, Object v1, int h2, Object k2, Object v2) {
+            int h1 = hash(k1);
+            if (h1 == h2) {
+                return new CollisionNode(h1, new Object[] { k1, v1, k2, v2 });
+            }
+            boolean[] added = new boolean[1];
+            return EMPTY.put(shift, h1, k1, v1, added).put(shift, h2, k2, v2, added);
+        }
+    }
+
+    /** A leaf holding the keys whose full hashes are identical. */
+    private static final class CollisionNode {
+
+        final int hash;
+
+        final Object[] array;
+
+        CollisionNode(int hash, Object[] array) {
+            this.hash = hash;
+            this.array = array;
+        }
+
+        private int indexOf(Object key) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (key.equals(array[i])) return i;
+            }
+            return -1;
+        }
+    }
+
+    private static Object getFrom(Object node, int shift, int hash, Object key) {
+        if (node instanceof BitmapNode) return ((BitmapNode) node).get(shift, hash, key);
+        CollisionNode c = (CollisionNode) node;
+        if (c.hash != hash) return null;
+        int i = c.indexOf(key);
+        return i < 0 ? null : c.array[i + 1];
+    }
+
+    private static Object putInto(Object node, int shift, int hash, Object key, Object value, boolean[] added) {
+        if (node instanceof BitmapNode) return ((BitmapNode) node).put(shift, hash, key, value, added);
+        CollisionNode c = (CollisionNode) node;
+        if (c.hash != hash) {
+            // Push the collision node one level down, next to the new key.
+            BitmapNode wrapper = new BitmapNode(1 << ((c.hash >>> shift) & MASK), new Object[] { null, c });
+            return wrapper.put(shift, hash, key, value, added);
+        }
+        int i = c.indexOf(key);
+        if (i >= 0) {
+            if (c.array[i + 1] == value) return c;
+            Object[] copy = c.array.clone();
+            copy[i + 1] = value;
+            return new CollisionNode(hash, copy);
+        }
+        Object[] copy = Arrays.copyOf(c.array, c.array.length + 2);
+        copy[c.array.length] = key;
+        copy[c.array.length + 1] = value;
+        added[0] = true;
+        return new CollisionNode(hash, copy);
+    }
+
+    private static Object removeFrom(Object node, int shift, int hash, Object key) {
+        if (node instanceof BitmapNode) return ((BitmapNode) node).remove(shift, hash, key);
+        CollisionNode c = (CollisionNode) node;
+        if (c.hash != hash) return c;
+        int i = c.indexOf(key);
+        if (i < 0) return c;
+        if (c.array.length == 2) return null;
+        Object[] copy = new Object[c.array.length - 2];
+        System.arraycopy(c.array, 0, copy, 0, i);
+        System.arraycopy(c.array, i + 2, copy, i, c.array.length - i - 2);
+        return new CollisionNode(hash, copy);
+    }
+
+    /** Depth-first iteration over the trie, keeping the arrays still to be scanned on a stack. */
+    private static final class EntryIterator<K, V> implements Iterator<Map.Entry<K, V>> {
+
+        private final Deque<Object[]> arrays = new ArrayDeque<Object[]>();
+
+        private final Deque<Integer> positions = new ArrayDeque<Integer>();
+
+        private Map.Entry<K, V> next;
+
+        EntryIterator(BitmapNode root) {
+            if (root != null) push(root);
+            advance();
+        }
+
+        private void push(Object node) {
+            arrays.push(node instanceof BitmapNode ? ((BitmapNode) node).array : ((CollisionNode) node).array);
+            positions.push(0);
+        }
+
+        @SuppressWarnings("unchecked")
+        private void advance() {
+            next = null;
+            while (!arrays.isEmpty()) {
+                Object[] array = arrays.peek();
+                int i = positions.pop();
+                if (i >= array.length) {
+                    arrays.pop();
+                    continue;
+                }
+                positions.push(i + 2);
+                if (array[i] == null) {
+                    push(array[i + 1]);
+                } else {
+                    next = new SimpleImmutableEntry<K, V>((K) array[i], (V) array[i + 1]);
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            if (next == null) throw new NoSuchElementException();
+            Map.Entry<K, V> ret = next;
+            advance();
+            return ret;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -174,6 +174,55 @@ public final class CompactLineString implements Serializable {
         return out;
     }
 
+    /**
+     * Same as uncompactLineString, but returning the coordinates as an array of alternating x and y values rather
+     * than a LineString, for callers that only need to read them once. The values are exactly those of the
+     * coordinates of the corresponding LineString, in the same order.
+     * 
+     * @param xa X coordinate of end point A
+     * @param ya Y coordinate of end point A
+     * @param xb X coordinate of end point B
+     * @param yb Y coordinate of end point B
+     * @param coords Compact version of coordinates
+     * @param reverse True if A and B and the compacted geometry is reversed.
+     * @return The coordinates from A to B as x0, y0, x1, y1...
+     */
+    public static double[] uncompactCoordinates(double xa, double ya, double xb, double yb,
+            int[] coords, boolean reverse) {
+        int size = coords == null ? 2 : (coords.length / 2) + 2;
+        double[] xy = new double[size * 2];
+        double x0 = reverse ? xb : xa;
+        double y0 = reverse ? yb : ya;
+        double x1 = reverse ? xa : xb;
+        double y1 = reverse ? ya : yb;
+        xy[0] = x0;
+        xy[1] = y0;
+        if (coords != null) {
+            int oix = (int) Math.round(x0 * FIXED_FLOAT_MULT);
+            int oiy = (int) Math.round(y0 * FIXED_FLOAT_MULT);
+            for (int i = 1; i < size - 1; i++) {
+                int ix = oix + coords[(i - 1) * 2];
+                int iy = oiy + coords[(i - 1) * 2 + 1];
+                xy[i * 2] = ix / FIXED_FLOAT_MULT;
+                xy[i * 2 + 1] = iy / FIXED_FLOAT_MULT;
+                oix = ix;
+                oiy = iy;
+            }
+        }
+        xy[size * 2 - 2] = x1;
+        xy[size * 2 - 1] = y1;
+        if (reverse) {
+            for (int i = 0, j = size - 1; i < j; i++, j--) {
+                double x = xy[i * 2], y = xy[i * 2 + 1];
+                xy[i * 2] = xy[j * 2];
+                xy[i * 2 + 1] = xy[j * 2 + 1];
+                xy[j * 2] = x;
+                xy[j * 2 + 1] = y;
+            }
+        }
+        return xy;
+    }
+
     /**
      * Same as the other version, but in a var-len int packed form (Dlugosz coding).
      * 
@@ -15,9 +15,16 @@ package org.opentripplanner.common.pqueue;
 
 import java.util.Arrays;
 
-public class BinHeap<T> {
+public class BinHeap<T> implements OTPPriorityQueue<T> {
     
     private static final double GROW_FACTOR = 2.0;
+
+    public static final Factory FACTORY = new Factory() {
+        @Override
+        public <T> OTPPriorityQueue<T> create(int initialCapacity) {
+            return new BinHeap<T>(initialCapacity);
+        }
+    };
     
     private double[] prio;
     private T[] elem;
@@ -64,6 +71,14 @@ public class BinHeap<T> {
     	throw new UnsupportedOperationException("BinHeap has no decrease key operation.");
     }
 
+    /**
+     * BinHeap does not know where its elements are without a linear search, so elements are never removed and
+     * will still be extracted later.
+     */
+    public boolean remove(T e) {
+        return false;
+    }
+
     public void rekey(T e, double p) {
         // Perform "inefficient" but straightforward linear search 
     	// for an element then change its key by sifting up or down
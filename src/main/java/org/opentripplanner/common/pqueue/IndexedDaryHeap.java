@@ -0,0 +1,298 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.common.pqueue;
+
+import java.util.Arrays;
+
+/**
+ * A 4-ary min-heap that knows the position of each of its elements, so it supports decrease-key and removal of
+ * arbitrary elements in logarithmic time. A 4-ary heap is shallower than a binary heap and its children sit next
+ * to each other in memory, which makes extract_min cheaper on the large queues of long searches.
+ *
+ * Positions are kept in an open-addressing identity hash table rather than an IdentityHashMap to avoid boxing.
+ * The heap records the table slot of each element and the table records the heap position of each element, so
+ * moving an element within the heap only costs two array writes.
+ *
+ * Elements are compared by identity and each element is in the queue at most once: inserting an element that is
+ * already present just changes its priority.
+ */
+public class IndexedDaryHeap<T> implements OTPPriorityQueue<T> {
+
+    public static final Factory FACTORY = new Factory() {
+        @Override
+        public <T> OTPPriorityQueue<T> create(int initialCapacity) {
+            return new IndexedDaryHeap<T>(initialCapacity);
+        }
+    };
+
+    /* The heap, 0-based. The children of i are 4i+1 to 4i+4 and its parent is (i-1)/4. */
+    private double[] prio;
+    private Object[] elem;
+    private int[] slot; // position of each heap element in the hash table
+    private int size;
+
+    /* The hash table from elements to their position in the heap, with linear probing. */
+    private Object[] keys;
+    private int[] position;
+    private int mask;
+    private int shift;
+
+    public IndexedDaryHeap() {
+        this(1000);
+    }
+
+    public IndexedDaryHeap(int capacity) {
+        if (capacity < 10) capacity = 10;
+        prio = new double[capacity];
+        elem = new Object[capacity];
+        slot = new int[capacity];
+        allocateTable(capacity);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean empty() {
+        return size <= 0;
+    }
+
+    @Override
+    public double peek_min_key() {
+        if (size > 0)
+            return prio[0];
+        else
+            throw new IllegalStateException("An empty queue does not have a minimum key.");
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T peek_min() {
+        if (size > 0)
+            return (T) elem[0];
+        else
+            return null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T extract_min() {
+        if (size <= 0)
+            return null;
+        T min = (T) elem[0];
+        removeAt(0);
+        return min;
+    }
+
+    @Override
+    public void insert(T e, double p) {
+        int i = find(e);
+        if (i >= 0) {
+            changeKey(i, p);
+            return;
+        }
+        if (size == elem.length) {
+            grow();
+        }
+        int s = tableInsert(e, size);
+        size += 1;
+        siftUp(size - 1, e, p, s);
+    }
+
+    @Override
+    public void insert_or_dec_key(T e, double p) {
+        int i = find(e);
+        if (i < 0) {
+            insert(e, p);
+        } else if (p < prio[i]) {
+            siftUp(i, e, p, slot[i]);
+        }
+    }
+
+    /** Change the priority of an element already in the queue, doing nothing if it is not in the queue. */
+    public void rekey(T e, double p) {
+        int i = find(e);
+        if (i >= 0) {
+            changeKey(i, p);
+        }
+    }
+
+    @Override
+    public boolean remove(T e) {
+        int i = find(e);
+        if (i < 0) {
+            return false;
+        }
+        removeAt(i);
+        return true;
+    }
+
+    public boolean contains(T e) {
+        return find(e) >= 0;
+    }
+
+    @Override
+    public void reset() {
+        Arrays.fill(elem, 0, size, null);
+        Arrays.fill(keys, null);
+        size = 0;
+    }
+
+    /* HEAP OPERATIONS */
+
+    private void changeKey(int i, double p) {
+        if (p < prio[i]) {
+            siftUp(i, elem[i], p, slot[i]);
+        } else {
+            siftDown(i, elem[i], p, slot[i]);
+        }
+    }
+
+    private void removeAt(int i) {
+        tableRemove(slot[i]);
+        size -= 1;
+        if (i == size) {
+            elem[size] = null;
+            return;
+        }
+        // Fill the hole with the last element. Its table slot may have moved during the removal above.
+        Object last = elem[size];
+        double lastPrio = prio[size];
+        int lastSlot = slot[size];
+        elem[size] = null;
+        if (i > 0 && prio[(i - 1) >>> 2] > lastPrio) {
+            siftUp(i, last, lastPrio, lastSlot);
+        } else {
+            siftDown(i, last, lastPrio, lastSlot);
+        }
+    }
+
+    /** Place element e with priority p and table slot s at position i or above. */
+    private void siftUp(int i, Object e, double p, int s) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 2;
+            if (prio[parent] <= p) {
+                break;
+            }
+            move(parent, i);
+            i = parent;
+        }
+        place(i, e, p, s);
+    }
+
+    /** Place element e with priority p and table slot s at position i or below. */
+    private void siftDown(int i, Object e, double p, int s) {
+        while (true) {
+            int first = (i << 2) + 1;
+            if (first >= size) {
+                break;
+            }
+            int end = Math.min(first + 4, size);
+            int min = first;
+            for (int c = first + 1; c < end; c++) {
+                if (prio[c] < prio[min]) {
+                    min = c;
+                }
+            }
+            if (prio[min] >= p) {
+                break;
+            }
+            move(min, i);
+            i = min;
+        }
+        place(i, e, p, s);
+    }
+
+    private void move(int from, int to) {
+        elem[to] = elem[from];
+        prio[to] = prio[from];
+        slot[to] = slot[from];
+        position[slot[to]] = to;
+    }
+
+    private void place(int i, Object e, double p, int s) {
+        elem[i] = e;
+        prio[i] = p;
+        slot[i] = s;
+        position[s] = i;
+    }
+
+    private void grow() {
+        int capacity = elem.length * 2;
+        elem = Arrays.copyOf(elem, capacity);
+        prio = Arrays.copyOf(prio, capacity);
+        slot = Arrays.copyOf(slot, capacity);
+        // Keep the table at most half full.
+        allocateTable(capacity);
+        for (int i = 0; i < size; i++) {
+            slot[i] = tableInsert(elem[i], i);
+        }
+    }
+
+    /* HASH TABLE OPERATIONS */
+
+    private void allocateTable(int capacity) {
+        int bits = 32 - Integer.numberOfLeadingZeros(capacity * 2 - 1);
+        keys = new Object[1 << bits];
+        position = new int[1 << bits];
+        mask = (1 << bits) - 1;
+        shift = 32 - bits;
+    }
+
+    private int hash(Object e) {
+        // Fibonacci hashing spreads the identity hash codes over the table.
+        return (System.identityHashCode(e) * 0x9E3779B9) >>> shift;
+    }
+
+    /** @return the heap position of e, or -1 if it is not in the queue. */
+    private int find(Object e) {
+        for (int s = hash(e); keys[s] != null; s = (s + 1) & mask) {
+            if (keys[s] == e) {
+                return position[s];
+            }
+        }
+        return -1;
+    }
+
+    /** @return the table slot where e was inserted. */
+    private int tableInsert(Object e, int heapPosition) {
+        int s = hash(e);
+        while (keys[s] != null) {
+            s = (s + 1) & mask;
+        }
+        keys[s] = e;
+        position[s] = heapPosition;
+        return s;
+    }
+
+    /** Remove the key in slot s, shifting back the following keys of the probe sequence to close the gap. */
+    private void tableRemove(int s) {
+        int gap = s;
+        for (int next = (s + 1) & mask; keys[next] != null; next = (next + 1) & mask) {
+            int home = hash(keys[next]);
+            // Move the key back unless its home slot lies cyclically within (gap, next].
+            boolean movable = gap <= next ? (home <= gap || home > next) : (home <= gap && home > next);
+            if (movable) {
+                keys[gap] = keys[next];
+                position[gap] = position[next];
+                slot[position[gap]] = gap;
+                gap = next;
+            }
+        }
+        keys[gap] = null;
+    }
+
+}
@@ -0,0 +1,59 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.common.pqueue;
+
+/**
+ * The minimal set of priority queue operations needed by the search algorithms, so that the queue implementation
+ * can be swapped out. Elements are compared by identity.
+ */
+public interface OTPPriorityQueue<T> {
+
+    public int size();
+
+    public boolean empty();
+
+    /** @return the priority of the minimum element, throwing an IllegalStateException if the queue is empty. */
+    public double peek_min_key();
+
+    /** @return the minimum element without removing it, or null if the queue is empty. */
+    public T peek_min();
+
+    /** @return the minimum element after removing it from the queue, or null if the queue is empty. */
+    public T extract_min();
+
+    public void insert(T e, double p);
+
+    /**
+     * Insert the element if it is not in the queue, otherwise lower its priority to p if p is lower.
+     * Implementations that do not track element positions throw an UnsupportedOperationException.
+     */
+    public void insert_or_dec_key(T e, double p);
+
+    /**
+     * Remove an element which is no longer worth extracting, such as a search state that has been dominated.
+     * Implementations that do not track element positions may leave the element in place and return false, so
+     * callers must still tolerate extracting stale elements.
+     *
+     * @return true if the element was found and removed.
+     */
+    public boolean remove(T e);
+
+    /** Empty the queue. */
+    public void reset();
+
+    /** Creates queues, allowing a search to be run with different queue implementations. */
+    public interface Factory {
+        public <T> OTPPriorityQueue<T> create(int initialCapacity);
+    }
+}
@@ -0,0 +1,60 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.graph_builder;
+
+import com.google.common.base.Throwables;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Helps graph builder modules process many vertices or edges in parallel.
+ *
+ * The items are split into contiguous partitions, processed by a work-stealing pool with the given number of threads.
+ * The function must only read the graph. It returns what should change, and the module applies these changes on the
+ * calling thread. The results come back in the order of the items, so the graph ends up the same whatever the number
+ * of threads.
+ */
+public class DataParallel {
+
+    /**
+     * Apply the function to every item.
+     * @return the results, in the same order as the items.
+     */
+    public static <T, R> List<R> map(List<T> items, int threads, Function<? super T, ? extends R> function) {
+        if (threads <= 1 || items.size() < 2) {
+            List<R> results = new ArrayList<R>(items.size());
+            for (T item : items) {
+                results.add(function.apply(item));
+            }
+            return results;
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            return pool.submit(() -> items.parallelStream().<R>map(function).collect(Collectors.toList())).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+}
@@ -36,6 +36,7 @@ import org.opentripplanner.openstreetmap.impl.AnyFileBasedOpenStreetMapProviderI
 import org.opentripplanner.openstreetmap.services.OpenStreetMapProvider;
 import org.opentripplanner.reflect.ReflectionLibrary;
 import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.graph.CompactGraphFormat;
 import org.opentripplanner.routing.graph.Graph;
 import org.opentripplanner.routing.graph.Graph.LoadLevel;
 import org.opentripplanner.standalone.CommandLineParameters;
@@ -49,14 +50,14 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
 /**
  * This makes a Graph out of various inputs like GTFS and OSM.
- * It is modular: GraphBuilderModules are placed in a list and run in sequence.
+ * It is modular: GraphBuilderModules are placed in a list and run in sequence, or concurrently when they do not
+ * depend on each other (see ModuleScheduler).
  */
 public class GraphBuilder implements Runnable {
     
@@ -82,6 +83,12 @@ public class GraphBuilder implements Runnable {
     /** Should the graph be serialized to disk after being created or not? */
     public boolean serializeGraph = true;
 
+    /** Should the graph be saved in the compact graph format rather than with Java serialization? */
+    public boolean compactGraph = false;
+
+    /** The number of modules that can run at the same time, when they do not depend on each other. */
+    public int moduleThreads = 1;
+
     public void addModule(GraphBuilderModule loader) {
         _graphBuilderModules.add(loader);
     }
@@ -112,11 +119,11 @@ public class GraphBuilder implements Runnable {
     }
     
     public void setPath (String path) {
-        graphFile = new File(path.concat("/Graph.obj"));
+        setPath(new File(path));
     }
     
     public void setPath (File path) {
-        graphFile = new File(path, "Graph.obj");
+        graphFile = new File(path, compactGraph ? CompactGraphFormat.GRAPH_FILENAME : "Graph.obj");
     }
 
     public Graph getGraph() {
@@ -155,14 +162,16 @@ public class GraphBuilder implements Runnable {
             builder.checkInputs();
         }
         
-        HashMap<Class<?>, Object> extra = new HashMap<Class<?>, Object>();
-        for (GraphBuilderModule load : _graphBuilderModules)
-            load.buildGraph(graph, extra);
+        new ModuleScheduler(_graphBuilderModules, moduleThreads).run(graph);
 
         graph.summarizeBuilderAnnotations();
         if (serializeGraph) {
             try {
-                graph.save(graphFile);
+                if (compactGraph) {
+                    graph.saveCompact(graphFile);
+                } else {
+                    graph.save(graphFile);
+                }
             } catch (Exception ex) {
                 throw new IllegalStateException(ex);
             }
@@ -195,10 +204,12 @@ public class GraphBuilder implements Runnable {
             LOG.error("'{}' is not a readable directory.", dir);
             return null;
         }
+        graphBuilder.compactGraph = params.compactGraph;
         graphBuilder.setPath(dir);
         // Find and parse config files first to reveal syntax errors early without waiting for graph build.
         builderConfig = OTPMain.loadJson(new File(dir, BUILDER_CONFIG_FILENAME));
         GraphBuilderParameters builderParams = new GraphBuilderParameters(builderConfig);
+        graphBuilder.moduleThreads = builderParams.parallelModules ? builderParams.threads : 1;
         // Load the router config JSON to fail fast, but we will only apply it later when a router starts up
         graphBuilder.routerConfig = OTPMain.loadJson(new File(dir, Router.ROUTER_CONFIG_FILENAME));
         LOG.info(ReflectionLibrary.dumpFields(builderParams));
@@ -274,7 +285,7 @@ public class GraphBuilder implements Runnable {
         }
         // This module is outside the hasGTFS conditional block because it also links things like bike rental
         // which need to be handled even when there's no transit.
-        graphBuilder.addModule(new StreetLinkerModule());
+        graphBuilder.addModule(new StreetLinkerModule(builderParams.threads));
         // Load elevation data and apply it to the streets.
         // We want to do run this module after loading the OSM street network but before finding transfers.
         if (builderParams.elevationBucket != null) {
@@ -288,25 +299,25 @@ public class GraphBuilder implements Runnable {
             awsTileSource.awsBucketName = bucketConfig.bucketName;
             NEDGridCoverageFactoryImpl gcf = new NEDGridCoverageFactoryImpl(cacheDirectory);
             gcf.tileSource = awsTileSource;
-            GraphBuilderModule elevationBuilder = new ElevationModule(gcf);
+            GraphBuilderModule elevationBuilder = new ElevationModule(gcf, builderParams.threads);
             graphBuilder.addModule(elevationBuilder);
         } else if (builderParams.fetchElevationUS) {
             // Download the elevation tiles from the official web service
             File cacheDirectory = new File(params.cacheDirectory, "ned");
             ElevationGridCoverageFactory gcf = new NEDGridCoverageFactoryImpl(cacheDirectory);
-            GraphBuilderModule elevationBuilder = new ElevationModule(gcf);
+            GraphBuilderModule elevationBuilder = new ElevationModule(gcf, builderParams.threads);
             graphBuilder.addModule(elevationBuilder);
         } else if (demFile != null) {
             // Load the elevation from a file in the graph inputs directory
             ElevationGridCoverageFactory gcf = new GeotiffGridCoverageFactoryImpl(demFile);
-            GraphBuilderModule elevationBuilder = new ElevationModule(gcf);
+            GraphBuilderModule elevationBuilder = new ElevationModule(gcf, builderParams.threads);
             graphBuilder.addModule(elevationBuilder);
         }
         if ( hasGTFS ) {
             // The stops can be linked to each other once they are already linked to the street network.
             if ( ! builderParams.useTransfersTxt) {
                 // This module will use streets or straight line distance depending on whether OSM data is found in the graph.
-                graphBuilder.addModule(new DirectTransferGenerator());
+                graphBuilder.addModule(new DirectTransferGenerator(builderParams.threads));
             }
         }
         graphBuilder.addModule(new EmbedConfig(builderConfig, routerConfig));
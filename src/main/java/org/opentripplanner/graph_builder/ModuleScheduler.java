@@ -0,0 +1,191 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.graph_builder;
+
+import com.google.common.base.Throwables;
+import org.opentripplanner.graph_builder.services.GraphBuilderModule;
+import org.opentripplanner.routing.graph.Graph;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs graph builder modules, starting each one as soon as the modules it depends on are done.
+ *
+ * A module depends on an earlier module in the list when it requires a stage the earlier one provides, or when it
+ * provides a stage the earlier one provides or requires. Modules that declare neither wait for all the modules before
+ * them, and all the modules after them wait for them. With a single thread the modules run in list order.
+ *
+ * Stages only order modules: a module may require a stage that no module provides, for example transit in a build
+ * without GTFS, and then simply does not wait for it.
+ *
+ * The time taken by each module and the peak heap use while it ran are logged at the end. When modules run at the
+ * same time, the peak heap is that of the whole JVM.
+ */
+public class ModuleScheduler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ModuleScheduler.class);
+
+    private final List<GraphBuilderModule> modules;
+
+    private final int threads;
+
+    private final long[] durations;
+
+    private final long[] peakHeaps;
+
+    public ModuleScheduler(List<GraphBuilderModule> modules, int threads) {
+        this.modules = modules;
+        this.threads = Math.max(1, threads);
+        this.durations = new long[modules.size()];
+        this.peakHeaps = new long[modules.size()];
+    }
+
+    /** @return the indices of the earlier modules that the module at the given index must wait for. */
+    List<Integer> getDependencies(int index) {
+        GraphBuilderModule module = modules.get(index);
+        List<Integer> dependencies = new ArrayList<Integer>();
+        for (int i = 0; i < index; i++) {
+            if (mustFollow(module, modules.get(i))) {
+                dependencies.add(i);
+            }
+        }
+        return dependencies;
+    }
+
+    private static boolean mustFollow(GraphBuilderModule later, GraphBuilderModule earlier) {
+        if (isUndeclared(later) || isUndeclared(earlier)) return true;
+        return intersects(later.getPrerequisites(), earlier.provides())
+                || intersects(later.provides(), earlier.provides())
+                || intersects(later.provides(), earlier.getPrerequisites());
+    }
+
+    private static boolean isUndeclared(GraphBuilderModule module) {
+        return module.provides().isEmpty() && module.getPrerequisites().isEmpty();
+    }
+
+    private static boolean intersects(Collection<String> a, Collection<String> b) {
+        for (String s : a) {
+            if (b.contains(s)) return true;
+        }
+        return false;
+    }
+
+    public void run(Graph graph) {
+        if (threads == 1) {
+            HashMap<Class<?>, Object> extra = new HashMap<Class<?>, Object>();
+            for (int i = 0; i < modules.size(); i++) {
+                runModule(i, graph, extra);
+            }
+        } else {
+            HashMap<Class<?>, Object> extra = new SynchronizedHashMap<Class<?>, Object>();
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            List<CompletableFuture<Void>> futures = new ArrayList<CompletableFuture<Void>>();
+            try {
+                for (int i = 0; i < modules.size(); i++) {
+                    List<Integer> dependencies = getDependencies(i);
+                    CompletableFuture<?>[] before = new CompletableFuture<?>[dependencies.size()];
+                    for (int d = 0; d < before.length; d++) {
+                        before[d] = futures.get(dependencies.get(d));
+                    }
+                    LOG.debug("Module {} waits for modules {}", modules.get(i).getClass().getSimpleName(), dependencies);
+                    final int index = i;
+                    futures.add(CompletableFuture.allOf(before).thenRunAsync(() -> runModule(index, graph, extra),
+                            executor));
+                }
+                CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()])).join();
+            } catch (CompletionException e) {
+                throw Throwables.propagate(e.getCause());
+            } finally {
+                executor.shutdown();
+            }
+        }
+        logSummary();
+    }
+
+    private void runModule(int index, Graph graph, HashMap<Class<?>, Object> extra) {
+        GraphBuilderModule module = modules.get(index);
+        LOG.info("Running {}", module.getClass().getSimpleName());
+        if (threads == 1) {
+            resetPeakHeap();
+        }
+        long start = System.currentTimeMillis();
+        module.buildGraph(graph, extra);
+        durations[index] = System.currentTimeMillis() - start;
+        peakHeaps[index] = getPeakHeap();
+        LOG.info("{} took {} seconds, peak heap {} MB", module.getClass().getSimpleName(),
+                durations[index] / 1000.0, peakHeaps[index] >> 20);
+    }
+
+    private void logSummary() {
+        StringBuilder sb = new StringBuilder("Time and peak heap use of each graph builder module:");
+        for (int i = 0; i < modules.size(); i++) {
+            sb.append(String.format("%n  %-40s %8.1f s %8d MB", modules.get(i).getClass().getSimpleName(),
+                    durations[i] / 1000.0, peakHeaps[i] >> 20));
+        }
+        LOG.info(sb.toString());
+    }
+
+    private static void resetPeakHeap() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) pool.resetPeakUsage();
+        }
+    }
+
+    /** @return the sum of the peak usage of the heap memory pools, an upper bound on the peak heap use. */
+    private static long getPeakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) peak += pool.getPeakUsage().getUsed();
+        }
+        return peak;
+    }
+
+    /** The extra map shared by the modules, which may now be read and written by several modules at once. */
+    private static class SynchronizedHashMap<K, V> extends HashMap<K, V> {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public synchronized V get(Object key) {
+            return super.get(key);
+        }
+
+        @Override
+        public synchronized V put(K key, V value) {
+            return super.put(key, value);
+        }
+
+        @Override
+        public synchronized boolean containsKey(Object key) {
+            return super.containsKey(key);
+        }
+
+        @Override
+        public synchronized V remove(Object key) {
+            return super.remove(key);
+        }
+    }
+}
@@ -16,6 +16,7 @@ import org.opentripplanner.common.geometry.GeometryUtils;
 import org.opentripplanner.common.geometry.HashGridSpatialIndex;
 import org.opentripplanner.common.geometry.SphericalDistanceLibrary;
 import org.opentripplanner.common.model.P2;
+import org.opentripplanner.graph_builder.DataParallel;
 import org.opentripplanner.graph_builder.annotation.BikeParkUnlinked;
 import org.opentripplanner.graph_builder.annotation.BikeRentalStationUnlinked;
 import org.opentripplanner.graph_builder.annotation.StopUnlinked;
@@ -87,22 +88,79 @@ public class SimpleStreetSplitter {
     }
 
     /** Link all relevant vertices to the street network */
-    public void link () {	
+    public void link () {
+        link(1);
+    }
+
+    /**
+     * Link all relevant vertices to the street network, searching for the closest edges of the vertices with the given
+     * number of threads. The vertices are then linked one after the other, so the graph is the same whatever the number
+     * of threads.
+     */
+    public void link (int threads) {
+        List<Vertex> vertices = new ArrayList<Vertex>();
         for (Vertex v : graph.getVertices()) {
             if (v instanceof TransitStop || v instanceof BikeRentalStationVertex || v instanceof BikeParkVertex)
-                if (!link(v)) {
-                    if (v instanceof TransitStop)
-                        LOG.warn(graph.addBuilderAnnotation(new StopUnlinked((TransitStop) v)));
-                    else if (v instanceof BikeRentalStationVertex)
-                        LOG.warn(graph.addBuilderAnnotation(new BikeRentalStationUnlinked((BikeRentalStationVertex) v)));
-                    else if (v instanceof BikeParkVertex)
-                        LOG.warn(graph.addBuilderAnnotation(new BikeParkUnlinked((BikeParkVertex) v)));
-                };
+                vertices.add(v);
+        }
+        // The searches only read the graph and the index, which are not modified until they are all done.
+        List<List<StreetEdge>> found = DataParallel.map(vertices, threads, this::findBestEdges);
+        for (int i = 0; i < vertices.size(); i++) {
+            Vertex v = vertices.get(i);
+            List<StreetEdge> bestEdges = found.get(i);
+            // An edge split when linking an earlier vertex is no longer in the graph. Search again: the closest edges
+            // are then among its halves. Splitting never brings other edges closer, so otherwise nothing changes.
+            if (bestEdges != null && !allInGraph(bestEdges)) {
+                bestEdges = findBestEdges(v);
+            }
+            if (bestEdges == null) {
+                if (v instanceof TransitStop)
+                    LOG.warn(graph.addBuilderAnnotation(new StopUnlinked((TransitStop) v)));
+                else if (v instanceof BikeRentalStationVertex)
+                    LOG.warn(graph.addBuilderAnnotation(new BikeRentalStationUnlinked((BikeRentalStationVertex) v)));
+                else if (v instanceof BikeParkVertex)
+                    LOG.warn(graph.addBuilderAnnotation(new BikeParkUnlinked((BikeParkVertex) v)));
+                continue;
+            }
+            link(v, bestEdges);
         }
     }
 
     /** Link this vertex into the graph */
     public boolean link (Vertex vertex) {
+        List<StreetEdge> bestEdges = findBestEdges(vertex);
+        if (bestEdges == null)
+            return false;
+
+        link(vertex, bestEdges);
+        return true;
+    }
+
+    private void link (Vertex vertex, List<StreetEdge> bestEdges) {
+        final double xscale = xscale(vertex);
+        for (StreetEdge edge : bestEdges) {
+            link(vertex, edge, xscale);
+        }
+    }
+
+    private static boolean allInGraph (List<StreetEdge> edges) {
+        for (StreetEdge edge : edges) {
+            if (!edge.getToVertex().getIncoming().contains(edge))
+                return false;
+        }
+        return true;
+    }
+
+    /** local equirectangular projection */
+    private static double xscale (Vertex vertex) {
+        return Math.cos(vertex.getLat() * Math.PI / 180);
+    }
+
+    /**
+     * Find the street edges this vertex should be linked to, without changing the graph.
+     * @return the closest edges, or null if there are none within the search radius.
+     */
+    private List<StreetEdge> findBestEdges (Vertex vertex) {
         // find nearby street edges
         // TODO: we used to use an expanding-envelope search, which is more efficient in
         // dense areas. but first let's see how inefficient this is. I suspect it's not too
@@ -112,7 +170,7 @@ public class SimpleStreetSplitter {
         Envelope env = new Envelope(vertex.getCoordinate());
 
         // local equirectangular projection
-        final double xscale = Math.cos(vertex.getLat() * Math.PI / 180);
+        final double xscale = xscale(vertex);
 
         env.expandBy(radiusDeg / xscale, radiusDeg);
 
@@ -161,7 +219,7 @@ public class SimpleStreetSplitter {
 
         // find the closest candidate edges
         if (candidateEdges.isEmpty() || distances.get(candidateEdges.get(0).getId()) > radiusDeg)
-            return false;
+            return null;
 
         // find the best edges
         List<StreetEdge> bestEdges = Lists.newArrayList();
@@ -176,11 +234,7 @@ public class SimpleStreetSplitter {
         } while (i < candidateEdges.size() &&
                 distances.get(candidateEdges.get(i).getId()) - distances.get(candidateEdges.get(i - 1).getId()) < duplicateDeg);
 
-        for (StreetEdge edge : bestEdges) {
-            link(vertex, edge, xscale);
-        }
-
-        return true;
+        return bestEdges;
     }
 
     /** split the edge and link in the transit stop */
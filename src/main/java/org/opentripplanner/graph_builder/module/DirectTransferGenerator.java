@@ -14,6 +14,7 @@
 package org.opentripplanner.graph_builder.module;
 
 import com.google.common.collect.Iterables;
+import org.opentripplanner.graph_builder.DataParallel;
 import org.opentripplanner.graph_builder.annotation.StopNotLinkedForTransfers;
 import org.opentripplanner.graph_builder.services.GraphBuilderModule;
 import org.opentripplanner.routing.edgetype.PathwayEdge;
@@ -25,11 +26,15 @@ import org.opentripplanner.routing.vertextype.TransitStop;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * {@link org.opentripplanner.graph_builder.services.GraphBuilderModule} module that links up the stops of a transit network among themselves. This is necessary for
@@ -44,14 +49,28 @@ public class DirectTransferGenerator implements GraphBuilderModule {
 
     private static Logger LOG = LoggerFactory.getLogger(DirectTransferGenerator.class);
 
+    private static final Comparator<TransitStop> BY_INDEX = (a, b) -> Integer.compare(a.getIndex(), b.getIndex());
+
     int maxDuration = 60 * 10;
 
+    /** The number of threads searching for nearby stops. */
+    private final int threads;
+
+    public DirectTransferGenerator() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public DirectTransferGenerator(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
     public List<String> provides() {
         return Arrays.asList("linking");
     }
 
     public List<String> getPrerequisites() {
-        return Arrays.asList("street to transit");
+        // Walk times along the streets depend on their slopes
+        return Arrays.asList("street to transit", "transit", "elevation");
     }
 
     @Override
@@ -69,34 +88,33 @@ public class DirectTransferGenerator implements GraphBuilderModule {
             LOG.info("Creating direct transfer edges between stops using straight line distance (not streets)...");
         }
 
-        int nTransfersTotal = 0;
-        int nLinkableStops = 0;
-
+        /* Skip stops that are entrances to stations or whose entrances are coded separately */
+        List<TransitStop> linkableStops = new ArrayList<TransitStop>();
         for (TransitStop ts0 : Iterables.filter(graph.getVertices(), TransitStop.class)) {
-
-            /* Skip stops that are entrances to stations or whose entrances are coded separately */
-            if (!ts0.isStreetLinkable()) continue;
-            if (++nLinkableStops % 1000 == 0) {
-                LOG.info("Linked {} stops", nLinkableStops);
-            }
-            LOG.debug("Linking stop '{}' {}", ts0.getStop(), ts0);
-
-            /* Determine the set of stops that are already reachable via other pathways or transfers */
-            Set<TransitStop> pathwayDestinations = new HashSet<TransitStop>();
-            for (Edge e : ts0.getOutgoing()) {
-                if (e instanceof PathwayEdge || e instanceof SimpleTransfer) {
-                    if (e.getToVertex() instanceof TransitStop) {
-                        TransitStop to = (TransitStop) e.getToVertex();
-                        pathwayDestinations.add(to);
+            if (ts0.isStreetLinkable()) linkableStops.add(ts0);
+        }
+        // Make the output independent of the order of the vertices in the graph.
+        Collections.sort(linkableStops, BY_INDEX);
+
+        /*
+         * Search from every stop in parallel, without modifying the graph. Each search has its own routing request and
+         * context. The transfers are only created afterwards, on this thread and in stop order.
+         */
+        AtomicInteger nSearched = new AtomicInteger();
+        List<List<NearbyStopFinder.StopAtDistance>> nearbyStopsForStop =
+                DataParallel.map(linkableStops, threads, ts0 -> {
+                    if (nSearched.incrementAndGet() % 1000 == 0) {
+                        LOG.info("Searched from {} stops", nSearched.get());
                     }
-                }
-            }
+                    return findTransferTargets(nearbyStopFinder, ts0);
+                });
 
-            /* Make transfers to each nearby stop that is the closest stop on some trip pattern. */
+        int nTransfersTotal = 0;
+        for (int i = 0; i < linkableStops.size(); i++) {
+            TransitStop ts0 = linkableStops.get(i);
+            LOG.debug("Linking stop '{}' {}", ts0.getStop(), ts0);
             int n = 0;
-            for (NearbyStopFinder.StopAtDistance sd : nearbyStopFinder.findNearbyStopsConsideringPatterns(ts0)) {
-                /* Skip the origin stop, loop transfers are not needed. */
-                if (sd.tstop == ts0 || pathwayDestinations.contains(sd.tstop)) continue;
+            for (NearbyStopFinder.StopAtDistance sd : nearbyStopsForStop.get(i)) {
                 new SimpleTransfer(ts0, sd.tstop, sd.dist, sd.geom);
                 n += 1;
             }
@@ -106,10 +124,38 @@ public class DirectTransferGenerator implements GraphBuilderModule {
             }
             nTransfersTotal += n;
         }
-        LOG.info("Done connecting stops to one another. Created a total of {} transfers from {} stops.", nTransfersTotal, nLinkableStops);
+        LOG.info("Done connecting stops to one another. Created a total of {} transfers from {} stops.", nTransfersTotal, linkableStops.size());
         graph.hasDirectTransfers = true;
     }
 
+    /**
+     * @return the stops that should get a transfer from the given stop, ordered by vertex index. This only reads the
+     * graph, so it can be called from several threads at once.
+     */
+    private static List<NearbyStopFinder.StopAtDistance> findTransferTargets(NearbyStopFinder nearbyStopFinder,
+            TransitStop ts0) {
+        /* Determine the set of stops that are already reachable via other pathways or transfers */
+        Set<TransitStop> pathwayDestinations = new HashSet<TransitStop>();
+        for (Edge e : ts0.getOutgoing()) {
+            if (e instanceof PathwayEdge || e instanceof SimpleTransfer) {
+                if (e.getToVertex() instanceof TransitStop) {
+                    TransitStop to = (TransitStop) e.getToVertex();
+                    pathwayDestinations.add(to);
+                }
+            }
+        }
+
+        /* Make transfers to each nearby stop that is the closest stop on some trip pattern. */
+        List<NearbyStopFinder.StopAtDistance> targets = new ArrayList<NearbyStopFinder.StopAtDistance>();
+        for (NearbyStopFinder.StopAtDistance sd : nearbyStopFinder.findNearbyStopsConsideringPatterns(ts0)) {
+            /* Skip the origin stop, loop transfers are not needed. */
+            if (sd.tstop == ts0 || pathwayDestinations.contains(sd.tstop)) continue;
+            targets.add(sd);
+        }
+        Collections.sort(targets, (a, b) -> BY_INDEX.compare(a.tstop, b.tstop));
+        return targets;
+    }
+
     @Override
     public void checkInputs() {
         // No inputs
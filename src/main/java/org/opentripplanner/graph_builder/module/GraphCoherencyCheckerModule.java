@@ -13,11 +13,13 @@
 
 package org.opentripplanner.graph_builder.module;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 
+import org.opentripplanner.graph_builder.DataParallel;
 import org.opentripplanner.graph_builder.services.GraphBuilderModule;
 import org.opentripplanner.routing.graph.Edge;
 import org.opentripplanner.routing.graph.Graph;
@@ -44,37 +46,44 @@ public class GraphCoherencyCheckerModule implements GraphBuilderModule {
     
     private static final Logger LOG = LoggerFactory.getLogger(GraphCoherencyCheckerModule.class);
 
+    /** The number of threads checking vertices. */
+    public int threads = Runtime.getRuntime().availableProcessors();
+
     @Override
     public void buildGraph(Graph graph, HashMap<Class<?>, Object> extra) {
-        boolean coherent = true;
         LOG.info("checking graph coherency...");
-        for (Vertex v : graph.getVertices()) {
-            if (v.getOutgoing().isEmpty() && v.getIncoming().isEmpty()) {
-                LOG.error("vertex {} has no edges", v);
+        List<Vertex> vertices = new ArrayList<Vertex>(graph.getVertices());
+        boolean coherent = !DataParallel.map(vertices, threads, this::isCoherent).contains(false);
+        LOG.info("edge lists and from/to members are {}coherent.", coherent ? "": "not ");
+    }
+
+    private boolean isCoherent(Vertex v) {
+        boolean coherent = true;
+        if (v.getOutgoing().isEmpty() && v.getIncoming().isEmpty()) {
+            LOG.error("vertex {} has no edges", v);
+            coherent = false;
+        }
+        for (Edge e : v.getOutgoing()) {
+            if (e.getFromVertex() != v) {
+                LOG.error("outgoing edge of {}: from vertex {} does not match", v, e);
                 coherent = false;
             }
-            for (Edge e : v.getOutgoing()) {
-                if (e.getFromVertex() != v) {
-                    LOG.error("outgoing edge of {}: from vertex {} does not match", v, e);
-                    coherent = false;
-                }
-                if (e.getToVertex() == null) {
-                    LOG.error("outgoing edge has no to vertex {}", e);
-                    coherent = false;
-                }
+            if (e.getToVertex() == null) {
+                LOG.error("outgoing edge has no to vertex {}", e);
+                coherent = false;
+            }
+        }
+        for (Edge e : v.getIncoming()) {
+            if (e.getFromVertex() == null) {
+                LOG.error("incoming edge has no from vertex {}", e);
+                coherent = false;
             }
-            for (Edge e : v.getIncoming()) {
-                if (e.getFromVertex() == null) {
-                    LOG.error("incoming edge has no from vertex {}", e);
-                    coherent = false;
-                }
-                if (e.getToVertex() != v) {
-                    LOG.error("incoming edge of {}: to vertex {} does not match", v, e);
-                    coherent = false;
-                }
+            if (e.getToVertex() != v) {
+                LOG.error("incoming edge of {}: to vertex {} does not match", v, e);
+                coherent = false;
             }
         }
-        LOG.info("edge lists and from/to members are {}coherent.", coherent ? "": "not ");
+        return coherent;
     }
 
     @Override
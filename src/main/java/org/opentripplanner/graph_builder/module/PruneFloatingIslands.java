@@ -14,7 +14,6 @@
 package org.opentripplanner.graph_builder.module;
 
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 
@@ -56,7 +55,8 @@ public class PruneFloatingIslands implements GraphBuilderModule {
     private StreetLinkerModule transitToStreetNetwork;
 
     public List<String> provides() {
-        return Collections.emptyList();
+        // Removes street edges and vertices
+        return Arrays.asList("streets");
     }
 
     public List<String> getPrerequisites() {
@@ -64,8 +64,9 @@ public class PruneFloatingIslands implements GraphBuilderModule {
          * the street linker did not run then it couldn't identifies island with stops.
          * so if the need is to distinguish between island with stops or without stops
          * as explained before this module should run after the streets and the linker modules.
+         * It also looks for stops on the islands, so it waits for transit to be loaded.
          */
-        return Arrays.asList("streets");
+        return Arrays.asList("streets", "transit");
     }
 
     @Override
@@ -33,14 +33,27 @@ public class StreetLinkerModule implements GraphBuilderModule {
 
     private static final Logger LOG = LoggerFactory.getLogger(StreetLinkerModule.class);
 
+    /** The number of threads searching for the streets closest to the vertices being linked. */
+    private final int threads;
+
+    public StreetLinkerModule() {
+        this(1);
+    }
+
+    public StreetLinkerModule(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
     public List<String> provides() {
-        return Arrays.asList("street to transit", "linking");
+        // Linking splits street edges, so this also modifies the streets.
+        return Arrays.asList("street to transit", "linking", "streets");
     }
 
     public List<String> getPrerequisites() {
-        return Arrays.asList("streets"); // don't include transit, because we also link P+Rs and bike rental stations,
-        // which you could have without transit. However, if you have transit, this module should be run after it
-        // is loaded.
+        // We also link P+Rs and bike rental stations, which you could have without transit. A prerequisite only orders
+        // this module after the modules providing it, so listing transit makes it wait for the stops to be loaded
+        // when there are any, and does not stop it from running without them.
+        return Arrays.asList("streets", "transit");
     }
 
     @Override
@@ -48,7 +61,7 @@ public class StreetLinkerModule implements GraphBuilderModule {
         if(graph.hasStreets) {
             LOG.info("Linking transit stops, bike rental stations, bike parking areas, and park-and-rides to graph . . .");
             SimpleStreetSplitter linker = new SimpleStreetSplitter(graph);
-            linker.link();
+            linker.link(threads);
         }
         //Calculates convex hull of a graph which is shown in routerInfo API point
         graph.calculateConvexHull();
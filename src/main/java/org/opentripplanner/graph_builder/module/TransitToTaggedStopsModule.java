@@ -41,11 +41,12 @@ public class TransitToTaggedStopsModule implements GraphBuilderModule {
     private double searchRadiusLat = SphericalDistanceLibrary.metersToDegrees(searchRadiusM);
 
     public List<String> provides() {
-        return Arrays.asList("street to transit", "linking");
+        // Links are added to the edge lists of street vertices, so this also modifies the streets.
+        return Arrays.asList("street to transit", "linking", "streets");
     }
 
     public List<String> getPrerequisites() {
-        return Arrays.asList("streets"); // why not "transit" ?
+        return Arrays.asList("streets", "transit");
     }
 
     @Override
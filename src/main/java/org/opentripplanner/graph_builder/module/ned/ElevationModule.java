@@ -17,12 +17,11 @@ import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Geometry;
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.coverage.grid.Interpolator2D;
-import org.geotools.geometry.DirectPosition2D;
 import org.opengis.coverage.Coverage;
-import org.opentripplanner.common.geometry.GeometryUtils;
 import org.opentripplanner.common.geometry.PackedCoordinateSequence;
 import org.opentripplanner.common.geometry.SphericalDistanceLibrary;
 import org.opentripplanner.common.pqueue.BinHeap;
+import org.opentripplanner.graph_builder.DataParallel;
 import org.opentripplanner.graph_builder.annotation.ElevationFlattened;
 import org.opentripplanner.graph_builder.module.extra_elevation_data.ElevationPoint;
 import org.opentripplanner.graph_builder.services.GraphBuilderModule;
@@ -38,10 +37,12 @@ import org.slf4j.LoggerFactory;
 import javax.media.jai.InterpolationBilinear;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * {@link org.opentripplanner.graph_builder.services.GraphBuilderModule} plugin that applies elevation data to street data that has already
@@ -52,6 +53,9 @@ import java.util.List;
  * where each (x,y) pair represents one sample, with the x-coord representing the distance along
  * the edge measured from the start, and the y-coord representing the sampled elevation at that
  * point (both in meters).
+ *
+ * The edges are grouped by the DEM tile they start in and sampled in parallel, from tiles decoded by an
+ * {@link ElevationTileCache}. The profiles are then set on the edges in graph order.
  */
 public class ElevationModule implements GraphBuilderModule {
 
@@ -59,11 +63,16 @@ public class ElevationModule implements GraphBuilderModule {
 
     private ElevationGridCoverageFactory gridCoverageFactory;
 
-    private Coverage coverage;
+    /** The number of DEM tiles kept decoded, about 256 kB each. */
+    private static final int MAXIMUM_TILES = 256;
+
+    private ElevationTileCache tileCache;
+
+    private int threads = 1;
 
     // Keep track of the proportion of elevation fetch operations that fail so we can issue warnings.
-    private int nPointsEvaluated = 0;
-    private int nPointsOutsideDEM = 0;
+    private final AtomicInteger nPointsEvaluated = new AtomicInteger();
+    private final AtomicInteger nPointsOutsideDEM = new AtomicInteger();
 
     /**
      * The distance between samples in meters. Defaults to 10m, the approximate resolution of 1/3
@@ -77,6 +86,11 @@ public class ElevationModule implements GraphBuilderModule {
         this.setGridCoverageFactory(factory);
     }
 
+    public ElevationModule(ElevationGridCoverageFactory factory, int threads) {
+        this.setGridCoverageFactory(factory);
+        this.threads = threads;
+    }
+
     public List<String> provides() {
         return Arrays.asList("elevation");
     }
@@ -101,35 +115,57 @@ public class ElevationModule implements GraphBuilderModule {
         // If gridCov is a GridCoverage2D, apply a bilinear interpolator. Otherwise, just use the
         // coverage as is (note: UnifiedGridCoverages created by NEDGridCoverageFactoryImpl handle
         // interpolation internally)
-        coverage = (gridCov instanceof GridCoverage2D) ? Interpolator2D.create(
+        Coverage coverage = (gridCov instanceof GridCoverage2D) ? Interpolator2D.create(
                 (GridCoverage2D) gridCov, new InterpolationBilinear()) : gridCov;
+        tileCache = new ElevationTileCache(coverage, MAXIMUM_TILES);
         log.info("Setting street elevation profiles from digital elevation model...");
-        List<StreetEdge> edgesWithElevation = new ArrayList<StreetEdge>();
-        int nProcessed = 0;
-        int nTotal = graph.countEdges();
+        List<StreetWithElevationEdge> edges = new ArrayList<StreetWithElevationEdge>();
         for (Vertex gv : graph.getVertices()) {
             for (Edge ee : gv.getOutgoing()) {
                 if (ee instanceof StreetWithElevationEdge) {
-                    StreetWithElevationEdge edgeWithElevation = (StreetWithElevationEdge) ee;
-                    processEdge(graph, edgeWithElevation);
-                    if (edgeWithElevation.getElevationProfile() != null && !edgeWithElevation.isElevationFlattened()) {
-                        edgesWithElevation.add(edgeWithElevation);
-                    }
-                    nProcessed += 1;
-                    if (nProcessed % 50000 == 0) {
-                        log.info("set elevation on {}/{} edges", nProcessed, nTotal);
-                        double failurePercentage = nPointsOutsideDEM / nPointsEvaluated * 100;
-                        if (failurePercentage > 50) {
-                            log.warn("Fetching elevation failed at {}/{} points ({}%)",
-                                    nPointsOutsideDEM, nPointsEvaluated, failurePercentage);
-                            log.warn("Elevation is missing at a large number of points. DEM may be for the wrong region. " +
-                                    "If it is unprojected, perhaps the axes are not in (longitude, latitude) order.");
-                        }
-                    }
+                    edges.add((StreetWithElevationEdge) ee);
                 }
             }
         }
 
+        // Sample the edges grouped by the tile they start in, so each tile is decoded as few times as possible.
+        List<Integer> order = new ArrayList<Integer>(edges.size());
+        long[] tileKeys = new long[edges.size()];
+        for (int i = 0; i < edges.size(); i++) {
+            Coordinate start = edges.get(i).getGeometry().getCoordinateN(0);
+            tileKeys[i] = tileCache.getTileKey(start.x, start.y);
+            order.add(i);
+        }
+        order.sort(Comparator.comparingLong(i -> tileKeys[i]));
+        AtomicInteger nSampled = new AtomicInteger();
+        int nTotal = edges.size();
+        List<PackedCoordinateSequence> sampled = DataParallel.map(order, threads, i -> {
+            PackedCoordinateSequence profile = sampleEdge(edges.get(i));
+            int n = nSampled.incrementAndGet();
+            if (n % 50000 == 0) {
+                log.info("sampled elevation on {}/{} edges", n, nTotal);
+                logFailures();
+            }
+            return profile;
+        });
+        PackedCoordinateSequence[] profiles = new PackedCoordinateSequence[edges.size()];
+        for (int i = 0; i < order.size(); i++) {
+            profiles[order.get(i)] = sampled.get(i);
+        }
+        logFailures();
+
+        List<StreetEdge> edgesWithElevation = new ArrayList<StreetEdge>();
+        for (int i = 0; i < edges.size(); i++) {
+            StreetWithElevationEdge edgeWithElevation = edges.get(i);
+            if (profiles[i] != null && edgeWithElevation.setElevationProfile(profiles[i], false)) {
+                log.trace(graph.addBuilderAnnotation(new ElevationFlattened(edgeWithElevation)));
+            }
+            if (edgeWithElevation.getElevationProfile() != null && !edgeWithElevation.isElevationFlattened()) {
+                edgesWithElevation.add(edgeWithElevation);
+            }
+        }
+        tileCache = null;
+
         @SuppressWarnings("unchecked")
         HashMap<Vertex, Double> extraElevation = (HashMap<Vertex, Double>) extra.get(ElevationPoint.class);
         assignMissingElevations(graph, edgesWithElevation, extraElevation);
@@ -330,15 +366,27 @@ public class ElevationModule implements GraphBuilderModule {
         }
     }
 
+    private void logFailures() {
+        int nEvaluated = nPointsEvaluated.get();
+        int nOutside = nPointsOutsideDEM.get();
+        double failurePercentage = nEvaluated == 0 ? 0 : nOutside * 100.0 / nEvaluated;
+        if (failurePercentage > 50) {
+            log.warn("Fetching elevation failed at {}/{} points ({}%)", nOutside, nEvaluated, failurePercentage);
+            log.warn("Elevation is missing at a large number of points. DEM may be for the wrong region. " +
+                    "If it is unprojected, perhaps the axes are not in (longitude, latitude) order.");
+        }
+    }
+
     /**
-     * Processes a single street edge, creating and assigning the elevation profile.
+     * Samples the elevation along a single street edge. This only reads the edge, so it can be called by several
+     * threads at once.
      * 
      * @param ee the street edge
-     * @param graph the graph (used only for error handling)
+     * @return the elevation profile of the edge, or null if it already has one.
      */
-    private void processEdge(Graph graph, StreetWithElevationEdge ee) {
+    private PackedCoordinateSequence sampleEdge(StreetWithElevationEdge ee) {
         if (ee.getElevationProfile() != null) {
-            return; /* already set up */
+            return null; /* already set up */
         }
         Geometry g = ee.getGeometry();
         Coordinate[] coords = g.getCoordinates();
@@ -371,12 +419,7 @@ public class ElevationModule implements GraphBuilderModule {
 
         // construct the PCS
         Coordinate coordArr[] = new Coordinate[coordList.size()];
-        PackedCoordinateSequence elevPCS = new PackedCoordinateSequence.Double(
-                coordList.toArray(coordArr));
-
-        if(ee.setElevationProfile(elevPCS, false)) {
-            log.trace(graph.addBuilderAnnotation(new ElevationFlattened(ee)));
-        }
+        return new PackedCoordinateSequence.Double(coordList.toArray(coordArr));
     }
 
     /**
@@ -442,19 +485,14 @@ public class ElevationModule implements GraphBuilderModule {
      * @return elevation in meters
      */
     private double getElevation(double x, double y) {
-        double values[] = new double[1];
+        double elevation = 0;
         try {
-            // We specify a CRS here because otherwise the coordinates are assumed to be in the coverage's native CRS.
-            // That assumption is fine when the coverage happens to be in longitude-first WGS84 but we want to support
-            // GeoTIFFs in various projections. Note that GeoTools defaults to strict EPSG axis ordering of (lat, long)
-            // for DefaultGeographicCRS.WGS84, but OTP is using (long, lat) throughout and assumes unprojected DEM
-            // rasters to also use (long, lat).
-            coverage.evaluate(new DirectPosition2D(GeometryUtils.WGS84_XY, x, y), values);
+            elevation = tileCache.getElevation(x, y);
         } catch (org.opengis.coverage.PointOutsideCoverageException e) {
-            nPointsOutsideDEM += 1;
+            nPointsOutsideDEM.incrementAndGet();
         }
-        nPointsEvaluated += 1;
-        return values[0];
+        nPointsEvaluated.incrementAndGet();
+        return elevation;
     }
 
     @Override
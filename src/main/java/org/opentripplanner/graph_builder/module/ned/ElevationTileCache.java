@@ -0,0 +1,252 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.graph_builder.module.ned;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.geometry.DirectPosition2D;
+import org.geotools.referencing.CRS;
+import org.geotools.referencing.operation.transform.ConcatenatedTransform;
+import org.opengis.coverage.Coverage;
+import org.opengis.metadata.spatial.PixelOrientation;
+import org.opengis.referencing.FactoryException;
+import org.opengis.referencing.operation.MathTransform;
+import org.opengis.referencing.operation.TransformException;
+import org.opentripplanner.common.geometry.GeometryUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.Rectangle;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Samples an elevation coverage from square tiles of its rasters, each decoded once into a float array and kept in a
+ * least recently used cache. Between raster cells the elevation is interpolated bilinearly, in the same way as the
+ * GeoTools bilinear interpolator. Points the tiles cannot answer (on the outer row of cells of a raster, or in a
+ * coverage that is not made of rasters) are evaluated by the coverage itself, one at a time.
+ *
+ * Unlike the GeoTools coverages, this can be used by several threads at once.
+ */
+public class ElevationTileCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ElevationTileCache.class);
+
+    /** The width and height of a tile in raster cells. */
+    public static final int TILE_SIZE = 256;
+
+    private final Coverage coverage;
+
+    private final List<Grid> grids = new ArrayList<Grid>();
+
+    /* The NAVD88 to NAD83 corrections of a UnifiedGridCoverage, null for other coverages. */
+    private final List<VerticalDatum> datums;
+
+    private final LoadingCache<Long, Tile> tiles;
+
+    public ElevationTileCache(Coverage coverage, int maximumTiles) {
+        this.coverage = coverage;
+        if (coverage instanceof UnifiedGridCoverage) {
+            UnifiedGridCoverage unified = (UnifiedGridCoverage) coverage;
+            for (Coverage region : unified.getRegions()) {
+                if (!addGrid(region)) break;
+            }
+            datums = unified.getDatums();
+        } else {
+            addGrid(coverage);
+            datums = null;
+        }
+        tiles = CacheBuilder.newBuilder().maximumSize(maximumTiles).build(new CacheLoader<Long, Tile>() {
+            @Override
+            public Tile load(Long key) {
+                return decode(key);
+            }
+        });
+    }
+
+    /**
+     * Add a raster searched after the ones already added. When it is not a raster, no raster is used at all so that
+     * the coverages are still searched in their original order.
+     */
+    private boolean addGrid(Coverage region) {
+        if (!(region instanceof GridCoverage2D)) {
+            LOG.info("Elevation coverage {} is not a raster, it will not be cached.", region.getClass().getSimpleName());
+            grids.clear();
+            return false;
+        }
+        try {
+            grids.add(new Grid((GridCoverage2D) region));
+            return true;
+        } catch (FactoryException e) {
+            LOG.warn("Cannot transform coordinates to the elevation raster CRS, it will not be cached.", e);
+            grids.clear();
+            return false;
+        }
+    }
+
+    /**
+     * @param x the query longitude (NAD83)
+     * @param y the query latitude (NAD83)
+     * @return elevation in meters
+     * @throws org.opengis.coverage.PointOutsideCoverageException when the coverage does not contain the point.
+     */
+    public double getElevation(double x, double y) {
+        double[] pixel = new double[2];
+        for (int g = 0; g < grids.size(); g++) {
+            Grid grid = grids.get(g);
+            if (!grid.toPixel(x, y, pixel)) break;
+            if (!grid.contains(pixel[0], pixel[1])) continue;
+            // Interpolate between the centers of the cells.
+            double px = pixel[0] - 0.5;
+            double py = pixel[1] - 0.5;
+            int ix = (int) Math.floor(px);
+            int iy = (int) Math.floor(py);
+            if (ix < grid.minX || iy < grid.minY || ix + 1 >= grid.maxX || iy + 1 >= grid.maxY) break;
+            Tile tile = tiles.getUnchecked(key(g, (ix - grid.minX) / TILE_SIZE, (iy - grid.minY) / TILE_SIZE));
+            return tile.interpolate(ix, iy, (float) (px - ix), (float) (py - iy)) + getDatumCorrection(x, y);
+        }
+        return evaluate(x, y);
+    }
+
+    /**
+     * @return an identifier of the tile containing the point, such that nearby points have nearby identifiers, or
+     *         Long.MAX_VALUE if no tile contains the point.
+     */
+    public long getTileKey(double x, double y) {
+        double[] pixel = new double[2];
+        for (int g = 0; g < grids.size(); g++) {
+            Grid grid = grids.get(g);
+            if (!grid.toPixel(x, y, pixel)) break;
+            if (!grid.contains(pixel[0], pixel[1])) continue;
+            int ix = (int) Math.floor(pixel[0]) - grid.minX;
+            int iy = (int) Math.floor(pixel[1]) - grid.minY;
+            return key(g, ix / TILE_SIZE, iy / TILE_SIZE);
+        }
+        return Long.MAX_VALUE;
+    }
+
+    private static long key(int grid, int tileX, int tileY) {
+        return ((long) grid << 48) | ((long) tileY << 24) | tileX;
+    }
+
+    private double getDatumCorrection(double x, double y) {
+        if (datums == null) return 0;
+        for (VerticalDatum datum : datums) {
+            if (datum.covers(x, y)) {
+                return datum.interpolatedHeight(x, y);
+            }
+        }
+        LOG.error("Failed to convert elevation at " + y + ", " + x + " from NAVD88 to NAD83");
+        return 0;
+    }
+
+    /* Evaluate the point with the coverage, which is not thread-safe. */
+    private double evaluate(double x, double y) {
+        double values[] = new double[1];
+        synchronized (coverage) {
+            // We specify a CRS here because otherwise the coordinates are assumed to be in the coverage's native CRS.
+            // That assumption is fine when the coverage happens to be in longitude-first WGS84 but we want to support
+            // GeoTIFFs in various projections. Note that GeoTools defaults to strict EPSG axis ordering of (lat, long)
+            // for DefaultGeographicCRS.WGS84, but OTP is using (long, lat) throughout and assumes unprojected DEM
+            // rasters to also use (long, lat).
+            coverage.evaluate(new DirectPosition2D(GeometryUtils.WGS84_XY, x, y), values);
+        }
+        return values[0];
+    }
+
+    private Tile decode(long key) {
+        Grid grid = grids.get((int) (key >>> 48));
+        int tileX = (int) (key & 0xFFFFFF);
+        int tileY = (int) ((key >>> 24) & 0xFFFFFF);
+        // Tiles overlap by one cell, so that the four cells around any point are in the same tile.
+        Rectangle bounds = new Rectangle(grid.minX + tileX * TILE_SIZE, grid.minY + tileY * TILE_SIZE,
+                TILE_SIZE + 1, TILE_SIZE + 1).intersection(
+                new Rectangle(grid.minX, grid.minY, grid.maxX - grid.minX, grid.maxY - grid.minY));
+        Raster raster;
+        synchronized (grid.image) {
+            raster = grid.image.getData(bounds);
+        }
+        float[] cells = raster.getSamples(bounds.x, bounds.y, bounds.width, bounds.height, 0, (float[]) null);
+        return new Tile(bounds.x, bounds.y, bounds.width, cells);
+    }
+
+    /** A raster of a coverage, and the transform from WGS84 coordinates to its cells. */
+    private static class Grid {
+
+        final RenderedImage image;
+
+        /* From longitude-first WGS84 to raster coordinates, with whole numbers at the upper left corner of cells. */
+        final MathTransform toGrid;
+
+        final int minX, minY, maxX, maxY;
+
+        Grid(GridCoverage2D coverage) throws FactoryException {
+            image = coverage.getRenderedImage();
+            MathTransform toCoverage = CRS.findMathTransform(GeometryUtils.WGS84_XY,
+                    coverage.getCoordinateReferenceSystem2D(), true);
+            toGrid = ConcatenatedTransform.create(toCoverage,
+                    coverage.getGridGeometry().getCRSToGrid2D(PixelOrientation.UPPER_LEFT));
+            minX = image.getMinX();
+            minY = image.getMinY();
+            maxX = minX + image.getWidth();
+            maxY = minY + image.getHeight();
+        }
+
+        boolean toPixel(double x, double y, double[] pixel) {
+            pixel[0] = x;
+            pixel[1] = y;
+            try {
+                toGrid.transform(pixel, 0, pixel, 0, 1);
+                return true;
+            } catch (TransformException e) {
+                return false;
+            }
+        }
+
+        boolean contains(double px, double py) {
+            return px >= minX && py >= minY && px <= maxX && py <= maxY;
+        }
+    }
+
+    /** The decoded cells of a tile, in rows. */
+    private static class Tile {
+
+        final int minX, minY, width;
+
+        final float[] cells;
+
+        Tile(int minX, int minY, int width, float[] cells) {
+            this.minX = minX;
+            this.minY = minY;
+            this.width = width;
+            this.cells = cells;
+        }
+
+        /* The same arithmetic as the JAI InterpolationBilinear used by the GeoTools interpolator. */
+        double interpolate(int ix, int iy, float xfrac, float yfrac) {
+            int i = (iy - minY) * width + ix - minX;
+            double s00 = cells[i];
+            double s01 = cells[i + 1];
+            double s10 = cells[i + width];
+            double s11 = cells[i + width + 1];
+            double s0 = (s01 - s00) * xfrac + s00;
+            double s1 = (s11 - s10) * xfrac + s10;
+            return (s1 - s0) * yfrac + s0;
+        }
+    }
+}
@@ -111,4 +111,14 @@ public class UnifiedGridCoverage extends AbstractCoverage {
         regions.add(regionCoverage);
     }
 
+    /** @return the sub-coverages, in the order they are searched. */
+    public List<Coverage> getRegions() {
+        return regions;
+    }
+
+    /** @return the vertical datums used to convert the sub-coverage elevations from NAVD88 to NAD83. */
+    public List<VerticalDatum> getDatums() {
+        return datums;
+    }
+
 }
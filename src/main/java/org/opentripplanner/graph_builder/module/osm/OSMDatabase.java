@@ -17,6 +17,11 @@ import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Multimap;
 import com.vividsolutions.jts.geom.*;
+import gnu.trove.list.TLongList;
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
 import org.opentripplanner.common.RepeatingTimePeriod;
 import org.opentripplanner.common.TurnRestrictionType;
 import org.opentripplanner.common.geometry.GeometryUtils;
@@ -30,33 +35,36 @@ import org.opentripplanner.openstreetmap.services.OpenStreetMapContentHandler;
 import org.opentripplanner.routing.core.TraverseMode;
 import org.opentripplanner.routing.core.TraverseModeSet;
 import org.opentripplanner.routing.edgetype.StreetTraversalPermission;
-import org.opentripplanner.util.MapUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
 
+/**
+ * Stores the OSM entities needed to build the street graph. Entities are keyed by their OSM ID in primitive long maps
+ * and sets, so large extracts do not pay for a boxed Long and a hash map entry for every node and way kept.
+ */
 public class OSMDatabase implements OpenStreetMapContentHandler {
 
     private static Logger LOG = LoggerFactory.getLogger(OSMDatabase.class);
 
     /* Map of all nodes used in ways/areas keyed by their OSM ID */
-    private Map<Long, OSMNode> nodesById = new HashMap<Long, OSMNode>();
+    private TLongObjectMap<OSMNode> nodesById = new TLongObjectHashMap<OSMNode>();
 
     /* Map of all bike-rental nodes, keyed by their OSM ID */
-    private Map<Long, OSMNode> bikeRentalNodes = new HashMap<Long, OSMNode>();
+    private TLongObjectMap<OSMNode> bikeRentalNodes = new TLongObjectHashMap<OSMNode>();
 
     /* Map of all bike parking nodes, keyed by their OSM ID */
-    private Map<Long, OSMNode> bikeParkingNodes = new HashMap<Long, OSMNode>();
+    private TLongObjectMap<OSMNode> bikeParkingNodes = new TLongObjectHashMap<OSMNode>();
 
     /* Map of all non-area ways keyed by their OSM ID */
-    private Map<Long, OSMWay> waysById = new HashMap<Long, OSMWay>();
+    private TLongObjectMap<OSMWay> waysById = new TLongObjectHashMap<OSMWay>();
 
     /* Map of all area ways keyed by their OSM ID */
-    private Map<Long, OSMWay> areaWaysById = new HashMap<Long, OSMWay>();
+    private TLongObjectMap<OSMWay> areaWaysById = new TLongObjectHashMap<OSMWay>();
 
     /* Map of all relations keyed by their OSM ID */
-    private Map<Long, OSMRelation> relationsById = new HashMap<Long, OSMRelation>();
+    private TLongObjectMap<OSMRelation> relationsById = new TLongObjectHashMap<OSMRelation>();
 
     /* All walkable areas */
     private List<Area> walkableAreas = new ArrayList<Area>();
@@ -68,7 +76,7 @@ public class OSMDatabase implements OpenStreetMapContentHandler {
     private List<Area> bikeParkingAreas = new ArrayList<Area>();
 
     /* Map of all area OSMWay for a given node */
-    private Map<Long, Set<OSMWay>> areasForNode = new HashMap<Long, Set<OSMWay>>();
+    private TLongObjectMap<Set<OSMWay>> areasForNode = new TLongObjectHashMap<Set<OSMWay>>();
 
     /* Map of all area OSMWay for a given node */
     private List<OSMWay> singleWayAreas = new ArrayList<OSMWay>();
@@ -76,13 +84,13 @@ public class OSMDatabase implements OpenStreetMapContentHandler {
     private Set<OSMWithTags> processedAreas = new HashSet<OSMWithTags>();
 
     /* Set of area way IDs */
-    private Set<Long> areaWayIds = new HashSet<Long>();
+    private TLongSet areaWayIds = new TLongHashSet();
 
     /* Set of all node IDs of kept ways. Needed to mark which nodes to keep in stage 3. */
-    private Set<Long> waysNodeIds = new HashSet<Long>();
+    private TLongSet waysNodeIds = new TLongHashSet();
 
     /* Set of all node IDs of kept areas. Needed to mark which nodes to keep in stage 3. */
-    private Set<Long> areaNodeIds = new HashSet<Long>();
+    private TLongSet areaNodeIds = new TLongHashSet();
 
     /* Track which vertical level each OSM way belongs to, for building elevators etc. */
     private Map<OSMWithTags, OSMLevel> wayLevels = new HashMap<OSMWithTags, OSMLevel>();
@@ -100,6 +108,12 @@ public class OSMDatabase implements OpenStreetMapContentHandler {
      */
     private Map<OSMWithTags, Set<OSMNode>> stopsInAreas = new HashMap<OSMWithTags, Set<OSMNode>>();
 
+    /*
+     * The tag strings of the entities kept, so that each is stored once however many entities use it. Parsers that
+     * already share strings (as BinaryOpenStreetMapParser does) find most of them here already.
+     */
+    private Map<String, String> tagDictionary = new HashMap<String, String>();
+
     /* List of graph annotations registered during building, to add to the graph. */
     private List<GraphBuilderAnnotation> annotations = new ArrayList<>();
 
@@ -120,15 +134,15 @@ public class OSMDatabase implements OpenStreetMapContentHandler {
     }
 
     public Collection<OSMWay> getWays() {
-        return Collections.unmodifiableCollection(waysById.values());
+        return Collections.unmodifiableCollection(waysById.valueCollection());
     }
 
     public Collection<OSMNode> getBikeRentalNodes() {
-        return Collections.unmodifiableCollection(bikeRentalNodes.values());
+        return Collections.unmodifiableCollection(bikeRentalNodes.valueCollection());
     }
 
     public Collection<OSMNode> getBikeParkingNodes() {
-        return Collections.unmodifiableCollection(bikeParkingNodes.values());
+        return Collections.unmodifiableCollection(bikeParkingNodes.valueCollection());
     }
 
     public Collection<Area> getWalkableAreas() {
@@ -182,10 +196,12 @@ public class OSMDatabase implements OpenStreetMapContentHandler {
     @Override
     public void addNode(OSMNode node) {
         if (node.isBikeRental()) {
+            node.internTags(tagDictionary);
             bikeRentalNodes.put(node.getId(), node);
             return;
         }
         if (node.isBikeParking()) {
+            node.internTags(tagDictionary);
             bikeParkingNodes.put(node.getId(), node);
             return;
         }
@@ -196,6 +212,7 @@ public class OSMDatabase implements OpenStreetMapContentHandler {
         if (nodesById.containsKey(node.getId()))
             return;
 
+        node.internTags(tagDictionary);
         nodesById.put(node.getId(), node);
 
         if (nodesById.size() % 100000 == 0)
@@ -209,12 +226,17 @@ public class OSMDatabase implements OpenStreetMapContentHandler {
         if (waysById.containsKey(wayId) || areaWaysById.containsKey(wayId))
             return;
 
+        boolean routable = OSMFilter.isWayRoutable(way) || way.isParkAndRide() || way.isBikeParking();
+        if (routable || areaWayIds.contains(wayId)) {
+            way.internTags(tagDictionary);
+        }
+
         if (areaWayIds.contains(wayId)) {
             areaWaysById.put(wayId, way);
         }
 
         /* filter out ways that are not relevant for routing */
-        if (!(OSMFilter.isWayRoutable(way) || way.isParkAndRide() || way.isBikeParking())) {
+        if (!routable) {
             return;
         }
 
@@ -222,15 +244,16 @@ public class OSMDatabase implements OpenStreetMapContentHandler {
 
         /* An area can be specified as such, or be one by default as an amenity */
         if ((way.isTag("area", "yes") || way.isTag("amenity", "parking") || way.isTag("amenity",
-                "bicycle_parking")) && way.getNodeRefs().size() > 2) {
+                "bicycle_parking")) && way.getNodeRefIds().size() > 2) {
             // this is an area that's a simple polygon. So we can just add it straight
             // to the areas, if it's not part of a relation.
             if (!areaWayIds.contains(wayId)) {
                 singleWayAreas.add(way);
                 areaWaysById.put(wayId, way);
                 areaWayIds.add(wayId);
-                for (Long node : way.getNodeRefs()) {
-                    MapUtils.addToMapSet(areasForNode, node, way);
+                TLongList nodeRefs = way.getNodeRefIds();
+                for (int i = 0; i < nodeRefs.size(); i++) {
+                    addAreaForNode(nodeRefs.get(i), way);
                 }
             }
             return;
@@ -270,6 +293,7 @@ public class OSMDatabase implements OpenStreetMapContentHandler {
             return;
         }
 
+        relation.internTags(tagDictionary);
         relationsById.put(relation.getId(), relation);
 
         if (relationsById.size() % 100 == 0)
@@ -293,8 +317,8 @@ public class OSMDatabase implements OpenStreetMapContentHandler {
         // only 2 steps -- ways+relations, followed by used nodes.
         // Ways can be tag-filtered in phase 1.
 
-        markNodesForKeeping(waysById.values(), waysNodeIds);
-        markNodesForKeeping(areaWaysById.values(), areaNodeIds);
+        markNodesForKeeping(waysById.valueCollection(), waysNodeIds);
+        markNodesForKeeping(areaWaysById.valueCollection(), areaNodeIds);
     }
 
     /**
@@ -368,13 +392,15 @@ public class OSMDatabase implements OpenStreetMapContentHandler {
 
         // For each way, intersect with areas
         int nCreatedNodes = 0;
-        for (OSMWay way : waysById.values()) {
+        for (OSMWay way : waysById.valueCollection()) {
             OSMLevel wayLevel = getLevelForWay(way);
 
             // For each segment of the way
-            for (int i = 0; i < way.getNodeRefs().size() - 1; i++) {                
-                OSMNode nA = nodesById.get(way.getNodeRefs().get(i));
-                OSMNode nB = nodesById.get(way.getNodeRefs().get(i + 1));
+            // Nodes are inserted into the way below, so its size is read on every iteration.
+            TLongList nodeRefs = way.getNodeRefIds();
+            for (int i = 0; i < nodeRefs.size() - 1; i++) {
+                OSMNode nA = nodesById.get(nodeRefs.get(i));
+                OSMNode nB = nodesById.get(nodeRefs.get(i + 1));
                 if (nA == null || nB == null) {
                     continue;
                 }
@@ -459,7 +485,7 @@ public class OSMDatabase implements OpenStreetMapContentHandler {
                     	
                     	// don't insert the same node twice. This is not always safe; suppose a way crosses over the same node in the parking area twice.
                     	// but we assume it doesn't (and even if it does, it's not a huge deal, as it is still connected elsewhere on the same way).
-                    	if (way.getNodeRefs().contains(ringSegment.nA.getId()))
+                    	if (nodeRefs.contains(ringSegment.nA.getId()))
                     		continue;
                     	
                     	way.addNodeRef(ringSegment.nA.getId(), i + 1);
@@ -476,7 +502,7 @@ public class OSMDatabase implements OpenStreetMapContentHandler {
                     else if (checkIntersectionDistance(p, ringSegment.nB, epsilon)) {
                     	// insert node B into the road, if it's not already there
                     	
-                    	if (way.getNodeRefs().contains(ringSegment.nB.getId()))
+                    	if (nodeRefs.contains(ringSegment.nB.getId()))
                     		continue;
                     	
                     	way.addNodeRef(ringSegment.nB.getId(), i + 1);
@@ -581,17 +607,27 @@ public class OSMDatabase implements OpenStreetMapContentHandler {
         }
     }
 
-    private void markNodesForKeeping(Collection<OSMWay> osmWays, Set<Long> nodeSet) {
+    private void markNodesForKeeping(Collection<OSMWay> osmWays, TLongSet nodeSet) {
         for (Iterator<OSMWay> it = osmWays.iterator(); it.hasNext();) {
             OSMWay way = it.next();
             // Since the way is kept, update nodes-with-neighbors
-            List<Long> nodes = way.getNodeRefs();
+            TLongList nodes = way.getNodeRefIds();
             if (nodes.size() > 1) {
                 nodeSet.addAll(nodes);
             }
         }
     }
 
+    private void addAreaForNode(long nodeId, OSMWay way) {
+        Set<OSMWay> areas = areasForNode.get(nodeId);
+        if (areas == null) {
+            // Most nodes belong to a single area.
+            areas = new HashSet<OSMWay>(2);
+            areasForNode.put(nodeId, areas);
+        }
+        areas.add(way);
+    }
+
     /**
      * Create areas from single ways.
      */
@@ -600,8 +636,9 @@ public class OSMDatabase implements OpenStreetMapContentHandler {
             if (processedAreas.contains(way)) {
                 continue;
             }
-            for (Long nodeRef : way.getNodeRefs()) {
-                if (!nodesById.containsKey(nodeRef)) {
+            TLongList nodeRefs = way.getNodeRefIds();
+            for (int i = 0; i < nodeRefs.size(); i++) {
+                if (!nodesById.containsKey(nodeRefs.get(i))) {
                     continue AREA;
                 }
             }
@@ -625,7 +662,7 @@ public class OSMDatabase implements OpenStreetMapContentHandler {
      * the used ways.
      */
     private void processMultipolygonRelations() {
-        RELATION: for (OSMRelation relation : relationsById.values()) {
+        RELATION: for (OSMRelation relation : relationsById.valueCollection()) {
             if (processedAreas.contains(relation)) {
                 continue;
             }
@@ -643,13 +680,15 @@ public class OSMDatabase implements OpenStreetMapContentHandler {
                     // relation includes way which does not exist in the data. Skip.
                     continue RELATION;
                 }
-                for (Long nodeId : way.getNodeRefs()) {
+                TLongList nodeRefs = way.getNodeRefIds();
+                for (int i = 0; i < nodeRefs.size(); i++) {
+                    long nodeId = nodeRefs.get(i);
                     if (!nodesById.containsKey(nodeId)) {
                         // this area is missing some nodes, perhaps because it is on
                         // the edge of the region, so we will simply not route on it.
                         continue RELATION;
                     }
-                    MapUtils.addToMapSet(areasForNode, nodeId, way);
+                    addAreaForNode(nodeId, way);
                 }
                 if (role.equals("inner")) {
                     innerWays.add(way);
@@ -720,7 +759,7 @@ public class OSMDatabase implements OpenStreetMapContentHandler {
     private void processRelations() {
         LOG.debug("Processing relations...");
 
-        for (OSMRelation relation : relationsById.values()) {
+        for (OSMRelation relation : relationsById.valueCollection()) {
             if (relation.isTag("type", "restriction")) {
                 processRestriction(relation);
             } else if (relation.isTag("type", "level_map")) {
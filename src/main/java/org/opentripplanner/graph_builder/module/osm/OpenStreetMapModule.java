@@ -18,6 +18,7 @@ import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.LineString;
+import gnu.trove.list.TLongList;
 import org.opentripplanner.common.TurnRestriction;
 import org.opentripplanner.common.geometry.GeometryUtils;
 import org.opentripplanner.common.geometry.SphericalDistanceLibrary;
@@ -536,11 +537,13 @@ public class OpenStreetMapModule implements GraphBuilderModule {
 
                 // handle duplicate nodes in OSM ways
                 // this is a workaround for crappy OSM data quality
-                ArrayList<Long> nodes = new ArrayList<Long>(way.getNodeRefs().size());
+                TLongList nodeRefs = way.getNodeRefIds();
+                ArrayList<Long> nodes = new ArrayList<Long>(nodeRefs.size());
                 long last = -1;
                 double lastLat = -1, lastLon = -1;
                 String lastLevel = null;
-                for (long nodeId : way.getNodeRefs()) {
+                for (int n = 0; n < nodeRefs.size(); n++) {
+                    long nodeId = nodeRefs.get(n);
                     OSMNode node = osmdb.getNode(nodeId);
                     if (node == null)
                         continue WAY;
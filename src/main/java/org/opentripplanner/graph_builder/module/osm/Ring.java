@@ -16,13 +16,14 @@ package org.opentripplanner.graph_builder.module.osm;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 
 import org.opentripplanner.common.geometry.GeometryUtils;
 import org.opentripplanner.openstreetmap.model.OSMNode;
 import org.opentripplanner.visibility.VLPoint;
 import org.opentripplanner.visibility.VLPolygon;
 
+import gnu.trove.map.TLongObjectMap;
+
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.GeometryFactory;
@@ -62,7 +63,7 @@ public class Ring {
         geometry = new VLPolygon(vertices);
     }
 
-    public Ring(List<Long> osmNodes, Map<Long, OSMNode> _nodes) {
+    public Ring(List<Long> osmNodes, TLongObjectMap<OSMNode> _nodes) {
         ArrayList<VLPoint> vertices = new ArrayList<VLPoint>();
         nodes = new ArrayList<OSMNode>(osmNodes.size());
         for (long nodeId : osmNodes) {
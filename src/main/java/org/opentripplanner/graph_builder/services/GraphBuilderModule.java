@@ -13,6 +13,7 @@
 
 package org.opentripplanner.graph_builder.services;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 
@@ -27,4 +28,18 @@ public interface GraphBuilderModule {
     /** Check that all inputs to the graphbuilder are valid; throw an exception if not. */
     public void checkInputs();
 
+    /**
+     * A set of ids which identifies what stages this graph builder provides (i.e. streets, elevation, transit).
+     * A module that modifies elements of a stage should list it here, even if another module created them.
+     * A module that neither provides nor requires anything is never run at the same time as another module.
+     */
+    default List<String> provides() {
+        return Collections.emptyList();
+    }
+
+    /** A list of ids of stages which must be provided before this stage */
+    default List<String> getPrerequisites() {
+        return Collections.emptyList();
+    }
+
 }
@@ -51,6 +51,7 @@ import org.opentripplanner.util.model.EncodedPolylineBean;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.PreDestroy;
 import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
@@ -86,15 +87,22 @@ public class IndexAPI {
     /** Include GTFS entities referenced by ID in the result. */
     @QueryParam("refs") private boolean refs = false;
 
+    private final Router router;
     private final GraphIndex index;
     private final StreetVertexIndexService streetIndex;
 
     public IndexAPI (@Context OTPServer otpServer, @PathParam("routerId") String routerId) {
-        Router router = otpServer.getRouter(routerId);
+        router = otpServer.acquireRouter(routerId);
         index = router.graph.index;
         streetIndex = router.graph.streetIndex;
     }
 
+    /** Called by Jersey at the end of the request, for which a new instance of this resource is made. */
+    @PreDestroy
+    public void releaseRouter () {
+        router.release();
+    }
+
    /* Needed to check whether query parameter map is empty, rather than chaining " && x == null"s */
    @Context UriInfo uriInfo;
 
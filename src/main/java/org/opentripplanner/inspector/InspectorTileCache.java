@@ -0,0 +1,305 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.inspector;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.imageio.ImageIO;
+
+import org.apache.commons.io.FileUtils;
+import org.opentripplanner.analyst.core.SlippyTile;
+import org.opentripplanner.analyst.request.TileRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * A cache of the PNG images of inspector tiles, so that layers left open in a browser do not cost a rendering for
+ * every pan and zoom. The most recently used tiles are kept in memory, and all tiles can also be stored on disk.
+ *
+ * A cache belongs to the TileRendererManager of one graph, so a reloaded graph starts with an empty memory cache. On
+ * disk, tiles are stored under the router ID and the build time of the graph, as layer/z/x/y.png, so that the tiles of
+ * a previous build are never served. Their directories are removed by removePreviousBuilds once the router of the
+ * previous build has shut down, as it may still be serving and storing tiles while the new graph is warmed up. A cache
+ * that has been shut down no longer stores tiles.
+ *
+ * Tile coordinates come from URLs, so they are checked before anything is rendered or stored. Only tiles up to
+ * MAX_DISK_ZOOM are stored on disk, as there are too many at higher zoom levels to be worth keeping, and storing
+ * stops once the tiles on disk reach their size limit. Tiles that are not stored are still kept in memory.
+ *
+ * @see TileRendererManager
+ */
+public class InspectorTileCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(InspectorTileCache.class);
+
+    public static final int DEFAULT_CACHE_MB = 64;
+
+    public static final int DEFAULT_DISK_CACHE_MB = 1024;
+
+    /** The highest zoom level of the tiles served, as in most slippy maps. */
+    public static final int MAX_ZOOM = 22;
+
+    /** The highest zoom level of the tiles stored on disk. */
+    public static final int MAX_DISK_ZOOM = 16;
+
+    private static final int TILE_SIZE = 256;
+
+    private final TileRendererManager tileRendererManager;
+
+    private final Cache<Key, byte[]> tiles;
+
+    /** The directory holding the tiles of all the builds of the graph of this router. */
+    private final File routerDirectory;
+
+    /** The directory holding the tiles of this graph build, or null if they are only kept in memory. */
+    private final File directory;
+
+    /** The size of the tiles that may be stored on disk. */
+    private final long maxDiskBytes;
+
+    /** The size of the tiles stored on disk, including those stored by a previous cache for the same graph build. */
+    private final AtomicLong diskBytes = new AtomicLong();
+
+    private volatile boolean diskFullLogged = false;
+
+    private volatile boolean shutdown = false;
+
+    /**
+     * @param megabytes the size of the encoded images kept in memory.
+     * @param baseDirectory the directory under which to store tiles on disk, or null to keep them only in memory.
+     * @param diskMegabytes the size of the encoded images stored on disk, for this graph build.
+     */
+    public InspectorTileCache(TileRendererManager tileRendererManager, int megabytes, File baseDirectory,
+            int diskMegabytes) {
+        this.tileRendererManager = tileRendererManager;
+        this.maxDiskBytes = diskMegabytes * 1024L * 1024L;
+        this.tiles = CacheBuilder.newBuilder()
+                .maximumWeight(megabytes * 1024L * 1024L)
+                .weigher((Key key, byte[] png) -> png.length)
+                .build();
+        if (baseDirectory != null) {
+            String routerId = tileRendererManager.getGraph().routerId;
+            this.routerDirectory = new File(baseDirectory,
+                    routerId == null || routerId.isEmpty() ? "default" : routerId);
+            String buildId = Long.toString(tileRendererManager.getGraph().buildTime.getTime());
+            this.directory = new File(routerDirectory, buildId);
+            if (directory.isDirectory()) {
+                diskBytes.set(FileUtils.sizeOfDirectory(directory));
+            }
+        } else {
+            this.routerDirectory = null;
+            this.directory = null;
+        }
+    }
+
+    /**
+     * Remove the tiles stored on disk for other builds of the graph. This must only be called once the router of the
+     * previous build has shut down, so that its cache no longer stores tiles there.
+     */
+    public void removePreviousBuilds() {
+        if (directory == null) return;
+        File[] builds = routerDirectory.listFiles();
+        if (builds == null) return;
+        for (File build : builds) {
+            if (!build.getName().equals(directory.getName())) {
+                LOG.info("Removing inspector tiles of previous graph build {}", build);
+                FileUtils.deleteQuietly(build);
+            }
+        }
+    }
+
+    /**
+     * @return the PNG image of the given tile of the given layer, from the cache if possible, rendered otherwise.
+     * @throws IllegalArgumentException if there is no such layer or tile.
+     */
+    public byte[] getTile(String layer, int z, int x, int y) throws IOException {
+        // Checked before anything is cached or read from disk, as the layer and coordinates come from the URL.
+        if (!tileRendererManager.getRenderers().containsKey(layer)) {
+            throw new IllegalArgumentException("Unknown layer: " + layer);
+        }
+        if (z < 0 || z > MAX_ZOOM) {
+            throw new IllegalArgumentException("Zoom level out of range: " + z);
+        }
+        if (x < 0 || x >= 1 << z || y < 0 || y >= 1 << z) {
+            throw new IllegalArgumentException("No tile " + x + "/" + y + " at zoom level " + z);
+        }
+        Key key = new Key(layer, z, x, y);
+        try {
+            return tiles.get(key, () -> load(key));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            if (e.getCause() instanceof IllegalArgumentException) {
+                throw (IllegalArgumentException) e.getCause();
+            }
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private byte[] load(Key key) throws IOException {
+        File file = null;
+        if (directory != null && key.z <= MAX_DISK_ZOOM) {
+            file = new File(directory, key.layer + "/" + key.z + "/" + key.x + "/" + key.y + ".png");
+            if (file.isFile()) {
+                return Files.readAllBytes(file.toPath());
+            }
+        }
+        TileRequest tileRequest = new TileRequest(SlippyTile.tile2Envelope(key.x, key.y, key.z), TILE_SIZE,
+                TILE_SIZE);
+        BufferedImage image = tileRendererManager.renderTile(tileRequest, key.layer);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(image.getWidth() * image.getHeight() / 4);
+        ImageIO.write(image, "png", baos);
+        byte[] png = baos.toByteArray();
+        // Once shut down, the directories of this build may be removed by the cache of the next one.
+        if (file != null && !shutdown && reserveDiskSpace(png.length)) {
+            try {
+                // Write then move, so that a tile is never read while only partly written.
+                file.getParentFile().mkdirs();
+                File temp = File.createTempFile("tile", ".png", file.getParentFile());
+                Files.write(temp.toPath(), png);
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                diskBytes.addAndGet(-png.length);
+                LOG.warn("Could not store inspector tile {}: {}", file, e.getMessage());
+            }
+        }
+        return png;
+    }
+
+    /** @return whether the given number of bytes can be stored on disk, in which case they are counted as stored. */
+    private boolean reserveDiskSpace(int bytes) {
+        long stored;
+        do {
+            stored = diskBytes.get();
+            if (stored + bytes > maxDiskBytes) {
+                if (!diskFullLogged) {
+                    diskFullLogged = true;
+                    LOG.info("Inspector tiles on disk reached {} MB, further tiles are only kept in memory.",
+                            maxDiskBytes / 1024 / 1024);
+                }
+                return false;
+            }
+        } while (!diskBytes.compareAndSet(stored, stored + bytes));
+        return true;
+    }
+
+    /** Forget the tiles of a layer, for example when its renderer is replaced. */
+    public void invalidate(String layer) {
+        List<Key> keys = new ArrayList<>();
+        for (Key key : tiles.asMap().keySet()) {
+            if (key.layer.equals(layer)) keys.add(key);
+        }
+        tiles.invalidateAll(keys);
+        if (directory != null) {
+            FileUtils.deleteQuietly(new File(directory, layer));
+            diskBytes.set(directory.isDirectory() ? FileUtils.sizeOfDirectory(directory) : 0);
+            diskFullLogged = false;
+        }
+    }
+
+    /**
+     * Render in a background thread the tiles of the given layers that cover the given extent, up to the given zoom
+     * level. Low zoom levels have few tiles but are the slowest to render, as each one covers much of the graph.
+     * The thread runs at low priority and stops when the cache is shut down.
+     */
+    public void preRender(final Envelope extent, int maxZoom, final List<String> layers) {
+        if (maxZoom < 0 || extent.isNull()) return;
+        final int lastZoom = Math.min(maxZoom, MAX_ZOOM);
+        Thread thread = new Thread(() -> {
+            long startTime = System.currentTimeMillis();
+            int count = 0;
+            for (int z = 0; z <= lastZoom; z++) {
+                int max = (1 << z) - 1;
+                int minX = Math.max(SlippyTile.lon2tile(extent.getMinX(), z), 0);
+                int maxX = Math.min(SlippyTile.lon2tile(extent.getMaxX(), z), max);
+                // Tile rows are numbered from north to south.
+                int minY = Math.max(SlippyTile.lat2tile(extent.getMaxY(), z), 0);
+                int maxY = Math.min(SlippyTile.lat2tile(extent.getMinY(), z), max);
+                for (int x = minX; x <= maxX; x++) {
+                    for (int y = minY; y <= maxY; y++) {
+                        for (String layer : layers) {
+                            if (shutdown) return;
+                            try {
+                                getTile(layer, z, x, y);
+                                count++;
+                            } catch (Exception e) {
+                                LOG.warn("Could not pre-render inspector tile {} {}/{}/{}", layer, z, x, y, e);
+                            }
+                        }
+                    }
+                }
+            }
+            LOG.info("Pre-rendered {} inspector tiles up to zoom {} in {} msec.", count, lastZoom,
+                    System.currentTimeMillis() - startTime);
+        }, "InspectorTilePreRender");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /** Stop any pre-rendering and storing of tiles, once the graph is no longer in use. */
+    public void shutdown() {
+        shutdown = true;
+    }
+
+    public long size() {
+        return tiles.size();
+    }
+
+    /** @return the size in bytes of the tiles stored on disk. */
+    public long diskSize() {
+        return diskBytes.get();
+    }
+
+    private static class Key {
+
+        final String layer;
+
+        final int z, x, y;
+
+        Key(String layer, int z, int x, int y) {
+            this.layer = layer;
+            this.z = z;
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) return false;
+            Key key = (Key) other;
+            return key.z == z && key.x == x && key.y == y && key.layer.equals(layer);
+        }
+
+        @Override
+        public int hashCode() {
+            return ((layer.hashCode() * 31 + z) * 31 + x) * 31 + y;
+        }
+    }
+}
@@ -14,6 +14,9 @@
 package org.opentripplanner.inspector;
 
 import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -32,7 +35,7 @@ import com.vividsolutions.jts.geom.util.AffineTransformation;
 /**
  * Process slippy map tile rendering requests. Get the tile renderer for the given layer, setup a
  * tile rendering context (bounding box, image graphic context, affine transform, etc...) and call
- * the renderer to paint the tile.
+ * the renderer to paint the tile. The PNG images of tiles are cached, see InspectorTileCache.
  * 
  * @see GraphInspectorTileResource
  * @see TileRenderer
@@ -48,8 +51,11 @@ public class TileRendererManager {
 
     private Graph graph;
 
+    private InspectorTileCache tileCache;
+
     public TileRendererManager(Graph graph) {
         this.graph = graph;
+        this.tileCache = new InspectorTileCache(this, InspectorTileCache.DEFAULT_CACHE_MB, null, 0);
 
         // Register layers.
         renderers.put("bike-safety", new EdgeVertexTileRenderer(new BikeSafetyEdgeRenderer()));
@@ -60,6 +66,46 @@ public class TileRendererManager {
 
     public void registerRenderer(String layer, TileRenderer tileRenderer) {
         renderers.put(layer, tileRenderer);
+        tileCache.invalidate(layer);
+    }
+
+    /**
+     * Replace the tile cache with one of the given size and storage, and start pre-rendering the low zoom levels of
+     * all layers over the extent of the graph.
+     *
+     * @param megabytes the size of the encoded tiles kept in memory.
+     * @param directory the directory under which to store tiles on disk, or null to keep them only in memory.
+     * @param diskMegabytes the size of the encoded tiles stored on disk.
+     * @param preRenderMaxZoom the highest zoom level to pre-render, or -1 to render tiles only when requested.
+     */
+    public void setupTileCache(int megabytes, File directory, int diskMegabytes, int preRenderMaxZoom) {
+        tileCache.shutdown();
+        tileCache = new InspectorTileCache(this, megabytes, directory, diskMegabytes);
+        if (preRenderMaxZoom >= 0 && graph.streetIndex != null) {
+            tileCache.preRender(graph.getExtent(), preRenderMaxZoom, new ArrayList<String>(renderers.keySet()));
+        }
+    }
+
+    /** @return the PNG image of a slippy map tile of the given layer, cached. */
+    public byte[] getPngTile(String layer, int z, int x, int y) throws IOException {
+        return tileCache.getTile(layer, z, x, y);
+    }
+
+    /**
+     * Remove the tiles stored on disk for previous builds of the graph, once the router that served them has shut
+     * down.
+     */
+    public void removePreviousTileBuilds() {
+        tileCache.removePreviousBuilds();
+    }
+
+    /** Stop pre-rendering and storing tiles, once the graph has been replaced. */
+    public void shutdown() {
+        tileCache.shutdown();
+    }
+
+    public Graph getGraph() {
+        return graph;
     }
 
     public BufferedImage renderTile(final TileRequest tileRequest, String layer) {
@@ -81,7 +127,6 @@ public class TileRendererManager {
         if (renderer == null)
             throw new IllegalArgumentException("Unknown layer: " + layer);
 
-        // The best place for caching tiles may be here
         BufferedImage image = new BufferedImage(tileRequest.width, tileRequest.height,
                 renderer.getColorModel());
         context.graphics = image.createGraphics();
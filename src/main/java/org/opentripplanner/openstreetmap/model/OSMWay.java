@@ -16,12 +16,16 @@
 
 package org.opentripplanner.openstreetmap.model;
 
-import java.util.ArrayList;
+import gnu.trove.decorator.TLongListDecorator;
+import gnu.trove.list.TLongList;
+import gnu.trove.list.array.TLongArrayList;
+
 import java.util.List;
 
 public class OSMWay extends OSMWithTags {
 
-    private List<Long> _nodes = new ArrayList<Long>();
+    /* Node IDs are kept unboxed to save memory on large imports. */
+    private TLongArrayList _nodes = new TLongArrayList(4);
 
     public void addNodeRef(OSMNodeRef nodeRef) {
         _nodes.add(nodeRef.getRef());
@@ -35,7 +39,16 @@ public class OSMWay extends OSMWithTags {
         _nodes.add(index, nodeRef);
     }
 
+    /**
+     * @return a modifiable view of the node IDs of this way. Each call makes a new view that boxes the IDs it returns,
+     * so loops over many ways should use getNodeRefIds instead.
+     */
     public List<Long> getNodeRefs() {
+        return new TLongListDecorator(_nodes);
+    }
+
+    /** @return the node IDs of this way, unboxed. Changes to the list change the way. */
+    public TLongList getNodeRefIds() {
         return _nodes;
     }
 
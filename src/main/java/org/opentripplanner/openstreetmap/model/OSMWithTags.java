@@ -73,6 +73,31 @@ public class OSMWithTags {
         _tags.put(key.toLowerCase(), value);
     }
 
+    /**
+     * Replace the tag keys and values of this entity with equal strings from the given dictionary, adding to it those
+     * it does not have yet, so that all the entities kept during an import share one copy of each string. The tags
+     * are moved to a map just large enough to hold them.
+     */
+    public void internTags(Map<String, String> dictionary) {
+        if (_tags == null)
+            return;
+
+        Map<String, String> tags = new HashMap<String, String>(_tags.size() * 4 / 3 + 1);
+        for (Map.Entry<String, String> tag : _tags.entrySet()) {
+            tags.put(intern(dictionary, tag.getKey()), intern(dictionary, tag.getValue()));
+        }
+        _tags = tags;
+    }
+
+    private static String intern(Map<String, String> dictionary, String s) {
+        String interned = dictionary.get(s);
+        if (interned == null) {
+            dictionary.put(s, s);
+            return s;
+        }
+        return interned;
+    }
+
     /**
      * The tags of an entity.
      */
@@ -129,6 +129,22 @@ public class ProfileRequest implements Serializable, Cloneable {
     /** What assumption should be used when boarding frequency vehicles? */
     public RaptorWorkerTimetable.BoardingAssumption boardingAssumption = RaptorWorkerTimetable.BoardingAssumption.RANDOM;
 
+    /**
+     * The number of threads used by the analyst RAPTOR search, at most the number of processors (but at least two).
+     * With more than one thread the Monte Carlo frequency draws of each departure minute are run in parallel, each
+     * worker drawing from its own random number generator. The scheduled results and the best and worst cases are the
+     * same as with a single thread, but the random draws differ from one run to the next, as they do with one thread.
+     */
+    public int raptorThreads = 1;
+
+    /**
+     * Split the departure window into this many consecutive windows searched in parallel (see raptorThreads).
+     * Range-RAPTOR reuses the results of later departure minutes only within a window, so each window starts from
+     * scratch at its last minute: trips departing after the end of a window do not improve travel times from within
+     * that window.
+     */
+    public int raptorTimeWindows = 1;
+
     /* The relative importance of different factors when biking */
     /** The relative importance of maximizing safety when cycling */
     public int bikeSafe;
@@ -12,9 +12,16 @@ import org.slf4j.LoggerFactory;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.BitSet;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.stream.IntStream;
 
 /**
@@ -48,6 +55,12 @@ public class RaptorWorker {
      */
     static final int MAX_DURATION = 120 * 60;
 
+    /** Fork-join pools shared by all the threaded searches, by number of threads. */
+    private static final ConcurrentMap<Integer, ForkJoinPool> POOLS = new ConcurrentHashMap<>();
+
+    /** The largest number of threads of a search, so that requests cannot make the pools grow without bound. */
+    private static final int MAX_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+
     /**
      * The number of randomized frequency schedule draws to take for each minute of the search.
      *
@@ -164,21 +177,18 @@ public class RaptorWorker {
             monteCarloDraws = TOTAL_MONTE_CARLO_COUNT;
         }
 
-        // if no frequencies, don't run Monte Carlo
-        int iterations = (req.toTime - fromTime - 60) / 60 + 1;
+        int minutes = (req.toTime - fromTime - 60) / 60 + 1;
 
         // if we do Monte Carlo, we do more iterations. But we only do monte carlo when we have frequencies.
-        // So only update the number of iterations when we're actually going to use all of them, to
-        // avoid uninitialized arrays.
-        // if we multiply when we're not doing monte carlo, we'll end up with too many iterations.
-        if (data.hasFrequencies)
-            // we add 2 because we do two "fake" draws where we do min or max instead of a monte carlo draw
-            iterations *= (monteCarloDraws + 2);
+        // if no frequencies, don't run Monte Carlo
+        // we add 2 because we do two "fake" draws where we do min or max instead of a monte carlo draw
+        int iterationsPerMinute = data.hasFrequencies ? monteCarloDraws + 2 : 1;
+        int iterations = minutes * iterationsPerMinute;
 
         ts.searchCount = iterations;
 
         // Iterate backward through minutes (range-raptor) taking a snapshot of router state after each call
-        int[][] timesAtTargetsEachIteration = new int[iterations][data.nTargets];
+        int[][] timesAtTargetsEachIteration = new int[iterations][];
 
         // for each iteration, whether it is the result of a schedule or Monte Carlo search, or whether it is an extrema.
         // extrema are not included in averages.
@@ -188,15 +198,78 @@ public class RaptorWorker {
         // TODO don't hardwire timestep below
         ts.timeStep = 60;
 
+        int threads = Math.max(1, Math.min(req.raptorThreads, MAX_THREADS));
+        int windows = Math.max(1, Math.min(req.raptorTimeWindows, minutes));
+        if (threads == 1 && windows == 1) {
+            runMinutes(initialStops, nonTransitTimes, 0, minutes, monteCarloDraws, null,
+                    timesAtTargetsEachIteration, includeIterationInAverages);
+        } else {
+            // Each window gets its own worker, so range-raptor state is only carried over within a window.
+            // Frequency draws are run by a pool of workers that are reused from one minute to the next.
+            Queue<RaptorWorker> drawWorkers = threads > 1 ? new ConcurrentLinkedQueue<>() : null;
+            List<RaptorWorker> windowWorkers = new ArrayList<>();
+            List<ForkJoinTask<?>> windowTasks = new ArrayList<>();
+            for (int w = 0; w < windows; w++) {
+                int firstMinute = minutes * w / windows;
+                int endMinute = minutes * (w + 1) / windows;
+                RaptorWorker worker = w == 0 ? this : new RaptorWorker(data, cloneRequest());
+                if (worker != this) windowWorkers.add(worker);
+                final int draws = monteCarloDraws;
+                windowTasks.add(ForkJoinTask.adapt(() -> worker.runMinutes(initialStops, nonTransitTimes,
+                        firstMinute, endMinute, draws, drawWorkers, timesAtTargetsEachIteration,
+                        includeIterationInAverages)));
+            }
+            // Idle pool threads terminate by themselves, so the pools are never shut down.
+            ForkJoinPool pool = POOLS.computeIfAbsent(threads, ForkJoinPool::new);
+            pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(windowTasks)));
+            if (drawWorkers != null) windowWorkers.addAll(drawWorkers);
+            for (RaptorWorker worker : windowWorkers) {
+                totalPropagationTime += worker.totalPropagationTime;
+            }
+        }
+
+        // make sure we filled the array, otherwise results are garbage.
+        // This implies a bug in OTP, but it has happened in the past when we did
+        // not set the number of iterations correctly.
+        for (int[] timesAtTargets : timesAtTargetsEachIteration) {
+            if (timesAtTargets == null)
+                throw new IllegalStateException("Iterations did not completely fill output array");
+        }
+
+        long calcTime = System.currentTimeMillis() - beginCalcTime;
+        LOG.info("calc time {}sec", calcTime / 1000.0);
+        LOG.info("  propagation {}sec", totalPropagationTime / 1000.0);
+        LOG.info("  raptor {}sec", (calcTime - totalPropagationTime) / 1000.0);
+        ts.propagation = (int) totalPropagationTime;
+        // With several threads the propagation time is summed over all of them.
+        ts.transitSearch = (int) Math.max(0, calcTime - totalPropagationTime);
+        //dumpVariableByte(timesAtTargetsEachMinute);
+        // we can use min_max here as we've also run it once with best case and worst case board,
+        // so the best and worst cases are meaningful.
+        propagatedTimesStore.setFromArray(timesAtTargetsEachIteration, includeIterationInAverages,
+                PropagatedTimesStore.ConfidenceCalculationMethod.MIN_MAX);
+        return propagatedTimesStore;
+    }
+
+    /**
+     * Run the searches for departure minutes firstMinute (inclusive) to endMinute (exclusive), counting backward from
+     * the end of the departure window, and store their results in the rows of timesAtTargetsEachIteration belonging
+     * to these minutes. The scheduled search reuses the state left by the previous (later) minute.
+     *
+     * @param drawWorkers idle workers to run the frequency draws of each minute in parallel in the current
+     *                    ForkJoinPool, or null to run them one after the other with this worker.
+     */
+    private void runMinutes (TIntIntMap initialStops, int[] nonTransitTimes, int firstMinute, int endMinute,
+            int monteCarloDraws, Queue<RaptorWorker> drawWorkers, int[][] timesAtTargetsEachIteration,
+            boolean[] includeIterationInAverages) {
+
         // times at targets from scheduled search
         int[] scheduledTimesAtTargets = new int[data.nTargets];
         Arrays.fill(scheduledTimesAtTargets, UNREACHED);
 
-        // current iteration
-        int iteration = 0;
-
         // FIXME this should be changed to tolerate a zero-width time range
-        for (int departureTime = req.toTime - 60, n = 0; departureTime >= fromTime; departureTime -= 60, n++) {
+        for (int n = firstMinute; n < endMinute; n++) {
+            int departureTime = req.toTime - 60 * (n + 1);
             if (n % 15 == 0) {
                 LOG.info("minute {}", n);
             }
@@ -214,81 +287,101 @@ public class RaptorWorker {
 
             // run the frequency searches
             if (data.hasFrequencies) {
-                for (int i = 0; i < monteCarloDraws + 2; i++) {
-                    // make copies for just this search. We need copies because we can't use dynamic
-                    // programming/range-raptor with randomized schedules
-                    int[] bestTimesCopy = Arrays.copyOf(bestTimes, bestTimes.length);
-                    int[] bestNonTransferTimesCopy = Arrays
-                            .copyOf(bestNonTransferTimes, bestNonTransferTimes.length);
-                    int[] previousPatternsCopy = Arrays
-                            .copyOf(previousPatterns, previousPatterns.length);
-
-                    // special cases: calculate the best and the worst cases as well
-                    // Note that this (intentionally) does not affect searches where the user has requested
-                    // an assumption other than RANDOM, or stops with transfer rules.
-                    RaptorWorkerTimetable.BoardingAssumption requestedBoardingAssumption = req.boardingAssumption;
-
-                    if (i == 0 && req.boardingAssumption == RaptorWorkerTimetable.BoardingAssumption.RANDOM) {
-                        req.boardingAssumption = RaptorWorkerTimetable.BoardingAssumption.WORST_CASE;
-                        // don't include extrema in averages
-                        includeIterationInAverages[iteration] = false;
+                int drawCount = monteCarloDraws + 2;
+                int firstIteration = n * drawCount;
+                if (drawWorkers == null) {
+                    for (int i = 0; i < drawCount; i++) {
+                        this.runFrequencyDraw(i, departureTime, scheduledTimesAtTargets, bestTimes,
+                                bestNonTransferTimes, previousPatterns, timesAtTargetsEachIteration,
+                                includeIterationInAverages, firstIteration + i);
                     }
-                    else if (i == 1 && req.boardingAssumption == RaptorWorkerTimetable.BoardingAssumption.RANDOM) {
-                        req.boardingAssumption = RaptorWorkerTimetable.BoardingAssumption.BEST_CASE;
-                        // don't include extrema in averages
-                        includeIterationInAverages[iteration] = false;
-                    }
-                    else if (requestedBoardingAssumption == RaptorWorkerTimetable.BoardingAssumption.RANDOM)
-                        // use a new Monte Carlo draw each time
-                        // included in averages by default
-                        offsets.randomize();
-
-                    this.runRaptorFrequency(departureTime, bestTimesCopy, bestNonTransferTimesCopy,
-                            previousPatternsCopy);
-
-                    req.boardingAssumption = requestedBoardingAssumption;
-
-                    // do propagation
-                    int[] frequencyTimesAtTargets = timesAtTargetsEachIteration[iteration++];
-                    System.arraycopy(scheduledTimesAtTargets, 0, frequencyTimesAtTargets, 0,
-                            scheduledTimesAtTargets.length);
-                    // updates timesAtTargetsEachIteration directly because it has a reference into the array.
-                    this.doPropagation(bestNonTransferTimesCopy, frequencyTimesAtTargets,
-                            departureTime);
-
-                    // convert to elapsed time
-                    for (int t = 0; t < frequencyTimesAtTargets.length; t++) {
-                        if (frequencyTimesAtTargets[t] != UNREACHED)
-                            frequencyTimesAtTargets[t] -= departureTime;
+                } else {
+                    // The draws only read the state of the scheduled search, which does not change until they are done.
+                    List<ForkJoinTask<?>> draws = new ArrayList<>(drawCount);
+                    for (int i = 0; i < drawCount; i++) {
+                        final int draw = i;
+                        draws.add(ForkJoinTask.adapt(() -> {
+                            RaptorWorker worker = drawWorkers.poll();
+                            if (worker == null) worker = new RaptorWorker(data, cloneRequest());
+                            try {
+                                worker.runFrequencyDraw(draw, departureTime, scheduledTimesAtTargets, bestTimes,
+                                        bestNonTransferTimes, previousPatterns, timesAtTargetsEachIteration,
+                                        includeIterationInAverages, firstIteration + draw);
+                            } finally {
+                                drawWorkers.add(worker);
+                            }
+                        }));
                     }
+                    ForkJoinTask.invokeAll(draws);
                 }
             } else {
                 final int dt = departureTime;
-                timesAtTargetsEachIteration[iteration++] = IntStream.of(scheduledTimesAtTargets)
+                timesAtTargetsEachIteration[n] = IntStream.of(scheduledTimesAtTargets)
                         .map(i -> i != UNREACHED ? i - dt : i)
                         .toArray();
             }
         }
+    }
 
-        // make sure we filled the array, otherwise results are garbage.
-        // This implies a bug in OTP, but it has happened in the past when we did
-        // not set the number of iterations correctly.
-        // iteration should be incremented past end of array by ++ in assignment above
-        if (iteration != iterations)
-            throw new IllegalStateException("Iterations did not completely fill output array");
+    /**
+     * Run one frequency search from the state left by a scheduled search, and store the elapsed times at the targets
+     * in the given iteration. Draws 0 and 1 are the worst and best cases when boarding at random.
+     */
+    private void runFrequencyDraw (int draw, int departureTime, int[] scheduledTimesAtTargets, int[] bestTimes,
+            int[] bestNonTransferTimes, int[] previousPatterns, int[][] timesAtTargetsEachIteration,
+            boolean[] includeIterationInAverages, int iteration) {
+        // make copies for just this search. We need copies because we can't use dynamic
+        // programming/range-raptor with randomized schedules
+        int[] bestTimesCopy = Arrays.copyOf(bestTimes, bestTimes.length);
+        int[] bestNonTransferTimesCopy = Arrays
+                .copyOf(bestNonTransferTimes, bestNonTransferTimes.length);
+        int[] previousPatternsCopy = Arrays
+                .copyOf(previousPatterns, previousPatterns.length);
+
+        // special cases: calculate the best and the worst cases as well
+        // Note that this (intentionally) does not affect searches where the user has requested
+        // an assumption other than RANDOM, or stops with transfer rules.
+        RaptorWorkerTimetable.BoardingAssumption requestedBoardingAssumption = req.boardingAssumption;
+
+        if (draw == 0 && req.boardingAssumption == RaptorWorkerTimetable.BoardingAssumption.RANDOM) {
+            req.boardingAssumption = RaptorWorkerTimetable.BoardingAssumption.WORST_CASE;
+            // don't include extrema in averages
+            includeIterationInAverages[iteration] = false;
+        }
+        else if (draw == 1 && req.boardingAssumption == RaptorWorkerTimetable.BoardingAssumption.RANDOM) {
+            req.boardingAssumption = RaptorWorkerTimetable.BoardingAssumption.BEST_CASE;
+            // don't include extrema in averages
+            includeIterationInAverages[iteration] = false;
+        }
+        else if (requestedBoardingAssumption == RaptorWorkerTimetable.BoardingAssumption.RANDOM)
+            // use a new Monte Carlo draw each time
+            // included in averages by default
+            offsets.randomize();
 
-        long calcTime = System.currentTimeMillis() - beginCalcTime;
-        LOG.info("calc time {}sec", calcTime / 1000.0);
-        LOG.info("  propagation {}sec", totalPropagationTime / 1000.0);
-        LOG.info("  raptor {}sec", (calcTime - totalPropagationTime) / 1000.0);
-        ts.propagation = (int) totalPropagationTime;
-        ts.transitSearch = (int) (calcTime - totalPropagationTime);
-        //dumpVariableByte(timesAtTargetsEachMinute);
-        // we can use min_max here as we've also run it once with best case and worst case board,
-        // so the best and worst cases are meaningful.
-        propagatedTimesStore.setFromArray(timesAtTargetsEachIteration, includeIterationInAverages,
-                PropagatedTimesStore.ConfidenceCalculationMethod.MIN_MAX);
-        return propagatedTimesStore;
+        this.runRaptorFrequency(departureTime, bestTimesCopy, bestNonTransferTimesCopy,
+                previousPatternsCopy);
+
+        req.boardingAssumption = requestedBoardingAssumption;
+
+        // do propagation
+        int[] frequencyTimesAtTargets = Arrays.copyOf(scheduledTimesAtTargets, scheduledTimesAtTargets.length);
+        this.doPropagation(bestNonTransferTimesCopy, frequencyTimesAtTargets, departureTime);
+
+        // convert to elapsed time
+        for (int t = 0; t < frequencyTimesAtTargets.length; t++) {
+            if (frequencyTimesAtTargets[t] != UNREACHED)
+                frequencyTimesAtTargets[t] -= departureTime;
+        }
+        timesAtTargetsEachIteration[iteration] = frequencyTimesAtTargets;
+    }
+
+    /** @return a copy of the request for another worker, which may change its boarding assumption during draws. */
+    private ProfileRequest cloneRequest () {
+        try {
+            return req.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new RuntimeException(e);
+        }
     }
 
     public void dumpVariableByte(int[][] array) {
@@ -13,12 +13,14 @@
 
 package org.opentripplanner.routing.algorithm;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 
-import org.opentripplanner.common.pqueue.BinHeap;
+import org.opentripplanner.common.pqueue.IndexedDaryHeap;
+import org.opentripplanner.common.pqueue.OTPPriorityQueue;
 import org.opentripplanner.routing.algorithm.strategies.RemainingWeightHeuristic;
 import org.opentripplanner.routing.algorithm.strategies.SearchTerminationStrategy;
 import org.opentripplanner.routing.algorithm.strategies.TrivialRemainingWeightHeuristic;
@@ -54,6 +56,8 @@ public class AStar {
 
     private TraverseVisitor traverseVisitor;
 
+    private OTPPriorityQueue.Factory queueFactory = IndexedDaryHeap.FACTORY;
+
     enum RunStatus {
         RUNNING, STOPPED
     }
@@ -63,11 +67,13 @@ public class AStar {
 
         public State u;
         public ShortestPathTree spt;
-        BinHeap<State> pq;
+        OTPPriorityQueue<State> pq;
         RemainingWeightHeuristic heuristic;
         public RoutingContext rctx;
         public int nVisited;
         public List<State> targetAcceptedStates;
+        /* States dominated by the last state added to the SPT, to be removed from the queue. */
+        List<State> dominatedStates = new ArrayList<State>();
         public RunStatus status;
         private RoutingRequest options;
         private SearchTerminationStrategy terminationStrategy;
@@ -132,7 +138,7 @@ public class AStar {
         // reaching its target. 
         int initialSize = runState.rctx.graph.getVertices().size();
         initialSize = (int) Math.ceil(2 * (Math.sqrt((double) initialSize + 1)));
-        runState.pq = new BinHeap<State>(initialSize);
+        runState.pq = queueFactory.create(initialSize);
         runState.nVisited = 0;
         runState.targetAcceptedStates = Lists.newArrayList();
         
@@ -175,7 +181,8 @@ public class AStar {
 
         runState.nVisited += 1;
         
-        Collection<Edge> edges = runState.options.arriveBy ? runState.u_vertex.getIncoming() : runState.u_vertex.getOutgoing();
+        Collection<Edge> edges = runState.options.arriveBy ? runState.rctx.getIncoming(runState.u_vertex) :
+                runState.rctx.getOutgoing(runState.u_vertex);
         for (Edge edge : edges) {
 
             // Iterate over traversal results. When an edge leads nowhere (as indicated by
@@ -221,8 +228,15 @@ public class AStar {
                     continue;
                 }
                 
-                // spt.add returns true if the state is hopeful; enqueue state if it's hopeful
-                if (runState.spt.add(v)) {
+                // spt.add returns true if the state is hopeful; enqueue state if it's hopeful.
+                // The states it dominates will never be visited, drop them from the queue now rather than when
+                // they are extracted. This keeps the queue from filling up with stale states on long searches.
+                boolean hopeful = runState.spt.add(v, runState.dominatedStates);
+                for (State dominated : runState.dominatedStates) {
+                    runState.pq.remove(dominated);
+                }
+                runState.dominatedStates.clear();
+                if (hopeful) {
                     // report to the visitor if there is one
                     if (traverseVisitor != null)
                         traverseVisitor.visitEnqueue(v);
@@ -304,7 +318,8 @@ public class AStar {
     public ShortestPathTree getShortestPathTree(RoutingRequest options, double relTimeoutSeconds,
             SearchTerminationStrategy terminationStrategy) {
         ShortestPathTree spt = null;
-        long abortTime = DateUtils.absoluteTimeout(relTimeoutSeconds);
+        // The request may have a deadline of its own, for example from the time it was received by the web service.
+        long abortTime = Math.min(DateUtils.absoluteTimeout(relTimeoutSeconds), options.deadline);
 
         startSearch (options, terminationStrategy, abortTime);
 
@@ -322,7 +337,7 @@ public class AStar {
             SearchTerminationStrategy terminationStrategy, Collection<State> initialStates) {
         
         ShortestPathTree spt = null;
-        long abortTime = DateUtils.absoluteTimeout(relTimeoutSeconds);
+        long abortTime = Math.min(DateUtils.absoluteTimeout(relTimeoutSeconds), options.deadline);
 
         startSearch (options, terminationStrategy, abortTime, false);
         
@@ -357,6 +372,11 @@ public class AStar {
             return v.getTimeSeconds() > opt.worstTime;
     }
 
+    /** Use another priority queue implementation for subsequent searches, for instance to compare them. */
+    public void setPriorityQueueFactory(OTPPriorityQueue.Factory queueFactory) {
+        this.queueFactory = queueFactory;
+    }
+
     public void setTraverseVisitor(TraverseVisitor traverseVisitor) {
         this.traverseVisitor = traverseVisitor;
     }
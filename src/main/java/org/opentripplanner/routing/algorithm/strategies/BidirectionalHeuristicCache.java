@@ -0,0 +1,165 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.algorithm.strategies;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import gnu.trove.iterator.TObjectDoubleIterator;
+import gnu.trove.map.TObjectDoubleMap;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.ServiceDay;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.vertextype.TemporaryVertex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The weights found by the backward searches of the {@link InterleavedBidirectionalHeuristic}, shared by all the
+ * requests to the same destination on the same service days with the same modes and walk parameters. These searches
+ * do not depend on the origin or the time of day of the request, so when many requests go to the same few places they
+ * need not be repeated. They do depend on the service days of the request, as the backward transit search only
+ * explores the patterns running on those days.
+ *
+ * A cache belongs to one Router and so to one graph. A new graph gets a new Router and an empty cache.
+ */
+public class BidirectionalHeuristicCache {
+
+    private final Cache<Key, Table> tables;
+
+    /** @param megabytes the memory the cached tables may use before the least recently used ones are evicted. */
+    public BidirectionalHeuristicCache(int megabytes) {
+        tables = CacheBuilder.newBuilder()
+                .maximumWeight(megabytes * 1024L * 1024L)
+                .weigher((Key key, Table table) -> table.weights.length * 4)
+                .build();
+    }
+
+    /** @return the table for the given key, or null if there is none yet. */
+    Table get(Key key) {
+        return tables.getIfPresent(key);
+    }
+
+    void put(Key key, Table table) {
+        tables.put(key, table);
+    }
+
+    public void clear() {
+        tables.invalidateAll();
+    }
+
+    public long size() {
+        return tables.size();
+    }
+
+    /**
+     * The destination of a request, its service days and the parameters of the request that the backward searches
+     * depend on. A temporary destination vertex is made anew for every request, so it is identified by its
+     * coordinates. Service days are identified by their midnight. The key must be made before the heuristic changes
+     * the walk limits of the request.
+     *
+     * The park and ride, kiss and ride, bike park and ride and bike rental options are part of the key even though
+     * they do not change the modes of the request, as they change the mode the backward street search starts in:
+     * a park and ride search arriving on foot and a car search must not share weights, or the heuristic would
+     * overestimate the remaining weight.
+     */
+    static class Key {
+
+        private final List<Object> values;
+
+        Key(RoutingRequest options) {
+            this(options, options.rctx.target, serviceDayMidnights(options.rctx.serviceDays));
+        }
+
+        Key(RoutingRequest options, Vertex target, List<Long> serviceDayMidnights) {
+            Object targetId = target instanceof TemporaryVertex ?
+                    Arrays.asList(target.getX(), target.getY()) : target;
+            values = Arrays.asList(targetId, serviceDayMidnights, options.arriveBy, options.modes, options.optimize,
+                    options.walkSpeed, options.bikeSpeed, options.carSpeed, options.walkReluctance,
+                    options.stairsReluctance, options.turnReluctance, options.maxWalkDistance,
+                    options.maxPreTransitTime, options.wheelchairAccessible, options.maxSlope,
+                    options.walkBoardCost, options.bikeBoardCost, options.boardSlack, options.alightSlack,
+                    options.triangleTimeFactor, options.triangleSlopeFactor, options.triangleSafetyFactor,
+                    options.walkingBike, options.bikeSwitchTime, options.bikeSwitchCost, options.carDropoffTime,
+                    options.parkAndRide, options.kissAndRide, options.bikeParkAndRide, options.allowBikeRental,
+                    options.useBikeRentalAvailabilityInformation);
+        }
+
+        private static List<Long> serviceDayMidnights(List<ServiceDay> serviceDays) {
+            List<Long> midnights = new ArrayList<Long>();
+            if (serviceDays != null) {
+                for (ServiceDay serviceDay : serviceDays) {
+                    midnights.add(serviceDay.time(0));
+                }
+            }
+            return midnights;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key && ((Key) other).values.equals(values);
+        }
+
+        @Override
+        public int hashCode() {
+            return values.hashCode();
+        }
+    }
+
+    /**
+     * The weights of the backward searches, indexed by vertex index, and the highest weight they reached. Weights are
+     * stored as floats rounded down, so that the heuristic remains an underestimate. A table is never modified once
+     * made, and can be read by any number of searches at once.
+     */
+    static class Table {
+
+        private final float[] weights;
+
+        final double maxFound;
+
+        /**
+         * @param weights the weights found by the searches. Those of temporary vertices, which belong to one request,
+         *                are left out.
+         */
+        Table(TObjectDoubleMap<Vertex> weights, double maxFound) {
+            // Sized by the vertices reached rather than Vertex.getMaxIndex(), which grows with every temporary vertex.
+            int maxIndex = -1;
+            for (TObjectDoubleIterator<Vertex> it = weights.iterator(); it.hasNext(); ) {
+                it.advance();
+                if (it.key() instanceof TemporaryVertex) continue;
+                maxIndex = Math.max(maxIndex, it.key().getIndex());
+            }
+            this.weights = new float[maxIndex + 1];
+            Arrays.fill(this.weights, Float.POSITIVE_INFINITY);
+            for (TObjectDoubleIterator<Vertex> it = weights.iterator(); it.hasNext(); ) {
+                it.advance();
+                if (it.key() instanceof TemporaryVertex) continue;
+                this.weights[it.key().getIndex()] = roundDown(it.value());
+            }
+            this.maxFound = roundDown(maxFound);
+        }
+
+        /** @return the weight of the vertex, or positive infinity if the searches did not reach it. */
+        double get(Vertex v) {
+            int index = v.getIndex();
+            return index < weights.length ? weights[index] : Double.POSITIVE_INFINITY;
+        }
+
+        private static float roundDown(double weight) {
+            float f = (float) weight;
+            return f > weight ? Math.nextDown(f) : f;
+        }
+    }
+}
@@ -45,6 +45,10 @@ import java.util.List;
  * remove any time-dependent component (e.g. by evaluating all boarding wait times as zero). This produces an
  * admissible heuristic (which always underestimates path weight) making it valid independent of the clock time.
  * This is important because you don't know precisely what time you will arrive at the destination until you get there.
+ *
+ * Since the backward searches do not depend on the origin or the time of the request, they can be shared by the
+ * requests to the same destination through a {@link BidirectionalHeuristicCache}. The backward searches are then run
+ * to completion the first time, and later requests only do the street search around the origin.
  */
 public class InterleavedBidirectionalHeuristic implements RemainingWeightHeuristic {
 
@@ -78,11 +82,25 @@ public class InterleavedBidirectionalHeuristic implements RemainingWeightHeurist
     BinHeap<Vertex> q;
 
     boolean finished = false;
+
+    /** Where to find and store the weights of the backward searches, or null if they are not shared. */
+    BidirectionalHeuristicCache cache;
+
+    /**
+     * The weights of the backward searches when they are shared. The weights map then only holds those of the street
+     * search around the origin.
+     */
+    BidirectionalHeuristicCache.Table table;
     
     public InterleavedBidirectionalHeuristic(Graph graph) {
         this.graph = graph;
     }
 
+    public InterleavedBidirectionalHeuristic(Graph graph, BidirectionalHeuristicCache cache) {
+        this.graph = graph;
+        this.cache = cache;
+    }
+
     
     /* Implementation observations:
      * 1. filling weights array with inf is expensive (~70 msec in PDX)
@@ -107,22 +125,42 @@ public class InterleavedBidirectionalHeuristic implements RemainingWeightHeurist
             LOG.debug("Reusing existing heuristic, the target vertex has not changed.");
             return;
         }
+        // The street searches and the table are built before the main search starts, so they stop at the deadline of
+        // the request whatever abort time the caller gives.
+        abortTime = Math.min(abortTime, options.deadline);
         long start = System.currentTimeMillis();
         this.target = target;
-        // int nVertices = AbstractVertex.getMaxIndex(); // will be ever increasing?
-        int nVertices = graph.countVertices();
-        weights = new TObjectDoubleHashMap((int)(Math.log(nVertices)) + 1, 0.5f, Double.POSITIVE_INFINITY);
         this.options = options;
         this.origin = origin;
+        BidirectionalHeuristicCache.Key key = cache == null ? null : new BidirectionalHeuristicCache.Key(options);
         // do not use soft limiting in long-distance mode
         options.softWalkLimiting = false;
         options.softPreTransitLimiting = false;
+        if (key != null) {
+            table = cache.get(key);
+            if (table == null) {
+                table = buildTable(options, abortTime);
+                if (table == null) return; // Search timed out
+                cache.put(key, table);
+                LOG.debug("end backward searches {} ms", System.currentTimeMillis() - start);
+            } else {
+                LOG.debug("Reusing backward searches to the same destination.");
+            }
+            maxFound = table.maxFound;
+            finished = true;
+        }
+        weights = newWeights();
         // make sure distance table is initialized before starting thread
         LOG.debug("initializing heuristic computation thread");
         // Forward street search first, mark street vertices around the origin so H evaluates to 0
         List<State> search = streetSearch(options, false, abortTime); // ~30 msec
         if (search == null) return; // Search timed out
         LOG.debug("end foreward street search {} ms", System.currentTimeMillis() - start);
+        if (table != null) {
+            raiseLimits(options);
+            options.rctx.debugOutput.finishedPrecalculating();
+            return;
+        }
         // create a new priority queue
         q = new BinHeap<Vertex>();
         // Save weight to reach street vertices around the destination.
@@ -133,15 +171,49 @@ public class InterleavedBidirectionalHeuristic implements RemainingWeightHeurist
             q.insert(stopState.getVertex(), stopState.getWeight());
         }
         LOG.debug("end backward street search {} ms", System.currentTimeMillis() - start);
-        // once street searches are done, raise the limits to max
-        // because hard walk limiting is incorrect and is observed to cause problems 
-        // for trips near the cutoff
-        options.setMaxWalkDistance(Double.POSITIVE_INFINITY);
-        options.setMaxPreTransitTime(Integer.MAX_VALUE);
+        raiseLimits(options);
         LOG.debug("initialized SSSP");
         options.rctx.debugOutput.finishedPrecalculating();
     }
 
+    private TObjectDoubleHashMap<Vertex> newWeights() {
+        // int nVertices = AbstractVertex.getMaxIndex(); // will be ever increasing?
+        int nVertices = graph.countVertices();
+        return new TObjectDoubleHashMap<Vertex>((int)(Math.log(nVertices)) + 1, 0.5f, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Once street searches are done, raise the limits to max because hard walk limiting is incorrect and is observed
+     * to cause problems for trips near the cutoff.
+     */
+    private void raiseLimits(RoutingRequest options) {
+        options.setMaxWalkDistance(Double.POSITIVE_INFINITY);
+        options.setMaxPreTransitTime(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Run the backward street search and the backward transit search to completion, without the street search around
+     * the origin, so the weights can be shared with other requests.
+     * @return the weights found, or null if the search timed out.
+     */
+    private BidirectionalHeuristicCache.Table buildTable(RoutingRequest options, long abortTime) {
+        weights = newWeights();
+        List<State> search = streetSearch(options, true, abortTime);
+        if (search == null) return null;
+        q = new BinHeap<Vertex>();
+        for (State stopState : search) {
+            q.insert(stopState.getVertex(), stopState.getWeight());
+        }
+        // The transit search does not depend on the walk limits, which are raised later.
+        while (!finished) {
+            if (abortTime < Long.MAX_VALUE && System.currentTimeMillis() > abortTime) {
+                return null;
+            }
+            doSomeWork();
+        }
+        return new BidirectionalHeuristicCache.Table(weights, maxFound);
+    }
+
     /** Do up to N iterations as long as the queue is not empty */
     @Override
     public void doSomeWork() {
@@ -164,7 +236,7 @@ public class InterleavedBidirectionalHeuristic implements RemainingWeightHeurist
 //                    Double.isInfinite(uw) ? -1.0 : uw);
 
             // OUTgoing for heuristic search when main search is arriveBy 
-            for (Edge e : options.arriveBy ? u.getOutgoing() : u.getIncoming()) {
+            for (Edge e : options.arriveBy ? options.rctx.getOutgoing(u) : options.rctx.getIncoming(u)) {
                 // Do not enter streets in this phase.
                 if (e instanceof StreetTransitLink) continue;
                 Vertex v = options.arriveBy ? e.getToVertex() : e.getFromVertex();
@@ -198,6 +270,9 @@ public class InterleavedBidirectionalHeuristic implements RemainingWeightHeurist
         // Temporary vertices (StreetLocations) might not be found in walk search.
         if (v instanceof StreetLocation) return 0;
         double weight = weights.get(v);
+        if (table != null) {
+            weight = combineWeights(weight, table.get(v));
+        }
         // All valid street vertices should be explored before the main search starts,
         // but many transit vertices may not yet be explored when the search starts.
         // TODO: verify that StreetVertex includes all vertices of interest.
@@ -220,6 +295,18 @@ public class InterleavedBidirectionalHeuristic implements RemainingWeightHeurist
         return weight;
     }
 
+    /**
+     * Combine the weight found by the street search around the origin with the shared weight of the backward searches,
+     * as the street search from the destination would have done had it run after the one from the origin.
+     */
+    private static double combineWeights(double originWeight, double targetWeight) {
+        if (originWeight == -1) {
+            // Mark vertex as near both origin and destination.
+            return Double.isInfinite(targetWeight) ? -1 : -2;
+        }
+        return Math.min(originWeight, targetWeight);
+    }
+
     @Override
     public void reset() { }
         
@@ -284,6 +371,10 @@ public class InterleavedBidirectionalHeuristic implements RemainingWeightHeurist
             State s = pq.extract_min();
             double w = s.getWeight();
             Vertex v = s.getVertex();
+            // Weights shared with other requests must not depend on the temporary vertices of this request.
+            if (cache != null && fromTarget && v instanceof TemporaryVertex && v != rr.rctx.target) {
+                continue;
+            }
             if (v instanceof TransitVertex) {
                 if (v instanceof TransitStationStop) {
                     stopStates.add(s);
@@ -313,7 +404,7 @@ public class InterleavedBidirectionalHeuristic implements RemainingWeightHeurist
                 }
             }
             // FIXME should only traverse when state is better than old_weight
-            for (Edge e : rr.arriveBy ? v.getIncoming() : v.getOutgoing()) {
+            for (Edge e : rr.arriveBy ? rr.rctx.getIncoming(v) : rr.rctx.getOutgoing(v)) {
                 // arriveBy has been set to match actual directional behavior in this subsearch
                 State s1 = e.traverse(s);
                 if (s1 == null)
@@ -0,0 +1,70 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.bike_rental;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * The numbers of bikes and free spaces at bike rental stations, as of one poll of the real-time updaters. A snapshot
+ * is never modified once made: updaters publish a new one through a {@link BikeRentalAvailabilitySource}, and a
+ * search keeps the snapshot that was current when it started, so that it sees the same availability throughout.
+ */
+public class BikeRentalAvailability {
+
+    public static final BikeRentalAvailability EMPTY =
+            new BikeRentalAvailability(0, Collections.<String, Counts>emptyMap());
+
+    /** Incremented each time a new snapshot is published. */
+    public final long version;
+
+    final Map<String, Counts> countsByStationId;
+
+    BikeRentalAvailability(long version, Map<String, Counts> countsByStationId) {
+        this.version = version;
+        this.countsByStationId = countsByStationId;
+    }
+
+    /** @return the number of bikes available at the station, or the given default if the station is not known. */
+    public int getBikesAvailable(String stationId, int defaultValue) {
+        Counts counts = countsByStationId.get(stationId);
+        return counts == null ? defaultValue : counts.bikes;
+    }
+
+    /** @return the number of free spaces at the station, or the given default if the station is not known. */
+    public int getSpacesAvailable(String stationId, int defaultValue) {
+        Counts counts = countsByStationId.get(stationId);
+        return counts == null ? defaultValue : counts.spaces;
+    }
+
+    public boolean contains(String stationId) {
+        return countsByStationId.containsKey(stationId);
+    }
+
+    public int size() {
+        return countsByStationId.size();
+    }
+
+    static class Counts {
+
+        final int bikes;
+
+        final int spaces;
+
+        Counts(int bikes, int spaces) {
+            this.bikes = bikes;
+            this.spaces = spaces;
+        }
+    }
+}
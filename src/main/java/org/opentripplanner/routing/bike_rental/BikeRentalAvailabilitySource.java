@@ -0,0 +1,52 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.bike_rental;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps track of the current bike rental availability snapshot, handles concurrency. Several updaters, one per bike
+ * rental network, may publish into the same source: each update replaces only the stations it mentions.
+ */
+public class BikeRentalAvailabilitySource {
+
+    private volatile BikeRentalAvailability snapshot = BikeRentalAvailability.EMPTY;
+
+    /** Get the current snapshot. Not synchronized; reference writes and reads are atomic in java. */
+    public BikeRentalAvailability getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Publish a new snapshot made from the current one, with the counts of the given stations replaced and the
+     * given station ids removed.
+     */
+    public synchronized BikeRentalAvailability update(Collection<BikeRentalStation> stations,
+            Collection<String> removedStationIds) {
+        BikeRentalAvailability current = snapshot;
+        Map<String, BikeRentalAvailability.Counts> counts =
+                new HashMap<String, BikeRentalAvailability.Counts>(current.countsByStationId);
+        for (String id : removedStationIds) {
+            counts.remove(id);
+        }
+        for (BikeRentalStation station : stations) {
+            counts.put(station.id,
+                    new BikeRentalAvailability.Counts(station.bikesAvailable, station.spacesAvailable));
+        }
+        snapshot = new BikeRentalAvailability(current.version + 1, counts);
+        return snapshot;
+    }
+}
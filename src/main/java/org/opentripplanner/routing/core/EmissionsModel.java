@@ -0,0 +1,141 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * The grams of CO2 produced per kilometer travelled in each mode, used to estimate the CO2 produced by itineraries.
+ * The defaults are read once from Co2ProductionParameters.properties on the classpath, and can be overridden per
+ * router in the "co2Production" section of router-config.json, which maps mode names to grams per kilometer.
+ * A model is made when a router starts up, so it is replaced when the graph is reloaded, and is then only read.
+ * Modes without a value produce no CO2.
+ */
+public class EmissionsModel implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger LOG = LoggerFactory.getLogger(EmissionsModel.class);
+
+    public static final String DEFAULTS_FILENAME = "Co2ProductionParameters.properties";
+
+    private static final EmissionsModel DEFAULTS = loadDefaults();
+
+    /** Grams of CO2 per kilometer, indexed by TraverseMode ordinal. */
+    private final double[] gramsPerKm = new double[TraverseMode.values().length];
+
+    /** @return the model with the values from the classpath properties file, which must not be modified. */
+    public static EmissionsModel getDefaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * Make a model from the defaults, overridden by the values in the given router config section.
+     * @param config an object mapping mode names to grams per kilometer, or null to use the defaults.
+     */
+    public static EmissionsModel fromConfig(JsonNode config) {
+        EmissionsModel model = new EmissionsModel();
+        System.arraycopy(DEFAULTS.gramsPerKm, 0, model.gramsPerKm, 0, model.gramsPerKm.length);
+        if (config == null) return model;
+        if (!config.isObject()) {
+            LOG.error("The 'co2Production' configuration option should map mode names to grams per kilometer.");
+            return model;
+        }
+        for (Iterator<Map.Entry<String, JsonNode>> it = config.fields(); it.hasNext(); ) {
+            Map.Entry<String, JsonNode> field = it.next();
+            try {
+                TraverseMode mode = TraverseMode.valueOf(field.getKey());
+                if (field.getValue().isNumber()) {
+                    model.setGramsPerKm(mode, field.getValue().doubleValue());
+                } else {
+                    LOG.error("CO2 production for mode {} should be a number of grams per kilometer.", mode);
+                }
+            } catch (IllegalArgumentException e) {
+                LOG.error("Unknown mode {} in CO2 production configuration.", field.getKey());
+            }
+        }
+        return model;
+    }
+
+    private static EmissionsModel loadDefaults() {
+        EmissionsModel model = new EmissionsModel();
+        Properties properties = new Properties();
+        try (InputStream in = EmissionsModel.class.getClassLoader().getResourceAsStream(DEFAULTS_FILENAME)) {
+            if (in == null) {
+                LOG.warn("CO2 production defaults {} not found on the classpath.", DEFAULTS_FILENAME);
+                return model;
+            }
+            properties.load(in);
+        } catch (IOException e) {
+            LOG.error("Could not read CO2 production defaults {}.", DEFAULTS_FILENAME, e);
+            return model;
+        }
+        for (TraverseMode mode : TraverseMode.values()) {
+            String value = properties.getProperty(propertyName(mode));
+            if (value == null) continue;
+            try {
+                model.setGramsPerKm(mode, Double.parseDouble(value.trim()));
+            } catch (NumberFormatException e) {
+                LOG.error("Invalid CO2 production {} for mode {} in {}.", value, mode, DEFAULTS_FILENAME);
+            }
+        }
+        return model;
+    }
+
+    /** @return the key of the mode in the properties file, for example cableCarCo2Production for CABLE_CAR. */
+    private static String propertyName(TraverseMode mode) {
+        if (mode == TraverseMode.CAR) return "carDefaultCo2Production";
+        StringBuilder sb = new StringBuilder();
+        boolean upper = false;
+        for (char c : mode.name().toCharArray()) {
+            if (c == '_') {
+                upper = true;
+            } else {
+                sb.append(upper ? c : Character.toLowerCase(c));
+                upper = false;
+            }
+        }
+        return sb.append("Co2Production").toString();
+    }
+
+    public double getGramsPerKm(TraverseMode mode) {
+        return gramsPerKm[mode.ordinal()];
+    }
+
+    public void setGramsPerKm(TraverseMode mode, double grams) {
+        gramsPerKm[mode.ordinal()] = grams;
+    }
+
+    /**
+     * @param carGramsPerKm the CO2 produced by the requester's own car, or null or zero to use the value for CAR.
+     * @return the grams of CO2 produced in travelling the given distance in the given mode.
+     */
+    public long getCo2(TraverseMode mode, double meters, Double carGramsPerKm) {
+        double grams = gramsPerKm[mode.ordinal()];
+        if (mode == TraverseMode.CAR && carGramsPerKm != null && carGramsPerKm != 0) {
+            grams = carGramsPerKm;
+        }
+        return (long) (grams * meters) / 1000;
+    }
+}
@@ -67,6 +67,18 @@ public class FareRuleSet implements Serializable {
         return agency != null;
     }
 
+    public String getAgency() {
+        return agency;
+    }
+
+    public Set<AgencyAndId> getRoutes() {
+        return routes;
+    }
+
+    public Set<String> getContains() {
+        return contains;
+    }
+
     public boolean matches(Set<String> agencies, String startZone, String endZone, Set<String> zonesVisited,
             Set<AgencyAndId> routesVisited) {
         //check for matching agency
@@ -24,6 +24,7 @@ import org.opentripplanner.common.geometry.GeometryUtils;
 import org.opentripplanner.routing.algorithm.strategies.EuclideanRemainingWeightHeuristic;
 import org.opentripplanner.routing.algorithm.strategies.RemainingWeightHeuristic;
 import org.opentripplanner.routing.algorithm.strategies.TrivialRemainingWeightHeuristic;
+import org.opentripplanner.routing.bike_rental.BikeRentalAvailability;
 import org.opentripplanner.routing.edgetype.StreetEdge;
 import org.opentripplanner.routing.edgetype.TemporaryPartialStreetEdge;
 import org.opentripplanner.routing.edgetype.TimetableSnapshot;
@@ -46,9 +47,11 @@ import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -99,6 +102,9 @@ public class RoutingContext implements Cloneable {
     /** A snapshot of street speeds for looking up real-time or historical traffic data */
     public final StreetSpeedSnapshot streetSpeedSnapshot;
 
+    /** A snapshot of bike rental station availability, pinned for the duration of the search */
+    public final BikeRentalAvailability bikeRentalAvailability;
+
     /**
      * Cache lists of which transit services run on which midnight-to-midnight periods. This ties a TraverseOptions to a particular start time for the
      * duration of a search so the same options cannot be used for multiple searches concurrently. To do so this cache would need to be moved into
@@ -125,6 +131,19 @@ public class RoutingContext implements Cloneable {
     /** Indicates that a maximum slope constraint was specified but was removed during routing to produce a result. */
     public boolean slopeRestrictionRemoved = false;
 
+    /**
+     * Temporary vertices created for this request in addition to its origin and target, for instance one per parking
+     * lot in a driveToPark search. They are torn down together with the origin and target.
+     */
+    public final List<TemporaryVertex> extraTemporaryVertices = new ArrayList<TemporaryVertex>();
+
+    /**
+     * Temporary edges leading to or from permanent vertices of the graph, indexed by the permanent vertex. Temporary
+     * edges are not added to the edge lists of permanent vertices (see Edge), so concurrent searches never see each
+     * other's temporary edges and the shared graph is not modified by requests.
+     */
+    private final OverlayGraph temporaryEdges = new OverlayGraph();
+
     /* CONSTRUCTORS */
 
     /**
@@ -241,6 +260,12 @@ public class RoutingContext implements Cloneable {
         else
             this.streetSpeedSnapshot = null;
 
+        // and for bike rental availability, which the updaters replace on every poll
+        if (graph.bikeRentalAvailabilitySource != null)
+            this.bikeRentalAvailability = graph.bikeRentalAvailabilitySource.getSnapshot();
+        else
+            this.bikeRentalAvailability = null;
+
 
         Edge fromBackEdge = null;
         Edge toBackEdge = null;
@@ -303,6 +328,9 @@ public class RoutingContext implements Cloneable {
             }
         }
         
+        if (fromVertex instanceof TemporaryVertex) addTemporaryVertex((TemporaryVertex) fromVertex);
+        if (toVertex instanceof TemporaryVertex) addTemporaryVertex((TemporaryVertex) toVertex);
+
         if (opt.startingTransitStopId != null) {
             Stop stop = graph.index.stopForId.get(opt.startingTransitStopId);
             TransitStop tstop = graph.index.stopVertexForStop.get(stop);
@@ -331,6 +359,40 @@ public class RoutingContext implements Cloneable {
 
     /* INSTANCE METHODS */
 
+    /**
+     * Make the temporary edges of the given vertex that connect it to permanent vertices visible to searches using
+     * this routing context.
+     */
+    public void addTemporaryVertex(TemporaryVertex temporaryVertex) {
+        Vertex v = (Vertex) temporaryVertex;
+        for (Edge e : v.getIncoming()) {
+            if (!(e.getFromVertex() instanceof TemporaryVertex)) temporaryEdges.addOutgoing(e.getFromVertex(), e);
+        }
+        for (Edge e : v.getOutgoing()) {
+            if (!(e.getToVertex() instanceof TemporaryVertex)) temporaryEdges.addIncoming(e.getToVertex(), e);
+        }
+    }
+
+    /** @return the edges leaving the given vertex, including the temporary edges of this request. */
+    public Collection<Edge> getOutgoing(Vertex v) {
+        List<Edge> extra = temporaryEdges.getOutgoing(v);
+        if (extra.isEmpty()) return v.getOutgoing();
+        List<Edge> edges = new ArrayList<Edge>(v.getDegreeOut() + extra.size());
+        edges.addAll(v.getOutgoing());
+        edges.addAll(extra);
+        return edges;
+    }
+
+    /** @return the edges entering the given vertex, including the temporary edges of this request. */
+    public Collection<Edge> getIncoming(Vertex v) {
+        List<Edge> extra = temporaryEdges.getIncoming(v);
+        if (extra.isEmpty()) return v.getIncoming();
+        List<Edge> edges = new ArrayList<Edge>(v.getDegreeIn() + extra.size());
+        edges.addAll(v.getIncoming());
+        edges.addAll(extra);
+        return edges;
+    }
+
     public void check() {
         ArrayList<String> notFound = new ArrayList<String>();
 
@@ -414,5 +476,6 @@ public class RoutingContext implements Cloneable {
     public void destroy() {
         if (origin instanceof TemporaryVertex) ((TemporaryVertex) origin).dispose();
         if (target instanceof TemporaryVertex) ((TemporaryVertex) target).dispose();
+        for (TemporaryVertex v : extraTemporaryVertices) v.dispose();
     }
 }
@@ -27,6 +27,7 @@ import org.opentripplanner.routing.graph.Vertex;
 import org.opentripplanner.routing.request.BannedStopSet;
 import org.opentripplanner.routing.spt.DominanceFunction;
 import org.opentripplanner.routing.spt.ShortestPathTree;
+import org.opentripplanner.routing.spt.VertexIndexedShortestPathTree;
 import org.opentripplanner.util.DateUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -124,6 +125,13 @@ public class RoutingRequest implements Cloneable, Serializable {
     /** The maximum number of itineraries to return. */
     public int numItineraries = 3;
 
+    /**
+     * The time in milliseconds since the epoch after which searches for this request are abandoned, whatever the
+     * router timeouts. Web services set it from the time the request was received, so that time spent waiting for a
+     * routing thread counts against it. Not part of the request's identity, so not included in equals().
+     */
+    public long deadline = Long.MAX_VALUE;
+
     /** The maximum slope of streets for wheelchair trips. */
     public double maxSlope = 0.0833333333333; // ADA max wheelchair ramp slope is a good default.
 
@@ -411,6 +419,12 @@ public class RoutingRequest implements Cloneable, Serializable {
     public boolean kissAndRide  = false;
     public boolean driveToPark = false;
 
+    /**
+     * In driveToPark mode, run one search per parking lot in parallel on a shared pool instead of a single
+     * one-to-many search. Arrive-by driveToPark requests always use the per-lot searches.
+     */
+    public boolean driveToParkParallel = false;
+
     /* Whether we are in "long-distance mode". This is currently a server-wide setting, but it could be made per-request. */
     // TODO remove
     public boolean longDistance = false;
@@ -421,6 +435,13 @@ public class RoutingRequest implements Cloneable, Serializable {
     /** The function that compares paths converging on the same vertex to decide which ones continue to be explored. */
     public DominanceFunction dominanceFunction = new DominanceFunction.Pareto();
 
+    /**
+     * Store the states of the shortest path tree in an array indexed by vertex index rather than a hash map.
+     * This is faster and produces less garbage on searches reaching a large part of the graph. The array is allocated
+     * in pages as the search reaches new parts of the graph, so small searches only pay for a small table of pages.
+     */
+    public boolean vertexIndexedShortestPathTree = true;
+
     /** Accept only paths that use transit (no street-only paths). */
     public boolean onlyTransitTrips = false;
 
@@ -1176,6 +1197,9 @@ public class RoutingRequest implements Cloneable, Serializable {
 
     /** Create a new ShortestPathTree instance using the DominanceFunction specified in this RoutingRequest. */
     public ShortestPathTree getNewShortestPathTree() {
+        if (vertexIndexedShortestPathTree) {
+            return new VertexIndexedShortestPathTree(this, this.dominanceFunction);
+        }
         return this.dominanceFunction.getNewShortestPathTree(this);
     }
 
@@ -13,8 +13,11 @@
 
 package org.opentripplanner.routing.core;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
+import java.util.List;
 import java.util.Set;
 
 import org.onebusaway.gtfs.model.AgencyAndId;
@@ -462,6 +465,24 @@ public class State implements Cloneable {
     public RoutingRequest getOptions () {
         return stateData.opt;
     }
+
+    /**
+     * @return the edges leaving the given vertex, including the temporary edges of this search when it has a routing
+     * context (they are only visible through the context, see RoutingContext.getOutgoing).
+     */
+    public Collection<Edge> getOutgoingEdges(Vertex v) {
+        RoutingContext rctx = stateData.opt.rctx;
+        return rctx == null ? v.getOutgoing() : rctx.getOutgoing(v);
+    }
+
+    /** @return the street edges leaving the given vertex, including the temporary edges of this search. */
+    public List<Edge> getOutgoingStreetEdges(Vertex v) {
+        List<Edge> result = new ArrayList<Edge>();
+        for (Edge out : getOutgoingEdges(v)) {
+            if (out instanceof StreetEdge) result.add(out);
+        }
+        return result;
+    }
     
     /**
      * This method is on State rather than RoutingRequest because we care whether the user is in
@@ -579,7 +600,7 @@ public class State implements Cloneable {
     public boolean multipleOptionsBefore() {
         boolean foundAlternatePaths = false;
         TraverseMode requestedMode = getNonTransitMode();
-        for (Edge out : backState.vertex.getOutgoing()) {
+        for (Edge out : getOutgoingEdges(backState.vertex)) {
             if (out == backEdge) {
                 continue;
             }
@@ -601,7 +622,7 @@ public class State implements Cloneable {
             //now, from here, try a continuing path.
             Vertex tov = outState.getVertex();
             boolean found = false;
-            for (Edge out2 : tov.getOutgoing()) {
+            for (Edge out2 : getOutgoingEdges(tov)) {
                 State outState2 = out2.traverse(outState);
                 if (outState2 != null && !outState2.getBackMode().equals(requestedMode)) {
                     // walking a bike, so, not really an exit
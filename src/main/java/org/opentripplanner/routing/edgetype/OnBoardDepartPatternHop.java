@@ -169,6 +169,6 @@ public class OnBoardDepartPatternHop extends Edge implements OnboardEdge, Tempor
 
     @Override
     public void dispose() {
-        tov.removeIncoming(this);
+        // Nothing to do, this edge was never attached to a permanent vertex (see Edge).
     }
 }
@@ -15,6 +15,7 @@ package org.opentripplanner.routing.edgetype;
 
 import java.util.Set;
 
+import org.opentripplanner.routing.core.RoutingContext;
 import org.opentripplanner.routing.core.RoutingRequest;
 import org.opentripplanner.routing.core.State;
 import org.opentripplanner.routing.core.StateEditor;
@@ -58,7 +59,7 @@ public abstract class RentABikeAbstractEdge extends Edge {
             return null;
 
         BikeRentalStationVertex dropoff = (BikeRentalStationVertex) tov;
-        if (options.useBikeRentalAvailabilityInformation && dropoff.getBikesAvailable() == 0) {
+        if (options.useBikeRentalAvailabilityInformation && getBikesAvailable(s0, dropoff) == 0) {
             return null;
         }
 
@@ -74,6 +75,22 @@ public abstract class RentABikeAbstractEdge extends Edge {
         return s1b;
     }
 
+    /**
+     * Availability is read from the snapshot the search started with, falling back on the counts the station vertex
+     * was created with for stations that no updater reports on.
+     */
+    private static int getBikesAvailable(State s0, BikeRentalStationVertex station) {
+        RoutingContext rctx = s0.getContext();
+        if (rctx == null || rctx.bikeRentalAvailability == null) return station.getBikesAvailable();
+        return rctx.bikeRentalAvailability.getBikesAvailable(station.getId(), station.getBikesAvailable());
+    }
+
+    private static int getSpacesAvailable(State s0, BikeRentalStationVertex station) {
+        RoutingContext rctx = s0.getContext();
+        if (rctx == null || rctx.bikeRentalAvailability == null) return station.getSpacesAvailable();
+        return rctx.bikeRentalAvailability.getSpacesAvailable(station.getId(), station.getSpacesAvailable());
+    }
+
     protected State traverseDropoff(State s0) {
         RoutingRequest options = s0.getOptions();
         /*
@@ -82,7 +99,7 @@ public abstract class RentABikeAbstractEdge extends Edge {
         if (!s0.isBikeRenting() || !hasCompatibleNetworks(networks, s0.getBikeRentalNetworks()))
             return null;
         BikeRentalStationVertex pickup = (BikeRentalStationVertex) tov;
-        if (options.useBikeRentalAvailabilityInformation && pickup.getSpacesAvailable() == 0) {
+        if (options.useBikeRentalAvailabilityInformation && getSpacesAvailable(s0, pickup) == 0) {
             return null;
         }
 
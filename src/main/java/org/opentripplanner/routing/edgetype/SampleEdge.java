@@ -29,8 +29,7 @@ public class SampleEdge extends Edge implements TemporaryEdge {
 
     @Override
     public void dispose() {
-        tov.removeIncoming(this);
-        fromv.removeOutgoing(this);
+        // Nothing to do, this edge was never attached to a permanent vertex (see Edge).
     }
 
     @Override
@@ -162,6 +162,23 @@ public class StreetEdge extends Edge implements Cloneable {
     }
 
 
+    /**
+     * Rebuild a street edge from the values computed when the graph was built, as stored in a compact graph file.
+     * Unlike the other constructors, nothing is derived from a geometry here.
+     */
+    public StreetEdge(StreetVertex v1, StreetVertex v2, int[] compactGeometry,
+                      I18NString name, int length_mm, byte flags, byte inAngle, byte outAngle) {
+        super(v1, v2);
+        this.compactGeometry = compactGeometry;
+        this.name = name;
+        this.length_mm = length_mm;
+        this.flags = flags;
+        this.inAngle = inAngle;
+        this.outAngle = outAngle;
+        this.bicycleSafetyFactor = 1.0f;
+        this.setCarSpeed(DEFAULT_CAR_SPEED);
+    }
+
     //For testing only
     public StreetEdge(StreetVertex v1, StreetVertex v2, LineString geometry,
                       String name, double length,
@@ -407,7 +424,7 @@ public class StreetEdge extends Edge implements Cloneable {
             if (s1.hasEnteredNoThroughTrafficArea()) {
                 // Only Edges are marked as no-thru, but really we need to avoid creating dominant, pruned states
                 // on thru _Vertices_. This could certainly be improved somehow.
-                for (StreetEdge se : Iterables.filter(s1.getVertex().getOutgoing(), StreetEdge.class)) {
+                for (StreetEdge se : Iterables.filter(s0.getOutgoingEdges(s1.getVertex()), StreetEdge.class)) {
                     if (!se.isNoThruTraffic()) {
                         // This vertex has at least one through-traffic edge. We can't dominate it with a no-thru state.
                         return null;
@@ -667,6 +684,14 @@ public class StreetEdge extends Edge implements Cloneable {
 		return CompactLineString.uncompactLineString(fromv.getLon(), fromv.getLat(), tov.getLon(), tov.getLat(), compactGeometry, isBack());
 	}
 
+	/**
+	 * @return the coordinates of the geometry of this edge as alternating x and y values, without making a
+	 *         LineString. They are the same as those of getGeometry().
+	 */
+	public double[] getGeometryCoordinates() {
+		return CompactLineString.uncompactCoordinates(fromv.getLon(), fromv.getLat(), tov.getLon(), tov.getLat(), compactGeometry, isBack());
+	}
+
 	private void setGeometry(LineString geometry) {
 		this.compactGeometry = CompactLineString.compactLineString(fromv.getLon(), fromv.getLat(), tov.getLon(), tov.getLat(), isBack() ? (LineString)geometry.reverse() : geometry, isBack());
 	}
@@ -766,6 +791,28 @@ public class StreetEdge extends Edge implements Cloneable {
 	    flags = BitSetUtils.set(flags, SLOPEOVERRIDE_FLAG_INDEX, slopeOverride);
 	}
 
+    /* Raw field values, for storage in compact graph files. */
+
+    public int[] getCompactGeometry() {
+        return compactGeometry;
+    }
+
+    public int getLengthMillimeters() {
+        return length_mm;
+    }
+
+    public byte getFlags() {
+        return flags;
+    }
+
+    public byte getCompactInAngle() {
+        return inAngle;
+    }
+
+    public byte getCompactOutAngle() {
+        return outAngle;
+    }
+
     /**
      * Return the azimuth of the first segment in this edge in integer degrees clockwise from South.
      * TODO change everything to clockwise from North
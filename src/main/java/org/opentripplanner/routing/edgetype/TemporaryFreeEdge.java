@@ -41,11 +41,7 @@ public class TemporaryFreeEdge extends FreeEdge implements TemporaryEdge {
 
     @Override
     public void dispose() {
-        if (endEdge) {
-            fromv.removeOutgoing(this);
-        } else {
-            tov.removeIncoming(this);
-        }
+        // Nothing to do, this edge was never attached to a permanent vertex (see Edge).
     }
 
     @Override
@@ -58,13 +58,7 @@ final public class TemporaryPartialStreetEdge extends PartialStreetEdge implemen
 
     @Override
     public void dispose() {
-        if (endEdge != null) {
-            if (endEdge) {
-                fromv.removeOutgoing(this);
-            } else {
-                tov.removeIncoming(this);
-            }
-        }
+        // Nothing to do, this edge was never attached to a permanent vertex (see Edge).
     }
 
     @Override
@@ -21,6 +21,7 @@ import java.util.Map;
 import java.util.TimeZone;
 
 import com.beust.jcommander.internal.Lists;
+import com.google.common.annotations.VisibleForTesting;
 
 import org.onebusaway.gtfs.model.AgencyAndId;
 import org.onebusaway.gtfs.model.Stop;
@@ -87,7 +88,21 @@ public class Timetable implements Serializable {
      * Helps determine whether a particular pattern is worth searching for departures at a given time. 
      */
     private transient int minTime, maxTime;
-    
+
+    /**
+     * For each stop, the indexes in tripTimes of the trips sorted by departure time at that stop, ties broken by
+     * trip index. Consecutive stops where no trip overtakes another share the same array, so arrays must never be
+     * modified in place. Null until the Timetable is finished, after which it is kept up to date as trips are added
+     * or replaced.
+     */
+    private transient int[][] departureIndex;
+
+    /**
+     * The same as departureIndex for arrival times, except that ties are sorted by decreasing trip index, so that a
+     * backward scan meets the lowest trip index first.
+     */
+    private transient int[][] arrivalIndex;
+
     /** Construct an empty Timetable. */
     public Timetable(TripPattern pattern) {
         this.pattern = pattern;
@@ -101,6 +116,11 @@ public class Timetable implements Serializable {
         tripTimes.addAll(tt.tripTimes);
         this.serviceDate = serviceDate;
         this.pattern = tt.pattern;
+        // The index arrays are never modified in place, so they can be shared until trips are updated.
+        if (tt.isIndexed()) {
+            this.departureIndex = tt.departureIndex.clone();
+            this.arrivalIndex = tt.arrivalIndex.clone();
+        }
     }
 
     /**
@@ -140,37 +160,72 @@ public class Timetable implements Serializable {
         // NOTE the time is sometimes negative here. That is fine, we search for the first trip of the day.
         TripTimes bestTrip = null;
         Stop currentStop = pattern.getStop(stopIndex);
-        // Linear search through the timetable looking for the best departure.
-        // We no longer use a binary search on Timetables because:
-        // 1. we allow combining trips from different service IDs on the same tripPattern.
-        // 2. We mix frequency-based and one-off TripTimes together on tripPatterns.
-        // 3. Stoptimes may change with realtime updates, and we cannot count on them being sorted.
-        //    The complexity of keeping sorted indexes up to date does not appear to be worth the
-        //    apparently minor speed improvement.
         int bestTime = boarding ? Integer.MAX_VALUE : Integer.MIN_VALUE;
-        // Hoping JVM JIT will distribute the loop over the if clauses as needed.
-        // We could invert this and skip some service days based on schedule overlap as in RRRR.
-        for (TripTimes tt : tripTimes) {
-            if (tt.isCanceled()) continue;
-            if ( ! serviceDay.serviceRunning(tt.serviceCode)) continue; // TODO merge into call on next line
-            if ( ! tt.tripAcceptable(s0, stopIndex)) continue;
-            int adjustedTime = adjustTimeForTransfer(s0, currentStop, tt.trip, boarding, serviceDay, time);
-            if (adjustedTime == -1) continue;
+        // Trips from different service IDs are combined on the same pattern and realtime updates may reorder them,
+        // so we cannot binary search the trips themselves. Instead the per-stop index gives the trips in time order
+        // at this stop: binary search it for the search time, then scan forward (backward) until a trip passes the
+        // service, acceptance and transfer checks. The linear search remains for timetables that are not finished.
+        if (isIndexed()) {
             if (boarding) {
-                int depTime = tt.getDepartureTime(stopIndex);
-                if (depTime < 0) continue; // negative values were previously used for canceled trips/passed stops/skipped stops, but
-                                           // now its not sure if this check should be still in place because there is a boolean field
-                                           // for canceled trips
-                if (depTime >= adjustedTime && depTime < bestTime) {
-                    bestTrip = tt;
-                    bestTime = depTime;
+                int[] order = departureIndex[stopIndex];
+                for (int i = firstIndexAtOrAfter(order, stopIndex, time); i < order.length; i++) {
+                    TripTimes tt = tripTimes.get(order[i]);
+                    if (tt.isCanceled()) continue;
+                    if ( ! serviceDay.serviceRunning(tt.serviceCode)) continue;
+                    if ( ! tt.tripAcceptable(s0, stopIndex)) continue;
+                    int adjustedTime = adjustTimeForTransfer(s0, currentStop, tt.trip, boarding, serviceDay, time);
+                    if (adjustedTime == -1) continue;
+                    int depTime = tt.getDepartureTime(stopIndex);
+                    if (depTime < 0) continue;
+                    if (depTime >= adjustedTime) {
+                        bestTrip = tt;
+                        bestTime = depTime;
+                        break;
+                    }
                 }
             } else {
-                int arvTime = tt.getArrivalTime(stopIndex);
-                if (arvTime < 0) continue;
-                if (arvTime <= adjustedTime && arvTime > bestTime) {
-                    bestTrip = tt;
-                    bestTime = arvTime;
+                int[] order = arrivalIndex[stopIndex];
+                for (int i = lastIndexAtOrBefore(order, stopIndex, time); i >= 0; i--) {
+                    TripTimes tt = tripTimes.get(order[i]);
+                    if (tt.isCanceled()) continue;
+                    if ( ! serviceDay.serviceRunning(tt.serviceCode)) continue;
+                    if ( ! tt.tripAcceptable(s0, stopIndex)) continue;
+                    int adjustedTime = adjustTimeForTransfer(s0, currentStop, tt.trip, boarding, serviceDay, time);
+                    if (adjustedTime == -1) continue;
+                    int arvTime = tt.getArrivalTime(stopIndex);
+                    if (arvTime < 0) continue;
+                    if (arvTime <= adjustedTime) {
+                        bestTrip = tt;
+                        bestTime = arvTime;
+                        break;
+                    }
+                }
+            }
+        } else {
+            for (TripTimes tt : tripTimes) {
+                // Hoping JVM JIT will distribute the loop over the if clauses as needed.
+                // We could invert this and skip some service days based on schedule overlap as in RRRR.
+                if (tt.isCanceled()) continue;
+                if ( ! serviceDay.serviceRunning(tt.serviceCode)) continue; // TODO merge into call on next line
+                if ( ! tt.tripAcceptable(s0, stopIndex)) continue;
+                int adjustedTime = adjustTimeForTransfer(s0, currentStop, tt.trip, boarding, serviceDay, time);
+                if (adjustedTime == -1) continue;
+                if (boarding) {
+                    int depTime = tt.getDepartureTime(stopIndex);
+                    if (depTime < 0) continue; // negative values were previously used for canceled trips/passed stops/skipped stops, but
+                                               // now its not sure if this check should be still in place because there is a boolean field
+                                               // for canceled trips
+                    if (depTime >= adjustedTime && depTime < bestTime) {
+                        bestTrip = tt;
+                        bestTime = depTime;
+                    }
+                } else {
+                    int arvTime = tt.getArrivalTime(stopIndex);
+                    if (arvTime < 0) continue;
+                    if (arvTime <= adjustedTime && arvTime > bestTime) {
+                        bestTrip = tt;
+                        bestTime = arvTime;
+                    }
                 }
             }
         }
@@ -209,6 +264,34 @@ public class Timetable implements Serializable {
         return bestTrip;
     }
 
+    /** @return the position in the departure order of the first trip departing the stop at or after the time. */
+    private int firstIndexAtOrAfter(int[] order, int stopIndex, int time) {
+        int low = 0, high = order.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (tripTimes.get(order[mid]).getDepartureTime(stopIndex) < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /** @return the position in the arrival order of the last trip arriving at the stop at or before the time. */
+    private int lastIndexAtOrBefore(int[] order, int stopIndex, int time) {
+        int low = 0, high = order.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (tripTimes.get(order[mid]).getArrivalTime(stopIndex) <= time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low - 1;
+    }
+
     /**
      * Check transfer table rules. Given the last alight time from the State,
      * return the boarding time t0 adjusted for this particular trip's minimum transfer time,
@@ -289,6 +372,109 @@ public class Timetable implements Serializable {
             minTime = Math.min(minTime, freq.getMinDeparture());
             maxTime = Math.max(maxTime, freq.getMaxArrival());
         }
+        /* Sort the trips at each stop for the departure search. Updated copies maintain the index incrementally. */
+        if ( ! isIndexed()) {
+            departureIndex = buildIndex(true);
+            arrivalIndex = buildIndex(false);
+        }
+    }
+
+    /** @return the indexes of the trips in order of departure from the given stop, or null if not indexed. */
+    @VisibleForTesting
+    int[] getDepartureOrder(int stopIndex) {
+        return isIndexed() ? departureIndex[stopIndex] : null;
+    }
+
+    /** @return whether the departure and arrival indexes cover all the trips of this timetable. */
+    private boolean isIndexed() {
+        return departureIndex != null && departureIndex.length > 0
+                && departureIndex[0].length == tripTimes.size();
+    }
+
+    /**
+     * A sort key ordering trips by their time at the given stop. The trip index in the low bits breaks ties, in
+     * increasing order for departures and decreasing order for arrivals.
+     */
+    private long indexKey(int trip, int stop, boolean departures) {
+        TripTimes tt = tripTimes.get(trip);
+        if (departures) {
+            return ((long) tt.getDepartureTime(stop) << 32) | trip;
+        } else {
+            return ((long) tt.getArrivalTime(stop) << 32) | (Integer.MAX_VALUE - trip);
+        }
+    }
+
+    private static int tripFromKey(long key, boolean departures) {
+        int low = (int) key;
+        return departures ? low : Integer.MAX_VALUE - low;
+    }
+
+    private int[][] buildIndex(boolean departures) {
+        int nStops = pattern.stopPattern.size;
+        int nTrips = tripTimes.size();
+        int[][] index = new int[nStops][];
+        long[] keys = new long[nTrips];
+        for (int s = 0; s < nStops; s++) {
+            for (int t = 0; t < nTrips; t++) {
+                keys[t] = indexKey(t, s, departures);
+            }
+            Arrays.sort(keys);
+            int[] order = new int[nTrips];
+            for (int t = 0; t < nTrips; t++) {
+                order[t] = tripFromKey(keys[t], departures);
+            }
+            // Most trips do not overtake each other, share the order with the previous stop when possible.
+            index[s] = (s > 0 && Arrays.equals(order, index[s - 1])) ? index[s - 1] : order;
+        }
+        return index;
+    }
+
+    /**
+     * Move the given trip to its place in the index at every stop, after its TripTimes were added or replaced. The
+     * order arrays may be shared between stops and with the timetables this one was copied from, so they are never
+     * modified: a new array is made for a stop only when the trip changes place there. A realtime update rarely makes
+     * a trip overtake another, so usually nothing is allocated.
+     */
+    private void reindexTrip(int[][] index, int trip, boolean departures) {
+        for (int s = 0; s < index.length; s++) {
+            int[] order = index[s];
+            long key = indexKey(trip, s, departures);
+            // The trip is already in the order when its TripTimes were replaced, and not when they were added.
+            int pos = -1;
+            if (order.length == tripTimes.size()) {
+                for (int i = 0; i < order.length; i++) {
+                    if (order[i] == trip) {
+                        pos = i;
+                        break;
+                    }
+                }
+                // Keys are unique, as they include the trip index.
+                if ((pos == 0 || indexKey(order[pos - 1], s, departures) < key)
+                        && (pos == order.length - 1 || indexKey(order[pos + 1], s, departures) > key)) {
+                    continue; // still in place, keep sharing the existing array
+                }
+            }
+            // Find the new position of the trip among the others, skipping its old position.
+            int n = pos < 0 ? order.length : order.length - 1;
+            int low = 0, high = n;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                int other = order[pos >= 0 && mid >= pos ? mid + 1 : mid];
+                if (indexKey(other, s, departures) < key) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            int[] updated = new int[n + 1];
+            for (int i = 0, j = 0; i < order.length; i++) {
+                if (i == pos) continue;
+                if (j == low) updated[j++] = trip;
+                updated[j++] = order[i];
+            }
+            if (low == n) updated[n] = trip;
+            index[s] = (s > 0 && Arrays.equals(updated, index[s - 1])) ? index[s - 1] : updated;
+        }
     }
 
     /** @return the index of TripTimes for this trip ID in this particular Timetable */
@@ -332,7 +518,13 @@ public class Timetable implements Serializable {
      * @return old trip times of trip
      */
     public TripTimes setTripTimes(int tripIndex, TripTimes tt) {
-        return tripTimes.set(tripIndex, tt);
+        boolean indexed = isIndexed();
+        TripTimes old = tripTimes.set(tripIndex, tt);
+        if (indexed) {
+            reindexTrip(departureIndex, tripIndex, true);
+            reindexTrip(arrivalIndex, tripIndex, false);
+        }
+        return old;
     }
 
     /**
@@ -510,9 +702,15 @@ public class Timetable implements Serializable {
      * and should only be done once after an entire batch of trips are added.
      * Note that the trip is not added to the enclosing pattern here, but in the pattern's wrapper function.
      * Here we don't know if it's a scheduled trip or a realtime-added trip.
+     * The departure search index of a finished Timetable is updated right away.
      */
     public void addTripTimes(TripTimes tt) {
+        boolean indexed = isIndexed();
         tripTimes.add(tt);
+        if (indexed) {
+            reindexTrip(departureIndex, tripTimes.size() - 1, true);
+            reindexTrip(arrivalIndex, tripTimes.size() - 1, false);
+        }
     }
 
     /**
@@ -15,9 +15,7 @@ package org.opentripplanner.routing.edgetype;
 
 import java.util.Comparator;
 import java.util.ConcurrentModificationException;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Set;
@@ -25,6 +23,7 @@ import java.util.SortedSet;
 import java.util.TreeSet;
 
 import org.onebusaway.gtfs.model.calendar.ServiceDate;
+import org.opentripplanner.common.PersistentHashMap;
 import org.opentripplanner.routing.trippattern.TripTimes;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -96,12 +95,10 @@ public class TimetableSnapshot {
 
     private static final Logger LOG = LoggerFactory.getLogger(TimetableSnapshot.class);
     
-    // Use HashMap not Map so we can clone.
-    // if this turns out to be slow/spacious we can use an array with integer pattern indexes
+    // A persistent map, so a commit shares it with the committed snapshot instead of copying it, and the writer
+    // only copies the paths leading to the patterns it changes afterwards.
     // The SortedSet members are copy-on-write
-    // FIXME: this could be made into a flat hashtable with compound keys.
-    private HashMap<TripPattern, SortedSet<Timetable>> timetables =
-            new HashMap<TripPattern, SortedSet<Timetable>>();
+    private PersistentHashMap<TripPattern, SortedSet<Timetable>> timetables = PersistentHashMap.empty();
     
     /**
      * <p>
@@ -110,10 +107,10 @@ public class TimetableSnapshot {
      * with trip times of a trip that didn't exist yet in the trip pattern.
      * </p>
      * <p>
-     * This is a HashMap and not a Map so the clone function is available.
+     * This is a persistent map for the same reason as the timetables.
      * </p>
      */
-    private HashMap<TripIdAndServiceDate, TripPattern> lastAddedTripPattern = new HashMap<>();
+    private PersistentHashMap<TripIdAndServiceDate, TripPattern> lastAddedTripPattern = PersistentHashMap.empty();
     
     /**
      * Boolean value indicating that timetable snapshot is read only if true. Once it is true, it shouldn't
@@ -203,7 +200,7 @@ public class TimetableSnapshot {
             if(old.serviceDate != null)
                 sortedTimetables.remove(old);
             sortedTimetables.add(tt);
-            timetables.put(pattern, sortedTimetables);
+            timetables = timetables.plus(pattern, sortedTimetables);
             dirtyTimetables.add(tt);
             dirty = true;
         }
@@ -217,7 +214,7 @@ public class TimetableSnapshot {
             // Remember this pattern for the added trip id and service date
             String tripId = updatedTripTimes.trip.getId().getId();
             TripIdAndServiceDate tripIdAndServiceDate = new TripIdAndServiceDate(tripId, serviceDate);
-            lastAddedTripPattern.put(tripIdAndServiceDate, pattern);
+            lastAddedTripPattern = lastAddedTripPattern.plus(tripIdAndServiceDate, pattern);
         } else {
             // Set updated trip times of trip
             tt.setTripTimes(tripIndex, updatedTripTimes);
@@ -229,20 +226,17 @@ public class TimetableSnapshot {
     }
 
     /**
-     * This produces a small delay of typically around 50ms, which is almost entirely due to
-     * the indexing step. Cloning the map is much faster (2ms).
-     * It is perhaps better to index timetables as they are changed to avoid experiencing all
-     * this lag at once, but we want to avoid re-indexing when receiving multiple updates for
-     * the same timetable in rapid succession. This compromise is expressed by the
-     * maxSnapshotFrequency property of StoptimeUpdater. The indexing could be made much more
-     * efficient as well.
+     * The cost of a commit only depends on the changes since the previous commit: the maps are
+     * persistent and are shared with the returned snapshot rather than copied, so what remains is
+     * the indexing of the modified timetables. We want to avoid re-indexing when receiving multiple
+     * updates for the same timetable in rapid succession. This compromise is expressed by the
+     * maxSnapshotFrequency property of StoptimeUpdater.
      * @return an immutable copy of this TimetableSnapshot with all updates applied
      */
     public TimetableSnapshot commit() {
         return commit(false);
     }
 
-    @SuppressWarnings("unchecked")
     public TimetableSnapshot commit(boolean force) {
         if (readOnly) {
             throw new ConcurrentModificationException("This TimetableSnapshot is read-only.");
@@ -253,9 +247,8 @@ public class TimetableSnapshot {
         for (Timetable tt : dirtyTimetables) {
             tt.finish(); // summarize, index, etc. the new timetables
         }
-        ret.timetables = (HashMap<TripPattern, SortedSet<Timetable>>) this.timetables.clone();
-        ret.lastAddedTripPattern = (HashMap<TripIdAndServiceDate, TripPattern>)
-                this.lastAddedTripPattern.clone();
+        ret.timetables = this.timetables;
+        ret.lastAddedTripPattern = this.lastAddedTripPattern;
         this.dirtyTimetables.clear();
         this.dirty = false;
 
@@ -277,8 +270,8 @@ public class TimetableSnapshot {
         }
         
         // Clear all data from snapshot
-        timetables.clear();
-        lastAddedTripPattern.clear();
+        timetables = PersistentHashMap.empty();
+        lastAddedTripPattern = PersistentHashMap.empty();
     }
 
     /**
@@ -290,9 +283,9 @@ public class TimetableSnapshot {
         }
 
         boolean modified = false;
-        for (Iterator<TripPattern> it = timetables.keySet().iterator(); it.hasNext();){
-            TripPattern pattern = it.next();
-            SortedSet<Timetable> sortedTimetables = timetables.get(pattern);
+        for (Entry<TripPattern, SortedSet<Timetable>> entry : timetables) {
+            TripPattern pattern = entry.getKey();
+            SortedSet<Timetable> sortedTimetables = entry.getValue();
             SortedSet<Timetable> toKeepTimetables =
                     new TreeSet<Timetable>(new SortedTimetableComparator());
             for(Timetable timetable : sortedTimetables) {
@@ -304,18 +297,17 @@ public class TimetableSnapshot {
             }
 
             if(toKeepTimetables.isEmpty()) {
-                it.remove();
-            } else {
-                timetables.put(pattern, toKeepTimetables);
+                timetables = timetables.minus(pattern);
+            } else if (toKeepTimetables.size() < sortedTimetables.size()) {
+                timetables = timetables.plus(pattern, toKeepTimetables);
             }
         }
         
         // Also remove last added trip pattern for days that are purged
-        for (Iterator<Entry<TripIdAndServiceDate, TripPattern>> iterator = lastAddedTripPattern
-                .entrySet().iterator(); iterator.hasNext();) {
-            TripIdAndServiceDate tripIdAndServiceDate = iterator.next().getKey();
+        for (Entry<TripIdAndServiceDate, TripPattern> entry : lastAddedTripPattern) {
+            TripIdAndServiceDate tripIdAndServiceDate = entry.getKey();
             if (serviceDate.compareTo(tripIdAndServiceDate.getServiceDate()) >= 0) {
-                iterator.remove();
+                lastAddedTripPattern = lastAddedTripPattern.minus(tripIdAndServiceDate);
                 modified = true;
             }
         }
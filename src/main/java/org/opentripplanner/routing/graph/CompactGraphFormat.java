@@ -0,0 +1,507 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.graph;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.opentripplanner.common.MavenVersion;
+import org.opentripplanner.graph_builder.annotation.GraphBuilderAnnotation;
+import org.opentripplanner.routing.edgetype.StreetEdge;
+import org.opentripplanner.routing.edgetype.StreetTraversalPermission;
+import org.opentripplanner.routing.graph.Graph.LoadLevel;
+import org.opentripplanner.routing.services.StreetVertexIndexFactory;
+import org.opentripplanner.routing.vertextype.IntersectionVertex;
+import org.opentripplanner.routing.vertextype.OsmVertex;
+import org.opentripplanner.routing.vertextype.StreetVertex;
+import org.opentripplanner.util.I18NString;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Strings;
+
+/**
+ * An alternative on-disk graph format that stores the street network in flat primitive columns instead of going
+ * through Java serialization, which is slow and needs a lot of transient heap for the millions of small vertex and
+ * edge objects of a large street network.
+ *
+ * The file starts with a header holding a magic number, the version of this format and the OTP version that wrote
+ * it, so incompatible graphs are rejected before anything else is read. Then comes one section per {@link Column}:
+ * coordinates, labels and flags of the plain intersection vertices, and endpoints, lengths, permissions, flags,
+ * names and packed geometries of the plain street edges. Each section is prefixed with its length in bytes and is
+ * memory-mapped on load. The last section is a Java serialization stream holding everything else: the Graph object
+ * itself, all the other vertices and edges, and the debug data. Any reference from that stream to a columnar vertex
+ * or edge is written as a small placeholder, and the object is materialized from the mapped columns the first time
+ * it is resolved. The street network objects not referenced from the stream are materialized in a final pass.
+ *
+ * Materialization is therefore eager: once a FULL load returns, every street vertex and edge exists as an object on
+ * the heap. Routing walks the edge lists held by the vertices, and indexing the graph puts every street edge in the
+ * spatial index, so an edge left in the columns would be resolved right away anyway. What the columns save is the
+ * Java serialization machinery: its per-object stream decoding and the handle table that keeps a reference to every
+ * object read, along with its own bookkeeping, until the stream is closed. Only a BASIC load, which stops after the
+ * Graph object, leaves the street network unmaterialized.
+ *
+ * Only the exact classes IntersectionVertex, OsmVertex and StreetEdge are stored in columns, as these make up the
+ * bulk of any graph. Subclasses may carry extra state and go through the serialization stream.
+ */
+public class CompactGraphFormat {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CompactGraphFormat.class);
+
+    public static final String GRAPH_FILENAME = "Graph.cgf";
+
+    private static final int MAGIC = 0x4f545047; // "OTPG"
+
+    /** Increment this whenever the layout of the columns changes. */
+    private static final int FORMAT_VERSION = 1;
+
+    private static final byte KIND_INTERSECTION = 0;
+    private static final byte KIND_OSM = 1;
+    private static final byte TRAFFIC_LIGHT_FLAG = 2;
+    private static final byte FREE_FLOWING_FLAG = 4;
+
+    private static final StreetTraversalPermission[] PERMISSIONS = StreetTraversalPermission.values();
+
+    /** The column sections, in the order they appear in the file. */
+    private enum Column {
+        VERTEX_X, VERTEX_Y, VERTEX_FLAGS, VERTEX_NODE_ID, VERTEX_NAME, VERTEX_LABEL_OFFSETS, VERTEX_LABEL_BYTES,
+        EDGE_FROM, EDGE_TO, EDGE_ID, EDGE_LENGTH_MM, EDGE_FLAGS, EDGE_PERMISSION, EDGE_STREET_CLASS,
+        EDGE_CAR_SPEED, EDGE_BICYCLE_SAFETY, EDGE_WAY_ID, EDGE_IN_ANGLE, EDGE_OUT_ANGLE, EDGE_NAME,
+        EDGE_GEOMETRY, GEOMETRY_OFFSETS, GEOMETRY_COORDS
+    }
+
+    private CompactGraphFormat() {
+    }
+
+    /* WRITING */
+
+    static void write(Graph graph, File file) throws IOException {
+        graph.rebuildVertexAndEdgeIndices();
+
+        final IdentityHashMap<Vertex, Integer> vertexIndex = new IdentityHashMap<Vertex, Integer>();
+        List<Vertex> vertices = new ArrayList<Vertex>();
+        for (Vertex v : graph.getVertices()) {
+            if (isColumnar(v) && v.getDegreeOut() + v.getDegreeIn() > 0) {
+                vertexIndex.put(v, vertices.size());
+                vertices.add(v);
+            }
+        }
+        final IdentityHashMap<Edge, Integer> edgeIndex = new IdentityHashMap<Edge, Integer>();
+        List<StreetEdge> streetEdges = new ArrayList<StreetEdge>();
+        ArrayList<Edge> otherEdges = new ArrayList<Edge>();
+        for (Vertex v : graph.getVertices()) {
+            for (Edge e : v.getOutgoing()) {
+                if (e.getClass() == StreetEdge.class && vertexIndex.containsKey(e.getFromVertex())
+                        && vertexIndex.containsKey(e.getToVertex())) {
+                    edgeIndex.put(e, streetEdges.size());
+                    streetEdges.add((StreetEdge) e);
+                } else {
+                    otherEdges.add(e);
+                }
+            }
+        }
+        LOG.info("Storing {} vertices and {} edges in columns, {} edges with serialization.",
+                vertices.size(), streetEdges.size(), otherEdges.size());
+
+        // Names and geometries are heavily shared, store each of them only once.
+        Map<I18NString, Integer> nameIndex = new HashMap<I18NString, Integer>();
+        ArrayList<I18NString> names = new ArrayList<I18NString>();
+        IdentityHashMap<int[], Integer> geometryIndex = new IdentityHashMap<int[], Integer>();
+        List<int[]> geometries = new ArrayList<int[]>();
+        long geometryLength = 0;
+        for (StreetEdge e : streetEdges) {
+            int[] geometry = e.getCompactGeometry();
+            if (geometry != null && !geometryIndex.containsKey(geometry)) {
+                geometryIndex.put(geometry, geometries.size());
+                geometries.add(geometry);
+                geometryLength += geometry.length;
+            }
+        }
+        byte[][] labels = new byte[vertices.size()][];
+        long labelLength = 0;
+        for (int i = 0; i < vertices.size(); i++) {
+            labels[i] = vertices.get(i).getLabel().getBytes(StandardCharsets.UTF_8);
+            labelLength += labels[i].length;
+        }
+
+        int nv = vertices.size();
+        int ne = streetEdges.size();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            MavenVersion version = MavenVersion.VERSION;
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(version.version);
+            out.writeUTF(Strings.nullToEmpty(version.commit));
+            out.writeUTF(Strings.nullToEmpty(version.describe));
+            out.writeUTF(Strings.nullToEmpty(version.commit_time));
+            out.writeUTF(Strings.nullToEmpty(version.build_time));
+
+            out.writeLong(8L * nv); // VERTEX_X
+            for (Vertex v : vertices) out.writeDouble(v.getX());
+            out.writeLong(8L * nv); // VERTEX_Y
+            for (Vertex v : vertices) out.writeDouble(v.getY());
+            out.writeLong(nv); // VERTEX_FLAGS
+            for (Vertex v : vertices) {
+                IntersectionVertex iv = (IntersectionVertex) v;
+                int flags = v instanceof OsmVertex ? KIND_OSM : KIND_INTERSECTION;
+                if (iv.trafficLight) flags |= TRAFFIC_LIGHT_FLAG;
+                if (iv.freeFlowing) flags |= FREE_FLOWING_FLAG;
+                out.writeByte(flags);
+            }
+            out.writeLong(8L * nv); // VERTEX_NODE_ID
+            for (Vertex v : vertices) out.writeLong(v instanceof OsmVertex ? ((OsmVertex) v).nodeId : 0);
+            out.writeLong(4L * nv); // VERTEX_NAME
+            for (Vertex v : vertices) out.writeInt(internName(v.getRawName(), nameIndex, names));
+            out.writeLong(4L * (nv + 1)); // VERTEX_LABEL_OFFSETS
+            int labelOffset = 0;
+            out.writeInt(0);
+            for (byte[] label : labels) {
+                labelOffset += label.length;
+                out.writeInt(labelOffset);
+            }
+            out.writeLong(labelLength); // VERTEX_LABEL_BYTES
+            for (byte[] label : labels) out.write(label);
+
+            out.writeLong(4L * ne); // EDGE_FROM
+            for (StreetEdge e : streetEdges) out.writeInt(vertexIndex.get(e.getFromVertex()));
+            out.writeLong(4L * ne); // EDGE_TO
+            for (StreetEdge e : streetEdges) out.writeInt(vertexIndex.get(e.getToVertex()));
+            out.writeLong(4L * ne); // EDGE_ID
+            for (StreetEdge e : streetEdges) out.writeInt(e.getId());
+            out.writeLong(4L * ne); // EDGE_LENGTH_MM
+            for (StreetEdge e : streetEdges) out.writeInt(e.getLengthMillimeters());
+            out.writeLong(ne); // EDGE_FLAGS
+            for (StreetEdge e : streetEdges) out.writeByte(e.getFlags());
+            out.writeLong(ne); // EDGE_PERMISSION
+            for (StreetEdge e : streetEdges) out.writeByte(e.getPermission().ordinal());
+            out.writeLong(4L * ne); // EDGE_STREET_CLASS
+            for (StreetEdge e : streetEdges) out.writeInt(e.getStreetClass());
+            out.writeLong(4L * ne); // EDGE_CAR_SPEED
+            for (StreetEdge e : streetEdges) out.writeFloat(e.getCarSpeed());
+            out.writeLong(4L * ne); // EDGE_BICYCLE_SAFETY
+            for (StreetEdge e : streetEdges) out.writeFloat(e.getBicycleSafetyFactor());
+            out.writeLong(8L * ne); // EDGE_WAY_ID
+            for (StreetEdge e : streetEdges) out.writeLong(e.wayId);
+            out.writeLong(ne); // EDGE_IN_ANGLE
+            for (StreetEdge e : streetEdges) out.writeByte(e.getCompactInAngle());
+            out.writeLong(ne); // EDGE_OUT_ANGLE
+            for (StreetEdge e : streetEdges) out.writeByte(e.getCompactOutAngle());
+            out.writeLong(4L * ne); // EDGE_NAME
+            for (StreetEdge e : streetEdges) out.writeInt(internName(e.getRawName(), nameIndex, names));
+            out.writeLong(4L * ne); // EDGE_GEOMETRY
+            for (StreetEdge e : streetEdges) {
+                int[] geometry = e.getCompactGeometry();
+                out.writeInt(geometry == null ? -1 : geometryIndex.get(geometry));
+            }
+            out.writeLong(4L * (geometries.size() + 1)); // GEOMETRY_OFFSETS
+            int geometryOffset = 0;
+            out.writeInt(0);
+            for (int[] geometry : geometries) {
+                geometryOffset += geometry.length;
+                out.writeInt(geometryOffset);
+            }
+            out.writeLong(4L * geometryLength); // GEOMETRY_COORDS
+            for (int[] geometry : geometries) {
+                for (int c : geometry) out.writeInt(c);
+            }
+
+            // Everything else, up to the end of the file.
+            out.flush();
+            ObjectOutputStream objects = new ColumnReplacingOutputStream(out, vertexIndex, edgeIndex);
+            objects.writeObject(names);
+            objects.writeObject(graph);
+            objects.writeObject(otherEdges);
+            if (graph.debugData) {
+                objects.writeObject(graph.graphBuilderAnnotations);
+            }
+            objects.flush();
+        }
+    }
+
+    private static boolean isColumnar(Vertex v) {
+        return v.getClass() == IntersectionVertex.class || v.getClass() == OsmVertex.class;
+    }
+
+    private static int internName(I18NString name, Map<I18NString, Integer> nameIndex, List<I18NString> names) {
+        Integer index = nameIndex.get(name);
+        if (index == null) {
+            index = names.size();
+            nameIndex.put(name, index);
+            names.add(name);
+        }
+        return index;
+    }
+
+    /* READING */
+
+    @SuppressWarnings("unchecked")
+    static Graph read(File file, LoadLevel level, StreetVertexIndexFactory indexFactory)
+            throws IOException, ClassNotFoundException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            // Channels.newInputStream does not read ahead, so the channel position stays in sync with the header.
+            DataInputStream header = new DataInputStream(Channels.newInputStream(channel));
+            if (header.readInt() != MAGIC) {
+                throw new IOException("Not a compact graph file: " + file);
+            }
+            int formatVersion = header.readInt();
+            if (formatVersion != FORMAT_VERSION) {
+                LOG.error("Stored graph uses compact format version {} but this OTP reads version {}, please rebuild it.",
+                        formatVersion, FORMAT_VERSION);
+                throw new IllegalStateException("Stored Graph version error");
+            }
+            MavenVersion graphVersion = new MavenVersion(header.readUTF(), header.readUTF(), header.readUTF(),
+                    header.readUTF(), header.readUTF());
+            if (Graph.graphVersionMismatch(graphVersion)) {
+                throw new RuntimeException("Graph version mismatch detected.");
+            }
+
+            Columns columns = new Columns(channel, channel.position());
+            InputStream objectStream = new BufferedInputStream(
+                    Channels.newInputStream(channel.position(columns.end)));
+            try (ColumnResolvingInputStream in = new ColumnResolvingInputStream(objectStream, columns)) {
+                columns.names = (List<I18NString>) in.readObject();
+                Graph graph = (Graph) in.readObject();
+                LOG.debug("Basic graph info read.");
+                if (level == LoadLevel.BASIC) {
+                    return graph;
+                }
+                List<Edge> edges = (List<Edge>) in.readObject();
+                columns.materializeAll(edges);
+                graph.rebuildVertexMap(edges);
+                LOG.info("Main graph read. |V|={} |E|={}", graph.countVertices(), graph.countEdges());
+                graph.index(indexFactory);
+                if (level == LoadLevel.FULL) {
+                    return graph;
+                }
+                if (graph.debugData) {
+                    graph.graphBuilderAnnotations = (List<GraphBuilderAnnotation>) in.readObject();
+                    LOG.debug("Debug info read.");
+                } else {
+                    LOG.warn("Graph file does not contain debug data.");
+                }
+                return graph;
+            }
+        }
+    }
+
+    /**
+     * Read-only views on the memory-mapped column sections, with the vertices and edges materialized so far.
+     */
+    private static class Columns {
+
+        final ByteBuffer[] sections = new ByteBuffer[Column.values().length];
+
+        /** File position of the end of the last column, where the serialization stream starts. */
+        final long end;
+
+        final Vertex[] vertices;
+
+        final StreetEdge[] edges;
+
+        final int[][] geometries;
+
+        List<I18NString> names;
+
+        Columns(FileChannel channel, long position) throws IOException {
+            ByteBuffer lengthBuffer = ByteBuffer.allocate(8);
+            for (Column column : Column.values()) {
+                lengthBuffer.clear();
+                while (lengthBuffer.hasRemaining()) {
+                    if (channel.read(lengthBuffer, position + lengthBuffer.position()) < 0) {
+                        throw new IOException("Truncated compact graph file.");
+                    }
+                }
+                long length = lengthBuffer.getLong(0);
+                position += 8;
+                sections[column.ordinal()] = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                position += length;
+            }
+            end = position;
+            vertices = new Vertex[sections[Column.VERTEX_FLAGS.ordinal()].capacity()];
+            edges = new StreetEdge[sections[Column.EDGE_FLAGS.ordinal()].capacity()];
+            geometries = new int[sections[Column.GEOMETRY_OFFSETS.ordinal()].capacity() / 4 - 1][];
+        }
+
+        private ByteBuffer column(Column column) {
+            return sections[column.ordinal()];
+        }
+
+        Vertex getVertex(int i) {
+            Vertex v = vertices[i];
+            if (v == null) {
+                double x = column(Column.VERTEX_X).getDouble(i * 8);
+                double y = column(Column.VERTEX_Y).getDouble(i * 8);
+                I18NString name = names.get(column(Column.VERTEX_NAME).getInt(i * 4));
+                int labelStart = column(Column.VERTEX_LABEL_OFFSETS).getInt(i * 4);
+                int labelEnd = column(Column.VERTEX_LABEL_OFFSETS).getInt(i * 4 + 4);
+                byte[] labelBytes = new byte[labelEnd - labelStart];
+                ByteBuffer labelColumn = column(Column.VERTEX_LABEL_BYTES).duplicate();
+                labelColumn.position(labelStart);
+                labelColumn.get(labelBytes);
+                String label = new String(labelBytes, StandardCharsets.UTF_8);
+                byte flags = column(Column.VERTEX_FLAGS).get(i);
+                IntersectionVertex iv;
+                // A null graph keeps the vertex out of the vertex map, which is rebuilt from the edges at the end.
+                if ((flags & KIND_OSM) != 0) {
+                    long nodeId = column(Column.VERTEX_NODE_ID).getLong(i * 8);
+                    iv = new OsmVertex(null, label, x, y, nodeId, name);
+                } else {
+                    iv = new IntersectionVertex(null, label, x, y, name);
+                }
+                iv.trafficLight = (flags & TRAFFIC_LIGHT_FLAG) != 0;
+                iv.freeFlowing = (flags & FREE_FLOWING_FLAG) != 0;
+                vertices[i] = v = iv;
+            }
+            return v;
+        }
+
+        StreetEdge getEdge(int i) {
+            StreetEdge e = edges[i];
+            if (e == null) {
+                StreetVertex from = (StreetVertex) getVertex(column(Column.EDGE_FROM).getInt(i * 4));
+                StreetVertex to = (StreetVertex) getVertex(column(Column.EDGE_TO).getInt(i * 4));
+                e = new StreetEdge(from, to,
+                        getGeometry(column(Column.EDGE_GEOMETRY).getInt(i * 4)),
+                        names.get(column(Column.EDGE_NAME).getInt(i * 4)),
+                        column(Column.EDGE_LENGTH_MM).getInt(i * 4),
+                        column(Column.EDGE_FLAGS).get(i),
+                        column(Column.EDGE_IN_ANGLE).get(i),
+                        column(Column.EDGE_OUT_ANGLE).get(i));
+                e.setId(column(Column.EDGE_ID).getInt(i * 4));
+                e.setPermission(PERMISSIONS[column(Column.EDGE_PERMISSION).get(i)]);
+                e.setStreetClass(column(Column.EDGE_STREET_CLASS).getInt(i * 4));
+                e.setCarSpeed(column(Column.EDGE_CAR_SPEED).getFloat(i * 4));
+                e.setBicycleSafetyFactor(column(Column.EDGE_BICYCLE_SAFETY).getFloat(i * 4));
+                e.wayId = column(Column.EDGE_WAY_ID).getLong(i * 8);
+                edges[i] = e;
+            }
+            return e;
+        }
+
+        private int[] getGeometry(int g) {
+            if (g < 0) {
+                return null;
+            }
+            int[] geometry = geometries[g];
+            if (geometry == null) {
+                int start = column(Column.GEOMETRY_OFFSETS).getInt(g * 4);
+                int end = column(Column.GEOMETRY_OFFSETS).getInt(g * 4 + 4);
+                geometry = new int[end - start];
+                ByteBuffer coords = column(Column.GEOMETRY_COORDS);
+                for (int i = 0; i < geometry.length; i++) {
+                    geometry[i] = coords.getInt((start + i) * 4);
+                }
+                geometries[g] = geometry;
+            }
+            return geometry;
+        }
+
+        /**
+         * Materialize the street edges not referenced from the serialization stream and add them to the edge list.
+         * This is done eagerly, as the graph is indexed over all its edges right after it is read.
+         */
+        void materializeAll(List<Edge> edgeList) {
+            for (int i = 0; i < edges.length; i++) {
+                edgeList.add(getEdge(i));
+            }
+        }
+    }
+
+    /** Stands in for a columnar vertex in the serialization stream. */
+    private static class VertexRef implements Serializable {
+        private static final long serialVersionUID = 1L;
+        final int index;
+        VertexRef(int index) {
+            this.index = index;
+        }
+    }
+
+    /** Stands in for a columnar street edge in the serialization stream. */
+    private static class EdgeRef implements Serializable {
+        private static final long serialVersionUID = 1L;
+        final int index;
+        EdgeRef(int index) {
+            this.index = index;
+        }
+    }
+
+    private static class ColumnReplacingOutputStream extends ObjectOutputStream {
+
+        private final IdentityHashMap<Vertex, Integer> vertexIndex;
+
+        private final IdentityHashMap<Edge, Integer> edgeIndex;
+
+        ColumnReplacingOutputStream(OutputStream out, IdentityHashMap<Vertex, Integer> vertexIndex,
+                IdentityHashMap<Edge, Integer> edgeIndex) throws IOException {
+            super(out);
+            this.vertexIndex = vertexIndex;
+            this.edgeIndex = edgeIndex;
+            enableReplaceObject(true);
+        }
+
+        @Override
+        protected Object replaceObject(Object obj) {
+            if (obj instanceof Vertex) {
+                Integer index = vertexIndex.get(obj);
+                if (index != null) return new VertexRef(index);
+            } else if (obj instanceof Edge) {
+                Integer index = edgeIndex.get(obj);
+                if (index != null) return new EdgeRef(index);
+            }
+            return obj;
+        }
+    }
+
+    private static class ColumnResolvingInputStream extends ObjectInputStream {
+
+        private final Columns columns;
+
+        ColumnResolvingInputStream(InputStream in, Columns columns) throws IOException {
+            super(in);
+            this.columns = columns;
+            enableResolveObject(true);
+        }
+
+        @Override
+        protected Object resolveObject(Object obj) {
+            if (obj instanceof VertexRef) {
+                return columns.getVertex(((VertexRef) obj).index);
+            } else if (obj instanceof EdgeRef) {
+                return columns.getEdge(((EdgeRef) obj).index);
+            }
+            return obj;
+        }
+    }
+}
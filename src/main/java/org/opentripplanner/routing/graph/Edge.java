@@ -18,8 +18,10 @@ import org.onebusaway.gtfs.model.Trip;
 import org.opentripplanner.common.MavenVersion;
 import org.opentripplanner.routing.core.RoutingRequest;
 import org.opentripplanner.routing.core.State;
+import org.opentripplanner.routing.edgetype.TemporaryEdge;
 import org.opentripplanner.routing.util.IncrementingIdGenerator;
 import org.opentripplanner.routing.util.UniqueIdGenerator;
+import org.opentripplanner.routing.vertextype.TemporaryVertex;
 
 import javax.xml.bind.annotation.XmlTransient;
 import java.io.IOException;
@@ -66,8 +68,13 @@ public abstract class Edge implements Serializable {
         // " constructed with bad vertex types");
         // }
 
-        fromv.addOutgoing(this);
-        tov.addIncoming(this);
+        // Temporary edges are only attached to temporary vertices. The permanent side of a temporary edge is seen
+        // through the RoutingContext of the request that created it, so requests never modify the shared graph.
+        boolean temporary = this instanceof TemporaryEdge;
+        if (!temporary || fromv instanceof TemporaryVertex)
+            fromv.addOutgoing(this);
+        if (!temporary || tov instanceof TemporaryVertex)
+            tov.addIncoming(this);
     }
 
     public Vertex getFromVertex() {
@@ -280,4 +287,9 @@ public abstract class Edge implements Serializable {
     	return this.id;
     }
 
+    /** Restores the identifier of an edge loaded from a compact graph file. */
+    void setId(int id) {
+        this.id = id;
+    }
+
 }
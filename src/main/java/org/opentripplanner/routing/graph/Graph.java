@@ -38,6 +38,7 @@ import org.opentripplanner.graph_builder.annotation.GraphBuilderAnnotation;
 import org.opentripplanner.graph_builder.annotation.NoFutureDates;
 import org.opentripplanner.model.GraphBundle;
 import org.opentripplanner.routing.alertpatch.AlertPatch;
+import org.opentripplanner.routing.bike_rental.BikeRentalAvailabilitySource;
 import org.opentripplanner.routing.core.MortonVertexComparatorFactory;
 import org.opentripplanner.routing.core.TransferTable;
 import org.opentripplanner.routing.core.TraverseMode;
@@ -99,13 +100,16 @@ public class Graph implements Serializable {
 
     private transient CalendarService calendarService;
 
-    private boolean debugData = true;
+    boolean debugData = true;
 
     // TODO this would be more efficient if it was just an array.
     private transient Map<Integer, Vertex> vertexById;
 
     private transient Map<Integer, Edge> edgeById;
 
+    /** One more than the highest index of a vertex in this graph, not counting temporary vertices made by requests. */
+    private transient int vertexIndexLimit = 0;
+
     public transient StreetVertexIndexService streetIndex;
 
     public transient GraphIndex index;
@@ -124,7 +128,7 @@ public class Graph implements Serializable {
 
     public transient TimetableSnapshotSource timetableSnapshotSource = null;
 
-    private transient List<GraphBuilderAnnotation> graphBuilderAnnotations = new LinkedList<GraphBuilderAnnotation>(); // initialize for tests
+    transient List<GraphBuilderAnnotation> graphBuilderAnnotations = new LinkedList<GraphBuilderAnnotation>(); // initialize for tests
 
     private Collection<String> agenciesIds = new HashSet<String>();
 
@@ -192,6 +196,9 @@ public class Graph implements Serializable {
     /** A speed source for traffic data */
     public transient StreetSpeedSnapshotSource streetSpeedSource;
 
+    /** The real-time availability of bike rental stations, published by the bike rental updaters */
+    public transient BikeRentalAvailabilitySource bikeRentalAvailabilitySource;
+
     public Graph(Graph basedOn) {
         this();
         this.bundle = basedOn.getBundle();
@@ -208,6 +215,7 @@ public class Graph implements Serializable {
      */
     public void addVertex(Vertex v) {
         Vertex old = vertices.put(v.getLabel(), v);
+        if (v.getIndex() >= vertexIndexLimit) vertexIndexLimit = v.getIndex() + 1;
         if (old != null) {
             if (old == v)
                 LOG.error("repeatedly added the same vertex: {}", v);
@@ -444,7 +452,7 @@ public class Graph implements Serializable {
     }
 
     @SuppressWarnings("unchecked")
-    public <T> T putService(Class<T> serviceType, T service) {
+    public synchronized <T> T putService(Class<T> serviceType, T service) {
         return (T) _services.put(serviceType, service);
     }
 
@@ -457,7 +465,7 @@ public class Graph implements Serializable {
         return (T) _services.get(serviceType);
     }
 
-    public <T> T getService(Class<T> serviceType, boolean autoCreate) {
+    public synchronized <T> T getService(Class<T> serviceType, boolean autoCreate) {
         @SuppressWarnings("unchecked")
         T t = (T) _services.get(serviceType);
         if (t == null && autoCreate) {
@@ -555,6 +563,15 @@ public class Graph implements Serializable {
         return vertices.size();
     }
 
+    /**
+     * @return one more than the highest index of a vertex in this graph. Unlike Vertex.getMaxIndex(), this does not
+     * grow with the temporary vertices made by requests, so it can size tables indexed by vertex index. It is
+     * recomputed when the graph is indexed, after loading.
+     */
+    public int getVertexIndexLimit() {
+        return vertexIndexLimit;
+    }
+
     /**
      * Find the total number of edges in this Graph. There are assumed to be no Edges in an incoming edge list that are not in an outgoing edge list.
      * 
@@ -591,8 +608,10 @@ public class Graph implements Serializable {
     public void rebuildVertexAndEdgeIndices() {
         this.vertexById = new HashMap<Integer, Vertex>(Vertex.getMaxIndex());
         Collection<Vertex> vertices = getVertices();
+        vertexIndexLimit = 0;
         for (Vertex v : vertices) {
             vertexById.put(v.getIndex(), v);
+            if (v.getIndex() >= vertexIndexLimit) vertexIndexLimit = v.getIndex() + 1;
         }
 
         // Create map from edge ids to edges.
@@ -621,7 +640,7 @@ public class Graph implements Serializable {
      * If the graphBuilderAnnotations field of this graph is null, the annotation is not actually saved, but the message is still returned. This
      * allows annotation registration to be turned off, saving memory and disk space when the user is not interested in annotations.
      */
-    public String addBuilderAnnotation(GraphBuilderAnnotation gba) {
+    public synchronized String addBuilderAnnotation(GraphBuilderAnnotation gba) {
         String ret = gba.getMessage();
         if (this.graphBuilderAnnotations != null)
             this.graphBuilderAnnotations.add(gba);
@@ -729,12 +748,7 @@ public class Graph implements Serializable {
             // vertex list is transient because it can be reconstructed from edges
             LOG.debug("Loading edges...");
             List<Edge> edges = (ArrayList<Edge>) in.readObject();
-            graph.vertices = new HashMap<String, Vertex>();
-            
-            for (Edge e : edges) {
-                graph.vertices.put(e.getFromVertex().getLabel(), e.getFromVertex());
-                graph.vertices.put(e.getToVertex().getLabel(), e.getToVertex());
-            }
+            graph.rebuildVertexMap(edges);
 
             LOG.info("Main graph read. |V|={} |E|={}", graph.countVertices(), graph.countEdges());
             graph.index(indexFactory);
@@ -764,8 +778,15 @@ public class Graph implements Serializable {
      *         graphs are otherwise obviously incompatible.
      */
     private boolean graphVersionMismatch() {
+        return graphVersionMismatch(this.mavenVersion);
+    }
+
+    /**
+     * Compares the given OTP version number, read from a stored graph, with that of the currently running instance.
+     * @see #graphVersionMismatch()
+     */
+    static boolean graphVersionMismatch(MavenVersion gv) {
         MavenVersion v = MavenVersion.VERSION;
-        MavenVersion gv = this.mavenVersion;
         LOG.info("Graph version: {}", gv);
         LOG.info("OTP version:   {}", v);
         if (!v.equals(gv)) {
@@ -789,6 +810,44 @@ public class Graph implements Serializable {
         }
     }
 
+    /**
+     * Vertex lists are transient and the vertex map is rebuilt from the edges after loading.
+     * Vertices without any edge do not survive serialization.
+     */
+    void rebuildVertexMap(Collection<Edge> edges) {
+        vertices = new HashMap<String, Vertex>();
+        for (Edge e : edges) {
+            vertices.put(e.getFromVertex().getLabel(), e.getFromVertex());
+            vertices.put(e.getToVertex().getLabel(), e.getToVertex());
+        }
+    }
+
+    /**
+     * Load a graph stored in the compact columnar format rather than with Java serialization.
+     * @see CompactGraphFormat
+     */
+    public static Graph loadCompact(File file, LoadLevel level, StreetVertexIndexFactory indexFactory)
+            throws IOException, ClassNotFoundException {
+        LOG.info("Reading compact graph " + file.getAbsolutePath() + " ...");
+        return CompactGraphFormat.read(file, level, indexFactory);
+    }
+
+    /**
+     * Save this graph in the compact columnar format rather than with Java serialization.
+     * @see CompactGraphFormat
+     */
+    public void saveCompact(File file) throws IOException {
+        LOG.info("Main graph size: |V|={} |E|={}", this.countVertices(), this.countEdges());
+        LOG.info("Writing compact graph " + file.getAbsolutePath() + " ...");
+        try {
+            CompactGraphFormat.write(this, file);
+        } catch (IOException | RuntimeException e) {
+            file.delete(); // remove half-written file
+            throw e;
+        }
+        LOG.info("Graph written.");
+    }
+
     public void save(File file) throws IOException {
         LOG.info("Main graph size: |V|={} |E|={}", this.countVertices(), this.countEdges());
         LOG.info("Writing graph " + file.getAbsolutePath() + " ...");
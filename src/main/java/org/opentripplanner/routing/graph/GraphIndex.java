@@ -101,6 +101,9 @@ public class GraphIndex {
     /** Store distances from each stop to all nearby street intersections. Useful in speeding up analyst requests. */
     private transient StopTreeCache stopTreeCache = null;
 
+    /** Sorted departures of each pattern from each stop on each service date, for departure boards. */
+    private final StopDepartureCache stopDepartureCache;
+
     public GraphIndex (Graph graph) {
         LOG.info("Indexing graph...");
         for (Agency a : graph.getAgencies()) {
@@ -152,9 +155,15 @@ public class GraphIndex {
         calendarService = graph.getCalendarService();
         serviceCodes = graph.serviceCodes;
         this.graph = graph;
+        stopDepartureCache = new StopDepartureCache(graph, calendarService, StopDepartureCache.DEFAULT_MAXIMUM_SIZE);
         LOG.info("Done indexing graph.");
     }
 
+    /** @return whether stops have been clustered, so that a replacement graph can cluster its own in advance. */
+    public synchronized boolean hasStopClusters() {
+        return stopClusterSpatialIndex != null;
+    }
+
     /**
      * Stop clustering is slow to perform and only used in profile routing for the moment.
      * Therefore it is not done automatically, and any method requiring stop clusters should call this method
@@ -314,6 +323,8 @@ public class GraphIndex {
      * It uses a priority queue to keep track of the next departures. The queue is shared between all dates, as services
      * from the previous service date can visit the stop later than the current service date's services. This happens
      * eg. with sleeper trains.
+     * The scheduled departures of each date come from the sorted tables of the StopDepartureCache, so only the first
+     * numberOfDepartures departures after the start time are considered on each date.
      *
      * TODO: Add frequency based trips
      * @param stop Stop object to perform the search for
@@ -348,29 +359,30 @@ public class GraphIndex {
 
             // Loop through all possible days
             for (ServiceDate serviceDate : serviceDates) {
-                ServiceDay sd = new ServiceDay(graph, serviceDate, calendarService, pattern.route.getAgency().getId());
                 Timetable tt;
                 if (snapshot != null){
                     tt = snapshot.resolve(pattern, serviceDate);
                 } else {
                     tt = pattern.scheduledTimetable;
                 }
+                StopDepartureCache.Departures departures =
+                        stopDepartureCache.getDepartures(stop, serviceDate, pattern, tt);
+                ServiceDay sd = departures.serviceDay;
 
                 if (!tt.temporallyViable(sd, startTime, timeRange, true)) continue;
 
                 int secondsSinceMidnight = sd.secondsSinceMidnight(startTime);
+                int first = departures.firstIndexAtOrAfter(secondsSinceMidnight);
+                int end = Math.min(departures.size(), first + numberOfDepartures);
+                for (int i = first; i < end; i++) {
+                    pq.insertWithOverflow(new TripTimeShort(departures.getTripTimes(i), departures.getStopIndex(i),
+                            stop, sd));
+                }
+
+                // TODO: This needs to be adapted after #1647 is merged
                 int sidx = 0;
                 for (Stop currStop : pattern.stopPattern.stops) {
                     if (currStop == stop) {
-                        for (TripTimes t : tt.tripTimes) {
-                            if (!sd.serviceRunning(t.serviceCode)) continue;
-                            if (t.getDepartureTime(sidx) != -1 &&
-                                    t.getDepartureTime(sidx) >= secondsSinceMidnight) {
-                                pq.insertWithOverflow(new TripTimeShort(t, sidx, stop, sd));
-                            }
-                        }
-
-                        // TODO: This needs to be adapted after #1647 is merged
                         for (FrequencyEntry freq : tt.frequencyEntries) {
                             if (!sd.serviceRunning(freq.tripTimes.serviceCode)) continue;
                             int departureTime = freq.nextDepartureTime(sidx, secondsSinceMidnight);
@@ -439,6 +451,11 @@ public class GraphIndex {
         return ret;
     }
 
+    /** @return whether the stop tree cache has been built, so that a replacement graph can build its own in advance. */
+    public boolean hasStopTreeCache() {
+        return stopTreeCache != null;
+    }
+
     /** Fetch a cache of nearby intersection distances for every transit stop in this graph, lazy-building as needed. */
     public StopTreeCache getStopTreeCache() {
         if (stopTreeCache == null) {
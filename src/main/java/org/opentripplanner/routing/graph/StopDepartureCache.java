@@ -0,0 +1,200 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.graph;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.onebusaway.gtfs.model.Stop;
+import org.onebusaway.gtfs.model.calendar.ServiceDate;
+import org.onebusaway.gtfs.services.calendar.CalendarService;
+import org.opentripplanner.routing.core.ServiceDay;
+import org.opentripplanner.routing.edgetype.Timetable;
+import org.opentripplanner.routing.edgetype.TripPattern;
+import org.opentripplanner.routing.trippattern.TripTimes;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Departure tables for departure boards: for a stop and a service date, the departures of each pattern passing the
+ * stop, sorted by time and restricted to the trips running that day. Tables are built on first use and the least
+ * recently used stops and dates are evicted.
+ *
+ * A table remembers the timetable it was built from. When a realtime update replaces the timetable of a pattern for
+ * that date, the table for that pattern alone is rebuilt on the next request, so the cache never needs to be cleared
+ * when a realtime snapshot is committed.
+ */
+public class StopDepartureCache {
+
+    /**
+     * The default number of stops and dates for which tables are kept, enough for the busy stops of a large network
+     * over a few dates. Each table only holds three array entries per departure.
+     */
+    public static final int DEFAULT_MAXIMUM_SIZE = 10000;
+
+    /* The number of agencies and dates for which service days are kept. */
+    private static final int MAXIMUM_SERVICE_DAYS = 1000;
+
+    private final Graph graph;
+
+    private final CalendarService calendarService;
+
+    private final Cache<Key, Map<TripPattern, Departures>> cache;
+
+    /* The service days of each agency, shared by all stops. ServiceDays are expensive to make. */
+    private final Cache<Key, ServiceDay> serviceDays;
+
+    public StopDepartureCache(Graph graph, CalendarService calendarService, int maximumSize) {
+        this.graph = graph;
+        this.calendarService = calendarService;
+        this.cache = CacheBuilder.newBuilder().maximumSize(maximumSize).build();
+        this.serviceDays = CacheBuilder.newBuilder().maximumSize(MAXIMUM_SERVICE_DAYS).build();
+    }
+
+    /**
+     * @param timetable the timetable in effect for this pattern on this date, including realtime updates.
+     * @return the departures of the given pattern from the given stop on the given service date.
+     */
+    public Departures getDepartures(Stop stop, ServiceDate serviceDate, TripPattern pattern, Timetable timetable) {
+        Map<TripPattern, Departures> departuresForPattern =
+                cache.asMap().computeIfAbsent(new Key(stop, serviceDate), k -> new ConcurrentHashMap<>());
+        Departures departures = departuresForPattern.get(pattern);
+        if (departures == null || departures.timetable != timetable) {
+            departures = new Departures(stop, getServiceDay(pattern, serviceDate), pattern, timetable);
+            departuresForPattern.put(pattern, departures);
+        }
+        return departures;
+    }
+
+    private ServiceDay getServiceDay(TripPattern pattern, ServiceDate serviceDate) {
+        String agencyId = pattern.route.getAgency().getId();
+        return serviceDays.asMap().computeIfAbsent(new Key(agencyId, serviceDate),
+                k -> new ServiceDay(graph, serviceDate, calendarService, agencyId));
+    }
+
+    /**
+     * The scheduled departures of one pattern from one stop on one service day, sorted by (realtime) departure time.
+     * A stop visited several times by the pattern contributes one departure per visit.
+     */
+    public static class Departures {
+
+        public final ServiceDay serviceDay;
+
+        /** The timetable these departures were taken from. */
+        public final Timetable timetable;
+
+        /** Departure times in seconds since midnight of the service day, in increasing order. */
+        private final int[] times;
+
+        private final TripTimes[] tripTimes;
+
+        /** The position of the stop in the pattern for each departure. */
+        private final int[] stopIndices;
+
+        Departures(Stop stop, ServiceDay serviceDay, TripPattern pattern, Timetable timetable) {
+            this.serviceDay = serviceDay;
+            this.timetable = timetable;
+            // Collect the departures with their position in the arrays below, then sort on time and position.
+            TripTimes[] trips = new TripTimes[0];
+            int[] stops = new int[0];
+            long[] keys = new long[0];
+            int n = 0;
+            for (int sidx = 0; sidx < pattern.stopPattern.size; sidx++) {
+                if (pattern.stopPattern.stops[sidx] != stop) continue;
+                for (TripTimes t : timetable.tripTimes) {
+                    if (!serviceDay.serviceRunning(t.serviceCode)) continue;
+                    int time = t.getDepartureTime(sidx);
+                    if (time == -1) continue;
+                    if (n == keys.length) {
+                        int capacity = Math.max(16, n * 2);
+                        trips = Arrays.copyOf(trips, capacity);
+                        stops = Arrays.copyOf(stops, capacity);
+                        keys = Arrays.copyOf(keys, capacity);
+                    }
+                    trips[n] = t;
+                    stops[n] = sidx;
+                    keys[n] = ((long) time << 32) | n;
+                    n++;
+                }
+            }
+            Arrays.sort(keys, 0, n);
+            times = new int[n];
+            tripTimes = new TripTimes[n];
+            stopIndices = new int[n];
+            for (int i = 0; i < n; i++) {
+                int j = (int) keys[i];
+                times[i] = (int) (keys[i] >> 32);
+                tripTimes[i] = trips[j];
+                stopIndices[i] = stops[j];
+            }
+        }
+
+        public int size() {
+            return times.length;
+        }
+
+        public int getTime(int i) {
+            return times[i];
+        }
+
+        public TripTimes getTripTimes(int i) {
+            return tripTimes[i];
+        }
+
+        public int getStopIndex(int i) {
+            return stopIndices[i];
+        }
+
+        /** @return the index of the first departure at or after the given time, or size() if there is none. */
+        public int firstIndexAtOrAfter(int secondsSinceMidnight) {
+            int low = 0;
+            int high = times.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (times[mid] < secondsSinceMidnight) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+
+    /* A stop (or agency ID) and a service date. */
+    private static class Key {
+
+        final Object object;
+
+        final ServiceDate serviceDate;
+
+        Key(Object object, ServiceDate serviceDate) {
+            this.object = object;
+            this.serviceDate = serviceDate;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) return false;
+            Key key = (Key) other;
+            return object.equals(key.object) && serviceDate.equals(key.serviceDate);
+        }
+
+        @Override
+        public int hashCode() {
+            return object.hashCode() * 31 + serviceDate.hashCode();
+        }
+    }
+}
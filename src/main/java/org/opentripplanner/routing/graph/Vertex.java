@@ -19,6 +19,8 @@ import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.*;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 import javax.xml.bind.annotation.XmlTransient;
 
@@ -42,7 +44,8 @@ public abstract class Vertex implements Serializable, Cloneable {
 
     private static final Logger LOG = LoggerFactory.getLogger(Vertex.class);
 
-    private static int maxIndex = 0;
+    /* Atomic because vertices may be created on several threads, by graph builder modules or by routing requests. */
+    private static final AtomicInteger maxIndex = new AtomicInteger();
 
     private int index;
     
@@ -56,9 +59,19 @@ public abstract class Vertex implements Serializable, Cloneable {
 
     private final double y;
     
-    private transient Edge[] incoming = new Edge[0];
+    /*
+     * The edge arrays are never modified once published. Writers install a modified copy with a compare-and-set,
+     * so readers (routing threads) get a consistent snapshot without taking a lock.
+     */
+    private transient volatile Edge[] incoming = new Edge[0];
+
+    private transient volatile Edge[] outgoing = new Edge[0];
+
+    private static final AtomicReferenceFieldUpdater<Vertex, Edge[]> INCOMING =
+            AtomicReferenceFieldUpdater.newUpdater(Vertex.class, Edge[].class, "incoming");
 
-    private transient Edge[] outgoing = new Edge[0];
+    private static final AtomicReferenceFieldUpdater<Vertex, Edge[]> OUTGOING =
+            AtomicReferenceFieldUpdater.newUpdater(Vertex.class, Edge[].class, "outgoing");
 
     
     /* CONSTRUCTORS */
@@ -67,7 +80,7 @@ public abstract class Vertex implements Serializable, Cloneable {
         this.label = label;
         this.x = x;
         this.y = y;
-        this.index = maxIndex  ++;
+        this.index = maxIndex.getAndIncrement();
         // null graph means temporary vertex
         if (g != null)
             g.addVertex(this);
@@ -102,7 +115,7 @@ public abstract class Vertex implements Serializable, Cloneable {
 
     /**
      * A static helper method to avoid repeated code for outgoing and incoming lists.
-     * Synchronization must be handled by the caller, to avoid passing edge array pointers that may be invalidated.
+     * The existing array is not modified, the caller installs the returned copy with a compare-and-set.
      */
     private static Edge[] addEdge(Edge[] existing, Edge e) {
         Edge[] copy = new Edge[existing.length + 1];
@@ -120,7 +133,7 @@ public abstract class Vertex implements Serializable, Cloneable {
 
     /**
      * A static helper method to avoid repeated code for outgoing and incoming lists.
-     * Synchronization must be handled by the caller, to avoid passing edge array pointers that may be invalidated.
+     * The existing array is not modified, the caller installs the returned copy with a compare-and-set.
      */
     private static Edge[] removeEdge(Edge[] existing, Edge e) {
         int nfound = 0;
@@ -144,34 +157,42 @@ public abstract class Vertex implements Serializable, Cloneable {
     /* FIELD ACCESSOR METHODS : READ/WRITE */
 
     public void addOutgoing(Edge edge) {
-        synchronized (this) {
-            outgoing = addEdge(outgoing, edge);
-        }
+        Edge[] existing, copy;
+        do {
+            existing = outgoing;
+            copy = addEdge(existing, edge);
+        } while (copy != existing && !OUTGOING.compareAndSet(this, existing, copy));
     }
 
     /** @return whether the edge was found and removed. */
     public boolean removeOutgoing(Edge edge) {
-        synchronized (this) {
-            int n = outgoing.length;
-            outgoing = removeEdge(outgoing, edge);
-            return (outgoing.length < n);
-        }
+        Edge[] existing, copy;
+        do {
+            existing = outgoing;
+            copy = removeEdge(existing, edge);
+            if (copy == existing) return false;
+        } while (!OUTGOING.compareAndSet(this, existing, copy));
+        return true;
     }
 
 
     public void addIncoming(Edge edge) {
-        synchronized (this) {
-            incoming = addEdge(incoming, edge);
-        }
+        Edge[] existing, copy;
+        do {
+            existing = incoming;
+            copy = addEdge(existing, edge);
+        } while (copy != existing && !INCOMING.compareAndSet(this, existing, copy));
     }
 
     /** @return whether the edge was found and removed. */
     public boolean removeIncoming(Edge edge) {
-        synchronized (this) {
-            int n = incoming.length;
-            incoming = removeEdge(incoming, edge);
-            return (incoming.length < n);
-        }
+        Edge[] existing, copy;
+        do {
+            existing = incoming;
+            copy = removeEdge(existing, edge);
+            if (copy == existing) return false;
+        } while (!INCOMING.compareAndSet(this, existing, copy));
+        return true;
     }
 
     /**
@@ -219,6 +240,11 @@ public abstract class Vertex implements Serializable, Cloneable {
     }
 
 
+    /** Gets the name of this vertex before localization. */
+    public I18NString getRawName() {
+        return this.name;
+    }
+
     /** If this vertex is located on only one street, get that street's name
      * in english localization */
     public String getName() {
@@ -265,7 +291,7 @@ public abstract class Vertex implements Serializable, Cloneable {
     }
 
     public static int getMaxIndex() {
-        return maxIndex;
+        return maxIndex.get();
     }
 
 
@@ -280,7 +306,7 @@ public abstract class Vertex implements Serializable, Cloneable {
         in.defaultReadObject();
         this.incoming = new Edge[0];
         this.outgoing = new Edge[0];
-        index = maxIndex++;
+        index = maxIndex.getAndIncrement();
     }
 
     /* UTILITY METHODS FOR SEARCHING, GRAPH BUILDING, AND GENERATING WALKSTEPS */
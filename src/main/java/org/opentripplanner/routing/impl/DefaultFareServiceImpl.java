@@ -23,9 +23,9 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.onebusaway.gtfs.model.AgencyAndId;
-import org.onebusaway.gtfs.model.FareAttribute;
 import org.onebusaway.gtfs.model.Stop;
 import org.opentripplanner.routing.core.Fare;
 import org.opentripplanner.routing.core.Fare.FareType;
@@ -122,6 +122,9 @@ public class DefaultFareServiceImpl implements FareService, Serializable {
     /** For each fare type (regular, student, etc...) the collection of rules that apply. */
     protected Map<FareType, Collection<FareRuleSet>> fareRulesPerType;
 
+    /** The rules of each fare type compiled for matching, made as they are needed. */
+    private transient volatile Map<FareType, FareRuleIndex> fareRuleIndexes;
+
     public DefaultFareServiceImpl() {
         fareRulesPerType = new HashMap<>();
     }
@@ -201,12 +204,13 @@ public class DefaultFareServiceImpl implements FareService, Serializable {
             Collection<FareRuleSet> fareRules) {
         // Dynamic algorithm to calculate fare cost.
         // Cell [i,j] holds the best (lowest) cost for a trip from rides[i] to rides[j]
+        float[][] costs = getFareRuleIndex(fareType, fareRules).getCosts(rides);
         float[][] resultTable = new float[rides.size()][rides.size()];
 
         for (int i = 0; i < rides.size(); i++) {
             // each diagonal
             for (int j = 0; j < rides.size() - i; j++) {
-                float cost = calculateCost(fareType, rides.subList(j, j + i + 1), fareRules);
+                float cost = costs[j][j + i];
                 if (cost < 0) {
                     LOG.error("negative cost for a ride sequence");
                     cost = Float.POSITIVE_INFINITY;
@@ -224,72 +228,29 @@ public class DefaultFareServiceImpl implements FareService, Serializable {
 
     protected float calculateCost(FareType fareType, List<Ride> rides,
             Collection<FareRuleSet> fareRules) {
-        Set<String> zones = new HashSet<String>();
-        Set<AgencyAndId> routes = new HashSet<AgencyAndId>();
-        Set<String> agencies = new HashSet<String>();
-        int transfersUsed = -1;
-        
-        Ride firstRide = rides.get(0);
-        long   startTime = firstRide.startTime;
-        String startZone = firstRide.startZone;
-        String endZone = firstRide.endZone;
-        // stops don't really have an agency id, they have the per-feed default id
-        String feedId = firstRide.firstStop.getId().getAgencyId();  
-        long lastRideStartTime = firstRide.startTime;
-        long lastRideEndTime = firstRide.endTime;
-        for (Ride ride : rides) {
-            if ( ! ride.firstStop.getId().getAgencyId().equals(feedId)) {
-                LOG.debug("skipped multi-feed ride sequence {}", rides);
-                return Float.POSITIVE_INFINITY;
-            }
-            lastRideStartTime = ride.startTime;
-            lastRideEndTime = ride.endTime;
-            endZone = ride.endZone;
-            agencies.add(ride.agency);
-            routes.add(ride.route);
-            zones.addAll(ride.zones);
-            transfersUsed += 1;
-        }
-        
-        FareAttribute bestAttribute = null;
-        float bestFare = Float.POSITIVE_INFINITY;
-        long tripTime = lastRideStartTime - startTime;
-        long journeyTime = lastRideEndTime - startTime;
-        // find the best fare that matches this set of rides
-        for (FareRuleSet ruleSet : fareRules) {
-            FareAttribute attribute = ruleSet.getFareAttribute();
-            // fares also don't really have an agency id, they will have the per-feed default id
-            // check only if the fare is not mapped to an agency
-            if (!ruleSet.hasAgencyDefined() && !attribute.getId().getAgencyId().equals(feedId))
-                continue;
-            if (ruleSet.matches(agencies, startZone, endZone, zones, routes)) {
-                // TODO Maybe move the code below in FareRuleSet::matches() ?
-                if (attribute.isTransfersSet() && attribute.getTransfers() < transfersUsed) {
-                    continue;
-                }
-                // assume transfers are evaluated at boarding time,
-                // as trimet does
-                if (attribute.isTransferDurationSet() && 
-                    tripTime > attribute.getTransferDuration()) {
-                    continue;
-                }
-                if (attribute.isJourneyDurationSet() && 
-                    journeyTime > attribute.getJourneyDuration()) {
-                    continue;
-                }
-                float newFare = attribute.getPrice();
-                if (newFare < bestFare) {
-                    bestAttribute = attribute;
-                    bestFare = newFare;
-                }
-            }
-        }
-        LOG.debug("{} best for {}", bestAttribute, rides);
+        float bestFare = getFareRuleIndex(fareType, fareRules).getCost(rides);
         if (bestFare == Float.POSITIVE_INFINITY) {
             LOG.debug("No fare for a ride sequence: {}", rides);
         }
         return bestFare;
+    }
 
+    /**
+     * @return the compiled form of the given rules, which are normally those for the given fare type. The index is
+     * made on first use, as it is not serialized with the graph, and made again if a subclass passes other rules.
+     */
+    FareRuleIndex getFareRuleIndex(FareType fareType, Collection<FareRuleSet> fareRules) {
+        Map<FareType, FareRuleIndex> indexes = fareRuleIndexes;
+        if (indexes == null) {
+            // Several threads may each make a map and some indexes here, that only costs a little time.
+            indexes = fareRuleIndexes = new ConcurrentHashMap<>();
+        }
+        FareRuleIndex index = indexes.get(fareType);
+        if (index == null || index.fareRules != fareRules) {
+            index = new FareRuleIndex(fareRules);
+            indexes.put(fareType, index);
+        }
+        return index;
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,298 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.impl;
+
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.TObjectIntMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
+import org.onebusaway.gtfs.model.AgencyAndId;
+import org.onebusaway.gtfs.model.FareAttribute;
+import org.opentripplanner.common.model.P2;
+import org.opentripplanner.routing.core.FareRuleSet;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The fare rules of one fare type, compiled for matching against sequences of rides. Zones, routes and agencies are
+ * interned to small integers, and for each value a condition can take the set of rules it satisfies is kept as a
+ * bitset. The rules matching a ride sequence are then found by intersecting a few bitsets, rather than by building
+ * sets of strings and checking every rule in turn.
+ *
+ * Gives the same results as checking each rule with {@link FareRuleSet#matches}, as DefaultFareServiceImpl used to.
+ * An index is never modified once made.
+ */
+class FareRuleIndex {
+
+    /* Zone ids for a missing zone, and for a zone that no rule mentions. */
+    private static final int NULL_ZONE = -1;
+    private static final int UNKNOWN = -2;
+
+    /** The collection this index was made from, so that callers can check it is still current. */
+    final Collection<FareRuleSet> fareRules;
+
+    private final FareAttribute[] attributes;
+
+    private final TObjectIntMap<String> zoneIds = new TObjectIntHashMap<String>(16, 0.5f, UNKNOWN);
+    private final TObjectIntMap<AgencyAndId> routeIds = new TObjectIntHashMap<AgencyAndId>(16, 0.5f, UNKNOWN);
+
+    /* Rules without an agency whose fare attribute is in the given feed, and rules for the given agency. */
+    private final Map<String, BitSet> rulesByFeed = new HashMap<String, BitSet>();
+    private final Map<String, BitSet> rulesByAgency = new HashMap<String, BitSet>();
+
+    /* Rules without origin and destination, and rules allowing each (origin, destination) pair. */
+    private final BitSet withoutOriginDestination = new BitSet();
+    private final TLongObjectMap<BitSet> rulesByOriginDestination = new TLongObjectHashMap<BitSet>();
+
+    /* Rules without contained zones, and rules for each exact set of contained zones. */
+    private final BitSet withoutContains = new BitSet();
+    private final Map<BitSet, BitSet> rulesByContains = new HashMap<BitSet, BitSet>();
+
+    /* Rules without routes, rules with routes, and rules allowing each route. */
+    private final BitSet withoutRoutes = new BitSet();
+    private final BitSet withRoutes = new BitSet();
+    private final List<BitSet> rulesByRoute = new ArrayList<BitSet>();
+
+    private static final BitSet EMPTY = new BitSet();
+
+    FareRuleIndex(Collection<FareRuleSet> fareRules) {
+        this.fareRules = fareRules;
+        attributes = new FareAttribute[fareRules.size()];
+        int rule = 0;
+        for (FareRuleSet ruleSet : fareRules) {
+            FareAttribute attribute = ruleSet.getFareAttribute();
+            attributes[rule] = attribute;
+            // fares don't really have an agency id, they have the per-feed default id
+            if (ruleSet.hasAgencyDefined()) {
+                ruleBits(rulesByAgency, ruleSet.getAgency()).set(rule);
+            } else {
+                ruleBits(rulesByFeed, attribute.getId().getAgencyId()).set(rule);
+            }
+            if (ruleSet.getOriginDestinations().isEmpty()) {
+                withoutOriginDestination.set(rule);
+            }
+            for (P2<String> od : ruleSet.getOriginDestinations()) {
+                long key = pairKey(internZone(od.first), internZone(od.second));
+                BitSet rules = rulesByOriginDestination.get(key);
+                if (rules == null) {
+                    rules = new BitSet();
+                    rulesByOriginDestination.put(key, rules);
+                }
+                rules.set(rule);
+            }
+            if (ruleSet.getContains().isEmpty()) {
+                withoutContains.set(rule);
+            } else {
+                BitSet zones = new BitSet();
+                for (String zone : ruleSet.getContains()) {
+                    zones.set(internZone(zone));
+                }
+                ruleBits(rulesByContains, zones).set(rule);
+            }
+            if (ruleSet.getRoutes().isEmpty()) {
+                withoutRoutes.set(rule);
+            } else {
+                withRoutes.set(rule);
+                for (AgencyAndId route : ruleSet.getRoutes()) {
+                    int id = routeIds.get(route);
+                    if (id == UNKNOWN) {
+                        id = rulesByRoute.size();
+                        routeIds.put(route, id);
+                        rulesByRoute.add(new BitSet());
+                    }
+                    rulesByRoute.get(id).set(rule);
+                }
+            }
+            rule++;
+        }
+    }
+
+    private static <K> BitSet ruleBits(Map<K, BitSet> rulesByKey, K key) {
+        BitSet rules = rulesByKey.get(key);
+        if (rules == null) {
+            rules = new BitSet();
+            rulesByKey.put(key, rules);
+        }
+        return rules;
+    }
+
+    private int internZone(String zone) {
+        if (zone == null) return NULL_ZONE;
+        int id = zoneIds.get(zone);
+        if (id == UNKNOWN) {
+            id = zoneIds.size();
+            zoneIds.put(zone, id);
+        }
+        return id;
+    }
+
+    private int zoneId(String zone) {
+        return zone == null ? NULL_ZONE : zoneIds.get(zone);
+    }
+
+    private static long pairKey(int origin, int destination) {
+        return ((long) origin << 32) | (destination & 0xFFFFFFFFL);
+    }
+
+    /** @return the lowest fare for the given sequence of rides, or positive infinity if no rule matches it. */
+    float getCost(List<Ride> rides) {
+        Sequence sequence = new Sequence(rides.get(0));
+        for (int i = 1; i < rides.size(); i++) {
+            sequence.add(rides.get(i));
+        }
+        return sequence.getCost();
+    }
+
+    /**
+     * @return the lowest fare for every sub-sequence of the given rides: element [i][j] is the fare for rides i to j
+     *         inclusive, for all j >= i. Each sub-sequence extends the one before, so nothing is recomputed.
+     */
+    float[][] getCosts(List<Ride> rides) {
+        int n = rides.size();
+        float[][] costs = new float[n][n];
+        for (int i = 0; i < n; i++) {
+            Sequence sequence = new Sequence(rides.get(i));
+            costs[i][i] = sequence.getCost();
+            for (int j = i + 1; j < n; j++) {
+                sequence.add(rides.get(j));
+                costs[i][j] = sequence.getCost();
+            }
+        }
+        return costs;
+    }
+
+    /** The conditions of a sequence of consecutive rides, built up one ride at a time. */
+    private class Sequence {
+
+        // stops don't really have an agency id, they have the per-feed default id
+        final String feedId;
+        boolean multiFeed = false;
+
+        String agency;
+        boolean multiAgency = false;
+
+        final int startZone;
+        int endZone;
+
+        final BitSet zones = new BitSet();
+        boolean unknownZone = false;
+
+        /* The rules with routes that allow every route in the sequence. */
+        final BitSet routeRules = (BitSet) withRoutes.clone();
+
+        final long startTime;
+        long lastRideStartTime;
+        long lastRideEndTime;
+
+        int transfersUsed = -1;
+
+        Sequence(Ride first) {
+            feedId = first.firstStop.getId().getAgencyId();
+            agency = first.agency;
+            startZone = zoneId(first.startZone);
+            startTime = first.startTime;
+            add(first);
+        }
+
+        void add(Ride ride) {
+            if (!ride.firstStop.getId().getAgencyId().equals(feedId)) {
+                multiFeed = true;
+            }
+            if (ride.agency == null ? agency != null : !ride.agency.equals(agency)) {
+                multiAgency = true;
+            }
+            endZone = zoneId(ride.endZone);
+            for (String zone : ride.zones) {
+                int id = zoneId(zone);
+                if (id < 0) {
+                    unknownZone = true;
+                } else {
+                    zones.set(id);
+                }
+            }
+            int route = routeIds.get(ride.route);
+            if (route == UNKNOWN) {
+                routeRules.clear();
+            } else {
+                routeRules.and(rulesByRoute.get(route));
+            }
+            lastRideStartTime = ride.startTime;
+            lastRideEndTime = ride.endTime;
+            transfersUsed += 1;
+        }
+
+        float getCost() {
+            if (multiFeed) {
+                return Float.POSITIVE_INFINITY;
+            }
+            // agency, or feed for rules without an agency
+            BitSet rules = (BitSet) bits(rulesByFeed.get(feedId)).clone();
+            if (!multiAgency) {
+                rules.or(bits(rulesByAgency.get(agency)));
+            }
+            // origin and destination
+            BitSet condition = (BitSet) withoutOriginDestination.clone();
+            condition.or(bits(rulesByOriginDestination.get(pairKey(startZone, endZone))));
+            condition.or(bits(rulesByOriginDestination.get(pairKey(startZone, NULL_ZONE))));
+            condition.or(bits(rulesByOriginDestination.get(pairKey(NULL_ZONE, startZone))));
+            rules.and(condition);
+            // contained zones, which must be exactly the zones visited
+            condition.clear();
+            condition.or(withoutContains);
+            if (!unknownZone) {
+                condition.or(bits(rulesByContains.get(zones)));
+            }
+            rules.and(condition);
+            // routes
+            condition.clear();
+            condition.or(withoutRoutes);
+            condition.or(routeRules);
+            rules.and(condition);
+
+            float bestFare = Float.POSITIVE_INFINITY;
+            long tripTime = lastRideStartTime - startTime;
+            long journeyTime = lastRideEndTime - startTime;
+            for (int rule = rules.nextSetBit(0); rule >= 0; rule = rules.nextSetBit(rule + 1)) {
+                FareAttribute attribute = attributes[rule];
+                if (attribute.isTransfersSet() && attribute.getTransfers() < transfersUsed) {
+                    continue;
+                }
+                // assume transfers are evaluated at boarding time,
+                // as trimet does
+                if (attribute.isTransferDurationSet() &&
+                    tripTime > attribute.getTransferDuration()) {
+                    continue;
+                }
+                if (attribute.isJourneyDurationSet() &&
+                    journeyTime > attribute.getJourneyDuration()) {
+                    continue;
+                }
+                float newFare = attribute.getPrice();
+                if (newFare < bestFare) {
+                    bestFare = newFare;
+                }
+            }
+            return bestFare;
+        }
+    }
+
+    private static BitSet bits(BitSet rules) {
+        return rules == null ? EMPTY : rules;
+    }
+}
@@ -20,14 +20,23 @@ import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.onebusaway.gtfs.model.AgencyAndId;
 import org.opentripplanner.common.model.GenericLocation;
 import org.opentripplanner.routing.algorithm.AStar;
 import org.opentripplanner.routing.algorithm.strategies.EuclideanRemainingWeightHeuristic;
 import org.opentripplanner.routing.algorithm.strategies.InterleavedBidirectionalHeuristic;
+import org.opentripplanner.routing.algorithm.strategies.MultiTargetTerminationStrategy;
 import org.opentripplanner.routing.algorithm.strategies.RemainingWeightHeuristic;
 import org.opentripplanner.routing.algorithm.strategies.TrivialRemainingWeightHeuristic;
+import org.opentripplanner.routing.core.RoutingContext;
 import org.opentripplanner.routing.core.RoutingRequest;
 import org.opentripplanner.routing.core.State;
 import org.opentripplanner.routing.edgetype.LegSwitchingEdge;
@@ -39,12 +48,16 @@ import org.opentripplanner.routing.graph.Edge;
 import org.opentripplanner.routing.graph.Vertex;
 import org.opentripplanner.routing.spt.DominanceFunction;
 import org.opentripplanner.routing.spt.GraphPath;
+import org.opentripplanner.routing.spt.ShortestPathTree;
+import org.opentripplanner.routing.vertextype.TemporaryVertex;
 import org.opentripplanner.standalone.Router;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
 
 /**
  * This class contains the logic for repeatedly building shortest path trees and accumulating paths through
@@ -73,12 +86,26 @@ public class GraphPathFinder {
     private static final double DEFAULT_MAX_WALK = 2000;
     private static final double CLAMP_MAX_WALK = 15000;
 
+    /** Shared, bounded pool for the per-lot searches of parallel driveToPark requests. */
+    private static final ExecutorService DRIVE_TO_PARK_EXECUTOR = createDriveToParkExecutor();
+
     Router router;
 
     public GraphPathFinder(Router router) {
         this.router = router;
     }
 
+    private static ExecutorService createDriveToParkExecutor() {
+        int nP = Runtime.getRuntime().availableProcessors();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(nP, nP, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(nP * 16),
+                new ThreadFactoryBuilder().setNameFormat("DriveToPark-%d").setDaemon(true).build());
+        executor.allowCoreThreadTimeOut(true);
+        // When the queue is full, run the search on the request thread rather than failing it.
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        return executor;
+    }
+
     // Timeout in seconds relative to initial search begin time, for each new path found (generally decreasing)
 
     /**
@@ -106,11 +133,7 @@ public class GraphPathFinder {
             // options.disableRemainingWeightHeuristic = true; // DEBUG
         }
 
-        // Without transit, we'd just just return multiple copies of the same on-street itinerary.
-        if (!options.modes.isTransit()) {
-            options.numItineraries = 1;
-        }
-        options.dominanceFunction = new DominanceFunction.MinimumWeight(); // FORCING the dominance function to weight only
+        setUpSearch(options);
         LOG.debug("rreq={}", options);
 
         RemainingWeightHeuristic heuristic;
@@ -118,31 +141,13 @@ public class GraphPathFinder {
             heuristic = new TrivialRemainingWeightHeuristic();
         } else if (options.modes.isTransit()) {
            // Only use the BiDi heuristic for transit.
-            heuristic = new InterleavedBidirectionalHeuristic(options.rctx.graph);
+            heuristic = new InterleavedBidirectionalHeuristic(options.rctx.graph, router.heuristicCache);
         } else {
             heuristic = new EuclideanRemainingWeightHeuristic();
         }
         // heuristic = new TrivialRemainingWeightHeuristic(); // DEBUG
 
         options.rctx.remainingWeightHeuristic = heuristic;
-        /* In RoutingRequest, maxTransfers defaults to 2. Over long distances, we may see 
-         * itineraries with far more transfers. We do not expect transfer limiting to improve
-         * search times on the LongDistancePathService, so we set it to the maximum we ever expect
-         * to see. Because people may use either the traditional path services or the 
-         * LongDistancePathService, we do not change the global default but override it here. */
-        options.maxTransfers = 4;
-        options.longDistance = true;
-        
-        if(options.driveToPark) {
-        	options.onlyTransitTrips = false;
-        }
-
-        /* In long distance mode, maxWalk has a different meaning. It's the radius around the origin or destination
-         * within which you can walk on the streets. If no value is provided, max walk defaults to the largest
-         * double-precision float. This would cause long distance mode to do unbounded street searches and consider
-         * the whole graph walkable. */
-        if (options.maxWalkDistance == Double.MAX_VALUE) options.maxWalkDistance = DEFAULT_MAX_WALK;
-        if (options.maxWalkDistance > CLAMP_MAX_WALK) options.maxWalkDistance = CLAMP_MAX_WALK;
         long searchBeginTime = System.currentTimeMillis();
         LOG.debug("BEGIN SEARCH");
         List<GraphPath> paths = Lists.newArrayList();
@@ -154,11 +159,14 @@ public class GraphPathFinder {
                 timeoutIndex = router.timeouts.length - 1;
             }
             double timeout = searchBeginTime + (router.timeouts[timeoutIndex] * 1000);
+            // Searches for further itineraries do not run past the deadline of the request.
+            timeout = Math.min(timeout, options.deadline);
             timeout -= System.currentTimeMillis(); // absolute to relative
             timeout /= 1000; // msec to seconds
             if (timeout <= 0) {
-                // Catch the case where advancing to the next (lower) timeout value means the search is timed out
-                // before it even begins. Passing a negative relative timeout in the SPT call would mean "no timeout".
+                // Catch the case where advancing to the next (lower) timeout value or the deadline means the search is
+                // timed out before it even begins. Passing a negative relative timeout in the SPT call would mean "no
+                // timeout".
                 options.rctx.aborted = true;
                 break;
             }
@@ -191,6 +199,36 @@ public class GraphPathFinder {
         return paths;
     }
 
+    /**
+     * Apply to the given request the search parameters of "long distance" mode, which are the same for all the searches
+     * made here.
+     */
+    private void setUpSearch(RoutingRequest options) {
+        // Without transit, we'd just just return multiple copies of the same on-street itinerary.
+        if (!options.modes.isTransit()) {
+            options.numItineraries = 1;
+        }
+        options.dominanceFunction = new DominanceFunction.MinimumWeight(); // FORCING the dominance function to weight only
+        /* In RoutingRequest, maxTransfers defaults to 2. Over long distances, we may see 
+         * itineraries with far more transfers. We do not expect transfer limiting to improve
+         * search times on the LongDistancePathService, so we set it to the maximum we ever expect
+         * to see. Because people may use either the traditional path services or the 
+         * LongDistancePathService, we do not change the global default but override it here. */
+        options.maxTransfers = 4;
+        options.longDistance = true;
+        
+        if(options.driveToPark) {
+        	options.onlyTransitTrips = false;
+        }
+
+        /* In long distance mode, maxWalk has a different meaning. It's the radius around the origin or destination
+         * within which you can walk on the streets. If no value is provided, max walk defaults to the largest
+         * double-precision float. This would cause long distance mode to do unbounded street searches and consider
+         * the whole graph walkable. */
+        if (options.maxWalkDistance == Double.MAX_VALUE) options.maxWalkDistance = DEFAULT_MAX_WALK;
+        if (options.maxWalkDistance > CLAMP_MAX_WALK) options.maxWalkDistance = CLAMP_MAX_WALK;
+    }
+
     /* Try to find N paths through the Graph */
     public List<GraphPath> graphPathFinderEntryPoint (RoutingRequest request) {
 
@@ -216,14 +254,11 @@ public class GraphPathFinder {
         			LOG.error("No parkings found in the search area in the specified range:"+request.getSearchDistance()+"mt. Try again choosing a wider range.");
         			throw new DriveToParkException();
         		}
-        		List<GraphPath> routesToParkings = new ArrayList<GraphPath>();
-        		for(Vertex park: parkings) {
-        			request.to = new GenericLocation(park.getCoordinate());
-        			List<GraphPath> leadToParking = getPaths(request);
-        			if(leadToParking.size() > 0) {
-        				//element 0 should be the closest route
-        				routesToParkings.add(leadToParking.get(0));
-        			}
+        		List<GraphPath> routesToParkings;
+        		if (request.driveToParkParallel || request.arriveBy) {
+        			routesToParkings = getPathsToParkingsInParallel(request, parkings);
+        		} else {
+        			routesToParkings = getPathsToParkings(request, parkings);
         		}
         		Collections.sort( routesToParkings, new Comparator< GraphPath >( ){
         			public int compare(GraphPath g1, GraphPath g2) {
@@ -281,6 +316,123 @@ public class GraphPathFinder {
         return paths;
     }
 
+    /**
+     * Find the best path to each of the given parking lots with a single one-to-many search: a Dijkstra search
+     * from the origin that stops as soon as all the parking lots have been reached. Each parking lot gets a
+     * temporary target vertex, which is torn down together with the request's routing context.
+     */
+    private List<GraphPath> getPathsToParkings(RoutingRequest request, List<Vertex> parkings) {
+        // The routing context target is the first parking lot, the others are linked in below.
+        request.to = new GenericLocation(parkings.get(0).getCoordinate());
+        request.setRoutingContext(router.graph);
+        RoutingContext rctx = request.rctx;
+        Set<Vertex> targets = Sets.newHashSet();
+        targets.add(rctx.target);
+        for (Vertex park : parkings.subList(1, parkings.size())) {
+            Vertex target = router.graph.streetIndex.getVertexForLocation(
+                    new GenericLocation(park.getCoordinate()), request, true);
+            if (target == null) {
+                continue;
+            }
+            if (target instanceof TemporaryVertex) {
+                rctx.extraTemporaryVertices.add((TemporaryVertex) target);
+                rctx.addTemporaryVertex((TemporaryVertex) target);
+            }
+            targets.add(target);
+        }
+        setUpSearch(request);
+        // A goal direction heuristic is meaningless with several targets.
+        rctx.remainingWeightHeuristic = new TrivialRemainingWeightHeuristic();
+
+        AStar aStar = new AStar();
+        if (router.graphVisualizer != null) {
+            aStar.setTraverseVisitor(router.graphVisualizer.traverseVisitor);
+        }
+        long searchBeginTime = System.currentTimeMillis();
+        ShortestPathTree spt = aStar.getShortestPathTree(request, router.timeouts[0],
+                new MultiTargetTerminationStrategy(targets));
+        LOG.debug("driveToPark search for {} parkings ({} msec)", targets.size(),
+                System.currentTimeMillis() - searchBeginTime);
+
+        List<GraphPath> paths = new ArrayList<GraphPath>();
+        if (spt == null) {
+            return paths;
+        }
+        for (Vertex target : targets) {
+            GraphPath path = spt.getPath(target, true);
+            if (path != null) {
+                paths.add(path);
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * Find the best path to each of the given parking lots by running one point to point search per lot on a shared
+     * bounded pool. All the searches share an abort time, the first router timeout or the request's deadline if that is
+     * sooner: a search still running then stops, and its parking lot is left out of the result. The searches are always
+     * waited for, as their temporary vertices are only removed from the graph when the request is cleaned up.
+     */
+    private List<GraphPath> getPathsToParkingsInParallel(final RoutingRequest request, List<Vertex> parkings) {
+        // The request's own routing context only keeps track of the temporary vertices of the per-lot searches.
+        request.to = new GenericLocation(parkings.get(0).getCoordinate());
+        request.setRoutingContext(router.graph);
+        final long abortTime = Math.min(System.currentTimeMillis() + (long) (router.timeouts[0] * 1000),
+                request.deadline);
+        final List<RoutingRequest> lotRequests = Collections.synchronizedList(new ArrayList<RoutingRequest>());
+        List<Future<GraphPath>> futures = new ArrayList<Future<GraphPath>>();
+        for (final Vertex park : parkings) {
+            futures.add(DRIVE_TO_PARK_EXECUTOR.submit(new Callable<GraphPath>() {
+                @Override
+                public GraphPath call() {
+                    if (System.currentTimeMillis() > abortTime) {
+                        // Queued until the abort time, do not even set up the search.
+                        return null;
+                    }
+                    RoutingRequest lotRequest = request.clone();
+                    lotRequest.driveToPark = false; // keep the routing context built below
+                    lotRequest.rctx = null;
+                    lotRequest.to = new GenericLocation(park.getCoordinate());
+                    lotRequest.deadline = abortTime;
+                    lotRequest.setRoutingContext(router.graph);
+                    lotRequests.add(lotRequest);
+                    List<GraphPath> paths = new GraphPathFinder(router).getPaths(lotRequest);
+                    if (paths == null || paths.isEmpty()) {
+                        return null;
+                    }
+                    //element 0 should be the closest route
+                    return paths.get(0);
+                }
+            }));
+        }
+
+        List<GraphPath> routesToParkings = new ArrayList<GraphPath>();
+        // The searches stop by themselves at the abort time, and cannot be interrupted: wait for all of them.
+        for (Future<GraphPath> future : futures) {
+            try {
+                GraphPath path = Uninterruptibles.getUninterruptibly(future);
+                if (path != null) {
+                    routesToParkings.add(path);
+                }
+            } catch (ExecutionException e) {
+                LOG.warn("driveToPark search failed: ", e.getCause());
+            }
+        }
+        // Hand all the temporary vertices over to the request so they are removed when it is cleaned up.
+        for (RoutingRequest lotRequest : lotRequests) {
+            if (lotRequest.rctx.aborted) {
+                request.rctx.aborted = true;
+            }
+            if (lotRequest.rctx.origin instanceof TemporaryVertex) {
+                request.rctx.extraTemporaryVertices.add((TemporaryVertex) lotRequest.rctx.origin);
+            }
+            if (lotRequest.rctx.target instanceof TemporaryVertex) {
+                request.rctx.extraTemporaryVertices.add((TemporaryVertex) lotRequest.rctx.target);
+            }
+        }
+        return routesToParkings;
+    }
+
     /**
      * Break up a RoutingRequest with intermediate places into separate requests, in the given order.
      * If there are no intermediate places, issue a single request.
@@ -18,6 +18,7 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.MissingNode;
 import com.google.common.io.ByteStreams;
+import org.opentripplanner.routing.graph.CompactGraphFormat;
 import org.opentripplanner.routing.graph.Graph;
 import org.opentripplanner.routing.graph.Graph.LoadLevel;
 import org.opentripplanner.routing.services.GraphSource;
@@ -46,7 +47,8 @@ public class InputStreamGraphSource implements GraphSource {
      * */
     private static final long LOAD_DELAY_SEC = 10;
 
-    private Router router;
+    /** Volatile so that a router loaded while others are being served is published to them as soon as it is set. */
+    private volatile Router router;
 
     private String routerId;
 
@@ -72,7 +74,17 @@ public class InputStreamGraphSource implements GraphSource {
      */
     public static InputStreamGraphSource newFileGraphSource(String routerId, File path,
             LoadLevel loadLevel) {
-        return new InputStreamGraphSource(routerId, loadLevel, new FileStreams(path));
+        return newFileGraphSource(routerId, path, loadLevel, false);
+    }
+
+    /**
+     * @param compact True to load the graph from a compact graph file (see CompactGraphFormat)
+     *        instead of a serialized one.
+     * @return A GraphSource loading graph from the file system under a base path.
+     */
+    public static InputStreamGraphSource newFileGraphSource(String routerId, File path,
+            LoadLevel loadLevel, boolean compact) {
+        return new InputStreamGraphSource(routerId, loadLevel, new FileStreams(path, compact));
     }
 
     /**
@@ -128,16 +140,22 @@ public class InputStreamGraphSource implements GraphSource {
                      */
                     router = null;
                     router = loadGraph();
+                    if (router != null) {
+                        router.removePreviousBuildFiles();
+                    }
                 }
             } else {
                 Router newRouter = loadGraph();
                 if (newRouter != null) {
-                    // Load OK
-                    if (router != null) {
-                        LOG.info("Reloading '{}': post-evicting router", routerId);
-                        router.shutdown();
-                    }
+                    // Load OK. Warm up the new router while the old one is still serving requests.
+                    newRouter.warmup(router);
+                    Router oldRouter = router;
                     router = newRouter; // Assignment in java is atomic
+                    if (oldRouter != null) {
+                        LOG.info("Reloading '{}': post-evicting router once its requests are done", routerId);
+                        oldRouter.drainAndShutdown();
+                    }
+                    newRouter.removePreviousBuildFiles();
                 } else {
                     // Load failed
                     if (force || router == null) {
@@ -203,7 +221,20 @@ public class InputStreamGraphSource implements GraphSource {
      */
     private Router loadGraph() {
         final Graph newGraph;
-        try (InputStream is = streams.getGraphInputStream()) {
+        File compactGraphFile = streams.getCompactGraphFile();
+        if (compactGraphFile != null) {
+            LOG.info("Loading compact graph...");
+            try {
+                newGraph = Graph.loadCompact(compactGraphFile, loadLevel, streetVertexIndexFactory);
+            } catch (FileNotFoundException e) {
+                LOG.warn("Graph file not found or not openable for routerId '{}': {}", routerId, e);
+                return null;
+            } catch (Exception ex) {
+                LOG.error("Exception while loading graph '{}'.", routerId, ex);
+                return null;
+            }
+            newGraph.routerId = (routerId);
+        } else try (InputStream is = streams.getGraphInputStream()) {
             LOG.info("Loading graph...");
             try {
                 newGraph = Graph.load(new ObjectInputStream(is), loadLevel,
@@ -251,6 +282,9 @@ public class InputStreamGraphSource implements GraphSource {
 
         public abstract InputStream getConfigInputStream() throws IOException;
 
+        /** @return the compact graph file to map, or null to read a serialized graph from the input stream. */
+        public abstract File getCompactGraphFile();
+
         public abstract long getLastModified();
     }
 
@@ -258,8 +292,16 @@ public class InputStreamGraphSource implements GraphSource {
 
         private File path;
 
-        private FileStreams(File path) {
+        private boolean compact;
+
+        private FileStreams(File path, boolean compact) {
             this.path = path;
+            this.compact = compact;
+        }
+
+        @Override
+        public File getCompactGraphFile() {
+            return compact ? new File(path, CompactGraphFormat.GRAPH_FILENAME) : null;
         }
 
         @Override
@@ -283,7 +325,8 @@ public class InputStreamGraphSource implements GraphSource {
         @Override
         public long getLastModified() {
             // Note: this returns 0L if the file does not exists
-            return new File(path, GRAPH_FILENAME).lastModified();
+            String filename = compact ? CompactGraphFormat.GRAPH_FILENAME : GRAPH_FILENAME;
+            return new File(path, filename).lastModified();
         }
     }
 
@@ -295,6 +338,12 @@ public class InputStreamGraphSource implements GraphSource {
             this.path = path;
         }
 
+        /** A classpath resource cannot be memory-mapped, so only serialized graphs are supported. */
+        @Override
+        public File getCompactGraphFile() {
+            return null;
+        }
+
         @Override
         public InputStream getGraphInputStream() {
             File graphFile = new File(path, GRAPH_FILENAME);
@@ -332,6 +381,9 @@ public class InputStreamGraphSource implements GraphSource {
 
         public LoadLevel loadLevel = LoadLevel.FULL;
 
+        /** Load graphs from compact graph files instead of serialized ones. */
+        public boolean compactGraph = false;
+
         public FileFactory(File basePath) {
             this.basePath = basePath;
         }
@@ -339,13 +391,15 @@ public class InputStreamGraphSource implements GraphSource {
         @Override
         public GraphSource createGraphSource(String routerId) {
             return InputStreamGraphSource.newFileGraphSource(routerId, getBasePath(routerId),
-                    loadLevel);
+                    loadLevel, compactGraph);
         }
 
         @Override
         public boolean save(String routerId, InputStream is) {
 
-            File sourceFile = new File(getBasePath(routerId), InputStreamGraphSource.GRAPH_FILENAME);
+            String filename = compactGraph ? CompactGraphFormat.GRAPH_FILENAME
+                    : InputStreamGraphSource.GRAPH_FILENAME;
+            File sourceFile = new File(getBasePath(routerId), filename);
 
             try {
 
@@ -52,6 +52,7 @@ public class MemoryGraphSource implements GraphSource {
         // Start up graph updaters and apply runtime configuration options
         // TODO will the updaters be started repeatedly due to reload calls?
         router.startup(config);
+        router.removePreviousBuildFiles();
         return true;
     }
 
@@ -133,6 +133,18 @@ public class GraphService {
         return router;
     }
 
+    /**
+     * Get the router for the given ID and count a request on it, so that it is not shut down while the request is
+     * using it. A router that has been replaced and is draining refuses new requests, and the router is then fetched
+     * again, which gives the one that replaced it. Every call must be followed by a call to Router.release.
+     */
+    public Router acquireRouter(String routerId) throws GraphNotFoundException {
+        while (true) {
+            Router router = getRouter(routerId);
+            if (router.tryAcquire()) return router;
+        }
+    }
+
     /**
      * Reload all registered graphs from wherever they came from. See reloadGraph().
      * @return whether the operation completed successfully (all reloads are successful).
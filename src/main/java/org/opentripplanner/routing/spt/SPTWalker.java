@@ -16,6 +16,7 @@ package org.opentripplanner.routing.spt;
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.LineString;
 import org.opentripplanner.common.geometry.SphericalDistanceLibrary;
+import org.opentripplanner.routing.core.RoutingContext;
 import org.opentripplanner.routing.core.State;
 import org.opentripplanner.routing.core.TraverseMode;
 import org.opentripplanner.routing.edgetype.StreetEdge;
@@ -78,11 +79,13 @@ public class SPTWalker {
             allVertices.add(s.getVertex());
         }
         Set<Edge> processedEdges = new HashSet<Edge>(allVertices.size());
+        // The temporary edges around the origin and destination are only visible through the routing context.
+        RoutingContext rctx = spt.getOptions().rctx;
         for (Vertex v : allVertices) {
             State s0 = spt.getState(v);
             if (s0 == null || !s0.isFinal())
                 continue;
-            for (Edge e : s0.getVertex().getIncoming()) {
+            for (Edge e : rctx == null ? v.getIncoming() : rctx.getIncoming(v)) {
                 // Take only street
                 if (e != null && visitor.accept(e)) {
                     State s1 = spt.getState(e.getFromVertex());
@@ -123,6 +123,16 @@ public class ShortestPathTree {
      *          therefore be enqueued
      */
     public boolean add(State newState) {
+        return add(newState, null);
+    }
+
+    /**
+     * Same as add(State), also reporting the states that were removed from the tree because the new state
+     * dominates them. This allows a search to drop them from its priority queue right away.
+     *
+     * @param dominatedStates if not null, receives the states dominated by the new state
+     */
+    public boolean add(State newState, List<State> dominatedStates) {
         Vertex vertex = newState.getVertex();
         List<State> states = stateSets.get(vertex);
 
@@ -143,8 +153,12 @@ public class ShortestPathTree {
             // we want to reject the new state
             if (dominanceFunction.betterOrEqualAndComparable(oldState, newState))
                 return false;
-            if (dominanceFunction.betterOrEqualAndComparable(newState, oldState))
+            if (dominanceFunction.betterOrEqualAndComparable(newState, oldState)) {
                 it.remove();
+                if (dominatedStates != null) {
+                    dominatedStates.add(oldState);
+                }
+            }
         }
 
         // any states remaining are co-dominant with the new state
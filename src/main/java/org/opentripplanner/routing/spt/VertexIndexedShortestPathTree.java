@@ -0,0 +1,226 @@
+/* This program is free software: you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public License
+as published by the Free Software Foundation, either version 3 of
+the License, or (at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.spt;
+
+import gnu.trove.list.array.TIntArrayList;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.State;
+import org.opentripplanner.routing.graph.Vertex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+/**
+ * A ShortestPathTree storing its states in an array indexed by vertex index instead of an IdentityHashMap.
+ *
+ * Vertex indices are dense, so no hashing is needed. The array is split into fixed-size pages allocated on first
+ * use, so small searches (such as the many short walk searches of the graph builder) do not pay for an array as
+ * large as the whole graph. Most vertices only ever hold one state, which is stored directly in the array; a list is
+ * only allocated once a second co-dominant state reaches a vertex (bike rental, parking, turn restrictions, or a
+ * non-total dominance function). Vertices created after the tree (such as temporary vertices) get indices above
+ * the original size and grow the page table as needed.
+ */
+public class VertexIndexedShortestPathTree extends ShortestPathTree {
+
+    private static final Logger LOG = LoggerFactory.getLogger(VertexIndexedShortestPathTree.class);
+
+    private static final int PAGE_BITS = 10;
+
+    private static final int PAGE_MASK = (1 << PAGE_BITS) - 1;
+
+    /** Pages of vertex entries. Each entry is null, a single State, or a List of co-dominant States. */
+    private Object[][] pages;
+
+    /** The indices of all the vertices reached, in the order they were reached. */
+    private TIntArrayList reachedVertices = new TIntArrayList();
+
+    public VertexIndexedShortestPathTree(RoutingRequest options, DominanceFunction dominanceFunction) {
+        super(options, dominanceFunction);
+        pages = new Object[(Vertex.getMaxIndex() >> PAGE_BITS) + 1][];
+    }
+
+    @Override
+    public boolean add(State newState, List<State> dominatedStates) {
+        int index = newState.getVertex().getIndex();
+        int p = index >> PAGE_BITS;
+        if (p >= pages.length) {
+            pages = Arrays.copyOf(pages, p + 1);
+        }
+        Object[] stateSets = pages[p];
+        if (stateSets == null) {
+            stateSets = pages[p] = new Object[1 << PAGE_BITS];
+        }
+        index &= PAGE_MASK;
+        Object entry = stateSets[index];
+
+        // if the vertex has no states, add one and return
+        if (entry == null) {
+            stateSets[index] = newState;
+            reachedVertices.add(newState.getVertex().getIndex());
+            return true;
+        }
+
+        if (entry instanceof State) {
+            State oldState = (State) entry;
+            // order is important, because in the case of a tie we want to reject the new state
+            if (dominanceFunction.betterOrEqualAndComparable(oldState, newState))
+                return false;
+            if (dominanceFunction.betterOrEqualAndComparable(newState, oldState)) {
+                if (dominatedStates != null) {
+                    dominatedStates.add(oldState);
+                }
+                stateSets[index] = newState;
+            } else {
+                List<State> states = new ArrayList<>(2);
+                states.add(oldState);
+                states.add(newState);
+                stateSets[index] = states;
+            }
+            return true;
+        }
+
+        @SuppressWarnings("unchecked")
+        List<State> states = (List<State>) entry;
+        Iterator<State> it = states.iterator();
+        while (it.hasNext()) {
+            State oldState = it.next();
+            if (dominanceFunction.betterOrEqualAndComparable(oldState, newState))
+                return false;
+            if (dominanceFunction.betterOrEqualAndComparable(newState, oldState)) {
+                it.remove();
+                if (dominatedStates != null) {
+                    dominatedStates.add(oldState);
+                }
+            }
+        }
+        if (states.isEmpty()) {
+            stateSets[index] = newState;
+        } else {
+            states.add(newState);
+        }
+        return true;
+    }
+
+    /** @return the state or list of states at the given vertex, or null. */
+    private Object getEntry(Vertex vertex) {
+        return getEntry(vertex.getIndex());
+    }
+
+    private Object getEntry(int index) {
+        int p = index >> PAGE_BITS;
+        if (p >= pages.length || pages[p] == null) {
+            return null;
+        }
+        return pages[p][index & PAGE_MASK];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public State getState(Vertex dest) {
+        Object entry = getEntry(dest);
+        if (entry == null)
+            return null;
+        if (entry instanceof State) {
+            State s = (State) entry;
+            return s.isFinal() ? s : null;
+        }
+        State ret = null;
+        for (State s : (List<State>) entry) {
+            if ((ret == null || s.weight < ret.weight) && s.isFinal()) {
+                ret = s;
+            }
+        }
+        return ret;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<State> getStates(Vertex dest) {
+        Object entry = getEntry(dest);
+        if (entry == null)
+            return null;
+        if (entry instanceof State)
+            return Collections.singletonList((State) entry);
+        return (List<State>) entry;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean visit(State state) {
+        Object entry = getEntry(state.getVertex());
+        if (entry == state)
+            return true;
+        if (entry instanceof List) {
+            for (State s : (List<State>) entry) {
+                if (s == state)
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Set<Vertex> getVertices() {
+        Set<Vertex> vertices = Collections.newSetFromMap(new IdentityHashMap<Vertex, Boolean>(reachedVertices.size()));
+        for (int i = 0; i < reachedVertices.size(); i++) {
+            List<State> states = getStates(reachedVertices.get(i));
+            if (!states.isEmpty()) {
+                vertices.add(states.get(0).getVertex());
+            }
+        }
+        return vertices;
+    }
+
+    @Override
+    public int getVertexCount() {
+        return reachedVertices.size();
+    }
+
+    @Override
+    public Collection<State> getAllStates() {
+        ArrayList<State> allStates = new ArrayList<State>();
+        for (int i = 0; i < reachedVertices.size(); i++) {
+            allStates.addAll(getStates(reachedVertices.get(i)));
+        }
+        return allStates;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<State> getStates(int index) {
+        Object entry = getEntry(index);
+        if (entry instanceof State)
+            return Collections.singletonList((State) entry);
+        return (List<State>) entry;
+    }
+
+    @Override
+    public void dump() {
+        int statesCount = 0;
+        int maxSize = 0;
+        for (int i = 0; i < reachedVertices.size(); i++) {
+            int size = getStates(reachedVertices.get(i)).size();
+            statesCount += size;
+            maxSize = Math.max(maxSize, size);
+        }
+        LOG.info("SPT: vertices: " + reachedVertices.size() + " states: total: " + statesCount
+                + " per vertex max: " + maxSize + " avg: " + (statesCount * 1.0 / reachedVertices.size()));
+    }
+
+    @Override
+    public String toString() {
+        return "VertexIndexedShortestPathTree(" + reachedVertices.size() + " vertices)";
+    }
+
+}
@@ -0,0 +1,140 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.trippattern;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import org.opentripplanner.common.MavenVersion;
+
+/**
+ * The real-time arrival and departure delays of a trip, relative to its scheduled times. Real-time updates usually
+ * give a delay at a few stops and propagate it to the stops that follow, so the delays are stored as runs of
+ * consecutive stops sharing the same pair of delays: an update allocates a few ints per change in delay rather than
+ * two arrays as long as the trip.
+ *
+ * Stops that have been passed or canceled have the delay {@link #UNAVAILABLE} rather than a number of seconds.
+ */
+class StopDelays implements Serializable {
+
+    private static final long serialVersionUID = MavenVersion.VERSION.getUID();
+
+    /** The delay of a stop whose time is TripTimes.UNAVAILABLE. */
+    static final int UNAVAILABLE = Integer.MIN_VALUE;
+
+    private final int nStops;
+
+    /* The first stop index of each run, increasing from zero, and the delays at all the stops of each run. */
+    private int[] runStarts;
+    private int[] arrivalDelays;
+    private int[] departureDelays;
+    private int nRuns;
+
+    /** Delays for a trip of the given length, all starting at the given value. */
+    StopDelays(int nStops, int delay) {
+        this.nStops = nStops;
+        runStarts = new int[] { 0, 0 };
+        arrivalDelays = new int[] { delay, 0 };
+        departureDelays = new int[] { delay, 0 };
+        nRuns = 1;
+    }
+
+    int getArrivalDelay(int stop) {
+        return arrivalDelays[run(stop)];
+    }
+
+    int getDepartureDelay(int stop) {
+        return departureDelays[run(stop)];
+    }
+
+    void setArrivalDelay(int stop, int delay) {
+        int r = run(stop);
+        if (arrivalDelays[r] == delay) return;
+        r = isolate(stop, r);
+        arrivalDelays[r] = delay;
+        merge(r);
+    }
+
+    void setDepartureDelay(int stop, int delay) {
+        int r = run(stop);
+        if (departureDelays[r] == delay) return;
+        r = isolate(stop, r);
+        departureDelays[r] = delay;
+        merge(r);
+    }
+
+    /** @return the number of runs of equal delays, which is one plus the number of changes in delay. */
+    int getRunCount() {
+        return nRuns;
+    }
+
+    /** @return the index of the run containing the given stop. */
+    private int run(int stop) {
+        int r = Arrays.binarySearch(runStarts, 0, nRuns, stop);
+        return r >= 0 ? r : -r - 2;
+    }
+
+    /** Split the runs around the given stop so that it is a run on its own. @return the index of that run. */
+    private int isolate(int stop, int r) {
+        if (runStarts[r] < stop) {
+            insertRun(r + 1, stop, r);
+            r += 1;
+        }
+        int end = r + 1 < nRuns ? runStarts[r + 1] : nStops;
+        if (stop + 1 < end) {
+            insertRun(r + 1, stop + 1, r);
+        }
+        return r;
+    }
+
+    /** Insert a run at the given index starting at the given stop, with the same delays as another run. */
+    private void insertRun(int index, int start, int copyOf) {
+        if (nRuns == runStarts.length) {
+            int capacity = nRuns * 2;
+            runStarts = Arrays.copyOf(runStarts, capacity);
+            arrivalDelays = Arrays.copyOf(arrivalDelays, capacity);
+            departureDelays = Arrays.copyOf(departureDelays, capacity);
+        }
+        int arrival = arrivalDelays[copyOf];
+        int departure = departureDelays[copyOf];
+        System.arraycopy(runStarts, index, runStarts, index + 1, nRuns - index);
+        System.arraycopy(arrivalDelays, index, arrivalDelays, index + 1, nRuns - index);
+        System.arraycopy(departureDelays, index, departureDelays, index + 1, nRuns - index);
+        runStarts[index] = start;
+        arrivalDelays[index] = arrival;
+        departureDelays[index] = departure;
+        nRuns += 1;
+    }
+
+    /** Join the given run with its neighbours where they have the same delays. */
+    private void merge(int r) {
+        if (r + 1 < nRuns && sameDelays(r, r + 1)) {
+            removeRun(r + 1);
+        }
+        if (r > 0 && sameDelays(r - 1, r)) {
+            removeRun(r);
+        }
+    }
+
+    private boolean sameDelays(int r1, int r2) {
+        return arrivalDelays[r1] == arrivalDelays[r2] && departureDelays[r1] == departureDelays[r2];
+    }
+
+    private void removeRun(int index) {
+        System.arraycopy(runStarts, index + 1, runStarts, index, nRuns - index - 1);
+        System.arraycopy(arrivalDelays, index + 1, arrivalDelays, index, nRuns - index - 1);
+        System.arraycopy(departureDelays, index + 1, departureDelays, index, nRuns - index - 1);
+        nRuns -= 1;
+    }
+}
@@ -14,7 +14,6 @@
 package org.opentripplanner.routing.trippattern;
 
 import java.io.Serializable;
-import java.util.Arrays;
 import java.util.BitSet;
 import java.util.List;
 
@@ -85,16 +84,11 @@ public class TripTimes implements Serializable, Comparable<TripTimes>, Cloneable
     final int[] scheduledDepartureTimes;
 
     /**
-     * The time in seconds after midnight at which the vehicle arrives at each stop, accounting for
-     * any real-time updates. Non-final to allow updates.
+     * The real-time delays at each stop relative to the scheduled times, or null if this TripTimes
+     * has not been updated. Only the changes in delay along the trip are stored, so an update does
+     * not copy the scheduled times. Non-final to allow updates.
      */
-    int[] arrivalTimes;
-
-    /**
-     * The time in seconds after midnight at which the vehicle leaves each stop, accounting for
-     * any real-time updates. Non-final to allow updates.
-     */
-    int[] departureTimes;
+    private StopDelays delays;
 
     /**
      * These are the GTFS stop sequence numbers, which show the order in which the vehicle visits
@@ -140,15 +134,16 @@ public class TripTimes implements Serializable, Comparable<TripTimes>, Cloneable
         this.scheduledArrivalTimes = deduplicator.deduplicateIntArray(arrivals);
         this.stopSequences = deduplicator.deduplicateIntArray(sequences);
         this.headsigns = deduplicator.deduplicateStringArray(makeHeadsignsArray(stopTimes));
-        // We set these to null to indicate that this is a non-updated/scheduled TripTimes.
-        // We cannot point to the scheduled times because they are shifted, and updated times are not.
-        this.arrivalTimes = null;
-        this.departureTimes = null;
+        // We set this to null to indicate that this is a non-updated/scheduled TripTimes.
+        this.delays = null;
         this.timepoints = deduplicator.deduplicateBitSet(timepoints);
         LOG.trace("trip {} has timepoint at indexes {}", trip, timepoints);
     }
 
-    /** This copy constructor does not copy the actual times, only the scheduled times. */
+    /**
+     * This copy constructor does not copy the real-time delays, only the scheduled times, which are
+     * shared rather than copied.
+     */
     // It might be more maintainable to clone the triptimes then null out the scheduled times.
     // However, we then lose the "final" modifiers on the fields, and the immutability.
     public TripTimes(TripTimes object) {
@@ -223,14 +218,16 @@ public class TripTimes implements Serializable, Comparable<TripTimes>, Cloneable
 
     /** @return the time in seconds after midnight that the vehicle arrives at the stop. */
     public int getArrivalTime(int stop) {
-        if (arrivalTimes == null) return getScheduledArrivalTime(stop);
-        else return arrivalTimes[stop]; // updated times are not time shifted.
+        if (delays == null) return getScheduledArrivalTime(stop);
+        int delay = delays.getArrivalDelay(stop);
+        return delay == StopDelays.UNAVAILABLE ? UNAVAILABLE : getScheduledArrivalTime(stop) + delay;
     }
 
     /** @return the amount of time in seconds that the vehicle waits at the stop. */
     public int getDepartureTime(int stop) {
-        if (departureTimes == null) return getScheduledDepartureTime(stop);
-        else return departureTimes[stop]; // updated times are not time shifted.
+        if (delays == null) return getScheduledDepartureTime(stop);
+        int delay = delays.getDepartureDelay(stop);
+        return delay == StopDelays.UNAVAILABLE ? UNAVAILABLE : getScheduledDepartureTime(stop) + delay;
     }
 
     /** @return the amount of time in seconds that the vehicle waits at the stop. */
@@ -260,7 +257,7 @@ public class TripTimes implements Serializable, Comparable<TripTimes>, Cloneable
      * timetable or false if it is a updated, cancelled, or otherwise modified one.
      */
     public boolean isScheduled() {
-        return departureTimes == null && arrivalTimes == null;
+        return delays == null;
     }
 
     /**
@@ -330,43 +327,33 @@ public class TripTimes implements Serializable, Comparable<TripTimes>, Cloneable
     /** Cancel this entire trip */
     public void cancel() {
         canceled = true;
-        arrivalTimes = new int[getNumStops()];
-        Arrays.fill(arrivalTimes, UNAVAILABLE);
-        departureTimes = arrivalTimes;
+        delays = new StopDelays(getNumStops(), StopDelays.UNAVAILABLE);
     }
 
     public void updateDepartureTime(int stop, int time) {
-        checkCreateTimesArrays();
-        departureTimes[stop] = time;
+        updateDepartureDelay(stop, time == UNAVAILABLE ?
+                StopDelays.UNAVAILABLE : time - getScheduledDepartureTime(stop));
     }
 
     public void updateDepartureDelay(int stop, int delay) {
-        checkCreateTimesArrays();
-        departureTimes[stop] = scheduledDepartureTimes[stop] + timeShift + delay;
+        checkCreateDelays();
+        delays.setDepartureDelay(stop, delay);
     }
 
     public void updateArrivalTime(int stop, int time) {
-        checkCreateTimesArrays();
-        arrivalTimes[stop] = time;
+        updateArrivalDelay(stop, time == UNAVAILABLE ?
+                StopDelays.UNAVAILABLE : time - getScheduledArrivalTime(stop));
     }
 
     public void updateArrivalDelay(int stop, int delay) {
-        checkCreateTimesArrays();
-        arrivalTimes[stop] = scheduledArrivalTimes[stop] + timeShift + delay;
+        checkCreateDelays();
+        delays.setArrivalDelay(stop, delay);
     }
 
-    /**
-     * If they don't already exist, create arrays for updated arrival and departure times
-     * that are just time-shifted copies of the zero-based scheduled departure times.
-     */
-    private void checkCreateTimesArrays() {
-        if (arrivalTimes == null) {
-            arrivalTimes = Arrays.copyOf(scheduledArrivalTimes, scheduledArrivalTimes.length);
-            departureTimes = Arrays.copyOf(scheduledDepartureTimes, scheduledDepartureTimes.length);
-            for (int i = 0; i < arrivalTimes.length; i++) {
-                arrivalTimes[i] += timeShift;
-                departureTimes[i] += timeShift;
-            }
+    /** If they don't already exist, create real-time delays that are zero at every stop. */
+    private void checkCreateDelays() {
+        if (delays == null) {
+            delays = new StopDelays(getNumStops(), 0);
         }
     }
 
@@ -397,7 +384,7 @@ public class TripTimes implements Serializable, Comparable<TripTimes>, Cloneable
     * without updates for now (frequency trips don't have updates).
     */
     public TripTimes timeShift (int stop, int time, boolean depart) {
-        if (arrivalTimes != null || departureTimes != null) return null;
+        if (delays != null) return null;
         TripTimes shifted = this.clone();
         // Adjust 0-based times to match desired stoptime.
         int shift = time - (depart ? getDepartureTime(stop) : getArrivalTime(stop));
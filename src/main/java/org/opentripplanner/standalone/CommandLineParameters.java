@@ -66,6 +66,10 @@ public class CommandLineParameters implements Cloneable {
             description = "Pass the graph to the server in-memory after building it, and saving to disk.")
     public boolean preFlight;
 
+    @Parameter(names = {"--compactGraph"},
+            description = "Save and load graphs in the compact memory-mapped format (Graph.cgf) instead of Graph.obj.")
+    public boolean compactGraph;
+
     @Parameter(names = { "--version", },
             description = "Print the version, and then exit.")
     public boolean version = false;
@@ -106,6 +110,18 @@ public class CommandLineParameters implements Cloneable {
             description = "Path to directory containing local client files to serve.")
     public File clientDirectory = null;
 
+    @Parameter(names = {"--routingThreads"},
+            description = "Number of threads searching for routes at once. Defaults to the number of cores.")
+    public int routingThreads = Runtime.getRuntime().availableProcessors();
+
+    @Parameter(names = {"--maxQueuedRequests"},
+            description = "Number of routing requests that may wait for a thread before further ones are refused.")
+    public int maxQueuedRequests = 100;
+
+    @Parameter(names = {"--requestTimeout"},
+            description = "Seconds after which a routing request is abandoned, counting time spent queued.")
+    public double requestTimeout = 30;
+
     @Parameter(names = {"--disableFileCache"}, description = "Disable http server static file cache. Handy for development.")
     public boolean disableFileCache = false;
 
@@ -112,6 +112,18 @@ public class GraphBuilderParameters {
      */
     public boolean staticBikeParkAndRide = false;
 
+    /**
+     * The number of threads used by the graph builder modules that can run in parallel. Defaults to the number of
+     * available processors.
+     */
+    public final int threads;
+
+    /**
+     * Run graph builder modules that do not depend on each other at the same time, for instance OSM and GTFS loading.
+     * Vertices are then numbered in the order the threads create them, so builds are no longer reproducible.
+     */
+    public final boolean parallelModules;
+
     /**
      * Set all parameters from the given Jackson JSON tree, applying defaults.
      * Supplying MissingNode.getInstance() will cause all the defaults to be applied.
@@ -138,6 +150,8 @@ public class GraphBuilderParameters {
         staticParkAndRide = config.path("staticParkAndRide").asBoolean(true);
         staticBikeParkAndRide = config.path("staticBikeParkAndRide").asBoolean(false);
         maxHtmlAnnotationsPerFile = config.path("maxHtmlAnnotationsPerFile").asInt(1000);
+        threads = Math.max(1, config.path("threads").asInt(Runtime.getRuntime().availableProcessors()));
+        parallelModules = config.path("parallelModules").asBoolean(false);
     }
 
 }
@@ -3,6 +3,7 @@ package org.opentripplanner.standalone;
 import java.io.File;
 import java.io.IOException;
 import java.net.BindException;
+import java.util.concurrent.ExecutorService;
 
 import org.glassfish.grizzly.http.CompressionConfig;
 import org.glassfish.grizzly.http.server.CLStaticHttpHandler;
@@ -12,6 +13,7 @@ import org.glassfish.grizzly.http.server.NetworkListener;
 import org.glassfish.grizzly.http.server.StaticHttpHandler;
 import org.glassfish.grizzly.ssl.SSLContextConfigurator;
 import org.glassfish.grizzly.ssl.SSLEngineConfigurator;
+import org.glassfish.grizzly.threadpool.GrizzlyExecutorService;
 import org.glassfish.grizzly.threadpool.ThreadPoolConfig;
 import org.glassfish.jersey.server.ContainerFactory;
 import org.slf4j.Logger;
@@ -57,19 +59,22 @@ public class GrizzlyServer {
         sslConfig.setKeyStoreFile(new File(params.basePath, "keystore").getAbsolutePath());
         sslConfig.setKeyStorePass("opentrip");
 
-        /* OTP is CPU-bound, so we want only as many worker threads as we have cores. */
+        /*
+         * Searches are handed over to the server's routing executor, so the worker threads only parse requests and
+         * write responses. One pool of them is shared by the HTTP and HTTPS listeners.
+         */
         ThreadPoolConfig threadPoolConfig = ThreadPoolConfig.defaultConfig()
+            .setPoolName("otp-http-worker")
             .setCorePoolSize(1)
             .setMaxPoolSize(Runtime.getRuntime().availableProcessors());
+        ExecutorService workerThreadPool = GrizzlyExecutorService.createInstance(threadPoolConfig);
 
         /* HTTP (non-encrypted) listener */
         NetworkListener httpListener = new NetworkListener("otp_insecure", params.bindAddress, params.port);
-        // OTP is CPU-bound, we don't want more threads than cores. TODO: We should switch to async handling.
         httpListener.setSecure(false);
 
         /* HTTPS listener */
         NetworkListener httpsListener = new NetworkListener("otp_secure", params.bindAddress, params.securePort);
-        // Ideally we'd share the threads between HTTP and HTTPS.
         httpsListener.setSecure(true);
         httpsListener.setSSLEngineConfig(
                 new SSLEngineConfigurator(sslConfig)
@@ -83,7 +88,7 @@ public class GrizzlyServer {
             cc.setCompressionMode(CompressionConfig.CompressionMode.ON);
             cc.setCompressionMinSize(50000); // the min number of bytes to compress
             cc.setCompressableMimeTypes("application/json", "text/json"); // the mime types to compress
-            listener.getTransport().setWorkerThreadPoolConfig(threadPoolConfig);
+            listener.getTransport().setWorkerThreadPool(workerThreadPool);
             httpServer.addListener(listener);
         }
 
@@ -132,6 +137,8 @@ public class GrizzlyServer {
             LOG.info("Interrupted, shutting down.");
         }
         httpServer.shutdown();
+        server.routingExecutor.shutdown();
+        workerThreadPool.shutdown();
 
     }
 }
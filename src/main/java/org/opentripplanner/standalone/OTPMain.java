@@ -185,6 +185,7 @@ public class OTPMain {
         graphService = new GraphService(params.autoReload);
         InputStreamGraphSource.FileFactory graphSourceFactory =
                 new InputStreamGraphSource.FileFactory(params.graphDirectory);
+        graphSourceFactory.compactGraph = params.compactGraph;
         graphService.graphSourceFactory = graphSourceFactory;
         if (params.graphDirectory != null) {
             graphSourceFactory.basePath = params.graphDirectory;
@@ -32,6 +32,9 @@ public class OTPServer {
     public PointSetCache pointSetCache;
     public ScriptingService scriptingService;
 
+    /** The threads on which the web services perform searches. */
+    public RoutingExecutor routingExecutor;
+
     public CommandLineParameters params;
 
     public OTPServer (CommandLineParameters params, GraphService gs) {
@@ -42,6 +45,9 @@ public class OTPServer {
         // Core OTP modules
         this.graphService = gs;
 
+        routingExecutor = new RoutingExecutor(params.routingThreads, params.maxQueuedRequests,
+                params.requestTimeout);
+
         // Optional Analyst Modules.
         if (params.analyst) {
             surfaceCache = new SurfaceCache(30);
@@ -74,6 +80,11 @@ public class OTPServer {
         return graphService.getRouter(routerId);
     }
 
+    /** @see GraphService#acquireRouter(String) */
+    public Router acquireRouter(String routerId) throws GraphNotFoundException {
+        return graphService.acquireRouter(routerId);
+    }
+
     /**
      * Return an HK2 Binder that injects this specific OTPServer instance into Jersey web resources.
      * This should be registered in the ResourceConfig (Jersey) or Application (JAX-RS) as a singleton.
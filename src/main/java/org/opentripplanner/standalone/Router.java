@@ -1,17 +1,29 @@
 package org.opentripplanner.standalone;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.opentripplanner.api.nextDepartureTime.NextDepartureTimeIndex;
 import org.opentripplanner.analyst.request.*;
 import org.opentripplanner.analyst.scenario.ScenarioStore;
+import org.opentripplanner.inspector.InspectorTileCache;
 import org.opentripplanner.inspector.TileRendererManager;
 import org.opentripplanner.reflect.ReflectiveInitializer;
+import org.opentripplanner.routing.algorithm.strategies.BidirectionalHeuristicCache;
+import org.opentripplanner.routing.core.EmissionsModel;
 import org.opentripplanner.routing.core.RoutingRequest;
 import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.impl.GraphPathFinder;
 import org.opentripplanner.updater.GraphUpdaterConfigurator;
 import org.opentripplanner.visualizer.GraphVisualizer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Represents the configuration of a single router (a single graph for a specific geographic area)
  * in an OTP server.
@@ -31,6 +43,9 @@ public class Router {
     // Inspector/debug services
     public TileRendererManager tileRendererManager;
 
+    // Stop departure tables for the nextDepartureTime API, rebuilt with each new graph
+    public NextDepartureTimeIndex nextDepartureTimeIndex;
+
     // Analyst services
     public TileCache tileCache;
     public Renderer renderer;
@@ -43,9 +58,44 @@ public class Router {
     /** A graphical window that is used for visualizing search progress (debugging). */
     public GraphVisualizer graphVisualizer = null;
 
+    /**
+     * Backward heuristic searches shared by transit requests to the same destination, or null if they are not shared
+     * (the default, see the heuristicCacheMB configuration option).
+     */
+    public BidirectionalHeuristicCache heuristicCache = null;
+
     /** Storage for non-descructive alternatives analysis scenarios. */
     public ScenarioStore scenarioStore = new ScenarioStore();
 
+    /** Inspector tiles up to this zoom level are rendered in the background when the graph is loaded. */
+    public static final int DEFAULT_INSPECTOR_PRE_RENDER_ZOOM = 10;
+
+    /** Recent routing requests replayed against a newly loaded graph before it replaces this one. */
+    public static final int DEFAULT_WARMUP_REQUESTS = 50;
+
+    /** The longest time spent replaying requests against a newly loaded graph. */
+    private static final long WARMUP_MILLIS = 60 * 1000;
+
+    /** The longest time a replaced router waits for the requests it is serving to finish before shutting down. */
+    private static final long DRAIN_MILLIS = 30 * 1000;
+
+    /** One routing request in this many is kept to warm up the next graph, so that most requests are not copied. */
+    static final int WARMUP_SAMPLE_INTERVAL = 10;
+
+    private int warmupRequests = DEFAULT_WARMUP_REQUESTS;
+
+    /** A sample of the most recent routing requests, before any routing context was set on them. */
+    private final Deque<RoutingRequest> recentRequests = new ArrayDeque<>();
+
+    /** The number of routing requests seen, to pick the ones kept to warm up the next graph. */
+    private final AtomicInteger routingRequests = new AtomicInteger();
+
+    /** The number of requests being served by this router, so that it is only shut down once they are finished. */
+    private final AtomicInteger activeRequests = new AtomicInteger();
+
+    /** Set once this router has been replaced, after which it accepts no new requests. */
+    private volatile boolean draining = false;
+
     public Router(String id, Graph graph) {
         this.id = id;
         this.graph = graph;
@@ -66,6 +116,8 @@ public class Router {
 
         this.tileRendererManager = new TileRendererManager(this.graph);
 
+        this.nextDepartureTimeIndex = new NextDepartureTimeIndex(this.graph);
+
         // Analyst Modules FIXME make these optional based on JSON?
         {
             this.tileCache = new TileCache(this.graph);
@@ -110,14 +162,181 @@ public class Router {
         }
         LOG.info("Timeouts for router '{}': {}", this.id, this.timeouts);
 
+        /* Size the cache of heuristic searches, zero to disable it. */
+        JsonNode heuristicCacheMB = config.get("heuristicCacheMB");
+        if (heuristicCacheMB != null) {
+            if (heuristicCacheMB.isInt()) {
+                int megabytes = heuristicCacheMB.intValue();
+                this.heuristicCache = megabytes > 0 ? new BidirectionalHeuristicCache(megabytes) : null;
+            } else {
+                LOG.error("The 'heuristicCacheMB' configuration option should be a number of megabytes.");
+            }
+        }
+
+        /* Compile the CO2 production of each mode, overriding the defaults with any values given in the config. */
+        this.graph.putService(EmissionsModel.class, EmissionsModel.fromConfig(config.get("co2Production")));
+
+        /* Set the number of recent requests replayed to warm up the next graph, zero to disable warmup. */
+        JsonNode warmupRequestsNode = config.get("warmupRequests");
+        if (warmupRequestsNode != null) {
+            if (warmupRequestsNode.isInt()) {
+                this.warmupRequests = Math.max(warmupRequestsNode.intValue(), 0);
+            } else {
+                LOG.error("The 'warmupRequests' configuration option should be a number of requests.");
+            }
+        }
+
+        /* Size and store the cache of inspector tiles, and pre-render its low zoom levels in the background. */
+        JsonNode inspectorTiles = config.path("inspectorTiles");
+        String tileDirectory = inspectorTiles.path("directory").asText(null);
+        this.tileRendererManager.setupTileCache(
+                inspectorTiles.path("cacheMB").asInt(InspectorTileCache.DEFAULT_CACHE_MB),
+                tileDirectory == null ? null : new File(tileDirectory),
+                inspectorTiles.path("diskCacheMB").asInt(InspectorTileCache.DEFAULT_DISK_CACHE_MB),
+                inspectorTiles.path("preRenderMaxZoom").asInt(DEFAULT_INSPECTOR_PRE_RENDER_ZOOM));
+
         /* Create Graph updater modules from JSON config. */
         GraphUpdaterConfigurator.setupGraph(this.graph, config);
 
     }
 
+    /**
+     * Mark the start of a request served by this router. Every successful call must be followed by a call to release,
+     * once the request no longer uses the graph. Callers should use GraphService.acquireRouter, which fetches the
+     * router again when this one has been replaced.
+     *
+     * @return false if this router has been replaced and is draining, in which case the request must not use it.
+     */
+    public boolean tryAcquire() {
+        // Counted before checking, so that drainAndShutdown, which sets the flag before reading the count, either
+        // sees this request or this request sees the flag.
+        activeRequests.incrementAndGet();
+        if (draining) {
+            activeRequests.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /** Mark the end of a request for which tryAcquire succeeded. */
+    public void release() {
+        activeRequests.decrementAndGet();
+    }
+
+    /** @return the number of requests being served by this router. */
+    public int getActiveRequests() {
+        return activeRequests.get();
+    }
+
+    /**
+     * Keep a sample of the routing requests served by this router, to warm up the next graph for this router. Only
+     * one request in WARMUP_SAMPLE_INTERVAL is copied, so that the others cost no more than a counter increment.
+     */
+    public void sampleRequest(RoutingRequest request) {
+        if (warmupRequests <= 0 || routingRequests.getAndIncrement() % WARMUP_SAMPLE_INTERVAL != 0) return;
+        RoutingRequest sample = request.clone();
+        synchronized (recentRequests) {
+            recentRequests.addLast(sample);
+            while (recentRequests.size() > warmupRequests) {
+                recentRequests.removeFirst();
+            }
+        }
+    }
+
+    /** @return a copy of the sample of recent requests kept to warm up the next graph. */
+    List<RoutingRequest> getRecentRequests() {
+        synchronized (recentRequests) {
+            return new ArrayList<>(recentRequests);
+        }
+    }
+
+    /**
+     * Prepare this newly loaded router to replace the given one without a slowdown on the first requests it serves.
+     * Indexes built lazily on the old graph are built on the new one, and the recent requests served by the old
+     * router are replayed, which fills the caches and compiles the routing code. This is done before the new router
+     * is published, so it takes as long as it needs without holding up any request.
+     *
+     * @param previous the router to be replaced, or null if there is none.
+     */
+    public void warmup(Router previous) {
+        if (previous == null) return;
+        long startTime = System.currentTimeMillis();
+        if (previous.graph.index != null && graph.index != null) {
+            if (previous.graph.index.hasStopClusters()) {
+                graph.index.clusterStopsAsNeeded();
+            }
+            if (previous.graph.index.hasStopTreeCache()) {
+                graph.index.getStopTreeCache();
+            }
+        }
+        List<RoutingRequest> requests;
+        synchronized (previous.recentRequests) {
+            requests = new ArrayList<>(previous.recentRequests);
+        }
+        requests = requests.subList(Math.max(requests.size() - warmupRequests, 0), requests.size());
+        long deadline = startTime + WARMUP_MILLIS;
+        int replayed = 0;
+        for (RoutingRequest sample : requests) {
+            if (System.currentTimeMillis() > deadline) break;
+            RoutingRequest request = sample.clone();
+            request.deadline = deadline;
+            try {
+                new GraphPathFinder(this).graphPathFinderEntryPoint(request);
+            } catch (Exception e) {
+                // Failing requests, such as trips outside the new graph, still warm it up.
+            } finally {
+                request.cleanup();
+            }
+            replayed++;
+            // Carry the sample over, so that a graph reloaded again soon after is also warmed up.
+            synchronized (recentRequests) {
+                recentRequests.addLast(sample);
+            }
+        }
+        LOG.info("Warmed up router '{}' with {} requests in {} msec.", id, replayed,
+                System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * Shut down this router once it has been replaced and the requests it is serving have finished, or once
+     * they have had a reasonable time to finish. From now on tryAcquire fails, so new requests go to the new router.
+     */
+    public void drainAndShutdown() {
+        draining = true;
+        long deadline = System.currentTimeMillis() + DRAIN_MILLIS;
+        while (activeRequests.get() > 0 && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (activeRequests.get() > 0) {
+            LOG.warn("Shutting down router '{}' with {} requests still active.", id, activeRequests.get());
+        }
+        shutdown();
+    }
+
+    /**
+     * Remove the files stored on disk for previous builds of this router's graph, such as inspector tiles. This is
+     * called once this router serves all the requests, after the router it replaced has shut down.
+     */
+    public void removePreviousBuildFiles() {
+        if (tileRendererManager != null) {
+            tileRendererManager.removePreviousTileBuilds();
+        }
+    }
+
     /** Shut down this router when evicted or (auto-)reloaded. Stop any real-time updater threads. */
     public void shutdown() {
         GraphUpdaterConfigurator.shutdownGraph(this.graph);
+        if (tileRendererManager != null) {
+            tileRendererManager.shutdown();
+        }
+        if (heuristicCache != null) {
+            heuristicCache.clear();
+        }
     }
 
 }
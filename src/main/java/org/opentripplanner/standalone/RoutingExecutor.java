@@ -0,0 +1,119 @@
+package org.opentripplanner.standalone;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.Response;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded pool of threads that perform searches for the web services, shared by all the HTTP listeners.
+ * Searches are CPU-bound, so there should be about as many routing threads as cores. Requests that arrive while all
+ * the threads are busy wait in a queue of limited length; when the queue is full they are refused at once with a 503
+ * rather than waiting behind requests that will not be served before their clients give up.
+ *
+ * Each request has a deadline, set from the time it was received. A request still waiting in the queue at its
+ * deadline is shed with a 503 without being searched, and the searches of a request that has started stop at the
+ * deadline (see RoutingRequest.deadline). The web service threads hand requests over to this executor and return
+ * immediately, resuming the suspended response once the search is done.
+ */
+public class RoutingExecutor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RoutingExecutor.class);
+
+    /** The number of seconds clients are asked to wait before retrying a refused request. */
+    private static final int RETRY_AFTER_SECONDS = 1;
+
+    /** Extra time given to the search of a request at its deadline to wind up and produce a response. */
+    private static final long GRACE_MILLIS = 1000;
+
+    private final ThreadPoolExecutor executor;
+
+    private final long timeoutMillis;
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    private final AtomicLong shed = new AtomicLong();
+
+    /**
+     * @param threads the number of requests searched at once.
+     * @param queueLimit the number of requests that may wait for a routing thread.
+     * @param timeoutSeconds the time after which a request is abandoned, counted from when it was received.
+     */
+    public RoutingExecutor(int threads, int queueLimit, double timeoutSeconds) {
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(Math.max(queueLimit, 1)),
+                new ThreadFactoryBuilder().setNameFormat("Routing-%d").setDaemon(true).build());
+        this.timeoutMillis = (long) (timeoutSeconds * 1000);
+        LOG.info("Routing with {} threads, queueing at most {} requests with a timeout of {} seconds.",
+                threads, queueLimit, timeoutSeconds);
+    }
+
+    /** @return the deadline of a request received now, in milliseconds since the epoch. */
+    public long deadline() {
+        return timeoutMillis > 0 ? System.currentTimeMillis() + timeoutMillis : Long.MAX_VALUE;
+    }
+
+    /**
+     * Run the given task on a routing thread and resume the response with its result. The response is resumed with a
+     * 503 instead if the queue is full, or if the deadline passes before the task starts or completes.
+     */
+    public void execute(final AsyncResponse asyncResponse, final long deadline, final Callable<?> task) {
+        if (deadline != Long.MAX_VALUE) {
+            asyncResponse.setTimeoutHandler(response -> response.resume(unavailable("Request timed out.")));
+            asyncResponse.setTimeout(Math.max(deadline - System.currentTimeMillis(), 0) + GRACE_MILLIS,
+                    TimeUnit.MILLISECONDS);
+        }
+        try {
+            executor.execute(() -> {
+                if (asyncResponse.isDone()) return;
+                if (System.currentTimeMillis() > deadline) {
+                    shed.incrementAndGet();
+                    asyncResponse.resume(unavailable("Request expired before it could be served."));
+                    return;
+                }
+                try {
+                    asyncResponse.resume(task.call());
+                } catch (Throwable t) {
+                    asyncResponse.resume(t);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            asyncResponse.resume(unavailable("Too many requests queued."));
+        }
+    }
+
+    private static Response unavailable(String message) {
+        return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                .header("Retry-After", RETRY_AFTER_SECONDS)
+                .entity(message)
+                .build();
+    }
+
+    /** @return the number of requests waiting for a routing thread. */
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    /** @return the number of requests refused because the queue was full. */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /** @return the number of requests dropped because their deadline passed while they were queued. */
+    public long getShedCount() {
+        return shed.get();
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
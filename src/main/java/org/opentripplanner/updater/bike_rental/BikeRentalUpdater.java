@@ -15,12 +15,10 @@ package org.opentripplanner.updater.bike_rental;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.prefs.Preferences;
@@ -28,6 +26,7 @@ import java.util.prefs.Preferences;
 import com.fasterxml.jackson.databind.JsonNode;
 
 import org.opentripplanner.graph_builder.linking.SimpleStreetSplitter;
+import org.opentripplanner.routing.bike_rental.BikeRentalAvailabilitySource;
 import org.opentripplanner.routing.bike_rental.BikeRentalStation;
 import org.opentripplanner.routing.bike_rental.BikeRentalStationService;
 import org.opentripplanner.routing.edgetype.RentABikeOffEdge;
@@ -64,8 +63,12 @@ public class BikeRentalUpdater extends PollingGraphUpdater {
 
     private static final String DEFAULT_NETWORK_LIST = "default";
 
+    /** Only read and written by the graph writer runnables. */
     Map<BikeRentalStation, BikeRentalStationVertex> verticesByStation = new HashMap<BikeRentalStation, BikeRentalStationVertex>();
 
+    /** The stations seen in the last poll, only read and written by the polling thread. */
+    private Set<BikeRentalStation> knownStations = new HashSet<BikeRentalStation>();
+
     private BikeRentalDataSource source;
 
     private Graph graph;
@@ -74,6 +77,8 @@ public class BikeRentalUpdater extends PollingGraphUpdater {
 
     private BikeRentalStationService service;
 
+    private BikeRentalAvailabilitySource availabilitySource;
+
     private String network = "default";
 
     @Override
@@ -130,11 +135,15 @@ public class BikeRentalUpdater extends PollingGraphUpdater {
         // Creation of network linker library will not modify the graph
         linker = new SimpleStreetSplitter(graph);
 
-        // Adding a bike rental station service needs a graph writer runnable
+        // Adding a bike rental station service and availability source needs a graph writer runnable
         updaterManager.executeBlocking(new GraphWriterRunnable() {
             @Override
             public void run(Graph graph) {
                 service = graph.getService(BikeRentalStationService.class, true);
+                if (graph.bikeRentalAvailabilitySource == null) {
+                    graph.bikeRentalAvailabilitySource = new BikeRentalAvailabilitySource();
+                }
+                availabilitySource = graph.bikeRentalAvailabilitySource;
             }
         });
     }
@@ -148,9 +157,36 @@ public class BikeRentalUpdater extends PollingGraphUpdater {
         }
         List<BikeRentalStation> stations = source.getStations();
 
-        // Create graph writer runnable to apply these stations to the graph
-        BikeRentalGraphWriterRunnable graphWriterRunnable = new BikeRentalGraphWriterRunnable(stations);
-        updaterManager.execute(graphWriterRunnable);
+        // Find the stations that appeared or disappeared since the last poll
+        Set<BikeRentalStation> stationSet = new HashSet<BikeRentalStation>();
+        Set<String> defaultNetworks = new HashSet<String>(Arrays.asList(network));
+        List<BikeRentalStation> added = new ArrayList<BikeRentalStation>();
+        for (BikeRentalStation station : stations) {
+            if (station.networks == null) {
+                /* API did not provide a network list, use default */
+                station.networks = defaultNetworks;
+            }
+            if (stationSet.add(station) && !knownStations.contains(station)) {
+                added.add(station);
+            }
+        }
+        List<BikeRentalStation> removed = new ArrayList<BikeRentalStation>();
+        List<String> removedIds = new ArrayList<String>();
+        for (BikeRentalStation station : knownStations) {
+            if (!stationSet.contains(station)) {
+                removed.add(station);
+                removedIds.add(station.id);
+            }
+        }
+        knownStations = stationSet;
+
+        // Bike and space counts do not touch the graph, they are published as a new snapshot for searches to pick up
+        availabilitySource.update(stationSet, removedIds);
+
+        // Only create a graph writer runnable when stations must be linked into or removed from the graph
+        if (!added.isEmpty() || !removed.isEmpty()) {
+            updaterManager.execute(new BikeRentalGraphWriterRunnable(added, removed));
+        }
     }
 
     @Override
@@ -159,59 +195,41 @@ public class BikeRentalUpdater extends PollingGraphUpdater {
 
     private class BikeRentalGraphWriterRunnable implements GraphWriterRunnable {
 
-        private List<BikeRentalStation> stations;
+        private List<BikeRentalStation> added;
+
+        private List<BikeRentalStation> removed;
 
-        public BikeRentalGraphWriterRunnable(List<BikeRentalStation> stations) {
-            this.stations = stations;
+        public BikeRentalGraphWriterRunnable(List<BikeRentalStation> added, List<BikeRentalStation> removed) {
+            this.added = added;
+            this.removed = removed;
         }
 
 		@Override
         public void run(Graph graph) {
-            // Apply stations to graph
-            Set<BikeRentalStation> stationSet = new HashSet<BikeRentalStation>();
-            Set<String> defaultNetworks = new HashSet<String>(Arrays.asList(network));
-            /* add any new stations and update bike counts for existing stations */
-            for (BikeRentalStation station : stations) {
-                if (station.networks == null) {
-                    /* API did not provide a network list, use default */
-                    station.networks = defaultNetworks;
-                }
+            /* add any new stations */
+            for (BikeRentalStation station : added) {
                 service.addBikeRentalStation(station);
-                stationSet.add(station);
-                BikeRentalStationVertex vertex = verticesByStation.get(station);
-                if (vertex == null) {
-                    vertex = new BikeRentalStationVertex(graph, station);
-                    if (!linker.link(vertex)) {
-                        // the toString includes the text "Bike rental station"
-                        LOG.warn("{} not near any streets; it will not be usable.", station);
-                    }
-                    verticesByStation.put(station, vertex);
-                    new RentABikeOnEdge(vertex, vertex, station.networks);
-                    if (station.allowDropoff)
-                        new RentABikeOffEdge(vertex, vertex, station.networks);
-                } else {
-                    vertex.setBikesAvailable(station.bikesAvailable);
-                    vertex.setSpacesAvailable(station.spacesAvailable);
+                if (verticesByStation.containsKey(station))
+                    continue;
+                BikeRentalStationVertex vertex = new BikeRentalStationVertex(graph, station);
+                if (!linker.link(vertex)) {
+                    // the toString includes the text "Bike rental station"
+                    LOG.warn("{} not near any streets; it will not be usable.", station);
                 }
+                verticesByStation.put(station, vertex);
+                new RentABikeOnEdge(vertex, vertex, station.networks);
+                if (station.allowDropoff)
+                    new RentABikeOffEdge(vertex, vertex, station.networks);
             }
             /* remove existing stations that were not present in the update */
-            List<BikeRentalStation> toRemove = new ArrayList<BikeRentalStation>();
-            for (Entry<BikeRentalStation, BikeRentalStationVertex> entry : verticesByStation.entrySet()) {
-                BikeRentalStation station = entry.getKey();
-                if (stationSet.contains(station))
-                    continue;
-                BikeRentalStationVertex vertex = entry.getValue();
-                if (graph.containsVertex(vertex)) {
+            for (BikeRentalStation station : removed) {
+                BikeRentalStationVertex vertex = verticesByStation.remove(station);
+                if (vertex != null && graph.containsVertex(vertex)) {
                     graph.removeVertexAndEdges(vertex);
                 }
-                toRemove.add(station);
                 service.removeBikeRentalStation(station);
                 // TODO: need to unsplit any streets that were split
             }
-            for (BikeRentalStation station : toRemove) {
-                // post-iteration removal to avoid concurrent modification
-                verticesByStation.remove(station);
-            }
         }
     }
 }
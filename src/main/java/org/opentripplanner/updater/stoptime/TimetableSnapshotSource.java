@@ -73,7 +73,7 @@ public class TimetableSnapshotSource {
     /**
      * If a timetable snapshot is requested less than this number of milliseconds after the previous
      * snapshot, just return the same one. Throttles the potentially resource-consuming task of
-     * duplicating a TripPattern -> Timetable map and indexing the new Timetables.
+     * indexing the new Timetables.
      */
     public int maxSnapshotFrequency = 1000; // msec
 
@@ -105,7 +105,13 @@ public class TimetableSnapshotSource {
 
     protected ServiceDate lastPurgeDate = null;
 
-    protected long lastSnapshotTime = -1;
+    protected volatile long lastSnapshotTime = -1;
+
+    /**
+     * True when the buffer holds updates that were not committed yet because of the maximum snapshot
+     * frequency. Routing threads only try to take the buffer lock when this is set.
+     */
+    private volatile boolean commitPending = false;
 
     private final TimeZone timeZone;
 
@@ -132,23 +138,19 @@ public class TimetableSnapshotSource {
      *         release its reference to the snapshot to release resources.
      */
     public TimetableSnapshot getTimetableSnapshot() {
-        TimetableSnapshot snapshotToReturn;
-        
-        // Try to get a lock on the buffer
-        if (bufferLock.tryLock()) {
-            // Make a new snapshot if necessary
+        // The updater commits at the end of each message, so usually the current snapshot is the
+        // latest one. Only updates held back by the snapshot frequency need to be committed here.
+        if (commitPending && System.currentTimeMillis() - lastSnapshotTime > maxSnapshotFrequency
+                && bufferLock.tryLock()) {
             try {
-                snapshotToReturn = getTimetableSnapshot(false);
+                return getTimetableSnapshot(false);
             } finally {
                 bufferLock.unlock();
             }
-        } else {
-            // No lock could be obtained because there is either a snapshot commit busy or updates
-            // are applied at this moment, just return the current snapshot
-            snapshotToReturn = snapshot;
         }
-        
-        return snapshotToReturn;
+        // No lock could be obtained because there is either a snapshot commit busy or updates
+        // are applied at this moment, or nothing is waiting: just return the current snapshot
+        return snapshot;
     }
 
     private TimetableSnapshot getTimetableSnapshot(boolean force) {
@@ -161,8 +163,10 @@ public class TimetableSnapshotSource {
                 LOG.debug("Buffer was unchanged, keeping old snapshot.");
             }
             lastSnapshotTime = System.currentTimeMillis();
+            commitPending = false;
         } else {
             LOG.debug("Snapshot frequency exceeded. Reusing snapshot {}", snapshot);
+            commitPending = buffer.isDirty();
         }
         return snapshot;
     }
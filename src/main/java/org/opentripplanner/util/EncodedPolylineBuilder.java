@@ -0,0 +1,162 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.util;
+
+import org.opentripplanner.util.model.EncodedPolylineBean;
+
+import com.vividsolutions.jts.geom.CoordinateSequence;
+
+/**
+ * Builds an encoded polyline one point at a time, so that a long geometry made of many pieces (such as the edges of
+ * an itinerary leg) can be encoded without first being copied into one JTS geometry. The result is the same as that of
+ * {@link PolylineEncoder#createEncodings(Iterable)} on all the points added.
+ *
+ * Each point is encoded as its offset from the previous one, so the encoding of all but the first point of a piece
+ * does not depend on what comes before it. Such encodings can be made once as {@link Fragment}s and appended as they
+ * are, re-encoding only the first point when the piece does not start where the polyline ends.
+ */
+public class EncodedPolylineBuilder {
+
+    private final StringBuilder points = new StringBuilder();
+
+    private int count = 0;
+
+    private int lastLat = 0;
+
+    private int lastLon = 0;
+
+    /** Add a point given by its longitude and latitude. */
+    public void addPoint(double x, double y) {
+        addPoint(PolylineEncoder.floor1e5(y), PolylineEncoder.floor1e5(x));
+    }
+
+    /** Add a point given in units of 1e-5 degrees, as they are encoded. */
+    private void addPoint(int late5, int lone5) {
+        PolylineEncoder.appendSignedNumber(points, late5 - lastLat);
+        PolylineEncoder.appendSignedNumber(points, lone5 - lastLon);
+        lastLat = late5;
+        lastLon = lone5;
+        count++;
+    }
+
+    /**
+     * Add points given as alternating x and y values.
+     * @param from the index of the first point to add, for example 1 to skip a point already added.
+     */
+    public void addPoints(double[] xy, int from) {
+        for (int i = from * 2; i < xy.length; i += 2) {
+            addPoint(xy[i], xy[i + 1]);
+        }
+    }
+
+    /**
+     * Add the points of a coordinate sequence, reading them in place rather than through Coordinate objects.
+     * @param from the index of the first point to add, for example 1 to skip a point already added.
+     */
+    public void addPoints(CoordinateSequence sequence, int from) {
+        for (int i = from; i < sequence.size(); i++) {
+            addPoint(sequence.getX(i), sequence.getY(i));
+        }
+    }
+
+    /**
+     * Add all the points of the given fragment but its first, which is only added if the polyline is empty. This is
+     * the same as adding the points of the piece the fragment was made from, skipping the first one if the polyline
+     * is not empty.
+     */
+    public void addFragment(Fragment fragment) {
+        if (count == 0) {
+            addPoint(fragment.startLat, fragment.startLon);
+        }
+        if (fragment.count == 0) return;
+        if (lastLat == fragment.startLat && lastLon == fragment.startLon) {
+            points.append(fragment.points);
+        } else {
+            // The offset of the second point is from a different point, but those of the rest are unchanged.
+            PolylineEncoder.appendSignedNumber(points, fragment.secondLat - lastLat);
+            PolylineEncoder.appendSignedNumber(points, fragment.secondLon - lastLon);
+            points.append(fragment.points, fragment.secondLength, fragment.points.length());
+        }
+        lastLat = fragment.endLat;
+        lastLon = fragment.endLon;
+        count += fragment.count;
+    }
+
+    /** @return the number of points added so far. */
+    public int size() {
+        return count;
+    }
+
+    public EncodedPolylineBean build() {
+        return new EncodedPolylineBean(points.toString(), null, count);
+    }
+
+    /**
+     * Encode all but the first of the given points, as offsets from the first, for use with addFragment.
+     * @param xy at least one point, as alternating x and y values.
+     */
+    public static Fragment makeFragment(double[] xy) {
+        EncodedPolylineBuilder builder = new EncodedPolylineBuilder();
+        builder.addPoint(xy[0], xy[1]);
+        int startLat = builder.lastLat;
+        int startLon = builder.lastLon;
+        builder.points.setLength(0);
+        builder.count = 0;
+        int secondLength = 0;
+        int secondLat = startLat;
+        int secondLon = startLon;
+        if (xy.length > 2) {
+            builder.addPoint(xy[2], xy[3]);
+            secondLength = builder.points.length();
+            secondLat = builder.lastLat;
+            secondLon = builder.lastLon;
+            builder.addPoints(xy, 2);
+        }
+        return new Fragment(builder.points.toString(), builder.count, startLat, startLon, secondLat, secondLon,
+                secondLength, builder.lastLat, builder.lastLon);
+    }
+
+    /**
+     * The encoding of all but the first point of a piece of polyline, made by makeFragment. Coordinates are in units
+     * of 1e-5 degrees, as they are encoded.
+     */
+    public static final class Fragment {
+
+        private final String points;
+
+        private final int count;
+
+        private final int startLat, startLon;
+
+        private final int secondLat, secondLon;
+
+        /** The number of characters of the encoding of the second point, the first one encoded. */
+        private final int secondLength;
+
+        private final int endLat, endLon;
+
+        private Fragment(String points, int count, int startLat, int startLon, int secondLat, int secondLon,
+                int secondLength, int endLat, int endLon) {
+            this.points = points;
+            this.count = count;
+            this.startLat = startLat;
+            this.startLon = startLon;
+            this.secondLat = secondLat;
+            this.secondLon = secondLon;
+            this.secondLength = secondLength;
+            this.endLat = endLat;
+            this.endLon = endLon;
+        }
+    }
+}
@@ -125,10 +125,23 @@ public class PolylineEncoder {
      * Private Methods
      ****************************************************************************/
 
-    private static final int floor1e5(double coordinate) {
+    static final int floor1e5(double coordinate) {
         return (int) Math.floor(coordinate * 1e5);
     }
 
+    /** Append the encoding of a signed number to the given builder, without making an intermediate String. */
+    static void appendSignedNumber(StringBuilder sb, int num) {
+        int sgn_num = num << 1;
+        if (num < 0) {
+            sgn_num = ~(sgn_num);
+        }
+        while (sgn_num >= 0x20) {
+            sb.append((char) ((0x20 | (sgn_num & 0x1f)) + 63));
+            sgn_num >>= 5;
+        }
+        sb.append((char) (sgn_num + 63));
+    }
+
     public static String encodeSignedNumber(int num) {
         int sgn_num = num << 1;
         if (num < 0) {
@@ -0,0 +1,60 @@
+package org.opentripplanner.analyst;
+
+import gnu.trove.iterator.TObjectIntIterator;
+import junit.framework.TestCase;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.vertextype.IntersectionVertex;
+
+public class VertexTimesTest extends TestCase {
+
+    public void testDense() {
+        checkTimes(true);
+    }
+
+    public void testChunked() {
+        checkTimes(false);
+    }
+
+    public void testVertexIndexLimit() {
+        Graph graph = new Graph();
+        Vertex a = new IntersectionVertex(graph, "a", -74.01, 40.01);
+        // A temporary vertex is not in the graph, so it does not raise the limit.
+        new IntersectionVertex(null, "temporary", -74.02, 40.02);
+        assertEquals(a.getIndex() + 1, graph.getVertexIndexLimit());
+        assertTrue(Vertex.getMaxIndex() > graph.getVertexIndexLimit());
+        graph.rebuildVertexAndEdgeIndices();
+        assertEquals(a.getIndex() + 1, graph.getVertexIndexLimit());
+    }
+
+    private void checkTimes(boolean dense) {
+        Graph graph = new Graph();
+        Vertex a = new IntersectionVertex(graph, "a", -74.01, 40.01);
+        Vertex b = new IntersectionVertex(graph, "b", -74.02, 40.02);
+        VertexTimes times = dense ? VertexTimes.dense(graph) : VertexTimes.chunked(graph);
+        assertEquals(VertexTimes.UNREACHABLE, times.get(a));
+        assertEquals(VertexTimes.UNREACHABLE, times.put(a, 60));
+        assertEquals(60, times.put(a, 30));
+        assertEquals(30, times.get(a));
+        assertEquals(30, times.get(a.getIndex()));
+        assertEquals(VertexTimes.UNREACHABLE, times.get(b));
+        assertEquals(1, times.size());
+
+        // Vertices beyond the table, such as temporary vertices, are given times outside it.
+        Vertex c = new IntersectionVertex(null, "c", -74.03, 40.03);
+        assertEquals(VertexTimes.UNREACHABLE, times.get(c));
+        assertEquals(VertexTimes.UNREACHABLE, times.get(c.getIndex() + 100000));
+        times.put(c, 120);
+        assertEquals(120, times.get(c));
+        assertEquals(2, times.size());
+
+        TObjectIntIterator<Vertex> it = times.iterator();
+        it.advance();
+        assertEquals(a, it.key());
+        assertEquals(30, it.value());
+        it.advance();
+        assertEquals(c, it.key());
+        assertEquals(120, it.value());
+        assertFalse(it.hasNext());
+    }
+}
@@ -0,0 +1,92 @@
+package org.opentripplanner.analyst.cluster;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Polygon;
+import junit.framework.TestCase;
+import org.junit.Test;
+import org.opentripplanner.analyst.Histogram;
+import org.opentripplanner.analyst.ResultSet;
+import org.opentripplanner.analyst.core.IsochroneData;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+public class ResultEnvelopeEncoderTest extends TestCase {
+
+    private ResultEnvelope makeEnvelope() {
+        ResultSet resultSet = new ResultSet();
+        resultSet.id = "pointset_surface";
+        Histogram histogram = new Histogram();
+        histogram.counts = new int[] { 0, 3, 10, 25 };
+        histogram.sums = new int[] { 0, 300, 1000, 2500 };
+        resultSet.histograms.put("jobs", histogram);
+        resultSet.times = new int[] { 600, 605, Integer.MAX_VALUE, 0, 7199, 612 };
+        Polygon polygon = new GeometryFactory().createPolygon(new Coordinate[] { new Coordinate(-122.0, 45.0),
+                new Coordinate(-122.1, 45.0), new Coordinate(-122.1, 45.1), new Coordinate(-122.0, 45.0) });
+        resultSet.isochrones = new IsochroneData[] { new IsochroneData(900, polygon) };
+
+        ResultEnvelope envelope = new ResultEnvelope();
+        envelope.id = "origin";
+        envelope.jobId = "job";
+        envelope.pointEstimate = resultSet;
+        return envelope;
+    }
+
+    @Test
+    public void testJsonSameAsJackson() throws Exception {
+        ResultEnvelope envelope = makeEnvelope();
+        envelope.pointEstimate.isochrones = null;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ResultEnvelopeEncoder.writeJson(envelope, out);
+        ObjectMapper mapper = new ObjectMapper();
+        JsonNode streamed = mapper.readTree(out.toByteArray());
+        JsonNode expected = mapper.valueToTree(envelope);
+        assertEquals(expected, streamed);
+    }
+
+    @Test
+    public void testJsonGeometry() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ResultEnvelopeEncoder.writeJson(makeEnvelope(), out);
+        JsonNode isochrone = new ObjectMapper().readTree(out.toByteArray()).get("pointEstimate").get("isochrones").get(0);
+        assertEquals(900, isochrone.get("cutoffSec").asInt());
+        assertEquals("Polygon", isochrone.get("geometry").get("type").asText());
+        JsonNode ring = isochrone.get("geometry").get("coordinates").get(0);
+        assertEquals(4, ring.size());
+        assertEquals(-122.1, ring.get(1).get(0).asDouble());
+        assertEquals(45.0, ring.get(1).get(1).asDouble());
+    }
+
+    @Test
+    public void testBinaryRoundTrip() throws Exception {
+        ResultEnvelope envelope = makeEnvelope();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ResultEnvelopeEncoder.writeBinary(envelope, out);
+        ResultEnvelope read = ResultEnvelopeEncoder.readBinary(new ByteArrayInputStream(out.toByteArray()));
+
+        assertEquals("origin", read.id);
+        assertEquals("job", read.jobId);
+        assertNull(read.destinationPointsetId);
+        assertNull(read.bestCase);
+        ResultSet resultSet = read.pointEstimate;
+        assertEquals("pointset_surface", resultSet.id);
+        assertTrue(Arrays.equals(envelope.pointEstimate.times, resultSet.times));
+        assertTrue(Arrays.equals(new int[] { 0, 3, 10, 25 }, resultSet.histograms.get("jobs").counts));
+        assertTrue(Arrays.equals(new int[] { 0, 300, 1000, 2500 }, resultSet.histograms.get("jobs").sums));
+        assertEquals(900, resultSet.isochrones[0].cutoffSec);
+        assertTrue(envelope.pointEstimate.isochrones[0].geometry.equalsExact(resultSet.isochrones[0].geometry));
+    }
+
+    @Test
+    public void testFormatFromAcceptHeader() {
+        assertEquals(ResultEnvelopeEncoder.Format.JSON, ResultEnvelopeEncoder.Format.fromAcceptHeader(null));
+        assertEquals(ResultEnvelopeEncoder.Format.JSON,
+                ResultEnvelopeEncoder.Format.fromAcceptHeader("application/json, */*"));
+        assertEquals(ResultEnvelopeEncoder.Format.BINARY,
+                ResultEnvelopeEncoder.Format.fromAcceptHeader(ResultEnvelopeEncoder.BINARY_MEDIA_TYPE));
+    }
+}
@@ -0,0 +1,107 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.common;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+
+public class TestPersistentHashMap extends TestCase {
+
+    /** A key with many hash collisions, to exercise the collision nodes. */
+    private static class Key {
+        final int value;
+
+        Key(int value) {
+            this.value = value;
+        }
+
+        @Override
+        public int hashCode() {
+            return value % 7 == 0 ? 42 : value * 31;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key && ((Key) other).value == value;
+        }
+    }
+
+    @Test
+    public void testSimple() {
+        PersistentHashMap<String, Integer> empty = PersistentHashMap.empty();
+        PersistentHashMap<String, Integer> one = empty.plus("cats", 1);
+        PersistentHashMap<String, Integer> two = one.plus("dogs", 2);
+
+        assertTrue(empty.isEmpty());
+        assertNull(empty.get("cats"));
+        assertEquals(1, one.size());
+        assertEquals(2, two.size());
+        assertEquals(Integer.valueOf(2), two.get("dogs"));
+        assertNull(one.get("dogs"));
+
+        assertSame(two, two.minus("sparrows"));
+        assertSame(two, two.plus("cats", two.get("cats")));
+        assertEquals(1, two.minus("cats").size());
+        assertTrue(two.minus("cats").minus("dogs").isEmpty());
+        assertEquals(2, two.size());
+    }
+
+    @Test
+    public void testOldVersionsUnchanged() {
+        Random random = new Random(1);
+        PersistentHashMap<Key, Integer> map = PersistentHashMap.empty();
+        Map<Key, Integer> expected = new HashMap<Key, Integer>();
+        List<PersistentHashMap<Key, Integer>> versions = new ArrayList<PersistentHashMap<Key, Integer>>();
+        List<Map<Key, Integer>> expectedVersions = new ArrayList<Map<Key, Integer>>();
+        for (int i = 0; i < 20000; i++) {
+            Key key = new Key(random.nextInt(2000));
+            if (random.nextInt(3) == 0) {
+                map = map.minus(key);
+                expected.remove(key);
+            } else {
+                int value = random.nextInt();
+                map = map.plus(key, value);
+                expected.put(key, value);
+            }
+            if (i % 1000 == 0) {
+                versions.add(map);
+                expectedVersions.add(new HashMap<Key, Integer>(expected));
+            }
+        }
+        versions.add(map);
+        expectedVersions.add(expected);
+
+        for (int v = 0; v < versions.size(); v++) {
+            PersistentHashMap<Key, Integer> version = versions.get(v);
+            Map<Key, Integer> expectedVersion = expectedVersions.get(v);
+            assertEquals(expectedVersion.size(), version.size());
+            for (int k = 0; k < 2000; k++) {
+                assertEquals(expectedVersion.get(new Key(k)), version.get(new Key(k)));
+            }
+            int n = 0;
+            for (Map.Entry<Key, Integer> entry : version) {
+                assertEquals(expectedVersion.get(entry.getKey()), entry.getValue());
+                n++;
+            }
+            assertEquals(expectedVersion.size(), n);
+        }
+    }
+}
@@ -86,6 +86,36 @@ public class CompactLineStringTest extends TestCase {
         assertTrue(lsi.equalsExact(ls2, 0.00000015));
     }
 
+    @Test
+    public final void testUncompactCoordinates() {
+
+        GeometryFactory gf = new GeometryFactory();
+        double x0 = 1.111111111;
+        double y0 = 0.123456789;
+        double x1 = 2.0;
+        double y1 = 0.0;
+        LineString ls = gf.createLineString(new Coordinate[] { new Coordinate(x0, y0),
+                new Coordinate(1.3, 0.2), new Coordinate(1.7, 0.1), new Coordinate(x1, y1) });
+        int[] coords = CompactLineString.compactLineString(x0, y0, x1, y1, ls, false);
+        checkCoordinates(CompactLineString.uncompactLineString(x0, y0, x1, y1, coords, false),
+                CompactLineString.uncompactCoordinates(x0, y0, x1, y1, coords, false));
+        checkCoordinates(CompactLineString.uncompactLineString(x1, y1, x0, y0, coords, true),
+                CompactLineString.uncompactCoordinates(x1, y1, x0, y0, coords, true));
+        coords = CompactLineString.compactLineString(x0, y0, x1, y1,
+                gf.createLineString(new Coordinate[] { new Coordinate(x0, y0), new Coordinate(x1, y1) }), false);
+        checkCoordinates(CompactLineString.uncompactLineString(x0, y0, x1, y1, coords, false),
+                CompactLineString.uncompactCoordinates(x0, y0, x1, y1, coords, false));
+    }
+
+    /** The coordinates must be exactly the same, not just close, for the polylines made from them to be the same. */
+    private void checkCoordinates(LineString expected, double[] xy) {
+        assertEquals(expected.getNumPoints() * 2, xy.length);
+        for (int i = 0; i < expected.getNumPoints(); i++) {
+            assertEquals(expected.getCoordinateN(i).x, xy[i * 2], 0.0);
+            assertEquals(expected.getCoordinateN(i).y, xy[i * 2 + 1], 0.0);
+        }
+    }
+
     @Test
     public final void testDlugoszVarLenIntPacker() {
 
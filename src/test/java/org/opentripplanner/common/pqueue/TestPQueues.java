@@ -14,8 +14,12 @@
 package org.opentripplanner.common.pqueue;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.PriorityQueue;
+import java.util.Random;
 import junit.framework.TestCase;
 
 /*
@@ -143,4 +147,46 @@ public class TestPQueues extends TestCase {
 
         }
     }    
+
+    /*
+     * Check the indexed heap against a plain map under a random mix of operations, including
+     * removals and decrease-key. Elements are compared by identity so each one must be a new object.
+     */
+    public void testIndexedDaryHeap() {
+        Random random = new Random(42);
+        IndexedDaryHeap<Object> heap = new IndexedDaryHeap<Object>(10);
+        Map<Object, Double> reference = new IdentityHashMap<Object, Double>();
+        List<Object> inserted = new ArrayList<Object>();
+        for (int i = 0; i < N; i++) {
+            int op = random.nextInt(5);
+            if (op < 2 || inserted.isEmpty()) {
+                Object e = new Object();
+                double p = random.nextInt(1000);
+                heap.insert(e, p);
+                reference.put(e, p);
+                inserted.add(e);
+            } else if (op == 2) {
+                Object e = inserted.get(random.nextInt(inserted.size()));
+                assertEquals(reference.containsKey(e), heap.remove(e));
+                reference.remove(e);
+            } else if (op == 3) {
+                Object e = inserted.get(random.nextInt(inserted.size()));
+                double p = random.nextInt(1000);
+                heap.insert_or_dec_key(e, p);
+                Double old = reference.get(e);
+                if (old == null || p < old) {
+                    reference.put(e, p);
+                }
+            } else if (!reference.isEmpty()) {
+                double min = Collections.min(reference.values());
+                assertEquals(min, heap.peek_min_key());
+                Object e = heap.extract_min();
+                assertEquals(min, reference.remove(e));
+            }
+            assertEquals(reference.size(), heap.size());
+        }
+        heap.reset();
+        assertTrue(heap.empty());
+        assertNull(heap.extract_min());
+    }
 }
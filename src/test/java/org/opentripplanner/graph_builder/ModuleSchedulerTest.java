@@ -0,0 +1,118 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.graph_builder;
+
+import org.junit.Test;
+import org.opentripplanner.graph_builder.services.GraphBuilderModule;
+import org.opentripplanner.routing.graph.Graph;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ModuleSchedulerTest {
+
+    private static class Module implements GraphBuilderModule {
+
+        final String name;
+
+        final List<String> provides;
+
+        final List<String> prerequisites;
+
+        final List<String> log;
+
+        Module(String name, List<String> provides, List<String> prerequisites, List<String> log) {
+            this.name = name;
+            this.provides = provides;
+            this.prerequisites = prerequisites;
+            this.log = log;
+        }
+
+        @Override
+        public void buildGraph(Graph graph, HashMap<Class<?>, Object> extra) {
+            log.add(name);
+        }
+
+        @Override
+        public void checkInputs() {
+        }
+
+        @Override
+        public List<String> provides() {
+            return provides;
+        }
+
+        @Override
+        public List<String> getPrerequisites() {
+            return prerequisites;
+        }
+    }
+
+    private final List<String> log = new CopyOnWriteArrayList<String>();
+
+    private final List<GraphBuilderModule> modules = Arrays.<GraphBuilderModule>asList(
+            new Module("osm", Arrays.asList("streets"), Collections.<String>emptyList(), log),
+            new Module("gtfs", Arrays.asList("transit"), Collections.<String>emptyList(), log),
+            new Module("prune", Arrays.asList("streets"), Arrays.asList("streets", "transit"), log),
+            new Module("linker", Arrays.asList("linking", "streets"), Arrays.asList("streets", "transit"), log),
+            new Module("config", Collections.<String>emptyList(), Collections.<String>emptyList(), log),
+            new Module("stats", Collections.<String>emptyList(), Arrays.asList("streets"), log));
+
+    @Test
+    public void testDependencies() {
+        ModuleScheduler scheduler = new ModuleScheduler(modules, 4);
+        assertEquals(Collections.emptyList(), scheduler.getDependencies(0));
+        // GTFS and OSM are independent
+        assertEquals(Collections.emptyList(), scheduler.getDependencies(1));
+        // Modules touching the stops wait for transit to be loaded
+        assertEquals(Arrays.asList(0, 1), scheduler.getDependencies(2));
+        assertEquals(Arrays.asList(0, 1, 2), scheduler.getDependencies(3));
+        // Modules declaring nothing wait for everything before them, and everything after them waits for them.
+        assertEquals(Arrays.asList(0, 1, 2, 3), scheduler.getDependencies(4));
+        assertEquals(Arrays.asList(0, 2, 3, 4), scheduler.getDependencies(5));
+    }
+
+    @Test
+    public void testRunRespectsDependencies() {
+        new ModuleScheduler(modules, 4).run(new Graph());
+        assertEquals(modules.size(), log.size());
+        assertTrue(log.indexOf("osm") < log.indexOf("prune"));
+        assertTrue(log.indexOf("gtfs") < log.indexOf("prune"));
+        assertTrue(log.indexOf("prune") < log.indexOf("linker"));
+        assertTrue(log.indexOf("gtfs") < log.indexOf("config"));
+        assertTrue(log.indexOf("linker") < log.indexOf("config"));
+        assertTrue(log.indexOf("config") < log.indexOf("stats"));
+    }
+
+    @Test
+    public void testSingleThreadRunsInOrder() {
+        new ModuleScheduler(modules, 1).run(new Graph());
+        assertEquals(Arrays.asList("osm", "gtfs", "prune", "linker", "config", "stats"), log);
+    }
+
+    @Test
+    public void testMissingStageDoesNotBlock() {
+        List<GraphBuilderModule> noTransit = Arrays.<GraphBuilderModule>asList(modules.get(0), modules.get(3));
+        ModuleScheduler scheduler = new ModuleScheduler(noTransit, 4);
+        assertEquals(Arrays.asList(0), scheduler.getDependencies(1));
+        scheduler.run(new Graph());
+        assertEquals(Arrays.asList("osm", "linker"), log);
+    }
+}
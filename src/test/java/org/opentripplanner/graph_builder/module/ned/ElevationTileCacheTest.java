@@ -0,0 +1,82 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.graph_builder.module.ned;
+
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.coverage.grid.GridCoverageFactory;
+import org.geotools.coverage.grid.Interpolator2D;
+import org.geotools.geometry.DirectPosition2D;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.junit.Test;
+import org.opengis.coverage.PointOutsideCoverageException;
+import org.opentripplanner.common.geometry.GeometryUtils;
+
+import javax.media.jai.InterpolationBilinear;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.fail;
+
+public class ElevationTileCacheTest {
+
+    /** A DEM larger than one tile, so that points fall in several tiles and on the edges between them. */
+    private static final int SIZE = 600;
+
+    private GridCoverage2D makeCoverage() {
+        Random random = new Random(42);
+        float[][] cells = new float[SIZE][SIZE];
+        for (int row = 0; row < SIZE; row++) {
+            for (int col = 0; col < SIZE; col++) {
+                cells[row][col] = row * 0.5f + col * 0.25f + random.nextFloat() * 10;
+            }
+        }
+        ReferencedEnvelope envelope = new ReferencedEnvelope(-122.7, -122.6, 45.5, 45.6, GeometryUtils.WGS84_XY);
+        GridCoverage2D grid = new GridCoverageFactory().create("dem", cells, envelope);
+        return Interpolator2D.create(grid, new InterpolationBilinear());
+    }
+
+    @Test
+    public void testSameAsCoverage() {
+        GridCoverage2D coverage = makeCoverage();
+        ElevationTileCache cache = new ElevationTileCache(coverage, 2);
+        Random random = new Random(1);
+        double[] values = new double[1];
+        for (int i = 0; i < 10000; i++) {
+            double x = -122.7 + random.nextDouble() * 0.1;
+            double y = 45.5 + random.nextDouble() * 0.1;
+            coverage.evaluate(new DirectPosition2D(GeometryUtils.WGS84_XY, x, y), values);
+            assertEquals(values[0], cache.getElevation(x, y), 1e-9);
+        }
+    }
+
+    @Test
+    public void testTileKeys() {
+        ElevationTileCache cache = new ElevationTileCache(makeCoverage(), 2);
+        assertEquals(cache.getTileKey(-122.699, 45.599), cache.getTileKey(-122.698, 45.598));
+        assertNotEquals(cache.getTileKey(-122.699, 45.599), cache.getTileKey(-122.601, 45.501));
+        assertEquals(Long.MAX_VALUE, cache.getTileKey(-100, 40));
+    }
+
+    @Test
+    public void testOutsideCoverage() {
+        ElevationTileCache cache = new ElevationTileCache(makeCoverage(), 2);
+        try {
+            cache.getElevation(-100, 40);
+            fail();
+        } catch (PointOutsideCoverageException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.inspector;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Files;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.io.FileUtils;
+import org.opentripplanner.routing.graph.Graph;
+
+public class InspectorTileCacheTest extends TestCase {
+
+    /** Paints tiles in one color and counts them. */
+    private static class CountingTileRenderer implements TileRenderer {
+
+        int count = 0;
+
+        @Override
+        public int getColorModel() {
+            return BufferedImage.TYPE_INT_ARGB;
+        }
+
+        @Override
+        public void renderTile(TileRenderContext context) {
+            count++;
+            context.graphics.setColor(Color.RED);
+            context.graphics.fillRect(0, 0, context.tileWidth, context.tileHeight);
+        }
+
+        @Override
+        public String getName() {
+            return "Counting";
+        }
+    }
+
+    public void testMemoryCache() throws Exception {
+        TileRendererManager manager = new TileRendererManager(new Graph());
+        CountingTileRenderer renderer = new CountingTileRenderer();
+        manager.registerRenderer("counting", renderer);
+
+        byte[] png = manager.getPngTile("counting", 12, 1200, 1500);
+        assertTrue(png.length > 0);
+        assertSame(png, manager.getPngTile("counting", 12, 1200, 1500));
+        assertEquals(1, renderer.count);
+        manager.getPngTile("counting", 12, 1201, 1500);
+        assertEquals(2, renderer.count);
+
+        // Replacing the renderer of a layer forgets its tiles.
+        CountingTileRenderer other = new CountingTileRenderer();
+        manager.registerRenderer("counting", other);
+        manager.getPngTile("counting", 12, 1200, 1500);
+        assertEquals(1, other.count);
+
+        try {
+            manager.getPngTile("../counting", 12, 1200, 1500);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    public void testTileCoordinates() throws Exception {
+        TileRendererManager manager = new TileRendererManager(new Graph());
+        CountingTileRenderer renderer = new CountingTileRenderer();
+        manager.registerRenderer("counting", renderer);
+
+        manager.getPngTile("counting", 0, 0, 0);
+        manager.getPngTile("counting", 3, 7, 7);
+        int[][] invalid = { { -1, 0, 0 }, { InspectorTileCache.MAX_ZOOM + 1, 0, 0 }, { 3, 8, 0 }, { 3, 0, 8 },
+                { 3, -1, 0 }, { 3, 0, -1 }, { 31, 0, 0 } };
+        for (int[] tile : invalid) {
+            try {
+                manager.getPngTile("counting", tile[0], tile[1], tile[2]);
+                fail("tile " + tile[0] + "/" + tile[1] + "/" + tile[2]);
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+        assertEquals(2, renderer.count);
+    }
+
+    public void testDiskLimits() throws Exception {
+        File directory = Files.createTempDirectory("inspector").toFile();
+        try {
+            Graph graph = new Graph();
+            graph.routerId = "test";
+            TileRendererManager manager = new TileRendererManager(graph);
+            CountingTileRenderer renderer = new CountingTileRenderer();
+            manager.registerRenderer("counting", renderer);
+            File layerDirectory = new File(directory, "test/" + graph.buildTime.getTime() + "/counting");
+
+            // Tiles above the highest zoom level stored on disk are only kept in memory.
+            manager.setupTileCache(1, directory, 1, -1);
+            int z = InspectorTileCache.MAX_DISK_ZOOM + 1;
+            manager.getPngTile("counting", z, 1200, 1500);
+            assertFalse(new File(layerDirectory, z + "/1200/1500.png").exists());
+
+            // Tiles are no longer stored once the disk limit is reached, but are still served.
+            manager.setupTileCache(1, directory, 0, -1);
+            byte[] png = manager.getPngTile("counting", 12, 1200, 1500);
+            assertTrue(png.length > 0);
+            assertFalse(new File(layerDirectory, "12/1200/1500.png").exists());
+            assertEquals(2, renderer.count);
+
+            manager.setupTileCache(1, directory, 1, -1);
+            manager.getPngTile("counting", 12, 1200, 1500);
+            assertTrue(new File(layerDirectory, "12/1200/1500.png").isFile());
+        } finally {
+            FileUtils.deleteQuietly(directory);
+        }
+    }
+
+    public void testDiskCache() throws Exception {
+        File directory = Files.createTempDirectory("inspector").toFile();
+        try {
+            Graph graph = new Graph();
+            graph.routerId = "test";
+            TileRendererManager manager = new TileRendererManager(graph);
+            CountingTileRenderer renderer = new CountingTileRenderer();
+            manager.registerRenderer("counting", renderer);
+            manager.setupTileCache(1, directory, 1, -1);
+            byte[] png = manager.getPngTile("counting", 12, 1200, 1500);
+            File buildDirectory = new File(directory, "test/" + graph.buildTime.getTime());
+            assertTrue(new File(buildDirectory, "counting/12/1200/1500.png").isFile());
+
+            // Tiles stored on disk are read rather than rendered again by a new cache for the same graph.
+            manager.setupTileCache(1, directory, 1, -1);
+            assertEquals(png.length, manager.getPngTile("counting", 12, 1200, 1500).length);
+            assertEquals(1, renderer.count);
+
+            // The tiles of the previous build are kept while its router may still be serving them.
+            Graph rebuilt = new Graph();
+            rebuilt.routerId = "test";
+            if (rebuilt.buildTime.getTime() == graph.buildTime.getTime()) {
+                rebuilt.buildTime.setTime(graph.buildTime.getTime() + 1);
+            }
+            TileRendererManager rebuiltManager = new TileRendererManager(rebuilt);
+            rebuiltManager.setupTileCache(1, directory, 1, -1);
+            assertTrue(buildDirectory.isDirectory());
+
+            // Once shut down, the previous cache no longer stores tiles, and they are removed after the swap.
+            manager.shutdown();
+            manager.getPngTile("counting", 12, 1201, 1500);
+            assertFalse(new File(buildDirectory, "counting/12/1201/1500.png").exists());
+            rebuiltManager.removePreviousTileBuilds();
+            assertFalse(buildDirectory.exists());
+        } finally {
+            FileUtils.deleteQuietly(directory);
+        }
+    }
+}
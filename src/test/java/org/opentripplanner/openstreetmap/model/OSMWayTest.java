@@ -344,4 +344,18 @@ public class OSMWayTest {
         assertTrue(permissionPair.first.allows(StreetTraversalPermission.CAR));
         assertFalse(permissionPair.second.allows(StreetTraversalPermission.CAR));
     }
+
+    @Test
+    public void testNodeRefIds() {
+        OSMWay way = new OSMWay();
+        way.addNodeRef(1);
+        way.addNodeRef(3);
+        way.addNodeRef(2, 1);
+
+        assertEquals(3, way.getNodeRefIds().size());
+        assertEquals(2, way.getNodeRefIds().get(1));
+        assertTrue(way.getNodeRefIds().contains(3));
+        // the boxed view shows the same nodes
+        assertEquals(Long.valueOf(3), way.getNodeRefs().get(2));
+    }
 }
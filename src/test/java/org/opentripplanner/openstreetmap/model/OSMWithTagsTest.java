@@ -15,6 +15,9 @@ package org.opentripplanner.openstreetmap.model;
 
 import static org.junit.Assert.*;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import org.junit.Test;
 
 public class OSMWithTagsTest {
@@ -137,4 +140,25 @@ public class OSMWithTagsTest {
         o.addTag("access", "private");
         assertTrue(o.isThroughTrafficExplicitlyDisallowed());
     }   
+
+    @Test
+    public void testInternTags() {
+        Map<String, String> dictionary = new HashMap<String, String>();
+        OSMWithTags a = new OSMWithTags();
+        a.addTag(new String("highway"), new String("residential"));
+        a.internTags(dictionary);
+        OSMWithTags b = new OSMWithTags();
+        b.addTag(new String("highway"), new String("residential"));
+        b.internTags(dictionary);
+
+        assertEquals("residential", b.getTag("highway"));
+        assertSame(a.getTag("highway"), b.getTag("highway"));
+        assertSame(a.getTags().keySet().iterator().next(), b.getTags().keySet().iterator().next());
+        assertEquals(2, dictionary.size());
+
+        // entities without tags are left alone
+        OSMWithTags c = new OSMWithTags();
+        c.internTags(dictionary);
+        assertNull(c.getTags());
+    }
 }
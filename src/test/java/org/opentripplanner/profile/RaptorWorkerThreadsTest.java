@@ -0,0 +1,82 @@
+package org.opentripplanner.profile;
+
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.io.WKTReader;
+import junit.framework.TestCase;
+import org.joda.time.LocalDate;
+import org.junit.Test;
+import org.opentripplanner.analyst.TimeSurface;
+import org.opentripplanner.analyst.scenario.AddTripPattern;
+import org.opentripplanner.analyst.scenario.Scenario;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import static org.opentripplanner.graph_builder.module.FakeGraph.*;
+
+/**
+ * Check that running the RAPTOR searches of a profile request on several threads gives the same results as running
+ * them on one, when the frequency draws are deterministic.
+ */
+public class RaptorWorkerThreadsTest extends TestCase {
+
+    @Test
+    public void testThreadedSearch () throws Exception {
+        Graph g = buildGraphNoTransit();
+        addTransit(g);
+        link(g);
+
+        TimeSurface.RangeSet single = route(g, 1);
+        TimeSurface.RangeSet threaded = route(g, 4);
+        // run again on the same shared pool
+        TimeSurface.RangeSet threadedAgain = route(g, 4);
+
+        int reached = 0;
+        for (Vertex v : g.getVertices()) {
+            int time = single.min.getTime(v);
+            if (time != TimeSurface.UNREACHABLE) reached++;
+            assertEquals(time, threaded.min.getTime(v));
+            assertEquals(single.avg.getTime(v), threaded.avg.getTime(v));
+            assertEquals(single.max.getTime(v), threaded.max.getTime(v));
+            assertEquals(time, threadedAgain.min.getTime(v));
+        }
+        assertTrue("some vertices are reached", reached > 0);
+    }
+
+    /** Route with both the scheduled trips of the graph and a frequency pattern boarded in the worst case. */
+    private TimeSurface.RangeSet route (Graph g, int threads) throws Exception {
+        ProfileRequest req = new ProfileRequest();
+        req.date = new LocalDate(2015, 6, 10);
+        req.fromTime = 7 * 3600;
+        req.toTime = 8 * 3600;
+        req.fromLat = req.toLat = 39.9621;
+        req.fromLon = req.toLon = -83.0007;
+        req.boardingAssumption = RaptorWorkerTimetable.BoardingAssumption.WORST_CASE;
+        req.raptorThreads = threads;
+
+        AddTripPattern atp = new AddTripPattern();
+        atp.name = "High Street Express";
+        atp.geometry = (LineString) new WKTReader().read(
+                "LINESTRING(-82.98058356730228979 39.96435660398918088, -82.99808255349556418 39.96259692939991481, -83.00091758477827852 39.96357452639394836, -83.00492573245382744 39.98283318717648882)");
+        atp.stops = new BitSet();
+        atp.stops.set(0, 4);
+        AddTripPattern.PatternTimetable tt = new AddTripPattern.PatternTimetable();
+        tt.days = new BitSet();
+        tt.days.set(2);
+        tt.dwellTimes = new int[] { 30, 30, 30, 30 };
+        tt.hopTimes = new int[] { 90, 90, 90 };
+        tt.frequency = true;
+        tt.startTime = 4 * 3600;
+        tt.endTime = 22 * 3600;
+        tt.headwaySecs = 600;
+        atp.timetables = Arrays.asList(tt);
+        req.scenario = new Scenario(0);
+        req.scenario.modifications = Arrays.asList(atp);
+
+        RepeatedRaptorProfileRouter router = new RepeatedRaptorProfileRouter(g, req);
+        router.route();
+        return router.timeSurfaceRangeSet;
+    }
+}
@@ -171,6 +171,12 @@ public class TestHalfEdges extends TestCase {
         GraphPath pathBr = spt1.getPath(end, false);
         assertNotNull("There must be a path from br to end", pathBr);
 
+        // The temporary edges are only visible through the routing context, the permanent vertices are untouched.
+        for (Edge e : end.getIncoming()) {
+            assertFalse(e.getFromVertex().getOutgoing().contains(e));
+            assertTrue(options.rctx.getOutgoing(e.getFromVertex()).contains(e));
+        }
+
         options.setRoutingContext(graph, tr, end);
         ShortestPathTree spt2 = aStar.getShortestPathTree(options);
 
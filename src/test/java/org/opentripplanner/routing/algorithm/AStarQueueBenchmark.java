@@ -0,0 +1,94 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.algorithm;
+
+import java.util.concurrent.TimeUnit;
+
+import org.opentripplanner.common.model.GenericLocation;
+import org.opentripplanner.common.pqueue.BinHeap;
+import org.opentripplanner.common.pqueue.IndexedDaryHeap;
+import org.opentripplanner.common.pqueue.OTPPriorityQueue;
+import org.opentripplanner.graph_builder.module.FakeGraph;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.impl.DefaultStreetVertexIndexFactory;
+import org.opentripplanner.routing.spt.ShortestPathTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the AStar priority queues on full street and transit searches in the Columbus test graph.
+ * This is not a unit test, run it with the test classpath:
+ *
+ *     java -cp target/test-classes:target/classes:... org.opentripplanner.routing.algorithm.AStarQueueBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class AStarQueueBenchmark {
+
+    @Param({"BinHeap", "IndexedDaryHeap"})
+    public String queue;
+
+    @Param({"WALK", "BICYCLE", "WALK,TRANSIT", "BICYCLE,TRANSIT"})
+    public String modes;
+
+    private Graph graph;
+
+    private OTPPriorityQueue.Factory queueFactory;
+
+    @Setup
+    public void setup() throws Exception {
+        graph = FakeGraph.buildGraphNoTransit();
+        FakeGraph.addTransit(graph);
+        FakeGraph.link(graph);
+        graph.index(new DefaultStreetVertexIndexFactory());
+        queueFactory = queue.equals("BinHeap") ? BinHeap.FACTORY : IndexedDaryHeap.FACTORY;
+    }
+
+    /** A search between the two ends of the fake bus line, so transit searches can board it. */
+    @Benchmark
+    public ShortestPathTree search() {
+        RoutingRequest request = new RoutingRequest(modes);
+        request.from = new GenericLocation(40.2190, -83.0875);
+        request.to = new GenericLocation(39.9615, -83.0015);
+        request.dateTime = 1420110000L; // 2015-01-01 06:00 America/New_York
+        request.maxWalkDistance = Double.MAX_VALUE;
+        request.setRoutingContext(graph);
+        AStar aStar = new AStar();
+        aStar.setPriorityQueueFactory(queueFactory);
+        ShortestPathTree spt = aStar.getShortestPathTree(request, 10);
+        request.cleanup();
+        return spt;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(AStarQueueBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -14,6 +14,7 @@
 package org.opentripplanner.routing.algorithm;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertNotNull;
 
@@ -35,6 +36,7 @@ import org.opentripplanner.routing.graph.Vertex;
 import org.opentripplanner.routing.location.TemporaryStreetLocation;
 import org.opentripplanner.routing.spt.GraphPath;
 import org.opentripplanner.routing.spt.ShortestPathTree;
+import org.opentripplanner.routing.spt.VertexIndexedShortestPathTree;
 
 import com.vividsolutions.jts.geom.Coordinate;
 import org.opentripplanner.util.NonLocalizedString;
@@ -116,6 +118,24 @@ public class AStarTest {
         assertEquals("leary_20th", states.get(6).getVertex().getLabel());
     }
 
+    @Test
+    public void testVertexIndexedTreeMatchesHashMapTree() {
+        RoutingRequest options = new RoutingRequest();
+        options.walkSpeed = 1.0;
+        options.setRoutingContext(_graph, _graph.getVertex("56th_24th"), _graph.getVertex("leary_20th"));
+        ShortestPathTree indexedTree = new AStar().getShortestPathTree(options);
+        assertTrue(indexedTree instanceof VertexIndexedShortestPathTree);
+        options.vertexIndexedShortestPathTree = false;
+        ShortestPathTree hashTree = new AStar().getShortestPathTree(options);
+        assertFalse(hashTree instanceof VertexIndexedShortestPathTree);
+
+        assertEquals(hashTree.getVertexCount(), indexedTree.getVertexCount());
+        assertEquals(hashTree.getVertices(), indexedTree.getVertices());
+        for (Vertex v : hashTree.getVertices()) {
+            assertEquals(hashTree.getState(v).getWeight(), indexedTree.getState(v).getWeight(), 0.0);
+        }
+    }
+
     @Test
     public void testBack() {
 
@@ -0,0 +1,118 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.algorithm.strategies;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import gnu.trove.map.TObjectDoubleMap;
+import gnu.trove.map.hash.TObjectDoubleHashMap;
+import org.junit.Test;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.TraverseModeSet;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.location.TemporaryStreetLocation;
+import org.opentripplanner.routing.vertextype.IntersectionVertex;
+import org.opentripplanner.util.NonLocalizedString;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class BidirectionalHeuristicCacheTest {
+
+    @Test
+    public void testTable() {
+        Graph graph = new Graph();
+        Vertex a = new IntersectionVertex(graph, "A", 10.0, 10.0);
+        Vertex b = new IntersectionVertex(graph, "B", 10.1, 10.1);
+        Vertex c = new IntersectionVertex(graph, "C", 10.2, 10.2);
+        Vertex temporary = new TemporaryStreetLocation("T", new Coordinate(10.3, 10.3),
+                new NonLocalizedString("T"), true);
+
+        TObjectDoubleMap<Vertex> weights = new TObjectDoubleHashMap<Vertex>(10, 0.5f, Double.POSITIVE_INFINITY);
+        weights.put(a, 0.1);
+        weights.put(b, 1234.5678);
+        weights.put(temporary, 5);
+        BidirectionalHeuristicCache.Table table = new BidirectionalHeuristicCache.Table(weights, 1000.1);
+
+        // Weights are stored with less precision, but never more than they were.
+        assertTrue(table.get(a) <= 0.1);
+        assertEquals(0.1, table.get(a), 1e-6);
+        assertTrue(table.get(b) <= 1234.5678);
+        assertEquals(1234.5678, table.get(b), 1e-3);
+        assertTrue(table.maxFound <= 1000.1);
+        assertEquals(Double.POSITIVE_INFINITY, table.get(c), 0);
+        // The temporary vertices of one request are not shared with the others.
+        assertEquals(Double.POSITIVE_INFINITY, table.get(temporary), 0);
+    }
+
+    @Test
+    public void testKey() {
+        Graph graph = new Graph();
+        Vertex a = new IntersectionVertex(graph, "A", 10.0, 10.0);
+        RoutingRequest options = new RoutingRequest();
+
+        BidirectionalHeuristicCache.Key key = new BidirectionalHeuristicCache.Key(options, a, Arrays.asList(0L, 86400L));
+        assertEquals(key, new BidirectionalHeuristicCache.Key(options, a, Arrays.asList(0L, 86400L)));
+        // Different patterns run on other days.
+        assertFalse(key.equals(new BidirectionalHeuristicCache.Key(options, a, Arrays.asList(86400L, 172800L))));
+        // Temporary destinations are identified by their coordinates.
+        Vertex t1 = new TemporaryStreetLocation("T1", new Coordinate(10.3, 10.3), new NonLocalizedString("T1"), true);
+        Vertex t2 = new TemporaryStreetLocation("T2", new Coordinate(10.3, 10.3), new NonLocalizedString("T2"), true);
+        assertEquals(new BidirectionalHeuristicCache.Key(options, t1, Arrays.asList(0L)),
+                new BidirectionalHeuristicCache.Key(options, t2, Arrays.asList(0L)));
+    }
+
+    @Test
+    public void testParkAndRideTables() {
+        Graph graph = new Graph();
+        Vertex a = new IntersectionVertex(graph, "A", 10.0, 10.0);
+        BidirectionalHeuristicCache cache = new BidirectionalHeuristicCache(1);
+
+        // Park and ride requests have the same modes as the plain ones, but their backward searches start on foot.
+        RoutingRequest bikeParkAndRide = new RoutingRequest("BICYCLE_PARK,TRANSIT");
+        RoutingRequest bike = new RoutingRequest("BICYCLE,TRANSIT");
+        assertTrue(bikeParkAndRide.bikeParkAndRide);
+        assertEquals(bikeParkAndRide.modes, bike.modes);
+        RoutingRequest parkAndRide = new RoutingRequest("CAR_PARK,TRANSIT");
+        RoutingRequest car = new RoutingRequest();
+        car.setModes(new TraverseModeSet("CAR,WALK,TRANSIT"));
+        assertEquals(parkAndRide.modes, car.modes);
+
+        BidirectionalHeuristicCache.Key walkKey =
+                new BidirectionalHeuristicCache.Key(bikeParkAndRide, a, Arrays.asList(0L));
+        BidirectionalHeuristicCache.Key bikeKey = new BidirectionalHeuristicCache.Key(bike, a, Arrays.asList(0L));
+        TObjectDoubleMap<Vertex> weights = new TObjectDoubleHashMap<Vertex>(10, 0.5f, Double.POSITIVE_INFINITY);
+        weights.put(a, 100);
+        BidirectionalHeuristicCache.Table walkTable = new BidirectionalHeuristicCache.Table(weights, 100);
+        cache.put(walkKey, walkTable);
+        assertNull(cache.get(bikeKey));
+        BidirectionalHeuristicCache.Table bikeTable = new BidirectionalHeuristicCache.Table(weights, 50);
+        cache.put(bikeKey, bikeTable);
+        assertSame(walkTable, cache.get(walkKey));
+        assertSame(bikeTable, cache.get(bikeKey));
+
+        assertFalse(new BidirectionalHeuristicCache.Key(parkAndRide, a, Arrays.asList(0L))
+                .equals(new BidirectionalHeuristicCache.Key(car, a, Arrays.asList(0L))));
+        RoutingRequest rental = new RoutingRequest("WALK,TRANSIT");
+        rental.allowBikeRental = true;
+        assertFalse(new BidirectionalHeuristicCache.Key(rental, a, Arrays.asList(0L))
+                .equals(new BidirectionalHeuristicCache.Key(new RoutingRequest("WALK,TRANSIT"), a,
+                        Arrays.asList(0L))));
+    }
+}
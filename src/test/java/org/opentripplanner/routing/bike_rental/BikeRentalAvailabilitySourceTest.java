@@ -0,0 +1,55 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.bike_rental;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import junit.framework.TestCase;
+
+public class BikeRentalAvailabilitySourceTest extends TestCase {
+
+    private static BikeRentalStation station(String id, int bikes, int spaces) {
+        BikeRentalStation station = new BikeRentalStation();
+        station.id = id;
+        station.bikesAvailable = bikes;
+        station.spacesAvailable = spaces;
+        return station;
+    }
+
+    public void testSnapshotsAreNotModified() {
+        BikeRentalAvailabilitySource source = new BikeRentalAvailabilitySource();
+        assertEquals(0, source.getSnapshot().size());
+
+        source.update(Arrays.asList(station("a", 3, 7), station("b", 0, 10)), Collections.<String>emptyList());
+        BikeRentalAvailability first = source.getSnapshot();
+        assertEquals(3, first.getBikesAvailable("a", -1));
+        assertEquals(10, first.getSpacesAvailable("b", -1));
+        assertEquals(-1, first.getBikesAvailable("c", -1));
+
+        // A second network publishes its own stations, and the first one loses station b
+        source.update(Arrays.asList(station("c", 5, 5)), Collections.<String>emptyList());
+        source.update(Arrays.asList(station("a", 2, 8)), Arrays.asList("b"));
+        BikeRentalAvailability third = source.getSnapshot();
+        assertEquals(first.version + 2, third.version);
+        assertEquals(2, third.getBikesAvailable("a", -1));
+        assertEquals(5, third.getBikesAvailable("c", -1));
+        assertFalse(third.contains("b"));
+
+        // A search that pinned the first snapshot still sees the counts it started with
+        assertEquals(3, first.getBikesAvailable("a", -1));
+        assertTrue(first.contains("b"));
+        assertFalse(first.contains("c"));
+    }
+}
@@ -0,0 +1,56 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.core;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class EmissionsModelTest {
+
+    @Test
+    public void testDefaults() {
+        EmissionsModel model = EmissionsModel.getDefaults();
+        assertEquals(56, model.getGramsPerKm(TraverseMode.BUS), 0.0);
+        assertEquals(23, model.getGramsPerKm(TraverseMode.CABLE_CAR), 0.0);
+        assertEquals(120, model.getGramsPerKm(TraverseMode.CAR), 0.0);
+        assertEquals(0, model.getGramsPerKm(TraverseMode.WALK), 0.0);
+        // 56 g/km over 2.5 km
+        assertEquals(140, model.getCo2(TraverseMode.BUS, 2500, null));
+        assertEquals(0, model.getCo2(TraverseMode.BICYCLE, 2500, null));
+    }
+
+    @Test
+    public void testCarOverride() {
+        EmissionsModel model = EmissionsModel.getDefaults();
+        assertEquals(120, model.getCo2(TraverseMode.CAR, 1000, null));
+        assertEquals(120, model.getCo2(TraverseMode.CAR, 1000, 0.0));
+        assertEquals(90, model.getCo2(TraverseMode.CAR, 1000, 90.0));
+        // The requester's car has nothing to do with the bus.
+        assertEquals(56, model.getCo2(TraverseMode.BUS, 1000, 90.0));
+    }
+
+    @Test
+    public void testConfig() throws Exception {
+        EmissionsModel model = EmissionsModel.fromConfig(
+                new ObjectMapper().readTree("{\"BUS\": 70, \"FERRY\": 30, \"NOT_A_MODE\": 1, \"TRAM\": \"many\"}"));
+        assertEquals(70, model.getGramsPerKm(TraverseMode.BUS), 0.0);
+        assertEquals(30, model.getGramsPerKm(TraverseMode.FERRY), 0.0);
+        assertEquals(27, model.getGramsPerKm(TraverseMode.TRAM), 0.0);
+        // The defaults are not modified.
+        assertEquals(56, EmissionsModel.getDefaults().getGramsPerKm(TraverseMode.BUS), 0.0);
+        assertEquals(56, EmissionsModel.fromConfig(null).getGramsPerKm(TraverseMode.BUS), 0.0);
+    }
+}
@@ -13,9 +13,11 @@
 
 package org.opentripplanner.routing.edgetype;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.opentripplanner.util.TestUtils.AUGUST;
 
 import java.io.File;
@@ -313,4 +315,41 @@ public class TimetableTest {
         updatedTripTimes = timetable.createUpdatedTripTimes(tripUpdate, timeZone, serviceDate); 
         assertNull(updatedTripTimes);
     }
+
+    @Test
+    public void testDepartureIndex() {
+        int trip_1_1_index = timetable.getTripIndex(new AgencyAndId("agency", "1.1"));
+        int trip_1_2_index = timetable.getTripIndex(new AgencyAndId("agency", "1.2"));
+        int trip_1_3_index = timetable.getTripIndex(new AgencyAndId("agency", "1.3"));
+        int[] scheduledOrder = timetable.getDepartureOrder(0);
+        assertArrayEquals(new int[] {trip_1_1_index, trip_1_2_index, trip_1_3_index}, scheduledOrder);
+
+        // Delay trip 1.1 until after trip 1.3 in an updated copy of the timetable
+        Timetable updated = new Timetable(timetable, serviceDate);
+        updated.setTripTimes(trip_1_1_index,
+                timetable.getTripTimes(trip_1_1_index).timeShift(0, 9 * 3600, true));
+        assertArrayEquals(new int[] {trip_1_2_index, trip_1_3_index, trip_1_1_index}, updated.getDepartureOrder(0));
+        // The scheduled timetable is not affected
+        assertArrayEquals(new int[] {trip_1_1_index, trip_1_2_index, trip_1_3_index}, timetable.getDepartureOrder(0));
+
+        // The incrementally maintained index matches one built from scratch
+        Timetable rebuilt = new Timetable(pattern);
+        for (TripTimes tt : updated.tripTimes) {
+            rebuilt.addTripTimes(tt);
+        }
+        assertNull(rebuilt.getDepartureOrder(0));
+        rebuilt.finish();
+        updated.finish();
+        for (int s = 0; s < pattern.getStops().size(); s++) {
+            assertArrayEquals(rebuilt.getDepartureOrder(s), updated.getDepartureOrder(s));
+        }
+
+        // Delaying the last trip keeps the order, and the arrays of the scheduled timetable are still shared
+        Timetable delayed = new Timetable(timetable, serviceDate);
+        TripTimes last = timetable.getTripTimes(trip_1_3_index);
+        delayed.setTripTimes(trip_1_3_index, last.timeShift(0, last.getDepartureTime(0) + 60, true));
+        for (int s = 0; s < pattern.getStops().size(); s++) {
+            assertSame(timetable.getDepartureOrder(s), delayed.getDepartureOrder(s));
+        }
+    }
 }
@@ -0,0 +1,79 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.graph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.Test;
+import org.opentripplanner.common.geometry.GeometryUtils;
+import org.opentripplanner.routing.edgetype.StreetEdge;
+import org.opentripplanner.routing.edgetype.StreetTraversalPermission;
+import org.opentripplanner.routing.graph.Graph.LoadLevel;
+import org.opentripplanner.routing.impl.DefaultStreetVertexIndexFactory;
+import org.opentripplanner.routing.vertextype.IntersectionVertex;
+import org.opentripplanner.routing.vertextype.OsmVertex;
+
+public class CompactGraphFormatTest {
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        Graph graph = new Graph();
+        IntersectionVertex a = new IntersectionVertex(graph, "a", -74.01, 40.01);
+        OsmVertex b = new OsmVertex(graph, "b", -74.02, 40.02, 42L);
+        b.trafficLight = true;
+        Vertex c = new SimpleConcreteVertex(graph, "c", 40.03, -74.03);
+        StreetEdge ab = new StreetEdge(a, b,
+                GeometryUtils.makeLineString(-74.01, 40.01, -74.015, 40.012, -74.02, 40.02),
+                "Main street", 1234.5, StreetTraversalPermission.PEDESTRIAN_AND_BICYCLE, false);
+        ab.setCarSpeed(12.5f);
+        ab.setBicycleSafetyFactor(0.8f);
+        ab.wayId = 7L;
+        new SimpleConcreteEdge(b, c);
+
+        File file = File.createTempFile("graph", ".cgf");
+        file.deleteOnExit();
+        graph.saveCompact(file);
+        Graph loaded = Graph.loadCompact(file, LoadLevel.FULL, new DefaultStreetVertexIndexFactory());
+
+        assertEquals(3, loaded.countVertices());
+        assertEquals(2, loaded.countEdges());
+        assertTrue(loaded.getVertex("a").getClass() == IntersectionVertex.class);
+        OsmVertex loadedB = (OsmVertex) loaded.getVertex("b");
+        assertEquals(42L, loadedB.nodeId);
+        assertTrue(loadedB.trafficLight);
+        assertEquals(-74.02, loadedB.getX(), 0.0);
+        assertEquals(40.02, loadedB.getY(), 0.0);
+
+        StreetEdge loadedAb = (StreetEdge) loaded.getVertex("a").getOutgoing().iterator().next();
+        assertEquals(ab.getId(), loadedAb.getId());
+        assertEquals("Main street", loadedAb.getName());
+        assertEquals(ab.getDistance(), loadedAb.getDistance(), 0.0);
+        assertEquals(StreetTraversalPermission.PEDESTRIAN_AND_BICYCLE, loadedAb.getPermission());
+        assertEquals(12.5f, loadedAb.getCarSpeed(), 0.0f);
+        assertEquals(0.8f, loadedAb.getBicycleSafetyFactor(), 0.0f);
+        assertEquals(7L, loadedAb.wayId);
+        assertEquals(ab.getGeometry().getNumPoints(), loadedAb.getGeometry().getNumPoints());
+        assertEquals(ab.getOutAngle(), loadedAb.getOutAngle());
+
+        // The non-columnar edge goes through serialization but must still point to the columnar vertex.
+        Edge loadedBc = loaded.getVertex("c").getIncoming().iterator().next();
+        assertTrue(loadedBc instanceof SimpleConcreteEdge);
+        assertTrue(loadedBc.getFromVertex() == loadedB);
+        assertNotNull(loaded.streetIndex);
+    }
+}
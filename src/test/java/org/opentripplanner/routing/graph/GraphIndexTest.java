@@ -5,10 +5,14 @@ import org.onebusaway.gtfs.model.AgencyAndId;
 import org.onebusaway.gtfs.model.Route;
 import org.onebusaway.gtfs.model.Stop;
 import org.onebusaway.gtfs.model.Trip;
+import org.onebusaway.gtfs.model.calendar.ServiceDate;
 import org.opentripplanner.GtfsTest;
 import org.opentripplanner.common.geometry.SphericalDistanceLibrary;
+import org.opentripplanner.routing.core.ServiceDay;
+import org.opentripplanner.routing.edgetype.Timetable;
 import org.opentripplanner.routing.edgetype.TripPattern;
 import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.trippattern.TripTimes;
 import org.opentripplanner.routing.vertextype.TransitStop;
 
 import com.vividsolutions.jts.geom.Coordinate;
@@ -95,6 +99,42 @@ public class GraphIndexTest extends GtfsTest {
         assertTrue(stops.size() >= 3); // Query can overselect
     }
 
+    /** Check the cached departure tables against a scan of the timetables, on a weekday and a Sunday. */
+    public void testStopDepartureCache() {
+        StopDepartureCache cache = new StopDepartureCache(graph, graph.getCalendarService(), 10);
+        for (ServiceDate serviceDate : new ServiceDate[] {new ServiceDate(2014, 6, 2), new ServiceDate(2014, 6, 1)}) {
+            for (Stop stop : graph.index.stopForId.values()) {
+                for (TripPattern pattern : graph.index.patternsForStop.get(stop)) {
+                    Timetable tt = pattern.scheduledTimetable;
+                    StopDepartureCache.Departures departures = cache.getDepartures(stop, serviceDate, pattern, tt);
+                    assertSame(departures, cache.getDepartures(stop, serviceDate, pattern, tt));
+                    ServiceDay sd = departures.serviceDay;
+                    assertEquals(serviceDate, sd.getServiceDate());
+
+                    int expected = 0;
+                    for (int sidx = 0; sidx < pattern.stopPattern.size; sidx++) {
+                        if (pattern.stopPattern.stops[sidx] != stop) continue;
+                        for (TripTimes t : tt.tripTimes) {
+                            if (sd.serviceRunning(t.serviceCode) && t.getDepartureTime(sidx) != -1) expected++;
+                        }
+                    }
+                    assertEquals(expected, departures.size());
+                    for (int i = 0; i < departures.size(); i++) {
+                        TripTimes t = departures.getTripTimes(i);
+                        assertTrue(sd.serviceRunning(t.serviceCode));
+                        assertEquals(t.getDepartureTime(departures.getStopIndex(i)), departures.getTime(i));
+                        int first = departures.firstIndexAtOrAfter(departures.getTime(i));
+                        assertTrue(first <= i && departures.getTime(first) == departures.getTime(i));
+                        if (first > 0) assertTrue(departures.getTime(first - 1) < departures.getTime(i));
+                    }
+
+                    // A new timetable for the pattern replaces the cached departures.
+                    assertEquals(0, cache.getDepartures(stop, serviceDate, pattern, new Timetable(pattern)).size());
+                }
+            }
+        }
+    }
+
     public void testParentStations() {
         // graph.index.stopsForParentStation;
     }
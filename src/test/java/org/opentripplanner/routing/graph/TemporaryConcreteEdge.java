@@ -79,10 +79,6 @@ public class TemporaryConcreteEdge extends Edge implements TemporaryEdge {
 
     @Override
     public void dispose() {
-        if (endEdge) {
-            fromv.removeOutgoing(this);
-        } else {
-            tov.removeIncoming(this);
-        }
+        // Nothing to do, this edge was never attached to a permanent vertex (see Edge).
     }
 }
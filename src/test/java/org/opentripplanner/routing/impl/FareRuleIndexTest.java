@@ -0,0 +1,78 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.impl;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.opentripplanner.ConstantsForTests;
+import org.opentripplanner.routing.algorithm.AStar;
+import org.opentripplanner.routing.core.Fare.FareType;
+import org.opentripplanner.routing.core.FareRuleSet;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.services.FareService;
+import org.opentripplanner.routing.spt.GraphPath;
+import org.opentripplanner.routing.spt.ShortestPathTree;
+import org.opentripplanner.util.TestUtils;
+
+public class FareRuleIndexTest extends TestCase {
+
+    /** Trips across the TriMet fare zones, the last one with several transfers. */
+    static final String[][] PORTLAND_TRIPS = {
+            { "TriMet:10579", "TriMet:8371" },
+            { "TriMet:8389", "TriMet:1252" },
+            { "TriMet:10428", "TriMet:4231" }
+    };
+
+    static GraphPath route(Graph graph, String from, String to) {
+        RoutingRequest options = new RoutingRequest();
+        options.maxTransfers = 5;
+        options.dateTime = TestUtils.dateInSeconds("America/Los_Angeles", 2009, 11, 1, 14, 0, 0);
+        options.setRoutingContext(graph, from, to);
+        ShortestPathTree spt = new AStar().getShortestPathTree(options);
+        GraphPath path = spt.getPath(graph.getVertex(to), true);
+        options.cleanup();
+        return path;
+    }
+
+    /** Every sub-sequence of rides gets the same fare from the compiled rules as from checking each rule. */
+    public void testSameAsLinear() throws Exception {
+        Graph graph = ConstantsForTests.getInstance().getPortlandGraph();
+        DefaultFareServiceImpl compiled = (DefaultFareServiceImpl) graph.getService(FareService.class);
+        LinearFareServiceImpl linear = new LinearFareServiceImpl(compiled);
+        int compared = 0;
+        for (String[] trip : PORTLAND_TRIPS) {
+            GraphPath path = route(graph, trip[0], trip[1]);
+            assertNotNull(path);
+            List<Ride> rides = compiled.createRides(path);
+            for (Map.Entry<FareType, Collection<FareRuleSet>> kv : compiled.fareRulesPerType.entrySet()) {
+                float[][] costs = compiled.getFareRuleIndex(kv.getKey(), kv.getValue()).getCosts(rides);
+                for (int i = 0; i < rides.size(); i++) {
+                    for (int j = i; j < rides.size(); j++) {
+                        float expected = linear.calculateCost(kv.getKey(), rides.subList(i, j + 1), kv.getValue());
+                        assertEquals(expected, costs[i][j]);
+                        compared++;
+                    }
+                }
+            }
+            // Fare has no equals method, but its string form lists every fare type and amount
+            assertEquals(String.valueOf(linear.getCost(path)), String.valueOf(compiled.getCost(path)));
+        }
+        assertTrue(compared > PORTLAND_TRIPS.length);
+    }
+}
@@ -0,0 +1,83 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.opentripplanner.ConstantsForTests;
+import org.opentripplanner.routing.core.Fare;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.services.FareService;
+import org.opentripplanner.routing.spt.GraphPath;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the compiled fare rules with checking every rule in turn, on itineraries through the TriMet fare zones
+ * in the Portland test GTFS. This is not a unit test, run it with the test classpath:
+ *
+ *     java -cp target/test-classes:target/classes:... org.opentripplanner.routing.impl.FareServiceBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class FareServiceBenchmark {
+
+    @Param({"linear", "compiled"})
+    public String rules;
+
+    private FareService fareService;
+
+    private List<GraphPath> paths = new ArrayList<GraphPath>();
+
+    @Setup
+    public void setup() throws Exception {
+        Graph graph = ConstantsForTests.getInstance().getPortlandGraph();
+        DefaultFareServiceImpl compiled = (DefaultFareServiceImpl) graph.getService(FareService.class);
+        fareService = rules.equals("linear") ? new LinearFareServiceImpl(compiled) : compiled;
+        for (String[] trip : FareRuleIndexTest.PORTLAND_TRIPS) {
+            paths.add(FareRuleIndexTest.route(graph, trip[0], trip[1]));
+        }
+    }
+
+    @Benchmark
+    public void getCost(Blackhole blackhole) {
+        for (GraphPath path : paths) {
+            Fare fare = fareService.getCost(path);
+            blackhole.consume(fare);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(FareServiceBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,115 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.impl;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.onebusaway.gtfs.model.AgencyAndId;
+import org.onebusaway.gtfs.model.FareAttribute;
+import org.opentripplanner.routing.core.Fare.FareType;
+import org.opentripplanner.routing.core.FareRuleSet;
+
+/**
+ * The fare service as it was before the rules were compiled into a {@link FareRuleIndex}: every sub-sequence of rides
+ * builds its own sets of zones, routes and agencies, and every rule is checked against them in turn. Kept as a
+ * reference for testing and benchmarking the compiled rules.
+ */
+class LinearFareServiceImpl extends DefaultFareServiceImpl {
+
+    private static final long serialVersionUID = 1L;
+
+    LinearFareServiceImpl(DefaultFareServiceImpl compiled) {
+        fareRulesPerType = compiled.fareRulesPerType;
+    }
+
+    @Override
+    protected float getLowestCost(FareType fareType, List<Ride> rides,
+            Collection<FareRuleSet> fareRules) {
+        float[][] resultTable = new float[rides.size()][rides.size()];
+        for (int i = 0; i < rides.size(); i++) {
+            for (int j = 0; j < rides.size() - i; j++) {
+                float cost = calculateCost(fareType, rides.subList(j, j + i + 1), fareRules);
+                if (cost < 0) {
+                    cost = Float.POSITIVE_INFINITY;
+                }
+                resultTable[j][j + i] = cost;
+                for (int k = 0; k < i; k++) {
+                    float via = resultTable[j][j + k] + resultTable[j + k + 1][j + i];
+                    if (resultTable[j][j + i] > via)
+                        resultTable[j][j + i] = via;
+                }
+            }
+        }
+        return resultTable[0][rides.size() - 1];
+    }
+
+    @Override
+    protected float calculateCost(FareType fareType, List<Ride> rides,
+            Collection<FareRuleSet> fareRules) {
+        Set<String> zones = new HashSet<String>();
+        Set<AgencyAndId> routes = new HashSet<AgencyAndId>();
+        Set<String> agencies = new HashSet<String>();
+        int transfersUsed = -1;
+
+        Ride firstRide = rides.get(0);
+        long startTime = firstRide.startTime;
+        String startZone = firstRide.startZone;
+        String endZone = firstRide.endZone;
+        String feedId = firstRide.firstStop.getId().getAgencyId();
+        long lastRideStartTime = firstRide.startTime;
+        long lastRideEndTime = firstRide.endTime;
+        for (Ride ride : rides) {
+            if ( ! ride.firstStop.getId().getAgencyId().equals(feedId)) {
+                return Float.POSITIVE_INFINITY;
+            }
+            lastRideStartTime = ride.startTime;
+            lastRideEndTime = ride.endTime;
+            endZone = ride.endZone;
+            agencies.add(ride.agency);
+            routes.add(ride.route);
+            zones.addAll(ride.zones);
+            transfersUsed += 1;
+        }
+
+        float bestFare = Float.POSITIVE_INFINITY;
+        long tripTime = lastRideStartTime - startTime;
+        long journeyTime = lastRideEndTime - startTime;
+        for (FareRuleSet ruleSet : fareRules) {
+            FareAttribute attribute = ruleSet.getFareAttribute();
+            if (!ruleSet.hasAgencyDefined() && !attribute.getId().getAgencyId().equals(feedId))
+                continue;
+            if (ruleSet.matches(agencies, startZone, endZone, zones, routes)) {
+                if (attribute.isTransfersSet() && attribute.getTransfers() < transfersUsed) {
+                    continue;
+                }
+                if (attribute.isTransferDurationSet() &&
+                    tripTime > attribute.getTransferDuration()) {
+                    continue;
+                }
+                if (attribute.isJourneyDurationSet() &&
+                    journeyTime > attribute.getJourneyDuration()) {
+                    continue;
+                }
+                float newFare = attribute.getPrice();
+                if (newFare < bestFare) {
+                    bestFare = newFare;
+                }
+            }
+        }
+        return bestFare;
+    }
+}
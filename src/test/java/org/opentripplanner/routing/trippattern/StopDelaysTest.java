@@ -0,0 +1,69 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.trippattern;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class StopDelaysTest {
+
+    @Test
+    public void testRunsFollowChangesInDelay() {
+        StopDelays delays = new StopDelays(100, 0);
+        assertEquals(1, delays.getRunCount());
+
+        // A delay propagated from stop 10 to the end of the trip, set one stop at a time as the updaters do
+        for (int stop = 10; stop < 100; stop++) {
+            delays.setArrivalDelay(stop, 60);
+            delays.setDepartureDelay(stop, 60);
+        }
+        assertEquals(2, delays.getRunCount());
+        assertEquals(0, delays.getDepartureDelay(9));
+        assertEquals(60, delays.getArrivalDelay(10));
+        assertEquals(60, delays.getDepartureDelay(99));
+
+        // A longer dwell at a single stop splits a run in three
+        delays.setDepartureDelay(50, 90);
+        assertEquals(4, delays.getRunCount());
+        assertEquals(60, delays.getArrivalDelay(50));
+        assertEquals(90, delays.getDepartureDelay(50));
+        assertEquals(60, delays.getDepartureDelay(49));
+        assertEquals(60, delays.getDepartureDelay(51));
+
+        // and setting it back joins them again
+        delays.setDepartureDelay(50, 60);
+        assertEquals(2, delays.getRunCount());
+
+        delays.setArrivalDelay(0, StopDelays.UNAVAILABLE);
+        delays.setDepartureDelay(0, StopDelays.UNAVAILABLE);
+        assertEquals(3, delays.getRunCount());
+        assertEquals(StopDelays.UNAVAILABLE, delays.getArrivalDelay(0));
+        assertEquals(0, delays.getArrivalDelay(1));
+    }
+
+    @Test
+    public void testEveryStopDifferent() {
+        StopDelays delays = new StopDelays(20, 0);
+        for (int stop = 19; stop >= 0; stop--) {
+            delays.setArrivalDelay(stop, stop);
+            delays.setDepartureDelay(stop, stop * 2);
+        }
+        for (int stop = 0; stop < 20; stop++) {
+            assertEquals(stop, delays.getArrivalDelay(stop));
+            assertEquals(stop * 2, delays.getDepartureDelay(stop));
+        }
+        assertEquals(20, delays.getRunCount());
+    }
+}
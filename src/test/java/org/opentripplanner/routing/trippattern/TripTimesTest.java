@@ -148,6 +148,34 @@ public class TripTimesTest {
         assertEquals(6 * 60 + 13, updatedTripTimesA.getArrivalTime(6));
     }
 
+    @Test
+    public void testPropagatedUpdate() {
+        TripTimes updatedTripTimesA = new TripTimes(originalTripTimes);
+
+        // The vehicle has passed the first two stops and is running 30 seconds late from then on
+        for (int i = 0; i < stops.length; i++) {
+            if (i < 2) {
+                updatedTripTimesA.updateArrivalTime(i, TripTimes.UNAVAILABLE);
+                updatedTripTimesA.updateDepartureTime(i, TripTimes.UNAVAILABLE);
+            } else {
+                updatedTripTimesA.updateArrivalDelay(i, 30);
+                updatedTripTimesA.updateDepartureDelay(i, 30);
+            }
+        }
+
+        assertFalse(updatedTripTimesA.isScheduled());
+        assertEquals(TripTimes.UNAVAILABLE, updatedTripTimesA.getArrivalTime(1));
+        assertEquals(TripTimes.UNAVAILABLE, updatedTripTimesA.getDepartureTime(1));
+        for (int i = 2; i < stops.length; i++) {
+            assertEquals(i * 60 + 30, updatedTripTimesA.getArrivalTime(i));
+            assertEquals(30, updatedTripTimesA.getDepartureDelay(i));
+            assertEquals(i * 60, updatedTripTimesA.getScheduledDepartureTime(i));
+        }
+        assertTrue(updatedTripTimesA.timesIncreasing());
+        assertTrue(originalTripTimes.isScheduled());
+        assertEquals(2 * 60, originalTripTimes.getArrivalTime(2));
+    }
+
     @Test
     public void testCancel() {
         TripTimes updatedTripTimesA = new TripTimes(originalTripTimes);
@@ -0,0 +1,109 @@
+package org.opentripplanner.standalone;
+
+import junit.framework.TestCase;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.services.GraphService;
+import org.opentripplanner.routing.services.GraphSource;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class RouterTest extends TestCase {
+
+    public void testSampleAndWarmup() {
+        Router previous = new Router("A", new Graph());
+        for (int i = 0; i < 3 * Router.WARMUP_SAMPLE_INTERVAL; i++) {
+            RoutingRequest request = new RoutingRequest();
+            request.numItineraries = i + 1;
+            previous.sampleRequest(request);
+        }
+        // Only one request in each interval is kept, and it is a copy.
+        List<RoutingRequest> samples = previous.getRecentRequests();
+        assertEquals(3, samples.size());
+        assertEquals(1, samples.get(0).numItineraries);
+        assertEquals(Router.WARMUP_SAMPLE_INTERVAL + 1, samples.get(1).numItineraries);
+
+        // The samples are replayed against the new router, which fail on an empty graph, and carried over to it.
+        Router router = new Router("A", new Graph());
+        router.warmup(previous);
+        assertEquals(3, router.getRecentRequests().size());
+        assertEquals(0, router.getActiveRequests());
+    }
+
+    public void testDrain() throws Exception {
+        final Router router = new Router("A", new Graph());
+        assertTrue(router.tryAcquire());
+        assertEquals(1, router.getActiveRequests());
+
+        Thread drain = new Thread(router::drainAndShutdown);
+        drain.start();
+        waitUntilDraining(router);
+        // The router waits for the request it is serving, and refuses new ones.
+        assertTrue(drain.isAlive());
+        assertEquals(1, router.getActiveRequests());
+
+        router.release();
+        drain.join(5000);
+        assertFalse(drain.isAlive());
+        assertEquals(0, router.getActiveRequests());
+    }
+
+    public void testAcquireReplacedRouter() throws Exception {
+        final Router previous = new Router("A", new Graph());
+        final Router replacement = new Router("A", new Graph());
+        StubGraphSource source = new StubGraphSource(previous);
+        GraphService graphService = new GraphService();
+        assertTrue(graphService.registerGraph("A", source));
+
+        assertSame(previous, graphService.acquireRouter("A"));
+        source.router = replacement;
+        Thread drain = new Thread(previous::drainAndShutdown);
+        drain.start();
+        waitUntilDraining(previous);
+
+        // A request arriving while the old router drains is served by the new one.
+        Router router = graphService.acquireRouter("A");
+        assertSame(replacement, router);
+        assertEquals(1, replacement.getActiveRequests());
+        router.release();
+
+        previous.release();
+        drain.join(5000);
+        assertFalse(drain.isAlive());
+    }
+
+    /** Wait for a router being drained in another thread to refuse requests. */
+    private static void waitUntilDraining(Router router) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+        while (router.tryAcquire()) {
+            router.release();
+            assertTrue("router is draining", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    /** A graph source whose router is replaced by the test, as a reload would. */
+    private static class StubGraphSource implements GraphSource {
+
+        volatile Router router;
+
+        StubGraphSource(Router router) {
+            this.router = router;
+        }
+
+        @Override
+        public Router getRouter() {
+            return router;
+        }
+
+        @Override
+        public boolean reload(boolean force, boolean preEvict) {
+            return true;
+        }
+
+        @Override
+        public void evict() {
+        }
+    }
+}
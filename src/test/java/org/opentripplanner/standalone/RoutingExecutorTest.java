@@ -0,0 +1,123 @@
+package org.opentripplanner.standalone;
+
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.Response;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+public class RoutingExecutorTest {
+
+    private RoutingExecutor executor;
+
+    @After
+    public void tearDown() {
+        if (executor != null) executor.shutdown();
+    }
+
+    @Test
+    public void testResume() throws Exception {
+        executor = new RoutingExecutor(1, 1, 10);
+        AsyncResponse response = mock(AsyncResponse.class);
+        executor.execute(response, executor.deadline(), () -> "itineraries");
+        verify(response, timeout(5000)).resume("itineraries");
+        // The response is resumed with a 503 by the container if the search runs past the deadline and grace time.
+        verify(response).setTimeout(anyLong(), any(TimeUnit.class));
+
+        final RuntimeException error = new RuntimeException("search failed");
+        AsyncResponse failing = mock(AsyncResponse.class);
+        executor.execute(failing, executor.deadline(), () -> { throw error; });
+        verify(failing, timeout(5000)).resume(error);
+    }
+
+    @Test
+    public void testNoTimeout() throws Exception {
+        executor = new RoutingExecutor(1, 1, 0);
+        assertEquals(Long.MAX_VALUE, executor.deadline());
+        AsyncResponse response = mock(AsyncResponse.class);
+        executor.execute(response, executor.deadline(), () -> "itineraries");
+        verify(response, timeout(5000)).resume("itineraries");
+        verify(response, never()).setTimeout(anyLong(), any(TimeUnit.class));
+    }
+
+    @Test
+    public void testQueueRejection() throws Exception {
+        executor = new RoutingExecutor(1, 1, 10);
+        CountDownLatch release = block();
+        try {
+            AsyncResponse queued = mock(AsyncResponse.class);
+            executor.execute(queued, executor.deadline(), () -> "queued");
+            assertEquals(1, executor.getQueueSize());
+
+            AsyncResponse refused = mock(AsyncResponse.class);
+            AtomicBoolean searched = new AtomicBoolean(false);
+            executor.execute(refused, executor.deadline(), () -> searched.getAndSet(true));
+            assertUnavailable(refused);
+            assertEquals(1, executor.getRejectedCount());
+
+            release.countDown();
+            verify(queued, timeout(5000)).resume("queued");
+            assertFalse(searched.get());
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void testDeadlineShed() throws Exception {
+        executor = new RoutingExecutor(1, 2, 10);
+        CountDownLatch release = block();
+        try {
+            AsyncResponse expired = mock(AsyncResponse.class);
+            AtomicBoolean searched = new AtomicBoolean(false);
+            executor.execute(expired, System.currentTimeMillis() + 50, () -> searched.getAndSet(true));
+            AsyncResponse waiting = mock(AsyncResponse.class);
+            executor.execute(waiting, executor.deadline(), () -> "waiting");
+            Thread.sleep(200);
+
+            release.countDown();
+            assertUnavailable(expired);
+            assertFalse(searched.get());
+            assertEquals(1, executor.getShedCount());
+            // A request within its deadline is still served after the expired one is shed.
+            verify(waiting, timeout(5000)).resume("waiting");
+        } finally {
+            release.countDown();
+        }
+    }
+
+    /** Occupy the only routing thread until the returned latch is released. */
+    private CountDownLatch block() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        executor.execute(mock(AsyncResponse.class), Long.MAX_VALUE, () -> {
+            started.countDown();
+            return release.await(10, TimeUnit.SECONDS);
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        return release;
+    }
+
+    private static void assertUnavailable(AsyncResponse response) {
+        ArgumentCaptor<Object> captor = ArgumentCaptor.forClass(Object.class);
+        verify(response, timeout(5000)).resume(captor.capture());
+        assertTrue(captor.getValue() instanceof Response);
+        Response refusal = (Response) captor.getValue();
+        assertEquals(Response.Status.SERVICE_UNAVAILABLE.getStatusCode(), refusal.getStatus());
+        assertEquals(1, refusal.getHeaders().get("Retry-After").size());
+    }
+}
@@ -0,0 +1,69 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.opentripplanner.util.model.EncodedPolylineBean;
+
+import com.vividsolutions.jts.geom.Coordinate;
+
+import junit.framework.TestCase;
+
+public class EncodedPolylineBuilderTest extends TestCase {
+
+    private static final double[] FIRST = { -73.85062, 40.903125, -73.85136, 40.902261, -73.85151, 40.902066 };
+
+    /** Starts where FIRST ends. */
+    private static final double[] SECOND = { -73.85151, 40.902066, -73.86, 40.91, -74.2, 40.5 };
+
+    /** Starts away from where SECOND ends. */
+    private static final double[] THIRD = { -74.20002, 40.50003, -74.3, 40.4, -74.31, 40.41 };
+
+    public void testPoints() {
+        EncodedPolylineBuilder builder = new EncodedPolylineBuilder();
+        builder.addPoints(FIRST, 0);
+        EncodedPolylineBean eplb = builder.build();
+        assertEquals("o{sxFl}vaMjDpCf@\\", eplb.getPoints());
+        assertEquals(3, eplb.getLength());
+        assertNull(eplb.getLevels());
+    }
+
+    public void testFragments() {
+        EncodedPolylineBuilder builder = new EncodedPolylineBuilder();
+        builder.addFragment(EncodedPolylineBuilder.makeFragment(FIRST));
+        builder.addFragment(EncodedPolylineBuilder.makeFragment(SECOND));
+        builder.addFragment(EncodedPolylineBuilder.makeFragment(THIRD));
+        // A single point adds nothing once the polyline has begun.
+        builder.addFragment(EncodedPolylineBuilder.makeFragment(new double[] { 1.0, 1.0 }));
+
+        EncodedPolylineBean expected = PolylineEncoder.createEncodings(concatenate(FIRST, SECOND, THIRD));
+        EncodedPolylineBean eplb = builder.build();
+        assertEquals(expected.getPoints(), eplb.getPoints());
+        assertEquals(expected.getLength(), eplb.getLength());
+        assertEquals(expected.getPoints(), PolylineEncoder.createEncodings(PolylineEncoder.decode(eplb)).getPoints());
+    }
+
+    /** Concatenate the points of the pieces, skipping the first point of all but the first piece. */
+    private static List<Coordinate> concatenate(double[]... pieces) {
+        List<Coordinate> points = new ArrayList<Coordinate>();
+        for (double[] xy : pieces) {
+            for (int i = points.isEmpty() ? 0 : 2; i < xy.length; i += 2) {
+                points.add(new Coordinate(xy[i], xy[i + 1]));
+            }
+        }
+        return points;
+    }
+}